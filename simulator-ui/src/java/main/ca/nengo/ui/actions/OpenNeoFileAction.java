@@ -37,6 +37,8 @@ import org.python.core.PyClass;
 import org.python.util.PythonInterpreter;
 import org.python.util.PythonObjectInputStream;
 
+import ca.nengo.io.FileManager;
+import ca.nengo.io.PayloadStore;
 import ca.nengo.model.Node;
 import ca.nengo.ui.NengoGraphics;
 import ca.nengo.ui.lib.actions.ActionException;
@@ -107,12 +109,18 @@ public class OpenNeoFileAction extends StandardAction {
                         // loading sometimes fails if a new interpreter is
                         // created, so
                         // we use the one from the NengoGraphics.
+                        // large payloads saved beside the file are read on demand
                         PythonInterpreter pi = NengoGraphics.getInstance().getPythonInterpreter();
-                        pi.set("___inStream",
-                                new PythonObjectInputStream(new FileInputStream(file)));
-                        org.python.core.PyObject obj = pi.eval("___inStream.readObject()");
-                        objLoaded = obj.__tojava__(Class.forName("ca.nengo.model.Node"));
-                        pi.exec("del ___inStream");
+                        FileManager.bindPayloads(file);
+                        try {
+                            pi.set("___inStream",
+                                    new PythonObjectInputStream(new FileInputStream(file)));
+                            org.python.core.PyObject obj = pi.eval("___inStream.readObject()");
+                            objLoaded = obj.__tojava__(Class.forName("ca.nengo.model.Node"));
+                            pi.exec("del ___inStream");
+                        } finally {
+                            PayloadStore.unbind();
+                        }
 
                         SwingUtilities.invokeLater(new Runnable() {
                             public void run() {
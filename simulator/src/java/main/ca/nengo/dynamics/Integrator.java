@@ -50,6 +50,23 @@ public interface Integrator extends Serializable, Cloneable {
 	 */
 	public TimeSeries integrate(DynamicalSystem system, TimeSeries input);
 
+	/**
+	 * Advances the given system from startTime to endTime without building time series,
+	 * for use once per simulation step. The input is interpolated linearly between the given
+	 * start and end values (pass the same array for both if the input is constant). The
+	 * state vector of the system is updated in place, so it shouldn't be shared with anything
+	 * else (e.g. an initial state that is restored on reset). An Integrator keeps a workspace
+	 * for this method, so it shouldn't step systems from more than one thread at once.
+	 *
+	 * @param system The DynamicalSystem to solve
+	 * @param startTime Time at which to start
+	 * @param startInput Input vector at startTime
+	 * @param endTime Time at which to end
+	 * @param endInput Input vector at endTime
+	 * @return Output vector of the system at endTime
+	 */
+	public float[] step(DynamicalSystem system, float startTime, float[] startInput, float endTime, float[] endInput);
+
 	/**
 	 * @return cloned Integrator
 	 * @throws CloneNotSupportedException is clone operation fails
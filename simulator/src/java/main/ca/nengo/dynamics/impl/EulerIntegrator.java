@@ -55,6 +55,7 @@ public class EulerIntegrator implements Integrator {
 	private static final float SHRINK = .99999f;
 
 	private float h;
+	private transient float[] myInput; //workspace for interpolated input in step(...)
 
 	/**
 	 * @param stepSize Timestep size (dt)
@@ -121,9 +122,41 @@ public class EulerIntegrator implements Integrator {
 		return new TimeSeriesImpl(times, values, units);
 	}
 
+	/**
+	 * Takes the same steps as integrate(...), but updates the state in place and only
+	 * finds the output at the end.
+	 *
+	 * @see ca.nengo.dynamics.Integrator#step(ca.nengo.dynamics.DynamicalSystem, float, float[], float, float[])
+	 */
+	public float[] step(DynamicalSystem system, float startTime, float[] startInput, float endTime, float[] endInput) {
+		int steps = (int) Math.ceil((endTime - startTime)*SHRINK / h);
+		if (startInput != endInput && (myInput == null || myInput.length != startInput.length)) {
+			myInput = new float[startInput.length];
+		}
+
+		float t = startTime;
+		float[] u = startInput;
+		for (int i = 1; i <= steps; i++) {
+			float dt = (i < steps) ? h : (endTime - t);
+			t = t + dt;
+
+			u = LinearInterpolatorND.interpolate(startTime, startInput, endTime, endInput, t, myInput);
+			float[] dxdt = system.f(t, u);
+			float[] x = system.getState();
+			for (int j = 0; j < x.length; j++) {
+				x[j] = x[j] + dxdt[j] * dt;
+			}
+			system.setState(x);
+		}
+
+		return system.g(t, u);
+	}
+
 	@Override
 	public Integrator clone() throws CloneNotSupportedException {
-		return (Integrator) super.clone();
+		EulerIntegrator result = (EulerIntegrator) super.clone();
+		result.myInput = null;
+		return result;
 	}
 
 
@@ -31,6 +31,7 @@ import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.model.Units;
 import ca.nengo.util.MU;
+import Jama.Matrix;
 
 /**
  * A linear time-invariant dynamical system model in state-space form. Such a system
@@ -51,6 +52,10 @@ public class LTISystem implements LinearSystem {
 	private float[] x;
 	private Units[] myOutputUnits;
 
+	private transient float myDiscreteStep;
+	private transient float[][][] myDiscretization; //{Ad, Bd} for myDiscreteStep
+	private transient float[] myNextState;
+
 	/**
 	 * Each argument is an array of arrays that represents a matrix. The first
 	 * dimension represents the matrix row and the second the matrix column, so
@@ -134,6 +139,152 @@ public class LTISystem implements LinearSystem {
 		return a1x1plusa2x2(C, x, D, u);
 	}
 
+	/**
+	 * Advances the state by exactly dt, with the input held constant over the step (a
+	 * zero-order hold). The discrete-time matrices for dt (rounded to the nearest microsecond)
+	 * are found once and cached, so each call costs one small matrix-vector product. The state
+	 * is updated in place.
+	 *
+	 * @param dt Length of the step
+	 * @param u Input, held over the step
+	 */
+	public void step(float dt, float[] u) {
+		assert u.length == getInputDimension();
+
+		float[][][] discrete = getDiscretization(dt);
+		float[][] Ad = discrete[0];
+		float[][] Bd = discrete[1];
+
+		if (myNextState == null || myNextState.length != x.length) {
+			myNextState = new float[x.length];
+		}
+		for (int i = 0; i < x.length; i++) {
+			float sum = 0;
+			for (int j = 0; j < x.length; j++) {
+				sum += Ad[i][j] * x[j];
+			}
+			for (int j = 0; j < u.length; j++) {
+				sum += Bd[i][j] * u[j];
+			}
+			myNextState[i] = sum;
+		}
+		System.arraycopy(myNextState, 0, x, 0, x.length);
+	}
+
+	/**
+	 * @param dt Length of time step
+	 * @return Dynamics matrix of the equivalent discrete-time system with a zero-order hold
+	 * 		on the input, i.e. exp(A dt)
+	 */
+	public float[][] getDiscreteA(float dt) {
+		return MU.clone(getDiscretization(dt)[0]);
+	}
+
+	/**
+	 * @param dt Length of time step
+	 * @return Input matrix of the equivalent discrete-time system with a zero-order hold
+	 * 		on the input, i.e. the integral of exp(A s) B over s from 0 to dt
+	 */
+	public float[][] getDiscreteB(float dt) {
+		return MU.clone(getDiscretization(dt)[1]);
+	}
+
+	/**
+	 * @param dt Length of time step
+	 * @return {Ad, Bd} for the given step rounded to the nearest microsecond (see roundStep(...)),
+	 * 		cached until the rounded step or the system changes (these arrays must not be modified)
+	 */
+	protected float[][][] getDiscretization(float dt) {
+		float step = roundStep(dt);
+		if (myDiscretization == null || step != myDiscreteStep) {
+			myDiscretization = discretize(step);
+			myDiscreteStep = step;
+		}
+		return myDiscretization;
+	}
+
+	/**
+	 * Rounds a step length to the nearest microsecond, as LocalSimulator does with its step size.
+	 * Step lengths found as differences of float times vary in their last bits from one step to
+	 * the next, so discrete-time matrices cached for a step length should be keyed on the rounded
+	 * length.
+	 *
+	 * @param dt Length of a time step
+	 * @return dt rounded to the nearest microsecond (dt itself if it is shorter than that)
+	 */
+	public static float roundStep(float dt) {
+		if (Math.abs(dt) < .000001f) {
+			return dt;
+		}
+		return Math.round(dt * 1000000) / 1000000f;
+	}
+
+	/**
+	 * Finds the discrete-time matrices from the matrix exponential of the augmented matrix
+	 * [A B; 0 0] dt, which is [Ad Bd; 0 I]. Subclasses with special structure can override
+	 * this with a cheaper closed form.
+	 *
+	 * @param dt Length of time step
+	 * @return {Ad, Bd}
+	 */
+	protected float[][][] discretize(float dt) {
+		int n = A.length;
+		int p = B[0].length;
+		Matrix augmented = new Matrix(n + p, n + p);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				augmented.set(i, j, A[i][j] * (double) dt);
+			}
+			for (int j = 0; j < p; j++) {
+				augmented.set(i, n + j, B[i][j] * (double) dt);
+			}
+		}
+
+		double[][] exp = expm(augmented).getArray();
+		float[][] Ad = new float[n][n];
+		float[][] Bd = new float[n][p];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				Ad[i][j] = (float) exp[i][j];
+			}
+			for (int j = 0; j < p; j++) {
+				Bd[i][j] = (float) exp[i][n + j];
+			}
+		}
+		return new float[][][]{Ad, Bd};
+	}
+
+	//matrix exponential by Pade approximation with scaling and squaring
+	private static Matrix expm(Matrix M) {
+		double norm = M.normInf();
+		int s = norm > .5 ? (int) Math.ceil(Math.log(norm) / Math.log(2)) + 1 : 0;
+		Matrix X = M.times(1d / Math.pow(2, s));
+
+		int q = 6;
+		double c = .5;
+		Matrix identity = Matrix.identity(M.getRowDimension(), M.getColumnDimension());
+		Matrix power = X;
+		Matrix numerator = identity.plus(X.times(c));
+		Matrix denominator = identity.minus(X.times(c));
+		for (int k = 2; k <= q; k++) {
+			c = c * (q - k + 1) / (k * (2 * q - k + 1));
+			power = X.times(power);
+			Matrix term = power.times(c);
+			numerator.plusEquals(term);
+			if (k % 2 == 0) {
+				denominator.plusEquals(term);
+			} else {
+				denominator.minusEquals(term);
+			}
+		}
+
+		Matrix result = denominator.solve(numerator);
+		for (int k = 0; k < s; k++) {
+			result = result.times(result);
+		}
+		return result;
+	}
+
 	//does not check dimensions -- we leave this to prior assertion of dimensionsOK(...)
 	private static float[] a1x1plusa2x2(float[][] A1, float[] x1, float[][] A2, float[] x2) {
 		float[] result = new float[A1.length];
@@ -179,6 +330,7 @@ public class LTISystem implements LinearSystem {
 	public void setInputDimension(int dim) {
 		B = copyColumns(B, dim);
 		D = copyColumns(D, dim);
+		myDiscretization = null;
 	}
 
 	/**
@@ -219,6 +371,7 @@ public class LTISystem implements LinearSystem {
 		A = copyColumns(A, dim);
 		B = copyRows(B, dim);
 		C = copyColumns(C, dim);
+		myDiscretization = null;
 	}
 
 	/**
@@ -258,6 +411,7 @@ public class LTISystem implements LinearSystem {
 		checkSameDimension(newA.length, newA[0].length, "A matrix must be square");
 		checkSameDimension(newA.length, A.length, "A matrix must match state dimension " + A.length);
 		A = newA;
+		myDiscretization = null;
 	}
 
 	/**
@@ -282,6 +436,7 @@ public class LTISystem implements LinearSystem {
 		checkSameDimension(newB.length, B.length, "B matrix must match state dimension " + B.length);
 		checkSameDimension(newB[0].length, B[0].length, "B matrix must match input dimension " + B[0].length);
 		B = newB;
+		myDiscretization = null;
 	}
 
 	/**
@@ -354,6 +509,7 @@ public class LTISystem implements LinearSystem {
 		float[] state = new float[result.getState().length];
 		System.arraycopy(result.getState(), 0, state, 0, state.length);
 		result.setState(state);
+		result.myNextState = null;
 
 		return result;
 	}
@@ -77,6 +77,14 @@ public class RK45Integrator implements Integrator {
     //  Society for Industrial and Applied Mathematics (SIAM), Philadelphia, 1998
     private double myPow = 1f/6f; 
     private float myTolerance;
+
+    //workspace for step(...)
+    private transient float[] myInput;
+    private transient float[] myState;
+    private transient float[] myStageState;
+    private transient float[] my5thOrderState;
+    private transient float[] myError;
+    private transient float[][] myStages;
     
     /**
      * @param tolerance Error tolerance
@@ -194,9 +202,108 @@ public class RK45Integrator implements Integrator {
 		return new TimeSeriesImpl(times.toArray(), values.toArray(), units);
 	}
 
+	/**
+	 * Takes the same steps as integrate(...), reusing a workspace rather than allocating
+	 * new vectors for each stage, and only finds the output at the end.
+	 *
+	 * @see ca.nengo.dynamics.Integrator#step(ca.nengo.dynamics.DynamicalSystem, float, float[], float, float[])
+	 */
+	public float[] step(DynamicalSystem system, float startTime, float[] startInput, float endTime, float[] endInput) {
+		float[] state = system.getState();
+		int n = state.length;
+		if (myState == null || myState.length != n) {
+			myState = new float[n];
+			myStageState = new float[n];
+			my5thOrderState = new float[n];
+			myError = new float[n];
+			myStages = new float[7][];
+		}
+		if (startInput != endInput && (myInput == null || myInput.length != startInput.length)) {
+			myInput = new float[startInput.length];
+		}
+
+		float hmax = (endTime - startTime) / 2.5f;
+		float hmin = (endTime - startTime) / 1e9f;
+		float h = (endTime - startTime) / 100f; //initial guess at step size
+		float t = startTime;
+		float[] x = myState;
+		System.arraycopy(state, 0, x, 0, n);
+		float[][] k = myStages;
+
+		float[] u = LinearInterpolatorND.interpolate(startTime, startInput, endTime, endInput, t, myInput);
+		k[0] = system.f(t, u);
+
+		while (t < endTime && h >= hmin) {
+			if (t + h > endTime) h = endTime - t;
+
+			for (int j = 0; j < 6; j++) {
+				float stageTime = t + c[j+1]*h;
+				u = LinearInterpolatorND.interpolate(startTime, startInput, endTime, endInput, stageTime, myInput);
+
+				for (int q = 0; q < n; q++) {
+					float ka = 0;
+					for (int r = 0; r <= j; r++) {
+						ka += k[r][q] * a[j+1][r];
+					}
+					myStageState[q] = x[q] + ka * h;
+				}
+				system.setState(myStageState);
+				k[j+1] = system.f(stageTime, u);
+			}
+
+			for (int q = 0; q < n; q++) {
+				float k4 = 0;
+				float k5 = 0;
+				for (int r = 0; r < k.length; r++) {
+					k4 += k[r][q] * b4[r];
+					k5 += k[r][q] * b5[r];
+				}
+				my5thOrderState[q] = x[q] + k5 * h;
+				myError[q] = my5thOrderState[q] - (x[q] + k4 * h);
+			}
+
+			float delta = MU.pnorm(myError, -1); //actual error
+			float tau = myTolerance * Math.max(MU.pnorm(x, -1), 1f); //allowable error
+
+			if (delta <= tau) {
+				t = t + h;
+				System.arraycopy(my5thOrderState, 0, x, 0, n);
+				k[0] = k[6];
+			}
+
+			if (delta == 0f) delta = 1e-16f;
+			if ( !(delta >= 0) && !(delta < 0) ) {
+				h = h / 2f;
+			} else {
+				boolean hWasAlreadyMinimum = (h == hmin);
+				h = Math.min(hmax, 0.8f * h * (float) Math.pow(tau/delta, myPow));
+				if (h < hmin && !hWasAlreadyMinimum) h = hmin;
+			}
+		}
+
+		if (t < endTime) {
+			ourLogger.warn("Step size grew too small -- integration aborted.");
+		}
+
+		//the result goes back in the system's own state vector, since the workspace is shared
+		System.arraycopy(x, 0, state, 0, n);
+		system.setState(state);
+		for (int i = 0; i < k.length; i++) {
+			k[i] = null;
+		}
+		return system.g(t, u);
+	}
+
 	@Override
 	public Integrator clone() throws CloneNotSupportedException {
-		return (Integrator) super.clone();
+		RK45Integrator result = (RK45Integrator) super.clone();
+		result.myInput = null;
+		result.myState = null;
+		result.myStageState = null;
+		result.my5thOrderState = null;
+		result.myError = null;
+		result.myStages = null;
+		return result;
 	}
 	
 }
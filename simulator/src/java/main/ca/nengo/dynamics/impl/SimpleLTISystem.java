@@ -118,6 +118,52 @@ public class SimpleLTISystem extends LTISystem {
 		return MU.prod(C, getState());
 	}
 
+	/**
+	 * As LTISystem.step(), but with a diagonal dynamics matrix the state variables are
+	 * updated independently, without a temporary copy.
+	 *
+	 * @see ca.nengo.dynamics.impl.LTISystem#step(float, float[])
+	 */
+	@Override
+	public void step(float dt, float[] u) {
+		assert u.length == getInputDimension();
+
+		float[][][] discrete = getDiscretization(dt);
+		float[][] Ad = discrete[0];
+		float[][] Bd = discrete[1];
+		float[] x = getState();
+
+		for (int i = 0; i < x.length; i++) {
+			float sum = Ad[i][i] * x[i];
+			for (int j = 0; j < u.length; j++) {
+				sum += Bd[i][j] * u[j];
+			}
+			x[i] = sum;
+		}
+	}
+
+	/**
+	 * With a diagonal dynamics matrix, Ad_ii = exp(a_i dt) and Bd_ij = B_ij (exp(a_i dt) - 1) / a_i
+	 * (or B_ij dt if a_i is zero).
+	 *
+	 * @see ca.nengo.dynamics.impl.LTISystem#discretize(float)
+	 */
+	@Override
+	protected float[][][] discretize(float dt) {
+		float[][] Ad = new float[A.length][A.length];
+		float[][] Bd = new float[A.length][];
+		for (int i = 0; i < A.length; i++) {
+			double adt = A[i] * (double) dt;
+			Ad[i][i] = (float) Math.exp(adt);
+			double gain = A[i] == 0 ? dt : Math.expm1(adt) / A[i];
+			Bd[i] = new float[B[i].length];
+			for (int j = 0; j < B[i].length; j++) {
+				Bd[i][j] = (float) (B[i][j] * gain);
+			}
+		}
+		return new float[][][]{Ad, Bd};
+	}
+
 	@Override
 	public void setA(float[][] newA) {
 		float[] newAVector = MU.diag(newA);
@@ -0,0 +1,112 @@
+package ca.nengo.dynamics.impl;
+
+import ca.nengo.dynamics.DynamicalSystem;
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Integrates LTISystems exactly, with the input held constant over each step (a
+ * zero-order hold). Each step is one multiplication by the system's cached discrete-time
+ * matrices (see LTISystem.step(...)), however long the step, so this is both faster and more
+ * accurate than an EulerIntegrator with a small step size. If the input differs at the
+ * ends of a step, it is held at the mean of the two.</p>
+ *
+ * <p>Other kinds of DynamicalSystem are passed to a fallback Integrator.</p>
+ *
+ * @author Nengo Developers
+ */
+public class ZeroOrderHoldIntegrator implements Integrator {
+
+	private static final long serialVersionUID = 1L;
+
+	private Integrator myFallback;
+	private transient float[] myInput; //workspace for the held input in step(...)
+
+	/**
+	 * @param fallback Integrator for systems that are not LTISystems
+	 */
+	public ZeroOrderHoldIntegrator(Integrator fallback) {
+		myFallback = fallback;
+	}
+
+	/**
+	 * Uses an EulerIntegrator with its default step size for systems that are not LTISystems.
+	 */
+	public ZeroOrderHoldIntegrator() {
+		this(new EulerIntegrator());
+	}
+
+	/**
+	 * @return Integrator for systems that are not LTISystems
+	 */
+	public Integrator getFallback() {
+		return myFallback;
+	}
+
+	/**
+	 * @param fallback Integrator for systems that are not LTISystems
+	 */
+	public void setFallback(Integrator fallback) {
+		myFallback = fallback;
+	}
+
+	/**
+	 * Takes one step between each pair of consecutive input points.
+	 *
+	 * @see ca.nengo.dynamics.Integrator#integrate(ca.nengo.dynamics.DynamicalSystem, ca.nengo.util.TimeSeries)
+	 */
+	public TimeSeries integrate(DynamicalSystem system, TimeSeries input) {
+		if (!(system instanceof LTISystem)) {
+			return myFallback.integrate(system, input);
+		}
+
+		float[] times = input.getTimes();
+		float[][] inputs = input.getValues();
+		float[][] values = new float[times.length][];
+		values[0] = system.g(times[0], inputs[0]);
+		for (int i = 1; i < times.length; i++) {
+			values[i] = step(system, times[i-1], inputs[i-1], times[i], inputs[i]);
+		}
+
+		Units[] units = new Units[system.getOutputDimension()];
+		for (int i = 0; i < units.length; i++) {
+			units[i] = system.getOutputUnits(i);
+		}
+
+		return new TimeSeriesImpl(times.clone(), values, units);
+	}
+
+	/**
+	 * @see ca.nengo.dynamics.Integrator#step(ca.nengo.dynamics.DynamicalSystem, float, float[], float, float[])
+	 */
+	public float[] step(DynamicalSystem system, float startTime, float[] startInput, float endTime, float[] endInput) {
+		if (!(system instanceof LTISystem)) {
+			return myFallback.step(system, startTime, startInput, endTime, endInput);
+		}
+
+		float[] u = endInput;
+		if (startInput != endInput) {
+			if (myInput == null || myInput.length != startInput.length) {
+				myInput = new float[startInput.length];
+			}
+			for (int i = 0; i < myInput.length; i++) {
+				myInput[i] = (startInput[i] + endInput[i]) / 2f;
+			}
+			u = myInput;
+		}
+
+		((LTISystem) system).step(endTime - startTime, u);
+		return system.g(endTime, endInput);
+	}
+
+	@Override
+	public Integrator clone() throws CloneNotSupportedException {
+		ZeroOrderHoldIntegrator result = (ZeroOrderHoldIntegrator) super.clone();
+		result.myFallback = myFallback.clone();
+		result.myInput = null;
+		return result;
+	}
+
+}
@@ -0,0 +1,415 @@
+package ca.nengo.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.model.Checkpointable;
+import ca.nengo.model.Ensemble;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.PreciseSpikeOutput;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.EnsembleOrigin;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PreciseSpikeOutputImpl;
+import ca.nengo.model.impl.ProbeableOrigin;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
+
+/**
+ * Writes the mutable state of a running Network to a compact binary file, and reads it
+ * back into the same Network (or an identical one, e.g. loaded from the same model file),
+ * so that a simulation can be continued from that point.
+ *
+ * <p>Only state is written: the latest output of each Origin, and the state of each Node,
+ * Origin and Termination that is Checkpointable (e.g. neuron voltages, synaptic currents,
+ * termination dynamics, short-term plasticity, learned weights). Structure and parameters
+ * are left to the model file. The state of each top-level Node (and each Node of a nested
+ * Network) is stored under its name, so Nodes that have been added since a checkpoint was
+ * written keep their current state, and Nodes that have been removed are skipped. Within
+ * a Node the structure must be unchanged.</p>
+ *
+ * @author Nengo Developers
+ */
+public class Checkpoint {
+
+	/**
+	 * Extension for checkpoint files
+	 */
+	public static final String CHECKPOINT_EXTENSION = "nck";
+
+	private static final int MAGIC = 0x4E434B50;
+	private static final int VERSION = 1;
+
+	private static final byte NULL_OUTPUT = 0;
+	private static final byte REAL_OUTPUT = 1;
+	private static final byte SPIKE_OUTPUT = 2;
+	private static final byte PRECISE_SPIKE_OUTPUT = 3;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * @param network Network whose state is to be saved
+	 * @param time Simulation time to which the state corresponds
+	 * @param destination File in which to save the state (replaced if it exists)
+	 * @throws IOException if the state can't be written
+	 */
+	public static void save(Network network, float time, File destination) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destination), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeFloat(time);
+			writeNode(out, network);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param network Network into which state is to be restored
+	 * @param source File that was written by save(...)
+	 * @return Simulation time to which the restored state corresponds
+	 * @throws IOException if the file can't be read, or its contents don't match the Network
+	 */
+	public static float restore(Network network, File source) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(source.getPath() + " is not a checkpoint file");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version);
+			}
+			float time = in.readFloat();
+			readNode(in, network);
+			return time;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeNode(DataOutput out, Node node) throws IOException {
+		if (node instanceof Checkpointable) {
+			out.writeBoolean(true);
+			((Checkpointable) node).writeState(out);
+		} else {
+			out.writeBoolean(false);
+		}
+
+		List<Origin> origins = getStatefulOrigins(node);
+		out.writeInt(origins.size());
+		for (Origin origin : origins) {
+			out.writeUTF(origin.getName());
+			try {
+				writeOutput(out, origin.getValues());
+			} catch (SimulationException e) {
+				throw new IOException("Can't get values of origin " + origin.getName() + " of " + node.getName(), e);
+			}
+			if (origin instanceof Checkpointable) {
+				out.writeBoolean(true);
+				((Checkpointable) origin).writeState(out);
+			} else {
+				out.writeBoolean(false);
+			}
+		}
+
+		List<Termination> terminations = new ArrayList<Termination>();
+		for (Termination termination : node.getTerminations()) {
+			if (termination instanceof Checkpointable) {
+				terminations.add(termination);
+			}
+		}
+		out.writeInt(terminations.size());
+		for (Termination termination : terminations) {
+			out.writeUTF(termination.getName());
+			((Checkpointable) termination).writeState(out);
+		}
+
+		if (node instanceof Network) {
+			Node[] children = ((Network) node).getNodes();
+			out.writeInt(children.length);
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			for (Node child : children) {
+				buffer.reset();
+				writeNode(new DataOutputStream(buffer), child);
+				out.writeUTF(child.getName());
+				out.writeInt(buffer.size());
+				out.write(buffer.toByteArray());
+			}
+		} else if (node instanceof Ensemble) {
+			Node[] children = ((Ensemble) node).getNodes();
+			out.writeInt(children.length);
+			for (Node child : children) {
+				writeNode(out, child);
+			}
+		} else {
+			out.writeInt(0);
+		}
+	}
+
+	private static void readNode(DataInput in, Node node) throws IOException {
+		if (in.readBoolean()) {
+			if (!(node instanceof Checkpointable)) {
+				throw new IOException("Checkpoint has state for " + node.getName() + ", which doesn't support checkpoints");
+			}
+			((Checkpointable) node).readState(in);
+		}
+
+		int nOrigins = in.readInt();
+		for (int i = 0; i < nOrigins; i++) {
+			String name = in.readUTF();
+			Origin origin;
+			try {
+				origin = node.getOrigin(name);
+			} catch (StructuralException e) {
+				throw new IOException("Checkpoint doesn't match " + node.getName() + ": " + e.getMessage());
+			}
+			InstantaneousOutput values = readOutput(in);
+			if (values != null) {
+				origin.setValues(values);
+			}
+			if (in.readBoolean()) {
+				if (!(origin instanceof Checkpointable)) {
+					throw new IOException("Checkpoint doesn't match origin " + name + " of " + node.getName());
+				}
+				((Checkpointable) origin).readState(in);
+			}
+		}
+
+		int nTerminations = in.readInt();
+		for (int i = 0; i < nTerminations; i++) {
+			String name = in.readUTF();
+			Termination termination;
+			try {
+				termination = node.getTermination(name);
+			} catch (StructuralException e) {
+				throw new IOException("Checkpoint doesn't match " + node.getName() + ": " + e.getMessage());
+			}
+			if (!(termination instanceof Checkpointable)) {
+				throw new IOException("Checkpoint doesn't match termination " + name + " of " + node.getName());
+			}
+			((Checkpointable) termination).readState(in);
+		}
+
+		int nChildren = in.readInt();
+		if (node instanceof Network) {
+			Network network = (Network) node;
+			for (int i = 0; i < nChildren; i++) {
+				String name = in.readUTF();
+				int length = in.readInt();
+				Node child = null;
+				try {
+					child = network.getNode(name);
+				} catch (StructuralException e) {
+					//node has been removed since the checkpoint was written
+				}
+				if (child == null) {
+					in.readFully(new byte[length]); //unlike skipBytes(...), fails on a short read
+				} else {
+					readNode(in, child);
+				}
+			}
+		} else if (node instanceof Ensemble) {
+			Node[] children = ((Ensemble) node).getNodes();
+			if (children.length != nChildren) {
+				throw new IOException("Checkpoint has " + nChildren + " nodes for " + node.getName()
+						+ ", which has " + children.length);
+			}
+			for (Node child : children) {
+				readNode(in, child);
+			}
+		} else if (nChildren != 0) {
+			throw new IOException("Checkpoint doesn't match " + node.getName());
+		}
+	}
+
+	/*
+	 * Origins whose values are derived from other origins (and can't be set) are skipped.
+	 */
+	private static List<Origin> getStatefulOrigins(Node node) {
+		Origin[] origins = node.getOrigins();
+		List<Origin> result = new ArrayList<Origin>(origins.length);
+		for (Origin origin : origins) {
+			if (!(origin instanceof EnsembleOrigin) && !(origin instanceof NetworkImpl.OriginWrapper)
+					&& !(origin instanceof ProbeableOrigin)) {
+				result.add(origin);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param out Destination
+	 * @param output Output of an Origin (may be null)
+	 * @throws IOException if the output can't be written
+	 */
+	public static void writeOutput(DataOutput out, InstantaneousOutput output) throws IOException {
+		if (output instanceof PreciseSpikeOutput) {
+			out.writeByte(PRECISE_SPIKE_OUTPUT);
+			writeArray(out, ((PreciseSpikeOutput) output).getSpikeTimes());
+		} else if (output instanceof SpikeOutput) {
+			out.writeByte(SPIKE_OUTPUT);
+			writeArray(out, ((SpikeOutput) output).getValues());
+		} else if (output instanceof RealOutput) {
+			out.writeByte(REAL_OUTPUT);
+			writeArray(out, ((RealOutput) output).getValues());
+		} else {
+			out.writeByte(NULL_OUTPUT);
+			return;
+		}
+		out.writeFloat(output.getTime());
+		out.writeInt(output.getUnits() == null ? -1 : output.getUnits().ordinal());
+	}
+
+	/**
+	 * @param in Source
+	 * @return Output written by writeOutput(...)
+	 * @throws IOException if the output can't be read
+	 */
+	public static InstantaneousOutput readOutput(DataInput in) throws IOException {
+		byte type = in.readByte();
+		if (type == PRECISE_SPIKE_OUTPUT) {
+			float[] spikeTimes = readFloatArray(in);
+			float time = in.readFloat();
+			return new PreciseSpikeOutputImpl(spikeTimes, readUnits(in), time);
+		} else if (type == SPIKE_OUTPUT) {
+			boolean[] values = readBooleanArray(in);
+			float time = in.readFloat();
+			return new SpikeOutputImpl(values, readUnits(in), time);
+		} else if (type == REAL_OUTPUT) {
+			float[] values = readFloatArray(in);
+			float time = in.readFloat();
+			return new RealOutputImpl(values, readUnits(in), time);
+		} else if (type == NULL_OUTPUT) {
+			return null;
+		} else {
+			throw new IOException("Unknown output type " + type + " in checkpoint");
+		}
+	}
+
+	private static Units readUnits(DataInput in) throws IOException {
+		int ordinal = in.readInt();
+		return ordinal < 0 ? null : Units.values()[ordinal];
+	}
+
+	/**
+	 * @param out Destination
+	 * @param array Array to write (may be null)
+	 * @throws IOException if the array can't be written
+	 */
+	public static void writeArray(DataOutput out, float[] array) throws IOException {
+		if (array == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(array.length);
+			for (float element : array) {
+				out.writeFloat(element);
+			}
+		}
+	}
+
+	/**
+	 * @param in Source
+	 * @return Array written by writeArray(DataOutput, float[])
+	 * @throws IOException if the array can't be read
+	 */
+	public static float[] readFloatArray(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		float[] result = new float[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = in.readFloat();
+		}
+		return result;
+	}
+
+	/**
+	 * @param out Destination
+	 * @param array Array to write (may be null)
+	 * @throws IOException if the array can't be written
+	 */
+	public static void writeArray(DataOutput out, boolean[] array) throws IOException {
+		if (array == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(array.length);
+			for (boolean element : array) {
+				out.writeBoolean(element);
+			}
+		}
+	}
+
+	/**
+	 * @param in Source
+	 * @return Array written by writeArray(DataOutput, boolean[])
+	 * @throws IOException if the array can't be read
+	 */
+	public static boolean[] readBooleanArray(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		boolean[] result = new boolean[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = in.readBoolean();
+		}
+		return result;
+	}
+
+	/**
+	 * @param out Destination
+	 * @param matrix Matrix to write (may be null; rows may differ in length)
+	 * @throws IOException if the matrix can't be written
+	 */
+	public static void writeMatrix(DataOutput out, float[][] matrix) throws IOException {
+		if (matrix == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(matrix.length);
+			for (float[] row : matrix) {
+				writeArray(out, row);
+			}
+		}
+	}
+
+	/**
+	 * @param in Source
+	 * @return Matrix written by writeMatrix(...)
+	 * @throws IOException if the matrix can't be read
+	 */
+	public static float[][] readMatrix(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		float[][] result = new float[length][];
+		for (int i = 0; i < length; i++) {
+			result[i] = readFloatArray(in);
+		}
+		return result;
+	}
+
+}
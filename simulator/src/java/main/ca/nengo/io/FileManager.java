@@ -88,6 +88,34 @@ public class FileManager {
 		saveObject(node, destination);
 	}
 
+	/**
+	 * @param node Node to serialize
+	 * @param destination File to save serialized Node in
+	 * @param separatePayloads If true, large matrices (decoders, transforms, evaluation points,
+	 * 		approximators) are written to a separate payload file beside the destination (see
+	 * 		PayloadStore), so that they can be loaded on demand when the Node is opened
+	 * @throws IOException if there's a problem writing to disk
+	 */
+	public void save(Node node, File destination, boolean separatePayloads) throws IOException {
+		if (!separatePayloads) {
+			saveObject(node, destination);
+			File payloads = PayloadStore.getPayloadFile(destination);
+			if (payloads.exists() && !payloads.delete()) {
+				throw new IOException("Can't delete stale payload file " + payloads.getPath());
+			}
+			return;
+		}
+
+		PayloadStore store = PayloadStore.create(PayloadStore.getPayloadFile(destination));
+		PayloadStore.bind(store);
+		try {
+			saveObject(node, destination);
+		} finally {
+			PayloadStore.unbind();
+			store.close();
+		}
+	}
+
 	public void generate(Node node, String destination) throws IOException {
 		NetworkImpl network = (NetworkImpl) node;
 		network.dumpToScript(destination);
@@ -112,6 +140,10 @@ public class FileManager {
 	}
 
 	/**
+	 * If the file was saved with separate payloads, the structure of the model (nodes, origins,
+	 * terminations) is loaded immediately, and the payloads are read from disk when they are
+	 * first used.
+	 *
 	 * @param source Serialized file to load
 	 * @return Object represented by the serialized file
 	 * @throws IOException if there's a problem writing to disk
@@ -121,13 +153,37 @@ public class FileManager {
 	public Object load(File source) throws IOException, ClassNotFoundException {
 		FileInputStream fis = new FileInputStream(source);
 
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		Object return_obj = ois.readObject();
-
-		ois.close();
-		fis.close();
+		bindPayloads(source);
+		try {
+			ObjectInputStream ois = new ObjectInputStream(fis);
+			Object return_obj = ois.readObject();
+
+			ois.close();
+			return return_obj;
+		} finally {
+			PayloadStore.unbind();
+			fis.close();
+		}
+	}
 
-		return return_obj;
+	/**
+	 * Prepares the current thread to read a model file that may have separate payloads. Callers
+	 * that deserialize with their own streams should call this first, and PayloadStore.unbind()
+	 * when they are done.
+	 *
+	 * @param source Serialized model file that is about to be read
+	 * @return True if the file has separate payloads
+	 * @throws IOException if the payload file exists but can't be opened
+	 */
+	public static boolean bindPayloads(File source) throws IOException {
+		File payloads = PayloadStore.getPayloadFile(source);
+		if (payloads.exists()) {
+			PayloadStore.bind(PayloadStore.open(payloads));
+			return true;
+		} else {
+			PayloadStore.unbind();
+			return false;
+		}
 	}
 
 }
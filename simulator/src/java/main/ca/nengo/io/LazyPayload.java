@@ -0,0 +1,191 @@
+package ca.nengo.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * A reference to a payload that has been written to a PayloadStore and is loaded the
+ * first time it is needed.
+ *
+ * <p>Matrices (float[][]) are stored as raw floats, which is much faster to read back than
+ * Java serialization. Other payloads are stored as serialized objects.</p>
+ *
+ * <p>Owners typically keep the payload in an ordinary field and a LazyPayload beside it. The
+ * ordinary field is nulled while the owner is written (if offload(...) returns non-null), and
+ * is filled from the LazyPayload on first access after the owner is read.</p>
+ *
+ * @param <T> Type of the payload
+ * @author Nengo Developers
+ */
+public class LazyPayload<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MATRIX = 0;
+	private static final int OBJECT = 1;
+
+	private final String myFileName; //null if the store is kept in memory
+	private final long myOffset;
+	private final int myLength;
+	private final int myKind;
+	private final int myRows;
+	private final int myColumns;
+
+	private transient PayloadStore myStore;
+
+	private LazyPayload(PayloadStore store, long offset, int length, int kind, int rows, int columns) {
+		myStore = store;
+		myFileName = store.getFile() == null ? null : store.getFile().getAbsolutePath();
+		myOffset = offset;
+		myLength = length;
+		myKind = kind;
+		myRows = rows;
+		myColumns = columns;
+	}
+
+	/**
+	 * Writes the given value to the PayloadStore that is bound to the current thread, if there is one
+	 * and the value is large enough to be worth keeping out of the object stream.
+	 *
+	 * @param <T> Type of the value
+	 * @param value Value to write
+	 * @return A reference to the written value, or null if the value was not written (in which case
+	 * 		the caller should serialize the value normally)
+	 * @throws IOException if the value can't be written
+	 */
+	public static <T> LazyPayload<T> offload(T value) throws IOException {
+		PayloadStore store = PayloadStore.getCurrent();
+		if (store == null || !store.isWritable() || value == null) {
+			return null;
+		}
+
+		if (value instanceof float[][]) {
+			float[][] matrix = (float[][]) value;
+			int rows = matrix.length;
+			int columns = rows > 0 ? matrix[0].length : 0;
+			for (int i = 1; i < rows; i++) {
+				if (matrix[i].length != columns) {
+					return null; //ragged arrays are left to the object stream
+				}
+			}
+
+			int length = rows * columns * 4;
+			if (length < PayloadStore.MIN_PAYLOAD_BYTES) {
+				return null;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			FloatBuffer floats = buffer.asFloatBuffer();
+			for (int i = 0; i < rows; i++) {
+				floats.put(matrix[i]);
+			}
+			long offset = store.write(buffer.array());
+			return new LazyPayload<T>(store, offset, length, MATRIX, rows, columns);
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(value);
+			oos.close();
+
+			if (bytes.size() < PayloadStore.MIN_PAYLOAD_BYTES) {
+				return null;
+			}
+
+			long offset = store.write(bytes.toByteArray());
+			return new LazyPayload<T>(store, offset, bytes.size(), OBJECT, -1, -1);
+		}
+	}
+
+	/**
+	 * @return Number of rows if the payload is a matrix, otherwise -1 (available without loading)
+	 */
+	public int getRows() {
+		return myRows;
+	}
+
+	/**
+	 * @return Number of columns if the payload is a matrix, otherwise -1 (available without loading)
+	 */
+	public int getColumns() {
+		return myColumns;
+	}
+
+	/**
+	 * Reads the payload from disk. Callers should keep the result rather than calling this repeatedly.
+	 * If the payload was read from a shared store, every caller gets the same instance.
+	 *
+	 * @return The payload
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized T load() {
+		try {
+			if (myStore == null) {
+				if (myFileName == null) {
+					throw new IOException("Payload store is no longer available");
+				}
+				myStore = PayloadStore.open(new File(myFileName));
+			}
+
+			if (myStore.isShared()) {
+				synchronized (myStore) {
+					T result = (T) myStore.getShared(myOffset);
+					if (result == null) {
+						result = read();
+						myStore.putShared(myOffset, result);
+					}
+					return result;
+				}
+			} else {
+				return read();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Can't load payload from " + getSource(), e);
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException("Can't load payload from " + getSource(), e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T read() throws IOException, ClassNotFoundException {
+		byte[] data = myStore.read(myOffset, myLength);
+
+		if (myKind == MATRIX) {
+			FloatBuffer floats = ByteBuffer.wrap(data).asFloatBuffer();
+			float[][] result = new float[myRows][];
+			for (int i = 0; i < myRows; i++) {
+				result[i] = new float[myColumns];
+				floats.get(result[i]);
+			}
+			return (T) result;
+		} else {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+			try {
+				return (T) ois.readObject();
+			} finally {
+				ois.close();
+			}
+		}
+	}
+
+	private String getSource() {
+		return myFileName == null ? "memory" : myFileName;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		PayloadStore current = PayloadStore.getCurrent();
+		if (current != null && (current.getFile() == null ? myFileName == null
+				: current.getFile().getAbsolutePath().equals(myFileName))) {
+			myStore = current;
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package ca.nengo.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A side file that holds the large numerical payloads of a saved model (decoders,
+ * transforms, evaluation points, approximators) separately from its structure.
+ *
+ * <p>While a store is bound to the current thread (see bind(...)), classes that support
+ * lazy loading write their payloads here instead of into the object stream, and record
+ * only a LazyPayload reference. When the model is read back with the same store bound,
+ * the references are left unresolved until the payload is first accessed.</p>
+ *
+ * <p>A store can also be kept in memory (see createShared()), in which case each payload is
+ * loaded only once and the same instance is given to every copy of the model that is read
+ * with the store bound.</p>
+ *
+ * @author Nengo Developers
+ */
+public class PayloadStore {
+
+	/**
+	 * Extension appended to a model file name to get the name of its payload file
+	 */
+	public static final String PAYLOAD_EXTENSION = "payload";
+
+	/**
+	 * Payloads smaller than this (in bytes) are left in the object stream
+	 */
+	public static final int MIN_PAYLOAD_BYTES = 4096;
+
+	private static final ThreadLocal<PayloadStore> ourCurrent = new ThreadLocal<PayloadStore>();
+
+	private final File myFile;
+	private final boolean myWritable;
+	private RandomAccessFile myAccess;
+
+	private byte[] myData; //contents of an in-memory store
+	private int mySize;
+	private Map<Long, Object> myShared; //loaded payloads of an in-memory store, by offset
+
+	private PayloadStore(File file, boolean writable) {
+		myFile = file;
+		myWritable = writable;
+	}
+
+	/**
+	 * Payloads are written to a temporary file, which replaces the given file when the store
+	 * is closed. Until then, models that were loaded lazily from the given file can still read
+	 * from it (e.g. while they are being saved over themselves).
+	 *
+	 * @param file File in which payloads are to be written (replaced if it exists)
+	 * @return A new store for writing
+	 * @throws IOException if the file can't be opened for writing
+	 */
+	public static PayloadStore create(File file) throws IOException {
+		PayloadStore result = new PayloadStore(file, true);
+		result.myAccess = new RandomAccessFile(result.getWorkingFile(), "rw");
+		result.myAccess.setLength(0);
+		return result;
+	}
+
+	/**
+	 * @param file Existing payload file
+	 * @return A store from which payloads are read on demand
+	 * @throws IOException if the file doesn't exist
+	 */
+	public static PayloadStore open(File file) throws IOException {
+		if (!file.exists()) {
+			throw new IOException("Payload file " + file.getPath() + " does not exist");
+		}
+		PayloadStore result = new PayloadStore(file, false);
+		result.myAccess = new RandomAccessFile(file, "r");
+		return result;
+	}
+
+	/**
+	 * @return A new store that is kept in memory, and whose payloads are shared by every model
+	 * 		read with it bound (payloads must therefore not be modified by their owners)
+	 */
+	public static PayloadStore createShared() {
+		PayloadStore result = new PayloadStore(null, true);
+		result.myData = new byte[MIN_PAYLOAD_BYTES * 4];
+		result.myShared = new HashMap<Long, Object>(100);
+		return result;
+	}
+
+	/**
+	 * @param modelFile File in which a model is saved
+	 * @return File in which payloads of the model are (or would be) kept
+	 */
+	public static File getPayloadFile(File modelFile) {
+		return new File(modelFile.getPath() + "." + PAYLOAD_EXTENSION);
+	}
+
+	/**
+	 * @param store Store to be used by serialization on the current thread
+	 */
+	public static void bind(PayloadStore store) {
+		ourCurrent.set(store);
+	}
+
+	/**
+	 * Stops using the store bound to the current thread.
+	 */
+	public static void unbind() {
+		ourCurrent.remove();
+	}
+
+	/**
+	 * @return Store bound to the current thread, or null if there is none
+	 */
+	public static PayloadStore getCurrent() {
+		return ourCurrent.get();
+	}
+
+	/**
+	 * @return File that backs this store (null if the store is kept in memory)
+	 */
+	public File getFile() {
+		return myFile;
+	}
+
+	private File getWorkingFile() {
+		return new File(myFile.getPath() + ".tmp");
+	}
+
+	/**
+	 * @return True if payloads can be written to this store
+	 */
+	public boolean isWritable() {
+		return myWritable;
+	}
+
+	/**
+	 * @return True if loaded payloads are shared by all models read from this store
+	 */
+	public boolean isShared() {
+		return myShared != null;
+	}
+
+	/**
+	 * @param offset Offset of a payload in the store
+	 * @return The loaded payload, if it has been loaded from this (shared) store before, otherwise null
+	 */
+	synchronized Object getShared(long offset) {
+		return myShared.get(Long.valueOf(offset));
+	}
+
+	/**
+	 * @param offset Offset of a payload in the store
+	 * @param payload The loaded payload, to be given to later readers of the same offset
+	 */
+	synchronized void putShared(long offset, Object payload) {
+		myShared.put(Long.valueOf(offset), payload);
+	}
+
+	/**
+	 * @param data Bytes to append
+	 * @return Offset of the data in the payload file
+	 * @throws IOException if the data can't be written
+	 */
+	public synchronized long write(byte[] data) throws IOException {
+		if (!myWritable) {
+			throw new IOException("Payload store " + myFile.getPath() + " is read-only");
+		}
+		if (myData != null) {
+			if (mySize + data.length > myData.length) {
+				byte[] grown = new byte[Math.max(myData.length * 2, mySize + data.length)];
+				System.arraycopy(myData, 0, grown, 0, mySize);
+				myData = grown;
+			}
+			System.arraycopy(data, 0, myData, mySize, data.length);
+			mySize += data.length;
+			return mySize - data.length;
+		}
+		long offset = myAccess.length();
+		myAccess.seek(offset);
+		myAccess.write(data);
+		return offset;
+	}
+
+	/**
+	 * @param offset Offset of a payload in the file
+	 * @param length Length of the payload in bytes
+	 * @return The payload
+	 * @throws IOException if the payload can't be read
+	 */
+	public synchronized byte[] read(long offset, int length) throws IOException {
+		if (myData != null) {
+			byte[] result = new byte[length];
+			System.arraycopy(myData, (int) offset, result, 0, length);
+			return result;
+		}
+		if (myAccess == null) {
+			myAccess = new RandomAccessFile(myFile, "r");
+		}
+		byte[] result = new byte[length];
+		myAccess.seek(offset);
+		myAccess.readFully(result);
+		return result;
+	}
+
+	/**
+	 * Releases the underlying file. A writable store moves its payloads into place at this
+	 * point. A read-only store reopens the file if another payload is requested later.
+	 *
+	 * @throws IOException if the file can't be closed or moved into place
+	 */
+	public synchronized void close() throws IOException {
+		if (myAccess != null) {
+			myAccess.close();
+			myAccess = null;
+
+			if (myWritable) {
+				File working = getWorkingFile();
+				if (myFile.exists() && !myFile.delete()) {
+					throw new IOException("Can't replace payload file " + myFile.getPath());
+				}
+				if (!working.renameTo(myFile)) {
+					throw new IOException("Can't move payloads to " + myFile.getPath());
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+package ca.nengo.math.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.DefaultFunctionInterpreter.AbstractOperator;
+
+/**
+ * <p>A PostfixFunction compiled into a flat program over primitive arrays. PostfixFunction.map(...)
+ * walks its expression list with a stack of boxed Floats and a new argument array for each
+ * operator. The compiled program has the same steps, but keeps its operands on a float stack
+ * and its arguments in arrays that are reused, and evaluates the arithmetic operators inline.
+ * Other operators (e.g. sin, or user-defined Functions) are called through Function.map(...),
+ * and those that are PostfixFunctions are compiled too. The results are the same.</p>
+ *
+ * <p>Because of the reused arrays, a CompiledFunction can't be mapped by more than one thread at a
+ * time. Compile a Function (or clone the result) for each thread that uses it.</p>
+ *
+ * @author Nengo Developers
+ */
+public class CompiledFunction implements Function {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int CONSTANT = 0;
+	private static final int VARIABLE = 1;
+	private static final int CALL = 2;
+	private static final int ADD = 3;
+	private static final int SUBTRACT = 4;
+	private static final int MULTIPLY = 5;
+	private static final int DIVIDE = 6;
+	private static final int NEGATE = 7;
+
+	private final Function myFunction;
+	private final int myDimension;
+	private final int[] myOps;
+	private final float[] myConstants; //constant of each CONSTANT op
+	private final int[] myIndices; //input index of each VARIABLE op, or function index of each CALL op
+	private Function[] myCalls;
+	private float[][] myArguments; //reused argument array of each called function
+	private float[] myStack;
+
+	/**
+	 * @param function Function to compile
+	 */
+	private CompiledFunction(PostfixFunction function) {
+		myFunction = function;
+		myDimension = function.getDimension();
+
+		List<Serializable> expression = function.getExpressionList();
+		int n = expression.size();
+		myOps = new int[n];
+		myConstants = new float[n];
+		myIndices = new int[n];
+		List<Function> calls = new ArrayList<Function>();
+
+		int depth = 0;
+		int maxDepth = 1;
+		for (int i = 0; i < n; i++) {
+			Object o = expression.get(i);
+			int arguments = 0;
+			if (o instanceof Float) {
+				myOps[i] = CONSTANT;
+				myConstants[i] = ((Float) o).floatValue();
+			} else if (o instanceof Integer) {
+				myOps[i] = VARIABLE;
+				myIndices[i] = ((Integer) o).intValue();
+			} else {
+				Function f = (Function) o;
+				arguments = f.getDimension();
+				myOps[i] = getInlineOp(f);
+				if (myOps[i] == CALL) {
+					myIndices[i] = calls.size();
+					calls.add(compile(f));
+				}
+			}
+			depth = depth - arguments + 1;
+			maxDepth = Math.max(maxDepth, depth);
+		}
+
+		myCalls = calls.toArray(new Function[0]);
+		myStack = new float[maxDepth];
+		makeArguments();
+	}
+
+	/**
+	 * @param function A Function
+	 * @return A compiled copy of the Function if it is a PostfixFunction, otherwise the Function itself
+	 */
+	public static Function compile(Function function) {
+		return function instanceof PostfixFunction ? new CompiledFunction((PostfixFunction) function) : function;
+	}
+
+	//op for an operator that is evaluated inline, or CALL
+	private static int getInlineOp(Function f) {
+		if (f instanceof AbstractOperator) {
+			String symbol = f.toString();
+			if (symbol.equals("+")) {
+				return ADD;
+			} else if (symbol.equals("-")) {
+				return SUBTRACT;
+			} else if (symbol.equals("*")) {
+				return MULTIPLY;
+			} else if (symbol.equals("/")) {
+				return DIVIDE;
+			} else if (symbol.equals("~")) {
+				return NEGATE;
+			}
+		}
+		return CALL;
+	}
+
+	private void makeArguments() {
+		myArguments = new float[myCalls.length][];
+		for (int i = 0; i < myCalls.length; i++) {
+			myArguments[i] = new float[myCalls[i].getDimension()];
+		}
+	}
+
+	/**
+	 * @return The Function that was compiled
+	 */
+	public Function getFunction() {
+		return myFunction;
+	}
+
+	/**
+	 * @see ca.nengo.math.Function#getDimension()
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @see ca.nengo.math.Function#map(float[])
+	 */
+	public float map(float[] from) {
+		if (from.length != myDimension) {
+			throw new IllegalArgumentException("Input dimension " + from.length + ", expected " + myDimension);
+		}
+
+		float[] stack = myStack;
+		int top = -1;
+		for (int i = 0; i < myOps.length; i++) {
+			switch (myOps[i]) {
+			case CONSTANT:
+				stack[++top] = myConstants[i];
+				break;
+			case VARIABLE:
+				stack[++top] = from[myIndices[i]];
+				break;
+			case ADD:
+				top--;
+				stack[top] = stack[top] + stack[top+1];
+				break;
+			case SUBTRACT:
+				top--;
+				stack[top] = stack[top] - stack[top+1];
+				break;
+			case MULTIPLY:
+				top--;
+				stack[top] = stack[top] * stack[top+1];
+				break;
+			case DIVIDE:
+				top--;
+				stack[top] = stack[top] / stack[top+1];
+				break;
+			case NEGATE:
+				stack[top] = -stack[top];
+				break;
+			default:
+				float[] args = myArguments[myIndices[i]];
+				for (int j = args.length-1; j >= 0; j--) {
+					args[j] = stack[top--];
+				}
+				stack[++top] = myCalls[myIndices[i]].map(args);
+			}
+		}
+		return stack[top];
+	}
+
+	/**
+	 * @see ca.nengo.math.Function#multiMap(float[][])
+	 */
+	public float[] multiMap(float[][] from) {
+		float[] result = new float[from.length];
+		for (int i = 0; i < from.length; i++) {
+			result[i] = map(from[i]);
+		}
+		return result;
+	}
+
+	@Override
+	public Function clone() throws CloneNotSupportedException {
+		CompiledFunction result = (CompiledFunction) super.clone();
+		result.myCalls = new Function[myCalls.length];
+		for (int i = 0; i < myCalls.length; i++) {
+			result.myCalls[i] = myCalls[i] instanceof CompiledFunction ? myCalls[i].clone() : myCalls[i];
+		}
+		result.myStack = new float[myStack.length];
+		result.makeArguments();
+		return result;
+	}
+
+}
@@ -232,7 +232,7 @@ public class DefaultFunctionInterpreter implements FunctionInterpreter {
 
 	/************ PRIVATE OPERATOR CLASSES *********************************/
 
-	private abstract static class AbstractOperator implements Function {
+	abstract static class AbstractOperator implements Function { //visible to CompiledFunction, which inlines operators
 
 		private static final long serialVersionUID = 1L;
 
@@ -604,6 +604,15 @@ public class MultiLevelKLNetworkPartitioner implements NetworkPartitioner {
 			
 			Node originNode = projectionOrigin.getNode();
 			
+			//if the given nodes are the top level of a network with subnetworks, the projection
+			//connects the subnetworks themselves rather than the nodes inside them
+			if(!nodeToVertex.containsKey(terminationNode))
+				terminationNode = proj.getTermination().getNode();
+			if(!nodeToVertex.containsKey(originNode))
+				originNode = proj.getOrigin().getNode();
+			if(!nodeToVertex.containsKey(terminationNode) || !nodeToVertex.containsKey(originNode))
+				continue;
+			
 			//Don't add self loops, since they are irrelevant to the min-cut computation 
 			//(and it allows us to use a SimpleWeightedGraph object).
 			if(originNode != terminationNode){
@@ -0,0 +1,164 @@
+package ca.nengo.math.impl;
+
+import java.io.Serializable;
+
+import ca.nengo.math.PDFTools;
+
+/**
+ * <p>An independent stream of uniform and Gaussian random samples, for code that needs many
+ * samples per time step (e.g. noise on every output of a large model).</p>
+ *
+ * <p>Uniform samples come from a xorshift* generator, and Gaussian samples from the ziggurat
+ * method (Marsaglia & Tsang, 2000), which needs one uniform sample and a table lookup for
+ * almost every Gaussian sample. Each stream has its own state, so streams can be used without
+ * contention and copied without sharing. New streams are seeded from PDFTools.random(), so
+ * results can still be reproduced with PDFTools.setSeed().</p>
+ *
+ * @author Nengo Developers
+ */
+public class RandomStream implements Serializable, Cloneable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int LAYERS = 128;
+	private static final double R = 3.442619855899; //start of the tail
+	private static final double LAYER_AREA = 9.91256303526217e-3;
+	private static final double INT_SCALE = 2147483648.0;
+
+	private static final long[] ourK = new long[LAYERS]; //acceptance thresholds
+	private static final float[] ourW = new float[LAYERS]; //layer widths (scaled to int range)
+	private static final float[] ourF = new float[LAYERS]; //density at layer edges
+
+	static {
+		double dn = R;
+		double tn = dn;
+		double q = LAYER_AREA / Math.exp(-.5 * dn * dn);
+		ourK[0] = (long) ((dn / q) * INT_SCALE);
+		ourK[1] = 0;
+		ourW[0] = (float) (q / INT_SCALE);
+		ourW[LAYERS-1] = (float) (dn / INT_SCALE);
+		ourF[0] = 1f;
+		ourF[LAYERS-1] = (float) Math.exp(-.5 * dn * dn);
+		for (int i = LAYERS - 2; i >= 1; i--) {
+			dn = Math.sqrt(-2 * Math.log(LAYER_AREA / dn + Math.exp(-.5 * dn * dn)));
+			ourK[i+1] = (long) ((dn / tn) * INT_SCALE);
+			tn = dn;
+			ourF[i] = (float) Math.exp(-.5 * dn * dn);
+			ourW[i] = (float) (dn / INT_SCALE);
+		}
+	}
+
+	private long myState;
+
+	/**
+	 * @param seed Seed for the stream
+	 */
+	public RandomStream(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * Seeds the stream from PDFTools.random().
+	 */
+	public RandomStream() {
+		reseed();
+	}
+
+	/**
+	 * @param seed New seed for the stream
+	 */
+	public void setSeed(long seed) {
+		myState = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+	}
+
+	/**
+	 * Seeds the stream from PDFTools.random(), e.g. so that copies are independent.
+	 */
+	public void reseed() {
+		//two draws, since one double only has 53 random bits
+		long high = (long) (PDFTools.random() * 4294967296.0);
+		long low = (long) (PDFTools.random() * 4294967296.0);
+		setSeed(high << 32 | low);
+	}
+
+	private int nextInt() {
+		long x = myState;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		myState = x;
+		return (int) ((x * 2685821657736338717L) >>> 32);
+	}
+
+	/**
+	 * @return A uniform sample in the open interval (0, 1)
+	 */
+	public float nextFloat() {
+		return ((nextInt() >>> 8) + .5f) * (1f / (1 << 24));
+	}
+
+	/**
+	 * @return A sample from the standard normal distribution
+	 */
+	public float nextGaussian() {
+		int hz = nextInt();
+		int iz = hz & (LAYERS - 1);
+		if (Math.abs((long) hz) < ourK[iz]) {
+			return hz * ourW[iz];
+		}
+
+		while (true) {
+			float x = hz * ourW[iz];
+			if (iz == 0) { //sample from the tail
+				float y;
+				do {
+					x = (float) (-Math.log(nextFloat()) / R);
+					y = (float) -Math.log(nextFloat());
+				} while (y + y < x * x);
+				return (float) (hz > 0 ? R + x : -R - x);
+			}
+			if (ourF[iz] + nextFloat() * (ourF[iz-1] - ourF[iz]) < Math.exp(-.5 * x * x)) {
+				return x;
+			}
+
+			hz = nextInt();
+			iz = hz & (LAYERS - 1);
+			if (Math.abs((long) hz) < ourK[iz]) {
+				return hz * ourW[iz];
+			}
+		}
+	}
+
+	/**
+	 * @param values Array into which samples are written
+	 * @param low Lower limit of uniform distribution
+	 * @param high Upper limit of uniform distribution
+	 */
+	public void fillUniform(float[] values, float low, float high) {
+		float range = high - low;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = low + nextFloat() * range;
+		}
+	}
+
+	/**
+	 * @param values Array into which samples are written
+	 * @param mean Mean of Gaussian distribution
+	 * @param sd Standard deviation of Gaussian distribution
+	 */
+	public void fillGaussian(float[] values, float mean, float sd) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = mean + nextGaussian() * sd;
+		}
+	}
+
+	@Override
+	public RandomStream clone() {
+		try {
+			return (RandomStream) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package ca.nengo.model;
+
+/**
+ * An object that looks up other parts of a model by name while it runs, and can instead
+ * resolve them to direct references ahead of time.
+ *
+ * <p>Simulators bind the objects they run before running them. Implementations that haven't
+ * been bound (or whose structure has changed since) bind themselves the next time they run,
+ * so calling bind() is never required for correctness.</p>
+ *
+ * @author Nengo Developers
+ */
+public interface Bindable {
+
+	/**
+	 * Resolves the names that this object uses while running, and those of its parts.
+	 *
+	 * @throws StructuralException If a name can't be resolved
+	 */
+	public void bind() throws StructuralException;
+
+}
@@ -0,0 +1,29 @@
+package ca.nengo.model;
+
+/**
+ * An Origin with real-valued output that it writes into arrays of its own, so that
+ * Terminations can read the output without it being copied or wrapped in a new
+ * RealOutput at each step.
+ *
+ * <p>The Origin alternates between two arrays, writing each new output into the one that
+ * doesn't hold the latest output. So an array returned by getBuffer() keeps its values
+ * while the Origin runs once more, which is how long a Termination needs them (values
+ * are transferred to Terminations between steps and read while Nodes run).</p>
+ *
+ * @see BufferedTermination
+ * @author Nengo Developers
+ */
+public interface BufferedOrigin extends Origin {
+
+	/**
+	 * @return The latest output. This array belongs to the Origin and mustn't be changed.
+	 * @throws SimulationException If the output can't be found
+	 */
+	public float[] getBuffer() throws SimulationException;
+
+	/**
+	 * @return Simulation time of the latest output
+	 */
+	public float getBufferTime();
+
+}
@@ -0,0 +1,22 @@
+package ca.nengo.model;
+
+/**
+ * A Termination that can read real-valued input directly from the buffer of a
+ * BufferedOrigin, instead of from a RealOutput passed to setValues(...).
+ *
+ * @see BufferedOrigin
+ * @author Nengo Developers
+ */
+public interface BufferedTermination extends Termination {
+
+	/**
+	 * Like setValues(...), except that the given array is read until the next call, rather
+	 * than copied.
+	 *
+	 * @param values Input values (the buffer of a BufferedOrigin, which mustn't be changed)
+	 * @param time Simulation time of the values
+	 * @throws SimulationException If the values don't have the dimension of this Termination
+	 */
+	public void setBuffer(float[] values, float time) throws SimulationException;
+
+}
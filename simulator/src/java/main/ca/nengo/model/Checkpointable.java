@@ -0,0 +1,33 @@
+package ca.nengo.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An object whose mutable simulation state (as opposed to its structure and parameters)
+ * can be written out and read back, so that a simulation can be continued from a
+ * checkpoint without reconstructing the model.
+ *
+ * <p>State is read back into an object with the same structure as the one it was
+ * written from. Implementations should write only what changes as a simulation runs.</p>
+ *
+ * @see ca.nengo.io.Checkpoint
+ * @author Nengo Developers
+ */
+public interface Checkpointable {
+
+	/**
+	 * @param out Destination of the state
+	 * @throws IOException if the state can't be written
+	 */
+	public void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * @param in Source of state that was written by writeState(...) on an object of
+	 * 		the same structure
+	 * @throws IOException if the state can't be read or doesn't match this object
+	 */
+	public void readState(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,25 @@
+package ca.nengo.model;
+
+/**
+ * A Node that can be run less often than the rest of a simulation, for example because its
+ * output changes slowly (smooth inputs, DIRECT-mode ensembles, slow controllers).
+ *
+ * <p>A Node with a step multiple of k is run once every k time steps of the simulation, over
+ * all k steps at once, at the last of them. Its output is held in between. The Node only sees
+ * the input of the step in which it runs.</p>
+ *
+ * @author Nengo Developers
+ */
+public interface MultiRate {
+
+	/**
+	 * @return Number of simulation time steps per step of this Node (1 means every step)
+	 */
+	public int getStepMultiple();
+
+	/**
+	 * @param multiple Number of simulation time steps per step of this Node (1 means every step)
+	 */
+	public void setStepMultiple(int multiple);
+
+}
@@ -54,6 +54,17 @@ public interface Noise extends Cloneable, Resettable, Serializable {
 	 */
 	public float getValue(float startTime, float endTime, float input);
 
+	/**
+	 * Corrupts a whole vector at once, as if each element had its own clone of this Noise (so
+	 * each element gets independent noise). A Noisy with many outputs can use one Noise in this
+	 * way rather than one clone per output. The same vector length should be used at every step.
+	 *
+	 * @param startTime Simulation time at which step starts
+	 * @param endTime Simulation time at which step ends
+	 * @param values Values which are to be corrupted by noise (changed in place)
+	 */
+	public void getValues(float startTime, float endTime, float[] values);
+
 	/**
 	 * @return Valid clone
 	 */
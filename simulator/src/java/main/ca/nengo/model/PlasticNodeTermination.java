@@ -54,6 +54,16 @@ public interface PlasticNodeTermination extends Termination {
      */
     public void saveWeights();
 
+    /**
+     * Moves the weights into a row of a larger row-major matrix (e.g. the weights of every
+     * Node in an Ensemble), from which they are read from now on. Changes to that row of the
+     * matrix change the weights directly.
+     *
+     * @param matrix Row-major weight matrix
+     * @param offset Index in the matrix of the first weight of this Termination
+     */
+    public void setWeightMatrix(float[] matrix, int offset);
+
     /**
      * @return The most recent input to the Termination
      */
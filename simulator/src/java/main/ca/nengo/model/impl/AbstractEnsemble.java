@@ -38,8 +38,10 @@ import java.util.Properties;
 
 import org.apache.log4j.Logger;
 
+import ca.nengo.model.Bindable;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.MultiRate;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.PreciseSpikeOutput;
@@ -63,7 +65,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  *
  * @author Bryan Tripp
  */
-public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMutable {
+public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMutable, Bindable, MultiRate {
 
 	private static final long serialVersionUID = -5498397418584843304L;
 
@@ -75,9 +77,11 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	private transient SpikePatternImpl mySpikePattern;
 	private boolean myCollectSpikesFlag;
 	private int myCollectSpikesRatio = 1;
+	private int myStepMultiple = 1;
 	private String myDocumentation;
 	private transient List<VisiblyMutable.Listener> myListeners;
 	private Node[] myNodes;
+	private transient Origin[] myAxons; //Neuron.AXON origin of each node (null if none), once bound
 	private Map<String, Origin> myOrigins;
 	private Map<String, EnsembleTermination> myTerminations;
 
@@ -122,6 +126,7 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
     public void redefineNodes(Node[] nodes) {
 		myNodes=nodes;
 		mySpikePattern = new SpikePatternImpl(myNodes.length);
+		unbind();
 		//setupNodeRunners(numNodeRunners);
 
 		init();
@@ -187,27 +192,67 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 			mySpikePattern = new SpikePatternImpl(myNodes.length);
 		}
 
+		if (myCollectSpikesFlag && myAxons == null) {
+			bindAxons();
+		}
+
 		for (int i = 0; i < myNodes.length; i++) {
 			myNodes[i].run(startTime, endTime);
 
-			if (myCollectSpikesFlag && (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0)) {
-				try {
-					InstantaneousOutput output = myNodes[i].getOrigin(Neuron.AXON).getValues();
-					if (output instanceof PreciseSpikeOutput) {
-						PreciseSpikeOutput precise=((PreciseSpikeOutput) output);
-						if (precise.getValues()[0]) {
-							mySpikePattern.addSpike(i, endTime+precise.getSpikeTimes()[0]);
-						}
-					} else if (output instanceof SpikeOutput && ((SpikeOutput) output).getValues()[0]) {
-						mySpikePattern.addSpike(i, endTime);
+			if (myCollectSpikesFlag && (myCollectSpikesRatio == 1 || i % myCollectSpikesRatio == 0) && myAxons[i] != null) {
+				InstantaneousOutput output = myAxons[i].getValues();
+				if (output instanceof PreciseSpikeOutput) {
+					PreciseSpikeOutput precise=((PreciseSpikeOutput) output);
+					if (precise.getValues()[0]) {
+						mySpikePattern.addSpike(i, endTime+precise.getSpikeTimes()[0]);
 					}
-				} catch (StructuralException e) {
-					ourLogger.warn("Ensemble has been set to collect spikes, but not all components have Origin Neuron.AXON", e);
+				} else if (output instanceof SpikeOutput && ((SpikeOutput) output).getValues()[0]) {
+					mySpikePattern.addSpike(i, endTime);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Resolves the Neuron.AXON origin of each node, from which spikes are collected.
+	 *
+	 * @see ca.nengo.model.Bindable#bind()
+	 */
+	public void bind() throws StructuralException {
+		bindAxons();
+	}
+
+	private void bindAxons() {
+		Origin[] axons = new Origin[myNodes.length];
+		for (int i = 0; i < axons.length; i++) {
+			try {
+				axons[i] = myNodes[i].getOrigin(Neuron.AXON);
+			} catch (StructuralException e) {
+				ourLogger.warn("Ensemble has been set to collect spikes, but not all components have Origin Neuron.AXON", e);
+			}
+		}
+		myAxons = axons;
+	}
+
+	/**
+	 * @return The Neuron.AXON origin of each node (null for nodes that don't have one)
+	 */
+	protected Origin[] getAxons() {
+		if (myAxons == null) {
+			bindAxons();
+		}
+		return myAxons;
+	}
+
+	/**
+	 * Discards references resolved by bind(), so that they are resolved again before they are
+	 * next used. Subclasses that bind more should extend this. It is called when the structure
+	 * of the Ensemble changes (see fireVisibleChangeEvent()).
+	 */
+	protected void unbind() {
+		myAxons = null;
+	}
+
 	/**
 	 * Resets each Node in this Ensemble.
 	 *
@@ -294,6 +339,23 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 	    return result.toArray(new Termination[0]);
 	}
 
+	/**
+	 * @see ca.nengo.model.MultiRate#getStepMultiple()
+	 */
+	public int getStepMultiple() {
+		return Math.max(1, myStepMultiple);
+	}
+
+	/**
+	 * @see ca.nengo.model.MultiRate#setStepMultiple(int)
+	 */
+	public void setStepMultiple(int multiple) {
+		if (multiple < 1) {
+			throw new IllegalArgumentException("Step multiple must be at least 1");
+		}
+		myStepMultiple = multiple;
+	}
+
 	/**
 	 * @see ca.nengo.model.Ensemble#collectSpikes(boolean)
 	 */
@@ -569,9 +631,11 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 
 	/**
 	 * Called by subclasses when properties have changed in such a way that the
-	 * display of the ensemble may need updating.
+	 * display of the ensemble may need updating. Also discards bound references
+	 * (see unbind()).
 	 */
 	protected void fireVisibleChangeEvent() {
+		unbind();
 		VisiblyMutableUtils.changed(this, myListeners);
 	}
 
@@ -592,6 +656,7 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 			nodes[i] = oldNodes[i].clone();
 		}
 		result.myNodes = nodes;
+		result.unbind();
 		
 		result.myOrigins = new LinkedHashMap<String, Origin>(myOrigins.size());
 		for (Origin origin : myOrigins.values()) {
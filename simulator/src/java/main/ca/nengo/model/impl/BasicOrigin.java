@@ -61,7 +61,7 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 	private Units myUnits;
 	private InstantaneousOutput myValues;
 	private Noise myNoise;
-	private Noise[] myNoises; //per output
+	private Noise myOutputNoise; //copy of myNoise that corrupts all outputs at once
 	private transient ConfigurationImpl myConfiguration;
 	private boolean myRequiredOnCPU;
 
@@ -123,11 +123,11 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 
 		float[] v = values;
 		if (myNoise != null) {
-			v = new float[myDimension];
-			System.arraycopy(values, 0, v, 0, values.length);
-			for (int i = 0; i < myDimension; i++) {
-				v[i] = myNoises[i].getValue(startTime, endTime, values[i]);
+			if (myOutputNoise == null) {
+				myOutputNoise = myNoise.clone();
 			}
+			v = values.clone();
+			myOutputNoise.getValues(startTime, endTime, v);
 		}
 
 		myValues = new RealOutputImpl(v, myUnits, endTime);
@@ -212,10 +212,7 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 	 */
 	public void setNoise(Noise noise) {
 		myNoise = noise;
-		myNoises = new Noise[myDimension];
-		for (int i = 0; i < myDimension; i++) {
-			myNoises[i] = myNoise.clone();
-		}
+		myOutputNoise = noise == null ? null : noise.clone();
 	}
 
 	/**
@@ -246,10 +243,8 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 		if (myNoise != null) {
             myNoise.reset(randomize);
         }
-		if (myNoises != null) {
-			for (Noise myNoise2 : myNoises) {
-				myNoise2.reset(randomize);
-			}
+		if (myOutputNoise != null) {
+			myOutputNoise.reset(randomize);
 		}
 		myValues = new RealOutputImpl(new float[myDimension], myUnits, 0);
 	}
@@ -167,7 +167,7 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 			components[i] = myExpandableNodes[i].addTermination(name, new float[][]{weights[i]}, tauPSC, modulatory);
 		}
 
-		EnsembleTermination result = new EnsembleTermination(this, name, components);
+		EnsembleTermination result = makeTermination(this, name, components);
 		myExpandedTerminations.put(name, result);
 
 		fireVisibleChangeEvent();
@@ -175,6 +175,17 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 		return result;
 	}
 
+	//combines the weights into one matrix if the node terminations allow it
+	private static EnsembleTermination makeTermination(Node node, String name, Termination[] components) throws StructuralException {
+		if (LinearExponentialEnsembleTermination.canCombine(components)) {
+			LinearExponentialTermination[] terminations = new LinearExponentialTermination[components.length];
+			System.arraycopy(components, 0, terminations, 0, components.length);
+			return new LinearExponentialEnsembleTermination(node, name, terminations);
+		} else {
+			return new EnsembleTermination(node, name, components);
+		}
+	}
+
 	/**
 	 * @throws StructuralException if Termination does not exist
 	 * @see ca.nengo.model.ExpandableNode#removeTermination(java.lang.String)
@@ -217,7 +228,7 @@ public class EnsembleImpl extends AbstractEnsemble implements ExpandableNode {
 			{
 				for(int i=0; i < terms.length; i++)
 					newterms[i] = nodes[i].getTermination(terms[i].getName());
-				result.myExpandedTerminations.put(key, new EnsembleTermination(result, et.getName(), newterms));
+				result.myExpandedTerminations.put(key, makeTermination(result, et.getName(), newterms));
 			}
 			catch(StructuralException se)
 			{
@@ -42,6 +42,7 @@ import ca.nengo.math.Function;
 import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.math.impl.FourierFunction;
 import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.MultiRate;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.Probeable;
@@ -61,7 +62,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  * A class to compute functions analytically and provide that input to
  * other Nodes in a network.
  */
-public class FunctionInput implements Node, Probeable {
+public class FunctionInput implements Node, Probeable, MultiRate {
 
 	/**
 	 * Name for the default origin
@@ -82,6 +83,7 @@ public class FunctionInput implements Node, Probeable {
 //	private float[] myValues;
 	private BasicOrigin myOrigin;
 	private String myDocumentation;
+	private int myStepMultiple = 1;
 	private transient List<VisiblyMutable.Listener> myListeners;
 
 	/**
@@ -157,6 +159,23 @@ public class FunctionInput implements Node, Probeable {
 		myOrigin.setValues(startTime, endTime, values);
 	}
 
+	/**
+	 * @see ca.nengo.model.MultiRate#getStepMultiple()
+	 */
+	public int getStepMultiple() {
+		return Math.max(1, myStepMultiple);
+	}
+
+	/**
+	 * @see ca.nengo.model.MultiRate#setStepMultiple(int)
+	 */
+	public void setStepMultiple(int multiple) {
+		if (multiple < 1) {
+			throw new IllegalArgumentException("Step multiple must be at least 1");
+		}
+		myStepMultiple = multiple;
+	}
+
 	/**
 	 * This method does nothing, as the FunctionInput has no state.
 	 *
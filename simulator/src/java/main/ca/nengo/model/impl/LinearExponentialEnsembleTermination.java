@@ -0,0 +1,155 @@
+package ca.nengo.model.impl;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.PreciseSpikeOutput;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+
+/**
+ * <p>An EnsembleTermination onto LinearExponentialTerminations, which keeps the weights
+ * onto all the Nodes in one row-major matrix (row i holds the weights onto the ith Node).</p>
+ *
+ * <p>The net input to every Node is found here in one pass over the matrix, rather than by
+ * each Node-level Termination separately. Only the columns of inputs that spiked (or that
+ * are non-zero) are read, so the cost of a step grows with the number of active inputs.
+ * The Node-level Terminations read their weights from the same matrix, so they can still
+ * be used, and their weights changed, individually.</p>
+ *
+ * <p>Precise spike times and probabilistic synapses are left to the Node-level Terminations.</p>
+ *
+ * @author Nengo Developers
+ */
+public class LinearExponentialEnsembleTermination extends EnsembleTermination {
+
+	private static final long serialVersionUID = 1L;
+
+	private final LinearExponentialTermination[] myTerminations;
+	private final float[] myWeights;
+	private final int[] myActive; //indices of inputs that spiked or are non-zero
+
+	/**
+	 * @param node The parent Node
+	 * @param name Name of this Termination
+	 * @param nodeTerminations Node-level Terminations that make up this Termination
+	 * @throws StructuralException If dimensions of different terminations are not all the same
+	 */
+	public LinearExponentialEnsembleTermination(Node node, String name, LinearExponentialTermination[] nodeTerminations)
+			throws StructuralException {
+		super(node, name, nodeTerminations);
+
+		myTerminations = nodeTerminations;
+		int dimension = getDimensions();
+		myWeights = new float[nodeTerminations.length * dimension];
+		for (int i = 0; i < nodeTerminations.length; i++) {
+			nodeTerminations[i].setWeightMatrix(myWeights, i * dimension);
+		}
+		myActive = new int[dimension];
+	}
+
+	//shares the matrix and Node-level Terminations of the original (see clone())
+	private LinearExponentialEnsembleTermination(LinearExponentialEnsembleTermination original) throws StructuralException {
+		super(original.getNode(), original.getName(), original.myTerminations);
+		myTerminations = original.myTerminations;
+		myWeights = original.myWeights;
+		myActive = new int[original.myActive.length];
+	}
+
+	/**
+	 * @param terminations A list of Terminations
+	 * @return True if the list can make up a LinearExponentialEnsembleTermination, ie they are
+	 * 		all LinearExponentialTerminations
+	 */
+	public static boolean canCombine(Termination[] terminations) {
+		for (Termination termination : terminations) {
+			if (!(termination instanceof LinearExponentialTermination)) {
+				return false;
+			}
+		}
+		return terminations.length > 0;
+	}
+
+	/**
+	 * @return The weights onto all the Nodes, in one row-major matrix. Changes to the matrix
+	 * 		change the weights directly.
+	 */
+	public float[] getWeights() {
+		return myWeights;
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.EnsembleTermination#setValues(ca.nengo.model.InstantaneousOutput)
+	 */
+	@Override
+	public void setValues(InstantaneousOutput values) throws SimulationException {
+		int dimension = getDimensions();
+		if (values.getDimension() != dimension) {
+			throw new SimulationException("Input to this Termination must have dimension " + dimension);
+		}
+
+		boolean spikes = values instanceof SpikeOutput;
+		if (values instanceof PreciseSpikeOutput || !(spikes || values instanceof RealOutput)) {
+			super.setValues(values);
+			return;
+		}
+
+		int numActive = 0;
+		float[] reals = null;
+		if (spikes) {
+			boolean[] spiked = ((SpikeOutput) values).getValues();
+			for (int j = 0; j < dimension; j++) {
+				if (spiked[j]) {
+					myActive[numActive++] = j;
+				}
+			}
+		} else {
+			reals = ((RealOutput) values).getValues();
+			for (int j = 0; j < dimension; j++) {
+				if (reals[j] != 0) {
+					myActive[numActive++] = j;
+				}
+			}
+		}
+
+		for (int i = 0; i < myTerminations.length; i++) {
+			LinearExponentialTermination termination = myTerminations[i];
+			if (termination.getWeightProbabilities() != null) {
+				termination.setValues(values);
+				continue;
+			}
+
+			int offset = i * dimension;
+			float net = 0;
+			if (spikes) {
+				for (int k = 0; k < numActive; k++) {
+					net += myWeights[offset + myActive[k]];
+				}
+				termination.setValues(values, net, 0);
+			} else {
+				for (int k = 0; k < numActive; k++) {
+					int j = myActive[k];
+					net += myWeights[offset + j] * reals[j];
+				}
+				termination.setValues(values, 0, net);
+			}
+		}
+	}
+
+	/**
+	 * Shares the Node-level Terminations and the weight matrix with the original.
+	 *
+	 * @see ca.nengo.model.impl.EnsembleTermination#clone()
+	 */
+	@Override
+	public Termination clone() throws CloneNotSupportedException {
+		try {
+			return new LinearExponentialEnsembleTermination(this);
+		} catch (StructuralException e) {
+			throw new CloneNotSupportedException("Error trying to clone: " + e.getMessage());
+		}
+	}
+
+}
@@ -25,8 +25,13 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.model.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
+import ca.nengo.io.Checkpoint;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.PlasticNodeTermination;
@@ -49,7 +54,7 @@ import ca.nengo.model.StructuralException;
  *
  * @author Bryan Tripp
  */
-public class LinearExponentialTermination implements PlasticNodeTermination {
+public class LinearExponentialTermination implements PlasticNodeTermination, Checkpointable {
 
     private static final long serialVersionUID = 1L;
 
@@ -60,6 +65,8 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
 
     private float[] myInitialWeights;
     private float[] myWeights;
+    private int myWeightOffset; //start of this termination's row if myWeights is a shared matrix
+    private boolean myWeightsShared;
     private float[] myWeightProbabilities;
     private Random random;
 
@@ -99,11 +106,55 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
         myNetSpikeInput = 0;
         myPreciseSpikeInputTimes=null;
         myIntegrationTime = 0;
-        myWeights = myInitialWeights.clone();
+        copyWeights(myInitialWeights);
     }
 
     public void saveWeights() {
-        myInitialWeights = myWeights.clone();
+        myInitialWeights = getWeights().clone();
+    }
+
+    /**
+     * @see ca.nengo.model.PlasticNodeTermination#setWeightMatrix(float[], int)
+     */
+    public void setWeightMatrix(float[] matrix, int offset) {
+        float[] weights = getWeights();
+        System.arraycopy(weights, 0, matrix, offset, weights.length);
+        myWeights = matrix;
+        myWeightOffset = offset;
+        myWeightsShared = true;
+    }
+
+    //replaces the weights, in place if they are part of a shared matrix
+    private void copyWeights(float[] weights) {
+        if (myWeightsShared) {
+            System.arraycopy(weights, 0, myWeights, myWeightOffset, weights.length);
+        } else {
+            myWeights = weights.clone();
+        }
+    }
+
+    /**
+     * Writes the synaptic current and the current (possibly learned) weights.
+     *
+     * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeFloat(myCurrent);
+        out.writeFloat(myIntegrationTime);
+        Checkpoint.writeArray(out, getWeights());
+    }
+
+    /**
+     * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+     */
+    public void readState(DataInput in) throws IOException {
+        myCurrent = in.readFloat();
+        myIntegrationTime = in.readFloat();
+        float[] weights = Checkpoint.readFloatArray(in);
+        if (weights == null || weights.length != getDimensions()) {
+            throw new IOException("Checkpoint doesn't match dimension of termination " + myName);
+        }
+        copyWeights(weights);
     }
 
     /**
@@ -117,14 +168,21 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
      * @see ca.nengo.model.Termination#getDimensions()
      */
     public int getDimensions() {
-        return myWeights.length;
+        return myInitialWeights.length;
     }
 
     /**
-     * @return List of synaptic weights for each input channel
+     * @return List of synaptic weights for each input channel (a copy if the weights are part
+     * 		of a shared matrix)
      */
     public float[] getWeights() {
-        return myWeights;
+        if (!myWeightsShared) {
+            return myWeights;
+        }
+
+        float[] result = new float[myInitialWeights.length];
+        System.arraycopy(myWeights, myWeightOffset, result, 0, result.length);
+        return result;
     }
 
     /**
@@ -136,7 +194,7 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
             return;
         }
 
-        myWeights = weights.clone();
+        copyWeights(weights);
 
         if (save) {
             saveWeights();
@@ -193,7 +251,7 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
 
         myPreciseSpikeInputTimes = (values instanceof PreciseSpikeOutput) ? ((PreciseSpikeOutput)values).getSpikeTimes() : null;
         myIntegrationTime = 0; // start at the beginning of these spike times (given as an offset increasing from the previous time step)
-        myNetSpikeInput = (values instanceof SpikeOutput && myPreciseSpikeInputTimes==null) ? combineSpikes((SpikeOutput) values, myWeights) : 0;
+        myNetSpikeInput = (values instanceof SpikeOutput && myPreciseSpikeInputTimes==null) ? combineSpikes((SpikeOutput) values, myWeights, myWeightOffset) : 0;
 
         // convert precise spike times that happen right at the beginning of the time window
         //  to be handled separately (we really don't need this, but I'm paranoid about losing
@@ -202,19 +260,28 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
             if (myWeightProbabilities!=null) {
                 for (int i=0; i<myPreciseSpikeInputTimes.length; i++) {
                     if ((myPreciseSpikeInputTimes[i]==0f) && (random.nextFloat()<myWeightProbabilities[i])) {
-                        myNetSpikeInput+=myWeights[i];
+                        myNetSpikeInput+=myWeights[myWeightOffset+i];
                     }
                 }
             } else {
                 for (int i=0; i<myPreciseSpikeInputTimes.length; i++) {
                     if (myPreciseSpikeInputTimes[i]==0f) {
-                        myNetSpikeInput+=myWeights[i];
+                        myNetSpikeInput+=myWeights[myWeightOffset+i];
                     }
                 }
             }
         }
 
-        myNetRealInput = (values instanceof RealOutput) ? combineReals((RealOutput) values, myWeights) : 0;
+        myNetRealInput = (values instanceof RealOutput) ? combineReals((RealOutput) values, myWeights, myWeightOffset) : 0;
+    }
+
+    //sets input whose weighted sum has already been found (by a LinearExponentialEnsembleTermination)
+    void setValues(InstantaneousOutput values, float netSpikeInput, float netRealInput) {
+        myRawInput = values;
+        myPreciseSpikeInputTimes = null;
+        myIntegrationTime = 0;
+        myNetSpikeInput = netSpikeInput;
+        myNetRealInput = netRealInput;
     }
 
     /**
@@ -282,7 +349,7 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
             {
                 float time=myPreciseSpikeInputTimes[i];
                 if (time>myIntegrationTime && (time<=endTime+epsilon) && (random.nextFloat()<myWeightProbabilities[i])) {
-                    myCurrent+=myWeights[i]*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
+                    myCurrent+=myWeights[myWeightOffset+i]*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
                 }
             }
 
@@ -291,27 +358,27 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
             {
                 float time=myPreciseSpikeInputTimes[i];
                 if (time>myIntegrationTime && (time<=endTime+epsilon)) {
-                    myCurrent+=myWeights[i]*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
+                    myCurrent+=myWeights[myWeightOffset+i]*(1f/myTauPSC-((endTime-time)/(myTauPSC*myTauPSC)));
                 }
             }
         }
         myIntegrationTime=endTime;
     }
 
-    private float combineSpikes(SpikeOutput input, float[] weights) {
+    private float combineSpikes(SpikeOutput input, float[] weights, int offset) {
         float result = 0;
         boolean[] spikes = input.getValues();
 
         if (myWeightProbabilities!=null) {
             for (int i = 0; i < spikes.length; i++) {
                 if (spikes[i] && (random.nextFloat()<myWeightProbabilities[i])) {
-                    result += weights[i];
+                    result += weights[offset + i];
                 }
             }
         } else {
             for (int i = 0; i < spikes.length; i++) {
                 if (spikes[i]) {
-                    result += weights[i];
+                    result += weights[offset + i];
                 }
             }
         }
@@ -319,12 +386,12 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
         return result;
     }
 
-    private float combineReals(RealOutput input, float[] weights) {
+    private float combineReals(RealOutput input, float[] weights, int offset) {
         float result = 0;
         float[] reals = input.getValues();
 
         for (int i = 0; i < reals.length; i++) {
-            result += weights[i] * reals[i];
+            result += weights[offset + i] * reals[i];
         }
 
         return result;
@@ -374,12 +441,12 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
 
     @Override
     public PlasticNodeTermination clone() throws CloneNotSupportedException {
-        LinearExponentialTermination result = new LinearExponentialTermination(myNode, myName, myWeights.clone(), myTauPSC);
+        LinearExponentialTermination result = new LinearExponentialTermination(myNode, myName, getWeights().clone(), myTauPSC);
         // Shallow copy happens for free
         //		result.myCurrent = myCurrent;
         //		result.myNetRealInput = myNetRealInput;
         //		result.myNetSpikeInput = myNetSpikeInput;
-        result.myRawInput = myRawInput.clone();
+        result.myRawInput = (myRawInput == null) ? null : myRawInput.clone();
         return result;
     }
 
@@ -111,7 +111,7 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	protected int myNumJavaThreads = 1;
 	protected boolean myUseGPU = true;
 
-    private transient final Collection<StepListener> myStepListeners;
+    private transient Collection<StepListener> myStepListeners;
 
 
 	/**
@@ -1271,13 +1271,21 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	}
 	
 	public void addStepListener(StepListener listener) {
+		if (myStepListeners == null) {
+			myStepListeners = new ArrayList<StepListener>(1); //transient, so null after deserialization
+		}
         myStepListeners.add(listener);
 	}
 	public void removeStepListener(StepListener listener) {
-        myStepListeners.remove(listener);
+		if (myStepListeners != null) {
+	        myStepListeners.remove(listener);
+		}
 	}
 	
 	public void fireStepListeners(float time) {
+		if (myStepListeners == null) {
+			return;
+		}
 		for (StepListener listener: myStepListeners) {
 			listener.stepStarted(time);
 		}
@@ -36,10 +36,10 @@ import ca.nengo.dynamics.Integrator;
 import ca.nengo.math.Function;
 import ca.nengo.math.PDF;
 import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.RandomStream;
 import ca.nengo.model.Noise;
-import ca.nengo.model.Units;
-import ca.nengo.util.TimeSeries;
-import ca.nengo.util.impl.TimeSeriesImpl;
 
 /**
  * Default additive Noise implementations.
@@ -128,6 +128,16 @@ public class NoiseFactory {
 			return input + myFunction.map(new float[]{startTime});
 		}
 
+		/**
+		 * @see ca.nengo.model.Noise#getValues(float, float, float[])
+		 */
+		public void getValues(float startTime, float endTime, float[] values) {
+			float noise = myFunction.map(new float[]{startTime});
+			for (int i = 0; i < values.length; i++) {
+				values[i] += noise;
+			}
+		}
+
 		@Override
 		public Noise clone() {
 			try {
@@ -161,6 +171,12 @@ public class NoiseFactory {
 			return input;
 		}
 
+		/**
+		 * @see ca.nengo.model.Noise#getValues(float, float, float[])
+		 */
+		public void getValues(float startTime, float endTime, float[] values) {
+		}
+
 		@Override
 		public Noise clone() {
 			return this; //allows sharing between dimensions
@@ -179,6 +195,10 @@ public class NoiseFactory {
 	 * which would then not be updated with changes to the original. So to change noise properties
 	 * the Noise object must be replaced.
 	 *
+	 * Raw noise for every element of a vector is drawn at once. Gaussian and uniform (IndicatorPDF)
+	 * noise is drawn from this Noise's own RandomStream rather than through PDF.sample(). Each element
+	 * has its own copy of the dynamics, which the Integrator updates in place.
+	 *
 	 * @author Bryan Tripp
 	 */
 	public static class NoiseImplPDF implements Noise {
@@ -191,10 +211,14 @@ public class NoiseFactory {
 		private Integrator myIntegrator;
 		private float myLastGenTime = 0;
 		private float myLastDynamicsTime = 0;
-		private float[] myLastRawNoise;
+		private float[] myLastRawNoise; //[element * PDF dimension]
 		private float[] myCurrentRawNoise;
-		private Units[] myUnits;
 		private float[] myInitialState;
+		private RandomStream myStream;
+		private DynamicalSystem[] myElementDynamics; //first is myDynamics
+		private transient float[] myLastInput; //workspaces for one element's raw noise
+		private transient float[] myCurrentInput;
+		private transient float[] myValue; //workspace for getValue(...)
 
 		/**
 		 * @param frequency Frequency (in simulation time) with which new noise values are drawn from the PDF
@@ -249,8 +273,7 @@ public class NoiseFactory {
 			}
 
 			myPDF = pdf;
-			myCurrentRawNoise = myPDF.sample();
-			myUnits = Units.uniform(Units.UNK, myCurrentRawNoise.length);
+			myCurrentRawNoise = null;
 		}
 
 		/**
@@ -273,8 +296,9 @@ public class NoiseFactory {
 			}
 
 			myDynamics = dynamics;
+			myElementDynamics = null;
 			if (myDynamics != null) {
-                myInitialState = dynamics.getState();
+                myInitialState = dynamics.getState().clone();
             }
 		}
 
@@ -289,25 +313,94 @@ public class NoiseFactory {
 		 * @see ca.nengo.model.Noise#getValue(float, float, float)
 		 */
 		public float getValue(float startTime, float endTime, float input) {
-			float result = input;
+			if (myValue == null) {
+				myValue = new float[1];
+			}
+			myValue[0] = input;
+			getValues(startTime, endTime, myValue);
+			return myValue[0];
+		}
+
+		/**
+		 * @see ca.nengo.model.Noise#getValues(float, float, float[])
+		 */
+		public void getValues(float startTime, float endTime, float[] values) {
+			int n = values.length;
+			int dim = myPDF.getDimension();
+			if (myCurrentRawNoise == null || myCurrentRawNoise.length != n * dim || myLastRawNoise == myCurrentRawNoise
+					|| (myDynamics != null && (myElementDynamics == null || myLastInput == null))) {
+				initElements(n, dim);
+			}
 
-			myLastRawNoise = myCurrentRawNoise;
+			System.arraycopy(myCurrentRawNoise, 0, myLastRawNoise, 0, myCurrentRawNoise.length);
+			boolean changed = false;
 			if (endTime >= myLastGenTime + myPeriod || endTime < myLastGenTime) {
-				myCurrentRawNoise = myPDF.sample();
+				sample(myCurrentRawNoise);
 				myLastGenTime = endTime;
+				changed = true;
 			}
 
 			if (myDynamics == null) {
-				result = input + myCurrentRawNoise[0];
+				for (int i = 0; i < n; i++) {
+					values[i] += myCurrentRawNoise[i];
+				}
 			} else {
-				TimeSeries raw = new TimeSeriesImpl(new float[]{myLastDynamicsTime, endTime},
-						new float[][]{myLastRawNoise, myCurrentRawNoise}, myUnits);
-				float[][] output = myIntegrator.integrate(myDynamics, raw).getValues();
-				result = input + output[output.length-1][0];
+				//the same array at both ends tells the Integrator that the input is constant
+				float[] lastInput = changed ? myLastInput : myCurrentInput;
+				for (int i = 0; i < n; i++) {
+					System.arraycopy(myLastRawNoise, i * dim, lastInput, 0, dim);
+					System.arraycopy(myCurrentRawNoise, i * dim, myCurrentInput, 0, dim);
+					float[] output = myIntegrator.step(myElementDynamics[i], myLastDynamicsTime, lastInput, endTime, myCurrentInput);
+					values[i] += output[0];
+				}
 				myLastDynamicsTime = endTime;
 			}
+		}
 
-			return result;
+		//sizes raw noise and dynamics for n elements
+		private void initElements(int n, int dim) {
+			if (myCurrentRawNoise == null || myCurrentRawNoise.length != n * dim) {
+				myCurrentRawNoise = new float[n * dim];
+				sample(myCurrentRawNoise);
+			}
+			myLastRawNoise = myCurrentRawNoise.clone();
+
+			if (myDynamics != null) {
+				if (myElementDynamics == null || myElementDynamics.length != n) {
+					myElementDynamics = new DynamicalSystem[n];
+					myElementDynamics[0] = myDynamics;
+					try {
+						for (int i = 1; i < n; i++) {
+							myElementDynamics[i] = myDynamics.clone();
+							myElementDynamics[i].setState(myInitialState.clone());
+						}
+					} catch (CloneNotSupportedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				myLastInput = new float[dim];
+				myCurrentInput = new float[dim];
+			}
+		}
+
+		//fills the given array with raw noise for each element
+		private void sample(float[] rawNoise) {
+			if (myStream == null) {
+				myStream = new RandomStream();
+			}
+
+			if (myPDF instanceof GaussianPDF) {
+				GaussianPDF pdf = (GaussianPDF) myPDF;
+				myStream.fillGaussian(rawNoise, pdf.getMean(), (float) Math.sqrt(pdf.getVariance()));
+			} else if (myPDF instanceof IndicatorPDF) {
+				IndicatorPDF pdf = (IndicatorPDF) myPDF;
+				myStream.fillUniform(rawNoise, pdf.getLow(), pdf.getHigh());
+			} else {
+				int dim = myPDF.getDimension();
+				for (int i = 0; i < rawNoise.length; i += dim) {
+					System.arraycopy(myPDF.sample(), 0, rawNoise, i, dim);
+				}
+			}
 		}
 
 		@Override
@@ -317,7 +410,14 @@ public class NoiseFactory {
 				NoiseImplPDF result = (NoiseImplPDF) super.clone();
 				if (myDynamics != null) {
 					result.setDynamics(myDynamics.clone());
+					result.myIntegrator = myIntegrator.clone();
 				}
+				result.myCurrentRawNoise = null;
+				result.myLastRawNoise = null;
+				result.myStream = new RandomStream(); //independent of this one
+				result.myLastInput = null;
+				result.myCurrentInput = null;
+				result.myValue = null;
 				return result;
 			} catch (CloneNotSupportedException e) {
 				throw new RuntimeException(e);
@@ -329,8 +429,16 @@ public class NoiseFactory {
 		 */
 		public void reset(boolean randomize) {
 			if (myDynamics != null) {
-                myDynamics.setState(myInitialState);
+                myDynamics.setState(myInitialState.clone());
             }
+			if (myElementDynamics != null) {
+				for (DynamicalSystem dynamics : myElementDynamics) {
+					dynamics.setState(myInitialState.clone());
+				}
+			}
+			if (randomize && myStream != null) {
+				myStream.reseed();
+			}
 			myLastDynamicsTime = 0;
 			myLastGenTime = 0;
 		}
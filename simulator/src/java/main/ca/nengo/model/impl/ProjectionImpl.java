@@ -39,12 +39,15 @@ import ca.nengo.math.Function;
 import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.math.impl.IdentityFunction;
 import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.BufferedOrigin;
+import ca.nengo.model.BufferedTermination;
 import ca.nengo.model.Network;
 import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
 import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.nef.NEFEnsemble;
@@ -93,6 +96,32 @@ public class ProjectionImpl implements Projection {
 		myIndirectBT = null;
 	}
 
+	/**
+	 * Passes the output of a projection's origin to its termination. If the origin and
+	 * termination (underneath any network wrappers) are a BufferedOrigin and BufferedTermination,
+	 * the termination reads the origin's buffer directly, without the output being copied.
+	 *
+	 * @param projection A projection
+	 * @throws SimulationException If the termination doesn't accept the origin's output
+	 */
+	public static void transfer(Projection projection) throws SimulationException {
+		Origin origin = projection.getOrigin();
+		if (origin instanceof OriginWrapper) {
+			origin = ((OriginWrapper) origin).getBaseOrigin();
+		}
+		Termination termination = projection.getTermination();
+		if (termination instanceof TerminationWrapper) {
+			termination = ((TerminationWrapper) termination).getBaseTermination();
+		}
+
+		if (origin instanceof BufferedOrigin && termination instanceof BufferedTermination) {
+			BufferedOrigin bo = (BufferedOrigin) origin;
+			((BufferedTermination) termination).setBuffer(bo.getBuffer(), bo.getBufferTime());
+		} else {
+			termination.setValues(origin.getValues());
+		}
+	}
+
 	/**
 	 * @see ca.nengo.model.Projection#getOrigin()
 	 */
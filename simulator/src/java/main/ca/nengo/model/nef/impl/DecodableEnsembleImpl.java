@@ -27,6 +27,9 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -35,16 +38,19 @@ import java.util.Map;
 import java.util.Properties;
 
 import Jama.Matrix;
+import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.CanonicalModel;
 import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.dynamics.impl.LTISystem;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.dynamics.impl.ZeroOrderHoldIntegrator;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.math.impl.TimeSeriesFunction;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
@@ -67,7 +73,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  *
  * @author Bryan Tripp
  */
-public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements DecodableEnsemble {
+public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements DecodableEnsemble, Checkpointable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -272,7 +278,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
                 new Units[]{Units.UNK}
         );
 
-        EulerIntegrator integrator = new EulerIntegrator(tauPSC / 10f);
+        Integrator integrator = new ZeroOrderHoldIntegrator(new EulerIntegrator(tauPSC / 10f));
 
         DecodedTermination result = new DecodedTermination(this, name, matrix, dynamics, integrator);
         if (isModulatory) {
@@ -319,7 +325,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
             }
         }
 
-        EulerIntegrator integrator = new EulerIntegrator(1f / (10f * (float) fastest));
+        Integrator integrator = new ZeroOrderHoldIntegrator(new EulerIntegrator(1f / (10f * (float) fastest)));
 
         DecodedTermination result = new DecodedTermination(this, name, matrix, dynamics, integrator);
         if (isModulatory) {
@@ -462,6 +468,19 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 		setTime(endTime);
 	}
 
+	/**
+	 * Also binds each DecodedOrigin.
+	 *
+	 * @see ca.nengo.model.Bindable#bind()
+	 */
+	@Override
+	public void bind() throws StructuralException {
+		super.bind();
+		for (DecodedOrigin o : myDecodedOrigins.values()) {
+			o.bind();
+		}
+	}
+
 	/**
 	 * Allows subclasses to set the simulation time, which is used to support Probeable.
 	 * This is normally set in the run() method. Subclasses that override run() without
@@ -473,6 +492,23 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 		myTime = time;
 	}
 
+	/**
+	 * Writes ensemble-level state. The states of neurons, decoded origins and decoded
+	 * terminations are written separately.
+	 *
+	 * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeFloat(myTime);
+	}
+
+	/**
+	 * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+	 */
+	public void readState(DataInput in) throws IOException {
+		myTime = in.readFloat();
+	}
+
 	/**
 	 * @return The source of LinearApproximators for this ensemble (used to find linear decoding vectors).
 	 */
@@ -27,6 +27,12 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import ca.nengo.config.ConfigUtil;
@@ -36,10 +42,16 @@ import ca.nengo.config.impl.ConfigurationImpl;
 import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.io.Checkpoint;
+import ca.nengo.io.LazyPayload;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.math.impl.FixedSignalFunction;
 import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.Bindable;
+import ca.nengo.model.BufferedOrigin;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Noise;
@@ -59,7 +71,6 @@ import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.VectorGenerator;
 import ca.nengo.util.impl.RandomHypersphereVG;
-import ca.nengo.util.impl.TimeSeries1DImpl;
 import ca.nengo.util.impl.TimeSeriesImpl;
 
 /**
@@ -70,7 +81,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  *
  * @author Bryan Tripp
  */
-public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeConfigurable, Noise.Noisy, Configurable, ShortTermPlastic {
+public class DecodedOrigin implements BufferedOrigin, Bindable, Resettable, SimulationMode.ModeConfigurable, Noise.Noisy, Configurable, ShortTermPlastic, Checkpointable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -80,18 +91,36 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private String myName;
 	private Node[] myNodes;
 	private String myNodeOrigin;
+	private transient Origin[] myNodeOrigins; //origin of each node named myNodeOrigin, once bound
 	private Function[] myFunctions;
 	private float[][] myDecoders;
+	private LazyPayload<float[][]> myLazyDecoders; //set if decoders haven't been loaded from disk yet
 	private SimulationMode myMode;
-	private RealOutput myOutput;
+	private RealOutput myOutput; //latest output, unless it has only been written to a buffer
+	private transient float[][] myBuffers; //alternate outputs (see BufferedOrigin)
+	private transient int myFront; //index of the buffer with the latest output
+	private transient float myBufferTime;
 	private Noise myNoise = null;
-	private Noise[] myNoises = null;
+	private Noise myOutputNoise = null; //copy of myNoise that corrupts all outputs at once
 	private DynamicalSystem mySTPDynamicsTemplate;
 	private DynamicalSystem[] mySTPDynamics;
 	private Integrator myIntegrator;
 	private float[] mySTPHistory;
+	private transient float[] mySTPInput; //workspace for STP dynamics that aren't LTI
+
+	//STP of all nodes at once, for LTI dynamics, while running (see prepareSTP(...))
+	private transient int mySTPOrder;
+	private transient float mySTPStep;
+	private transient float[] mySTPState; //[node * order + state variable]
+	private transient float[] mySTPAd; //[(node * order + row) * order + column]
+	private transient float[] mySTPBd; //[node * order + state variable]
+	private transient float[] mySTPC; //[node * order + state variable]
+	private transient float[] mySTPD; //[node]
+	private transient float[] mySTPNextState;
 	private float myTime;
 	private boolean myRequiredOnCPU;
+	private transient boolean myUnused;
+	private transient float[] myActivities; //node outputs in the last run, as decoded
 	private ExpressModel myExpressModel;
 
 	/**
@@ -267,10 +296,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void setNoise(Noise noise) {
 		myNoise = noise;
-		myNoises = new Noise[getDimensions()];
-		for (int i = 0; i < myNoises.length; i++) {
-			myNoises[i] = myNoise.clone();
-		}
+		myOutputNoise = noise == null ? null : noise.clone();
 	}
 
 	/**
@@ -284,16 +310,15 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * @see ca.nengo.model.Resettable#reset(boolean)
 	 */
 	public void reset(boolean randomize) {
-		float time = (myOutput == null) ? 0 : myOutput.getTime();
+		float time = (myOutput == null) ? myBufferTime : myOutput.getTime();
 		myOutput = new RealOutputImpl(new float[myFunctions.length], Units.UNK, time);
+		myBuffers = null;
 
 		if (myNoise != null) {
             myNoise.reset(randomize);
         }
-		if (myNoises != null) {
-			for (Noise myNoise2 : myNoises) {
-				myNoise2.reset(randomize);
-			}
+		if (myOutputNoise != null) {
+			myOutputNoise.reset(randomize);
 		}
 
 		mySTPHistory = new float[myNodes.length];
@@ -358,6 +383,10 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * @return Decoding vectors for each Node
 	 */
 	public float[][] getDecoders() {
+		if (myLazyDecoders != null) {
+			myDecoders = myLazyDecoders.load();
+			myLazyDecoders = null;
+		}
 		return myDecoders;
 	}
 
@@ -380,6 +409,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * @return Dynamics of short-term plasticity for the specified node
 	 */
 	public DynamicalSystem getSTPDynamics(int i) {
+		flushSTP(); //the caller may change the parameters
 		return mySTPDynamics[i];
 	}
 
@@ -387,6 +417,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * @see ca.nengo.model.plasticity.ShortTermPlastic#setSTPDynamics(ca.nengo.dynamics.DynamicalSystem)
 	 */
 	public void setSTPDynamics(DynamicalSystem dynamics) {
+		mySTPState = null;
+		mySTPHistory = new float[myNodes.length];
 		if (dynamics == null) {
 			mySTPDynamics = new DynamicalSystem[myNodes.length];
 		} else {
@@ -411,10 +443,11 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void setDecoders(float[][] decoders) {
 		assert MU.isMatrix(decoders);
-		assert myDecoders.length == decoders.length;
-		assert myDecoders[0].length == decoders[0].length;
+		assert getDecoders().length == decoders.length;
+		assert getDecoders()[0].length == decoders[0].length;
 
 		myDecoders = decoders;
+		myLazyDecoders = null;
 	}
 
 	/**
@@ -443,14 +476,16 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * 		dimension of the functions provided in the constructor)
 	 */
 	public void run(float[] state, float startTime, float endTime) throws SimulationException {
+		if (myUnused) {
+			return;
+		}
 		if (state != null && state.length != myFunctions[0].getDimension()) {
 			throw new SimulationException("A state of dimension " + myFunctions[0].getDimension() + " was expected");
 		}
 
-		float[] values = new float[myFunctions.length];
+		float[] values = getBackBuffer();
 		float stepSize = endTime - startTime;
 
-		mySTPHistory = new float[myNodes.length];
 		if (myMode == SimulationMode.DIRECT) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myFunctions[i].map(state);
@@ -465,67 +500,274 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 				myExpressModel = new DefaultExpressModel(this);
 			}
 			
-			values = myExpressModel.getOutput(startTime, state, values);
+			float[] output = myExpressModel.getOutput(startTime, state, values);
+			if (output != values) {
+				System.arraycopy(output, 0, values, 0, values.length);
+			}
 		} else {
-			for (int i = 0; i < myNodes.length; i++) {
+			if (myActivities == null || myActivities.length != myNodes.length) {
+				myActivities = new float[myNodes.length];
+			}
+			if (myNodeOrigins == null || myNodeOrigins.length != myNodes.length) {
 				try {
-					InstantaneousOutput o = myNodes[i].getOrigin(myNodeOrigin).getValues();
-
-					float val = 0;
-					if (o instanceof SpikeOutput) {
-						val = ((SpikeOutput) o).getValues()[0] ? 1f / stepSize : 0f;
-					} else if (o instanceof RealOutput) {
-						val = ((RealOutput) o).getValues()[0];
-					} else {
-						throw new Error("Node output is of type " + o.getClass().getName()
-							+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
-					}
-
-					float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
-					for (int j = 0; j < values.length; j++) {
-						values[j] += val * decoder[j];
-					}
+					bind();
 				} catch (StructuralException e) {
 					throw new SimulationException(e);
 				}
 			}
+			for (int i = 0; i < myNodes.length; i++) {
+				InstantaneousOutput o = myNodeOrigins[i].getValues();
+
+				float val = 0;
+				if (o instanceof SpikeOutput) {
+					val = ((SpikeOutput) o).getValues()[0] ? 1f / stepSize : 0f;
+				} else if (o instanceof RealOutput) {
+					val = ((RealOutput) o).getValues()[0];
+				} else {
+					throw new Error("Node output is of type " + o.getClass().getName()
+						+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
+				}
+				myActivities[i] = val;
+			}
+			decodeActivities(values, startTime, endTime);
 		}
-		
+
+		finish(values, startTime, endTime);
+	}
+
+	/**
+	 * Like run(...) in modes other than DIRECT and EXPRESS, but decodes the given activities
+	 * rather than reading the output of each node. This is for ensembles that find the output
+	 * of all their nodes at once (e.g. firing rates) without running the nodes.
+	 *
+	 * @param activities Output of each node (copied, and available from getActivities())
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException If there isn't an activity for each node
+	 */
+	public void decode(float[] activities, float startTime, float endTime) throws SimulationException {
+		if (myUnused) {
+			return;
+		}
+		if (activities.length != myNodes.length) {
+			throw new SimulationException("Expected " + myNodes.length + " activities");
+		}
+
+		if (myActivities == null || myActivities.length != myNodes.length) {
+			myActivities = new float[myNodes.length];
+		}
+		System.arraycopy(activities, 0, myActivities, 0, activities.length);
+		float[] values = getBackBuffer();
+		decodeActivities(values, startTime, endTime);
+		finish(values, startTime, endTime);
+	}
+
+	//adds the decoded myActivities to values, with short-term plasticity if there is any
+	private void decodeActivities(float[] values, float startTime, float endTime) {
+		getDecoders(); //make sure decoders are loaded
+		boolean stp = mySTPDynamicsTemplate != null; //TODO: could use a NullDynamics here instead of null (to allow nulling in config tree)
+		boolean stpPopulation = stp && prepareSTP(endTime - startTime);
+		for (int i = 0; i < myActivities.length; i++) {
+			float val = myActivities[i];
+			float[] decoder = myDecoders[i];
+			if (stp) {
+				float scaleFactor = stpPopulation ? stepSTP(i, val) : stepSTP(i, val, startTime, endTime);
+				mySTPHistory[i] = scaleFactor;
+				for (int j = 0; j < values.length; j++) {
+					values[j] += val * (decoder[j] * scaleFactor);
+				}
+			} else {
+				for (int j = 0; j < values.length; j++) {
+					values[j] += val * decoder[j];
+				}
+			}
+		}
+	}
+
+	//adds noise to new output values and publishes them
+	private void finish(float[] values, float startTime, float endTime) {
 		if (myNoise != null) {
-			for (int i = 0; i < values.length; i++) {
-				values[i] = myNoises[i].getValue(startTime, endTime, values[i]);
+			if (myOutputNoise == null) {
+				myOutputNoise = myNoise.clone();
 			}
+			myOutputNoise.getValues(startTime, endTime, values);
 		}
 
 		myTime = endTime;
-		myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+		publish(endTime);
 	}
 
-	private float[] getDynamicDecoder(int i, float input, float startTime, float endTime) {
-		float[] result = myDecoders[i];
-		if (mySTPDynamicsTemplate != null) { //TODO: could use a NullDynamics here instead of null (to allow nulling in config tree)
-			//TODO: could recycle a mutable time series here to avoid object creation
-			TimeSeries inputSeries = new TimeSeries1DImpl(new float[]{startTime, endTime}, new float[]{input, input}, Units.UNK);
-			TimeSeries outputSeries = myIntegrator.integrate(mySTPDynamics[i], inputSeries);
-			float scaleFactor = outputSeries.getValues()[outputSeries.getValues().length-1][0];
-			mySTPHistory[i] = scaleFactor;
-			result = MU.prod(result, scaleFactor);
+	/**
+	 * Resolves the origin of each node from which output is decoded.
+	 *
+	 * @see ca.nengo.model.Bindable#bind()
+	 */
+	public void bind() throws StructuralException {
+		Origin[] origins = new Origin[myNodes.length];
+		for (int i = 0; i < origins.length; i++) {
+			origins[i] = myNodes[i].getOrigin(myNodeOrigin);
+		}
+		myNodeOrigins = origins;
+	}
+
+	/*
+	 * Returns the buffer that doesn't hold the latest output, zeroed (the buffers are created
+	 * first if necessary, with the latest output in the front).
+	 */
+	private float[] getBackBuffer() {
+		if (myBuffers == null || myBuffers[0].length != myFunctions.length) {
+			myBuffers = new float[2][myFunctions.length];
+			myFront = 0;
+			if (myOutput != null && myOutput.getDimension() == myFunctions.length) {
+				System.arraycopy(myOutput.getValues(), 0, myBuffers[0], 0, myFunctions.length);
+				myBufferTime = myOutput.getTime();
+			}
 		}
+		float[] result = myBuffers[1 - myFront];
+		Arrays.fill(result, 0f);
 		return result;
 	}
 
+	//makes the back buffer the latest output
+	private void publish(float time) {
+		myFront = 1 - myFront;
+		myBufferTime = time;
+		myOutput = null;
+	}
+
+	/**
+	 * @see ca.nengo.model.BufferedOrigin#getBuffer()
+	 */
+	public float[] getBuffer() {
+		if (myBuffers == null) {
+			getBackBuffer();
+		}
+		return myBuffers[myFront];
+	}
+
+	/**
+	 * @see ca.nengo.model.BufferedOrigin#getBufferTime()
+	 */
+	public float getBufferTime() {
+		if (myBuffers == null) {
+			getBackBuffer();
+		}
+		return myBufferTime;
+	}
+
+	//latest output as a RealOutput, which is only created if it is asked for
+	private RealOutput getOutput() {
+		if (myOutput == null && myBuffers != null) {
+			myOutput = new RealOutputImpl(myBuffers[myFront].clone(), Units.UNK, myBufferTime);
+		}
+		return myOutput;
+	}
+
+	/*
+	 * If every node has LTI short-term plasticity dynamics of the same order, moves their states
+	 * and exact discrete-time parameters for the given step size into the population arrays
+	 * (unless they are there already for the same step, rounded as in LTISystem.roundStep(...))
+	 * and returns true. Otherwise returns false, and each node's dynamics are integrated separately.
+	 */
+	private boolean prepareSTP(float dt) {
+		float step = LTISystem.roundStep(dt);
+		if (mySTPState != null && step == mySTPStep) {
+			return true;
+		}
+
+		int n = mySTPDynamics.length;
+		int order = mySTPDynamicsTemplate.getState().length;
+		for (DynamicalSystem dynamics : mySTPDynamics) {
+			if (!(dynamics instanceof LTISystem) || dynamics.getState().length != order) {
+				return false;
+			}
+		}
+
+		if (mySTPState == null) {
+			mySTPState = new float[n * order];
+			for (int i = 0; i < n; i++) {
+				System.arraycopy(mySTPDynamics[i].getState(), 0, mySTPState, i * order, order);
+			}
+		}
+
+		if (mySTPAd == null || mySTPD.length != n || mySTPOrder != order) {
+			mySTPAd = new float[n * order * order];
+			mySTPBd = new float[n * order];
+			mySTPC = new float[n * order];
+			mySTPD = new float[n];
+			mySTPNextState = new float[order];
+		}
+		mySTPOrder = order;
+		mySTPStep = step;
+		for (int i = 0; i < n; i++) {
+			LTISystem dynamics = (LTISystem) mySTPDynamics[i];
+			float[][] Ad = dynamics.getDiscreteA(step);
+			float[][] Bd = dynamics.getDiscreteB(step);
+			float[][] C = dynamics.getC();
+			for (int r = 0; r < order; r++) {
+				System.arraycopy(Ad[r], 0, mySTPAd, (i * order + r) * order, order);
+				mySTPBd[i * order + r] = Bd[r][0];
+				mySTPC[i * order + r] = C[0][r];
+			}
+			mySTPD[i] = dynamics.getD()[0][0];
+		}
+		return true;
+	}
+
+	//one exact step of the ith node's dynamics in the population arrays; returns the output
+	private float stepSTP(int i, float input) {
+		int order = mySTPOrder;
+		int offset = i * order;
+		for (int r = 0; r < order; r++) {
+			int row = (offset + r) * order;
+			float sum = 0;
+			for (int c = 0; c < order; c++) {
+				sum += mySTPAd[row + c] * mySTPState[offset + c];
+			}
+			mySTPNextState[r] = sum + mySTPBd[offset + r] * input;
+		}
+
+		float result = mySTPD[i] * input;
+		for (int r = 0; r < order; r++) {
+			mySTPState[offset + r] = mySTPNextState[r];
+			result += mySTPC[offset + r] * mySTPNextState[r];
+		}
+		return result;
+	}
+
+	//integrates the ith node's (non-LTI) dynamics separately; returns the output
+	private float stepSTP(int i, float input, float startTime, float endTime) {
+		if (mySTPInput == null) {
+			mySTPInput = new float[1];
+		}
+		mySTPInput[0] = input;
+		return myIntegrator.step(mySTPDynamics[i], startTime, mySTPInput, endTime, mySTPInput)[0];
+	}
+
+	//moves the population STP state back into each node's dynamics
+	private void flushSTP() {
+		if (mySTPState != null) {
+			for (int i = 0; i < mySTPDynamics.length; i++) {
+				float[] state = new float[mySTPOrder];
+				System.arraycopy(mySTPState, i * mySTPOrder, state, 0, mySTPOrder);
+				mySTPDynamics[i].setState(state);
+			}
+			mySTPState = null;
+		}
+	}
+
 	protected TimeSeries getSTPHistory() {
 		if (mySTPHistory == null) {
             mySTPHistory = new float[myNodes.length];
         }
-		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory}, Units.uniform(Units.UNK, mySTPHistory.length));
+		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory.clone()}, Units.uniform(Units.UNK, mySTPHistory.length));
 	}
 
 	/**
 	 * @see ca.nengo.model.Origin#getValues()
 	 */
 	public InstantaneousOutput getValues() throws SimulationException {
-		return myOutput;
+		return getOutput();
 	}
 	
 	/**
@@ -533,17 +775,40 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void setValues(InstantaneousOutput val){
 		if(val instanceof RealOutput)
-			myOutput = (RealOutput) val;
+			setOutput((RealOutput) val);
 	}
 
 	/**
 	 * @param ro Values to be set
 	 */
 	public void setValues(RealOutput ro) {
-		myOutput = ro;
+		setOutput(ro);
 		myTime = ro.getTime();
 	}
 
+	/**
+	 * Sets the output from values that were computed elsewhere (e.g. by a compiled
+	 * simulation of the ensemble), without creating a RealOutput.
+	 *
+	 * @param values New output values (copied)
+	 * @param time Simulation time of the output
+	 */
+	public void setValues(float[] values, float time) {
+		System.arraycopy(values, 0, getBackBuffer(), 0, myFunctions.length);
+		myTime = time;
+		publish(time);
+	}
+
+	private void setOutput(RealOutput ro) {
+		if (myBuffers != null && ro.getDimension() == myFunctions.length) {
+			System.arraycopy(ro.getValues(), 0, getBackBuffer(), 0, myFunctions.length);
+			publish(ro.getTime());
+		} else {
+			myBuffers = null;
+		}
+		myOutput = ro;
+	}
+
 	/**
 	 * @return List of Functions approximated by this DecodedOrigin
 	 */
@@ -554,7 +819,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	/**
 	 * @return Name of Node-level Origin on which this DecodedOrigin is based
 	 */
-	protected String getNodeOrigin() {
+	public String getNodeOrigin() {
 		return myNodeOrigin;
 	}
 
@@ -572,8 +837,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			functions[i] = myFunctions[i].clone();
 		}
 		try {
-			DecodedOrigin result = new DecodedOrigin(myNode, myName, myNodes, myNodeOrigin, functions, MU.clone(myDecoders));
-			result.myOutput = (RealOutput) myOutput.clone();
+			DecodedOrigin result = new DecodedOrigin(myNode, myName, myNodes, myNodeOrigin, functions, MU.clone(getDecoders()));
+			result.myOutput = (RealOutput) getOutput().clone();
             if (myNoise != null) {
 			    result.setNoise(myNoise.clone());
             }
@@ -590,11 +855,14 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * @param scale vector to multiply each decoder by
 	 */
 	public void rescaleDecoders(float[] scale) {
-		for (int i=0;i<myDecoders.length; i++) {
+		//scaled in a copy, since loaded decoders may be shared with other copies of the model (see PayloadStore.createShared())
+		float[][] decoders = MU.clone(getDecoders());
+		for (int i=0;i<decoders.length; i++) {
 			for (int j=0; j<scale.length; j++) {
-				myDecoders[i][j]*=scale[j];
+				decoders[i][j]*=scale[j];
 			}
 		}
+		myDecoders = decoders;
 	}
 
 	/**
@@ -603,6 +871,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void rebuildDecoder(LinearApproximator approximator) {
 		myDecoders = findDecoders(myNodes, myFunctions, approximator);
+		myLazyDecoders = null;
 	}
 
 	/**
@@ -612,6 +881,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 */
 	public void redefineNodes(Node[] nodes, LinearApproximator approximator) {
 		myNodes=nodes;
+		myNodeOrigins = null;
 		rebuildDecoder(approximator);
 	}
 	
@@ -622,4 +892,82 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
     public boolean getRequiredOnCPU(){
         return myRequiredOnCPU;
     }
+
+	/**
+	 * @param unused If true, run(...) does nothing, so the output isn't updated (this is set by
+	 * 		the simulator when nothing reads the output; see LivenessAnalyzer)
+	 */
+	public void setUnused(boolean unused) {
+		myUnused = unused;
+	}
+
+	/**
+	 * @return True if run(...) does nothing because nothing reads the output
+	 */
+	public boolean getUnused() {
+		return myUnused;
+	}
+
+	/**
+	 * @return The output of each node in the last run(...) that used the nodes, as it was decoded
+	 * 		(spikes are 1/step size), or null if the nodes haven't been used. This array is reused
+	 * 		in each run.
+	 */
+	public float[] getActivities() {
+		return myActivities;
+	}
+
+	/**
+	 * Writes the state of short-term plasticity dynamics (the output itself is written
+	 * with getValues()).
+	 *
+	 * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		flushSTP();
+		out.writeFloat(myTime);
+		if (mySTPDynamicsTemplate == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(mySTPDynamics.length);
+			for (DynamicalSystem dynamics : mySTPDynamics) {
+				Checkpoint.writeArray(out, dynamics.getState());
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+	 */
+	public void readState(DataInput in) throws IOException {
+		mySTPState = null;
+		myTime = in.readFloat();
+		int n = in.readInt();
+		if (n >= 0) {
+			if (mySTPDynamicsTemplate == null || n != mySTPDynamics.length) {
+				throw new IOException("Checkpoint doesn't match short-term plasticity of origin " + myName);
+			}
+			for (int i = 0; i < n; i++) {
+				mySTPDynamics[i].setState(Checkpoint.readFloatArray(in));
+			}
+		}
+	}
+
+	//writes decoders to the bound PayloadStore (if any) rather than the object stream
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		flushSTP();
+		getOutput();
+		float[][] decoders = getDecoders();
+		myLazyDecoders = LazyPayload.offload(decoders);
+		if (myLazyDecoders != null) {
+			myDecoders = null;
+		}
+
+		try {
+			out.defaultWriteObject();
+		} finally {
+			myDecoders = decoders;
+			myLazyDecoders = null;
+		}
+	}
 }
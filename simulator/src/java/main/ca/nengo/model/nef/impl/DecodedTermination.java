@@ -24,14 +24,25 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.model.nef.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
 
+import Jama.Matrix;
+
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.CanonicalModel;
 import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.io.Checkpoint;
+import ca.nengo.io.LazyPayload;
+import ca.nengo.model.BufferedTermination;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Probeable;
@@ -65,7 +76,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  *
  * @author Bryan Tripp
  */
-public class DecodedTermination implements Termination, Resettable, Probeable {
+public class DecodedTermination implements BufferedTermination, Resettable, Probeable, Checkpointable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -80,11 +91,15 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private String myName;
 	private int myOutputDimension;
 	private float[][] myTransform;
+	private LazyPayload<float[][]> myLazyTransform; //set if transform hasn't been loaded from disk yet
 	private LinearSystem myDynamicsTemplate;
 	private LinearSystem[] myDynamics;
 	private Integrator myIntegrator;
-	private Units[] myNullUnits;
-	private RealOutput myInputValues;
+	private RealOutput myInputValues; //latest input, unless it was set with setBuffer(...)
+	private transient float[] myInputBuffer; //latest input, if set with setBuffer(...)
+	private transient float myInputBufferTime;
+	private transient float[] myBiasedInput; //workspace for buffered input plus static bias
+	private transient float[] myStepInput; //workspace for the input to one dimension's dynamics
 	private float myTime;
 	private float[] myOutputValues;
 	private boolean myTauMutable;
@@ -95,6 +110,15 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private float[][] myInitialState;
 	private boolean myValuesSet;
 
+	//full-weight execution (see setWeights(...))
+	private transient DecodedOrigin myWeightSource;
+	private transient float[][] myEncoders; //[postsynaptic node][output dimension]
+	private transient float[][] myWeights; //[presynaptic node][postsynaptic node]
+	private transient LinearSystem[] myWeightDynamics; //one per postsynaptic node
+	private transient float[] myActivities;
+	private transient float[] myWeightInput;
+	private transient float[] myCurrents;
+
 	/**
 	 * @param node The parent Node
 	 * @param name The name of this Termination
@@ -120,8 +144,6 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		myName = name;
 		myIntegrator = integrator;
 
-		//we save a little time by not reporting units to the dynamical system at each step
-		myNullUnits = new Units[dynamics.getInputDimension()];
 		myOutputValues = new float[transform.length];
 		
 		myValuesSet = false;
@@ -157,8 +179,8 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @param bias Intrinsic bias that is added to inputs to this termination
 	 */
 	public void setStaticBias(float[] bias) {
-		if (bias.length != myTransform.length) {
-			throw new IllegalArgumentException("Bias must have length " + myTransform.length);
+		if (bias.length != myOutputDimension) {
+			throw new IllegalArgumentException("Bias must have length " + myOutputDimension);
 		}
 		myStaticBias = bias;
 	}
@@ -189,6 +211,32 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 
 		RealOutput ro = (RealOutput) values;
 		myInputValues = new RealOutputImpl(MU.sum(ro.getValues(), myStaticBias), ro.getUnits(), ro.getTime());
+		myInputBuffer = null;
+		inputSet();
+	}
+
+	/**
+	 * @see ca.nengo.model.BufferedTermination#setBuffer(float[], float)
+	 */
+	public void setBuffer(float[] values, float time) throws SimulationException {
+		if (values.length != getDimensions()) {
+			throw new SimulationException("Dimension of input (" + values.length
+					+ ") does not equal dimension of this Termination (" + getDimensions() + ")");
+		}
+
+		myInputBuffer = values;
+		myInputBufferTime = time;
+		myInputValues = null;
+		inputSet();
+	}
+
+	private void inputSet() {
+		if (myWeightSource != null) { //copy now, because the source may run before this termination does
+			float[] activities = myWeightSource.getActivities();
+			if (activities != null) {
+				System.arraycopy(activities, 0, myActivities, 0, myActivities.length);
+			}
+		}
 
 		if (!myValuesSet) {
             myValuesSet = true;
@@ -209,23 +257,195 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			setValues(new RealOutputImpl(new float[getDimensions()], Units.UNK, 0.0f));
 		}
 
-		float[][] transform = getTransform();
-		if (myScalingTermination != null) {
-			float scale = myScalingTermination.getOutput()[0];
-			transform = MU.prod(transform, scale);
+		if (myWeights != null) {
+			runWeights(startTime, endTime);
+			return;
 		}
-		float[] dynamicsInputs = MU.prod(transform, myInputValues.getValues());
-		float[] result = new float[dynamicsInputs.length];
 
+		float[][] transform = loadTransform();
+		float scale = myScalingTermination == null ? 1 : myScalingTermination.getOutput()[0];
+		float[] input = getInputValues();
+		if (myOutputValues == null || myOutputValues.length != myDynamics.length) {
+			myOutputValues = new float[myDynamics.length];
+		}
+		float[] inVal = getStepInput();
 		for (int i = 0; i < myDynamics.length; i++) {
-			float[] inVal  = new float[]{dynamicsInputs[i]};
-			TimeSeries inSeries = new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{inVal, inVal}, myNullUnits);
-			TimeSeries outSeries = myIntegrator.integrate(myDynamics[i], inSeries);
-			result[i] = outSeries.getValues()[outSeries.getValues().length-1][0];
+			float[] row = transform[i];
+			float sum = 0;
+			for (int j = 0; j < input.length; j++) {
+				sum += (row[j] * scale) * input[j];
+			}
+			inVal[0] = sum;
+			myOutputValues[i] = myIntegrator.step(myDynamics[i], startTime, inVal, endTime, inVal)[0];
 		}
 
 		myTime = endTime;
-		myOutputValues = result;
+	}
+
+	//workspace for the input to the dynamics of one dimension (or node) in a step
+	private float[] getStepInput() {
+		if (myStepInput == null) {
+			myStepInput = new float[1];
+		}
+		return myStepInput;
+	}
+
+	//full-weight counterpart of run(...): weights, then dynamics for each postsynaptic node
+	private void runWeights(float startTime, float endTime) {
+		float[] input = myWeightInput;
+		for (int i = 0; i < input.length; i++) {
+			input[i] = 0;
+		}
+		for (int i = 0; i < myActivities.length; i++) {
+			float activity = myActivities[i];
+			if (activity != 0) {
+				float[] row = myWeights[i];
+				for (int j = 0; j < input.length; j++) {
+					input[j] += activity * row[j];
+				}
+			}
+		}
+
+		float[] inVal = getStepInput();
+		for (int i = 0; i < myWeightDynamics.length; i++) {
+			inVal[0] = input[i];
+			myCurrents[i] = myIntegrator.step(myWeightDynamics[i], startTime, inVal, endTime, inVal)[0];
+		}
+
+		myTime = endTime;
+	}
+
+	/**
+	 * <p>Runs this termination with a full weight matrix from the nodes of the given origin to the
+	 * nodes of this termination's ensemble, instead of the transform and the dynamics of each
+	 * output dimension. The weights are encoders * transform * decoders', and each postsynaptic
+	 * node has a copy of the dynamics, starting from the encoded state of the dimensions. Because
+	 * the dynamics are linear, the results are the same up to float rounding, but this is cheaper
+	 * when the dimensions are high and the ensembles small.</p>
+	 *
+	 * <p>While weights are in use, run(...) updates getCurrents() rather than getOutput(). Changing
+	 * the transform or dynamics discards the weights.</p>
+	 *
+	 * @param source The origin that projects onto this termination. Its getActivities() are read
+	 * 		in setValues(...), so it must not have noise or short-term plasticity dynamics.
+	 * @param encoders Encoding vector of each postsynaptic node, scaled by the inverse radii,
+	 * 		which map this termination's output onto the nodes' input (must have at least as many
+	 * 		rows as columns, and full rank, so that the state can be decoded again)
+	 * @throws StructuralException If the dimensions of the origin or encoders don't match
+	 */
+	public void setWeights(DecodedOrigin source, float[][] encoders) throws StructuralException {
+		if (source.getDimensions() != getDimensions()) {
+			throw new StructuralException("Origin dimension " + source.getDimensions()
+					+ " doesn't match termination dimension " + getDimensions());
+		}
+		if (!MU.isMatrix(encoders) || encoders[0].length != myOutputDimension || encoders.length < myOutputDimension) {
+			throw new StructuralException("Encoders must have " + myOutputDimension
+					+ " columns and at least as many rows");
+		}
+		if (myWeights != null && source == myWeightSource && Arrays.deepEquals(encoders, myEncoders)) {
+			return;
+		}
+		clearWeights();
+
+		float[][] decoders = source.getDecoders();
+		myWeights = MU.prod(decoders, MU.transpose(MU.prod(encoders, loadTransform())));
+		myWeightSource = source;
+		myEncoders = MU.clone(encoders);
+		myActivities = new float[decoders.length];
+		myWeightInput = new float[encoders.length];
+		myCurrents = MU.prod(myEncoders, myOutputValues);
+
+		if (myDynamics == null) {
+			setDynamics(myOutputDimension);
+		}
+		myWeightDynamics = new LinearSystem[encoders.length];
+		for (int i = 0; i < myWeightDynamics.length; i++) {
+			try {
+				myWeightDynamics[i] = (LinearSystem) myDynamicsTemplate.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new StructuralException("The clone() operation is not supported by the dynamics", e);
+			}
+		}
+		encodeState();
+	}
+
+	/**
+	 * Goes back to running with the transform and the dynamics of each output dimension (see
+	 * setWeights(...)). The state of each dimension is decoded from the states of the nodes.
+	 */
+	public void clearWeights() {
+		if (myWeights == null) {
+			return;
+		}
+
+		decodeState();
+		myWeightSource = null;
+		myEncoders = null;
+		myWeights = null;
+		myWeightDynamics = null;
+		myActivities = null;
+		myWeightInput = null;
+		myCurrents = null;
+	}
+
+	//sets the state and output of each dimension from the states and currents of the nodes
+	private void decodeState() {
+		Matrix encoders = new Matrix(MU.convert(myEncoders));
+		int order = myWeightDynamics[0].getState().length;
+		double[][] states = new double[myWeightDynamics.length][order + 1];
+		for (int i = 0; i < states.length; i++) {
+			float[] state = myWeightDynamics[i].getState();
+			for (int k = 0; k < order; k++) {
+				states[i][k] = state[k];
+			}
+			states[i][order] = myCurrents[i];
+		}
+
+		try {
+			double[][] decoded = encoders.solve(new Matrix(states)).getArray();
+			for (int d = 0; d < myDynamics.length; d++) {
+				float[] state = new float[order];
+				for (int k = 0; k < order; k++) {
+					state[k] = (float) decoded[d][k];
+				}
+				myDynamics[d].setState(state);
+				myOutputValues[d] = (float) decoded[d][order];
+			}
+		} catch (RuntimeException e) {
+			ourLogger.warn("Couldn't decode the state of termination " + myName + " from its nodes", e);
+		}
+	}
+
+	/**
+	 * @return The full weight matrix (presynaptic node X postsynaptic node) if set with
+	 * 		setWeights(...), otherwise null
+	 */
+	public float[][] getWeights() {
+		return myWeights == null ? null : MU.clone(myWeights);
+	}
+
+	/**
+	 * This method should be called after run(...).
+	 *
+	 * @return The input current to each postsynaptic node if this termination is running with
+	 * 		full weights (see setWeights(...)), otherwise null
+	 */
+	public float[] getCurrents() {
+		return myCurrents;
+	}
+
+	//sets the state of each node's dynamics from the states of the dimensions
+	private void encodeState() {
+		for (int i = 0; i < myWeightDynamics.length; i++) {
+			float[] state = new float[myWeightDynamics[i].getState().length];
+			for (int d = 0; d < myDynamics.length; d++) {
+				float[] dimensionState = myDynamics[d].getState();
+				for (int k = 0; k < state.length; k++) {
+					state[k] += myEncoders[i][d] * dimensionState[k];
+				}
+			}
+			myWeightDynamics[i].setState(state);
+		}
 	}
 
 	/**
@@ -241,9 +461,38 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @return Latest input to Termination (pre transform and dynamics)
 	 */
 	public RealOutput getInput() {
+		if (myInputValues == null && myInputBuffer != null) {
+			myInputValues = new RealOutputImpl(getInputValues().clone(), Units.UNK, myInputBufferTime);
+		}
 		return myInputValues;
 	}
 
+	/**
+	 * @return Latest input plus static bias, as it is used by run(...), or null if no input
+	 * 		has been set. Buffered input isn't copied if there is no bias, so the result must
+	 * 		not be changed, and is only valid until the next input is set.
+	 */
+	public float[] getInputValues() {
+		if (myInputValues != null || myInputBuffer == null) {
+			return myInputValues == null ? null : myInputValues.getValues();
+		}
+
+		boolean biased = false;
+		for (float bias : myStaticBias) {
+			biased = biased || bias != 0;
+		}
+		if (!biased) {
+			return myInputBuffer;
+		}
+		if (myBiasedInput == null || myBiasedInput.length != myInputBuffer.length) {
+			myBiasedInput = new float[myInputBuffer.length];
+		}
+		for (int i = 0; i < myBiasedInput.length; i++) {
+			myBiasedInput[i] = myInputBuffer[i] + myStaticBias[i];
+		}
+		return myBiasedInput;
+	}
+
 	/**
 	 * @see ca.nengo.model.Termination#getName()
 	 */
@@ -255,7 +504,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @see ca.nengo.model.Termination#getDimensions()
 	 */
 	public int getDimensions() {
-		return myTransform[0].length;
+		return myLazyTransform != null ? myLazyTransform.getColumns() : myTransform[0].length;
 	}
 
 	/**
@@ -264,14 +513,84 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	public void reset(boolean randomize) {
 		resetInitialState();
 		myInputValues = new RealOutputImpl(new float[getDimensions()], Units.UNK, 0);
+		myInputBuffer = null;
 		myValuesSet = false;
 	}
 
+	/**
+	 * Writes the latest input and output, and the state of the dynamics for each output dimension.
+	 *
+	 * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		if (myWeights != null) { //write the state of each dimension
+			decodeState();
+		}
+
+		out.writeFloat(myTime);
+		out.writeBoolean(myValuesSet);
+		RealOutput input = getInput();
+		if (input == null) {
+			Checkpoint.writeArray(out, (float[]) null);
+		} else {
+			Checkpoint.writeArray(out, input.getValues());
+			out.writeFloat(input.getTime());
+			out.writeInt(input.getUnits() == null ? -1 : input.getUnits().ordinal());
+		}
+		Checkpoint.writeArray(out, myOutputValues);
+
+		out.writeInt(myDynamics == null ? -1 : myDynamics.length);
+		for (int i = 0; myDynamics != null && i < myDynamics.length; i++) {
+			Checkpoint.writeArray(out, myDynamics[i].getState());
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+	 */
+	public void readState(DataInput in) throws IOException {
+		myTime = in.readFloat();
+		myValuesSet = in.readBoolean();
+		float[] input = Checkpoint.readFloatArray(in);
+		if (input != null) {
+			float time = in.readFloat();
+			int units = in.readInt();
+			myInputValues = new RealOutputImpl(input, units < 0 ? null : Units.values()[units], time);
+			myInputBuffer = null;
+		}
+		myOutputValues = Checkpoint.readFloatArray(in);
+
+		int n = in.readInt();
+		if (n >= 0) {
+			if (myDynamics == null) {
+				setDynamics(myOutputDimension);
+			}
+			if (n != myDynamics.length) {
+				throw new IOException("Checkpoint doesn't match dimension of termination " + myName);
+			}
+			for (int i = 0; i < n; i++) {
+				myDynamics[i].setState(Checkpoint.readFloatArray(in));
+			}
+		}
+
+		if (myWeights != null) {
+			encodeState();
+			myCurrents = MU.prod(myEncoders, myOutputValues);
+		}
+	}
+
 	private void resetInitialState() {
 		for (int i = 0; myDynamics != null && i < myDynamics.length; i++) {
-			float[] state = myInitialState != null ? myInitialState[i] : new float[myDynamics[i].getState().length];
+			float[] state = myInitialState != null ? myInitialState[i].clone() : new float[myDynamics[i].getState().length];
 			myDynamics[i].setState(state);
 		}
+		if (myWeights != null) {
+			encodeState();
+			myCurrents = MU.prod(myEncoders, new float[myOutputDimension]);
+			for (int i = 0; i < myActivities.length; i++) {
+				myActivities[i] = 0;
+			}
+		}
 	}
 
 	/**
@@ -311,7 +630,15 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * 		onto the state space represented by the NEFEnsemble to which the Termination belongs
 	 */
 	public float[][] getTransform() {
-		return MU.clone(myTransform);
+		return MU.clone(loadTransform());
+	}
+
+	private float[][] loadTransform() {
+		if (myLazyTransform != null) {
+			myTransform = myLazyTransform.load();
+			myLazyTransform = null;
+		}
+		return myTransform;
 	}
 
 	/**
@@ -319,6 +646,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * @throws StructuralException If the transform is not a matrix or has the wrong size
 	 */
 	public void setTransform(float[][] transform) throws StructuralException {
+		clearWeights();
 		if ( !MU.isMatrix(transform) ) {
 			throw new StructuralException("Given transform is not a matrix");
 		}
@@ -327,6 +655,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		}
 
 		myTransform = transform;
+		myLazyTransform = null;
 
 		if  (myStaticBias == null) {
 			myStaticBias = new float[transform[0].length];
@@ -360,15 +689,37 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	 * 		of the return value will change dynamics of all dimensions, effective next run time.
 	 */
 	public LinearSystem getDynamics() {
+		clearWeights();
 		myDynamics = null; //caller may change properties so we'll have to re-clone at next run
 		return myDynamicsTemplate;
 	}
 
+	/**
+	 * @param dimension An output dimension of this Termination
+	 * @return The dynamics of the given dimension, including their current state. Unlike
+	 * 		getDynamics(), this doesn't discard the state of any dimension, so it should only be used
+	 * 		to read the dynamics.
+	 */
+	public LinearSystem getDynamics(int dimension) {
+		if (myDynamics == null) {
+			setDynamics(myOutputDimension);
+		}
+		return myDynamics[dimension];
+	}
+
+	/**
+	 * @return Numerical integrator with which the dynamics are solved
+	 */
+	public Integrator getIntegrator() {
+		return myIntegrator;
+	}
+
 	/**
 	 * @param dynamics New dynamics for each dimension of this Termination (effective immediately).
 	 * 		This method uses a clone of the given dynamics.
 	 */
 	public void setDynamics(LinearSystem dynamics) {
+		clearWeights();
 		try {
 			myDynamicsTemplate = (LinearSystem) dynamics.clone();
 			setDynamics(myOutputDimension);
@@ -429,7 +780,7 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		if (stateName.equals(OUTPUT)) {
 			return new TimeSeriesImpl(new float[]{myTime},
-					new float[][]{myOutputValues}, Units.uniform(Units.UNK, myOutputValues.length));
+					new float[][]{myOutputValues.clone()}, Units.uniform(Units.UNK, myOutputValues.length));
 		} else {
 			throw new SimulationException("The state '" + stateName + "' is unknown");
 		}
@@ -461,12 +812,22 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	public Termination clone() throws CloneNotSupportedException {
 		try {
 			DecodedTermination result = (DecodedTermination) super.clone();
-			result.setTransform(MU.clone(myTransform));
+			result.myWeights = null; //the copy isn't connected to the same origin
+			result.myWeightSource = null;
+			result.myEncoders = null;
+			result.myWeightDynamics = null;
+			result.myActivities = null;
+			result.myWeightInput = null;
+			result.myCurrents = null;
+			result.setTransform(MU.clone(loadTransform()));
 			result.setDynamics((LinearSystem) myDynamicsTemplate.clone());
 			result.myIntegrator = myIntegrator.clone();
-			if (myInputValues != null) {
-                result.myInputValues = (RealOutput) myInputValues.clone();
+			if (getInput() != null) {
+                result.myInputValues = (RealOutput) getInput().clone();
             }
+			result.myInputBuffer = null; //belongs to the origin that this termination is connected to
+			result.myBiasedInput = null;
+			result.myStepInput = null;
 			if (myOutputValues != null) {
                 result.myOutputValues = myOutputValues.clone();
             }
@@ -478,4 +839,20 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		}
 	}
 
+	//writes the transform to the bound PayloadStore (if any) rather than the object stream
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		float[][] transform = loadTransform();
+		myLazyTransform = LazyPayload.offload(transform);
+		if (myLazyTransform != null) {
+			myTransform = null;
+		}
+
+		try {
+			out.defaultWriteObject();
+		} finally {
+			myTransform = transform;
+			myLazyTransform = null;
+		}
+	}
+
 }
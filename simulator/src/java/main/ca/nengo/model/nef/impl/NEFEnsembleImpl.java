@@ -27,8 +27,15 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
@@ -39,17 +46,21 @@ import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.LinearSystem;
 import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.io.Checkpoint;
+import ca.nengo.io.LazyPayload;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
@@ -58,8 +69,12 @@ import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.SpikeGenerator;
+import ca.nengo.model.neuron.impl.ALIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
+import ca.nengo.model.neuron.impl.RatePopulation;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.model.plasticity.impl.PESTermination;
@@ -69,7 +84,6 @@ import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.impl.LearningTask;
-import ca.nengo.util.impl.TimeSeriesImpl;
 /**
  * Default implementation of NEFEnsemble.
  *
@@ -95,13 +109,23 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 */
 	public static String INTERNEURON_SUFFIX = ":interneuron";
 
+	/**
+	 * Number of steps for which input and node output must stay the same before the nodes
+	 * are considered to be in a steady state (see setDetectQuiescence(...))
+	 */
+	public static final int QUIESCENCE_STEPS = 20;
+
 	private final int myDimension;
 	private float[][] myEncoders;
+	private LazyPayload<float[][]> myLazyEncoders; //only set while the ensemble is being written or read
 
 	private Map<String, LinearApproximator> myDecodingApproximators;
 	private boolean myReuseApproximators;
 	private float[][] myUnscaledEvalPoints;
 	private float[][] myEvalPoints;
+	private LazyPayload<Map<String, LinearApproximator>> myLazyDecodingApproximators; //set if not loaded from disk yet
+	private LazyPayload<float[][]> myLazyUnscaledEvalPoints;
+	private LazyPayload<float[][]> myLazyEvalPoints;
 	private float[] myRadii;
 	private float[] myInverseRadii;
 	private boolean myRadiiAreOne;
@@ -113,6 +137,28 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private boolean myUseGPU;
 
+	private transient DecodedTermination[] myRunTerminations; //decoded terminations, once bound
+	private transient int[] myBiasGroups; //for each of myRunTerminations, index into myBiasTerminations (-1 if not bias)
+	private transient BiasTermination[] myBiasTerminations; //one with the bias encoders for each base termination
+	private transient float[] myBias; //workspace for net input of each of myBiasTerminations
+
+	private transient float[] myScaledEncoders; //encoders divided by radii, one row per node, computed when needed
+	private transient float[] myState; //workspace for sum of termination outputs
+	private transient float[] myRadialInputs; //workspace for radial input of each node
+
+	private boolean myDetectQuiescence;
+	private float myQuiescenceTolerance = 1e-6f;
+	private transient float[] myQuiescenceInputs; //radial inputs since they last changed
+	private transient float[] myQuiescenceActivities; //node outputs at the last step run
+	private transient float[] myQuiescenceVoltages; //spiking node voltages at the last step run
+	private transient int myQuietSteps; //steps run with unchanged inputs and outputs
+	private transient int myQuiescentSteps; //steps skipped since reset
+
+	private boolean myPopulationRates;
+	private boolean myInterpolateRates;
+	private transient RatePopulation myRatePopulation; //made from the nodes at each bind
+	private transient float[] myRates; //workspace for the rate of each node
+
 	/**
 	 * @param name Unique name of Ensemble
 	 * @param nodes Nodes that make up the Ensemble
@@ -190,6 +236,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 			radii = MU.uniform(1, getDimension(), uniformRadius)[0];
 		}
 
+		loadEvalPoints();
 		myEvalPoints = new float[myUnscaledEvalPoints.length][];
 		for (int i = 0; i < myUnscaledEvalPoints.length; i++) {
 			myEvalPoints[i] = new float[myUnscaledEvalPoints[i].length];
@@ -210,6 +257,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 
 		myRadii = radii;
+		myScaledEncoders = null;
 
 		myInverseRadii = new float[radii.length];
 		myRadiiAreOne = true;
@@ -220,7 +268,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
             }
 		}
 
-		myDecodingApproximators.clear();
+		clearApproximators();
 
 		// update the decoders for any existing origins
 		Origin[] origins = getOrigins();
@@ -273,15 +321,46 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 
 		myEvalPoints = evalPoints;
+		myLazyEvalPoints = null;
 	}
 
     /**
      * @return a copy of the evaluation points
      */
     public float[][] getEvalPoints(){
+        loadEvalPoints();
         return myEvalPoints.clone();
     }
 
+	//reads eval points from disk if the ensemble was loaded lazily
+	private void loadEvalPoints() {
+		if (myLazyUnscaledEvalPoints != null) {
+			myUnscaledEvalPoints = myLazyUnscaledEvalPoints.load();
+			myLazyUnscaledEvalPoints = null;
+		}
+		if (myLazyEvalPoints != null) {
+			myEvalPoints = myLazyEvalPoints.load();
+			myLazyEvalPoints = null;
+		}
+	}
+
+	//reads cached approximators from disk if the ensemble was loaded lazily
+	private Map<String, LinearApproximator> loadApproximators() {
+		if (myLazyDecodingApproximators != null) {
+			myDecodingApproximators = myLazyDecodingApproximators.load();
+			myLazyDecodingApproximators = null;
+		}
+		return myDecodingApproximators;
+	}
+
+	private void clearApproximators() {
+		myLazyDecodingApproximators = null;
+		if (myDecodingApproximators == null) {
+			myDecodingApproximators = new HashMap<String, LinearApproximator>(10);
+		}
+		myDecodingApproximators.clear();
+	}
+
 	/**
 	 * @param dynamics DynamicalSystem that models internal neuron dynamics at the ensemble level, when
 	 * 		the ensemble runs in direct mode. The input and output dimensions must equal the dimension of the
@@ -490,6 +569,103 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		assert encoders[0].length == getDimension();
 
 		myEncoders = encoders;
+		myScaledEncoders = null;
+	}
+
+	/**
+	 * <p>With quiescence detection, the nodes aren't run while they are in a steady state,
+	 * which saves work in ensembles that are idle much of the time. The nodes are taken to be
+	 * in a steady state when their radial inputs have stayed within tolerance, and no real-valued
+	 * node output has changed by more than the tolerance, for QUIESCENCE_STEPS steps. Spiking
+	 * nodes must also have input currents at or below threshold, so that they won't fire however
+	 * long the input stays the same, and must have settled: past the refractory period, with the
+	 * membrane voltage within tolerance of its resting value (or no longer changing), and for
+	 * ALIF neurons with adaptation within tolerance of zero. This is only known for LIF and ALIF
+	 * neurons without neuron-level terminations; ensembles with other spiking nodes are always run.
+	 * The node outputs (and those of the decoded origins) are then held until the input changes,
+	 * and the nodes resume from the state they settled in.</p>
+	 *
+	 * <p>Ensembles with noisy or short-term plastic origins, learning or tasks are always run.
+	 * Noise within the nodes isn't detected, so it should only be used with deterministic nodes.</p>
+	 *
+	 * @param detect True to skip running nodes while they are quiescent
+	 */
+	public void setDetectQuiescence(boolean detect) {
+		myDetectQuiescence = detect;
+		myQuiescenceInputs = null;
+		myQuietSteps = 0;
+	}
+
+	/**
+	 * @return True if nodes aren't run while they are quiescent
+	 */
+	public boolean getDetectQuiescence() {
+		return myDetectQuiescence;
+	}
+
+	/**
+	 * @param tolerance Largest change in a node's radial input (or real-valued output) that is
+	 * 		considered to be no change, for quiescence detection (default 1e-6)
+	 */
+	public void setQuiescenceTolerance(float tolerance) {
+		myQuiescenceTolerance = tolerance;
+	}
+
+	/**
+	 * @return Largest change in a node's radial input (or output) that is considered no change
+	 */
+	public float getQuiescenceTolerance() {
+		return myQuiescenceTolerance;
+	}
+
+	/**
+	 * @return Number of steps since the last reset in which the nodes weren't run because they
+	 * 		were quiescent (each saved running every node once)
+	 */
+	public int getQuiescentSteps() {
+		return myQuiescentSteps;
+	}
+
+	/**
+	 * <p>In RATE and CONSTANT_RATE modes, the rates of LIF and ALIF nodes can be found for the
+	 * whole ensemble at once (see RatePopulation) and decoded directly, rather than by running
+	 * each node, which is much faster for large ensembles. The rates are the same.</p>
+	 *
+	 * <p>The nodes themselves aren't run, so their outputs and histories aren't updated (although
+	 * ALIF nodes keep their adaptation state). Ensembles whose nodes aren't all plain SpikingNeurons
+	 * without synaptic terminations or noise, and those with learning, tasks, or decoded origins
+	 * of node outputs other than Neuron.AXON, always run their nodes.</p>
+	 *
+	 * @param population True to find node rates for the whole ensemble at once where possible
+	 */
+	public void setPopulationRates(boolean population) {
+		myPopulationRates = population;
+		myRatePopulation = null;
+	}
+
+	/**
+	 * @return True if node rates are found for the whole ensemble at once where possible
+	 */
+	public boolean getPopulationRates() {
+		return myPopulationRates;
+	}
+
+	/**
+	 * @param interpolate True if population rates are to use an interpolated rate curve (within
+	 * 		about 0.1 spikes/s of the exact one) rather than a log per node
+	 */
+	public void setInterpolateRates(boolean interpolate) {
+		myInterpolateRates = interpolate;
+		if (myRatePopulation != null) {
+			myRatePopulation.setInterpolate(interpolate);
+		}
+	}
+
+	/**
+	 * @return True if population rates use an interpolated rate curve
+	 */
+	public boolean getInterpolateRates() {
+		return myInterpolateRates;
 	}
 
 	/**
@@ -510,6 +686,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @see ca.nengo.model.nef.NEFEnsemble#addDecodedOrigin(java.lang.String, Function[], String)
 	 */
     public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
+		loadEvalPoints();
+		loadApproximators();
 		if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 			float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
 			LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
@@ -567,6 +745,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 
 		DecodedOrigin o = (DecodedOrigin) existing;
+		loadEvalPoints();
 		BiasOrigin result = new BiasOrigin(this, name, getNodes(), o.getNodeOrigin(),
 				getConstantOutputs(myEvalPoints, o.getNodeOrigin()), numInterneurons, excitatory);
 		result.setMode(getMode());
@@ -782,40 +961,66 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
     public void run(float startTime, float endTime) throws SimulationException {
 		synchronized (this) {
 			try{
-				float[] state = new float[myDimension];
-				Map<String, Float> bias = new HashMap<String, Float>(5);
+				if (myRunTerminations == null) {
+					try {
+						bind();
+					} catch (StructuralException e) {
+						throw new SimulationException(e);
+					}
+				}
+
+				int n = getNodes().length;
+				if (myState == null || myState.length != myDimension) {
+					myState = new float[myDimension];
+				}
+				if (myRadialInputs == null || myRadialInputs.length != n) {
+					myRadialInputs = new float[n];
+				}
+				float[] state = myState;
+				float[] radialInputs = myRadialInputs; //currents from terminations with full weights, then bias, then encoded state
+				float[] bias = myBias;
+				Arrays.fill(state, 0f);
+				Arrays.fill(radialInputs, 0f);
+				Arrays.fill(bias, 0f);
+				boolean encode = false; //false if no termination contributes to the state
 
 				//run terminations and sum state ...
-				DecodedTermination[] dts = super.getDecodedTerminations();
-				for (DecodedTermination t : dts) {
+				DecodedTermination[] dts = myRunTerminations;
+				for (int k = 0; k < dts.length; k++) {
+					DecodedTermination t = dts[k];
 					t.run(startTime, endTime);
+					float[] weighted = t.getCurrents();
+					if (weighted != null) {
+						for (int i = 0; i < n; i++) {
+							radialInputs[i] += weighted[i];
+						}
+						continue;
+					}
 					float[] output = t.getOutput();
 
 					boolean isModulatory = t.getModulatory();
 					//TODO: handle modulatory bias input
-					if (t instanceof BiasTermination) {
-						String baseName = ((BiasTermination) t).getBaseTerminationName();
-						if (!bias.containsKey(baseName)) {
-                            bias.put(baseName, new Float(0));
-                        }
+					if (myBiasGroups[k] >= 0) {
 						if (!isModulatory) {
-                            bias.put(baseName, new Float(bias.get(baseName).floatValue() + output[0]));
+                            bias[myBiasGroups[k]] += output[0];
                         }
 					} else {
 						if (!isModulatory) {
-                            state = MU.sum(state, output);
+							for (int j = 0; j < myDimension; j++) {
+								state[j] += output[j];
+							}
+                            encode = true;
                         }
 					}
 
 				}
 
 				if ( getMode().equals(SimulationMode.DIRECT) || getMode().equals(SimulationMode.EXPRESS)) {
+					state = state.clone(); //origins may keep it
+
 					//run ensemble dynamics if they exist (e.g. to model adaptation)
 					if (myDirectModeDynamics != null) {
-						TimeSeries dynamicsInput = new TimeSeriesImpl(new float[]{startTime, endTime},
-								new float[][]{state, state}, Units.uniform(Units.UNK, state.length));
-						TimeSeries dynamicsOutput = myDirectModeIntegrator.integrate(myDirectModeDynamics, dynamicsInput);
-						state = dynamicsOutput.getValues()[dynamicsOutput.getValues().length-1];
+						state = myDirectModeIntegrator.step(myDirectModeDynamics, startTime, state, endTime, state);
 					}
 
 					Origin[] origins = getOrigins();
@@ -827,13 +1032,47 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					setTime(endTime);
 					// TODO Have plasticity work in DIRECT mode
 				} else {
+					for (int j = 0; j < bias.length; j++) {
+						if (bias[j] != 0) {
+							float[] biasEncoders = myBiasTerminations[j].getBiasEncoders();
+							for (int i = 0; i < n; i++) {
+								radialInputs[i] += bias[j] * biasEncoders[i];
+							}
+						}
+					}
+
 					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
-					Node[] nodes = getNodes();
-					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
+					if (encode) {
+						addProduct(getScaledEncoders(), n, myDimension, state, radialInputs);
+					}
+
+					RatePopulation population = getRatePopulation();
+					if (population != null) {
+						runPopulation(population, radialInputs, startTime, endTime);
+						return;
+					}
+
+					boolean sameInput = myDetectQuiescence && isSameInput(radialInputs);
+					if (sameInput && myQuietSteps >= QUIESCENCE_STEPS && canBeQuiescent()) {
+						//nodes are in a steady state, so their output (and that of the origins) stays the same
+						myQuiescentSteps++;
+						setTime(endTime);
+					} else {
+						if (myDetectQuiescence && !sameInput) {
+							System.arraycopy(radialInputs, 0, myQuiescenceInputs, 0, n);
+							myQuietSteps = 0;
+						}
+
+						Node[] nodes = getNodes();
+						for (int i = 0; i < n; i++) {
+							((NEFNode) nodes[i]).setRadialInput(radialInputs[i]);
+						}
+						super.run(startTime, endTime);
+
+						if (myDetectQuiescence) {
+							myQuietSteps = isSteady(radialInputs, endTime - startTime) ? myQuietSteps + 1 : 0;
+						}
 					}
-					super.run(startTime, endTime);
 				}
 			} catch (SimulationException e) {
 				e.setEnsemble(getName());
@@ -842,17 +1081,239 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
-	// @param bias Bias input (related to avoidance of negative weights with interneurons)
-	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
-		float sumBias = 0;
-		Iterator<String> it = bias.keySet().iterator();
-		while (it.hasNext()) {
-			String baseName = it.next();
-			float netBias = bias.get(baseName).floatValue();
-			float biasEncoder = ((BiasTermination) dt.get(baseName+BIAS_SUFFIX)).getBiasEncoders()[node];
-			sumBias += netBias * biasEncoder;
+	//true if radial inputs are within tolerance of those at which quiescence is being tracked
+	private boolean isSameInput(float[] radialInputs) {
+		if (myQuiescenceInputs == null || myQuiescenceInputs.length != radialInputs.length) {
+			myQuiescenceInputs = new float[radialInputs.length];
+			myQuietSteps = 0;
+			return false;
+		}
+		for (int i = 0; i < radialInputs.length; i++) {
+			if (Math.abs(radialInputs[i] - myQuiescenceInputs[i]) > myQuiescenceTolerance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * True if spiking nodes are below threshold and settled (see isAtRest(...)), and other node
+	 * outputs haven't changed (within tolerance) since the step before. Also records the outputs
+	 * for the next step.
+	 */
+	private boolean isSteady(float[] radialInputs, float stepLength) {
+		Origin[] axons = getAxons();
+		if (myQuiescenceActivities == null || myQuiescenceActivities.length != axons.length) {
+			myQuiescenceActivities = new float[axons.length];
+			myQuiescenceVoltages = new float[axons.length];
+		}
+
+		boolean result = true;
+		try {
+			for (int i = 0; i < axons.length; i++) {
+				if (axons[i] == null) {
+					return false;
+				}
+				InstantaneousOutput output = axons[i].getValues();
+				float activity;
+				if (output instanceof SpikeOutput) {
+					activity = ((SpikeOutput) output).getValues()[0] ? 1 : 0;
+					result = isAtRest(i, radialInputs[i], stepLength) && result && activity == 0;
+				} else if (output instanceof RealOutput) {
+					activity = ((RealOutput) output).getValues()[0];
+					result = result && Math.abs(activity - myQuiescenceActivities[i]) <= myQuiescenceTolerance;
+				} else {
+					return false;
+				}
+				myQuiescenceActivities[i] = activity;
+			}
+		} catch (SimulationException e) {
+			return false;
+		}
+		return result;
+	}
+
+	/*
+	 * True if the given node is a spiking neuron that won't fire with the given radial input, however
+	 * long it lasts, and whose state has settled, so that holding it gives the same spikes as running
+	 * it. Also records the node's voltage for the next step.
+	 */
+	private boolean isAtRest(int index, float radialInput, float stepLength) {
+		Node node = getNodes()[index];
+		if (!(node instanceof SpikingNeuron)) {
+			return false;
+		}
+		SpikingNeuron neuron = (SpikingNeuron) node;
+		if (neuron.getNoise() != null || !(neuron.getIntegrator() instanceof LinearSynapticIntegrator)
+				|| ((LinearSynapticIntegrator) neuron.getIntegrator()).hasTerminations()) {
+			return false;
+		}
+
+		float current = neuron.getBias() + neuron.getScale() * radialInput;
+		SpikeGenerator generator = neuron.getGenerator();
+		float voltage;
+		boolean result;
+		if (generator instanceof LIFSpikeGenerator) {
+			LIFSpikeGenerator lif = (LIFSpikeGenerator) generator;
+			voltage = lif.getVoltage();
+			result = lif.constantRateRun(current) == 0
+				&& lif.getTimeSinceLastSpike() >= lif.getTauRef() + stepLength;
+		} else if (generator instanceof ALIFSpikeGenerator) {
+			ALIFSpikeGenerator alif = (ALIFSpikeGenerator) generator;
+			voltage = alif.getVoltage();
+			result = alif.getOnsetRate(current) == 0
+				&& alif.getTimeSinceLastSpike() >= alif.getTauRef() + stepLength
+				&& alif.getN() <= myQuiescenceTolerance;
+		} else {
+			return false;
+		}
+
+		//the voltage settles at the current (R == 1), unless rounding stops it short
+		float previous = myQuiescenceVoltages[index];
+		myQuiescenceVoltages[index] = voltage;
+		return result && (Math.abs(voltage - Math.max(0, current)) <= myQuiescenceTolerance || voltage == previous);
+	}
+
+	//the population that node rates are found with in this step, or null to run the nodes
+	private RatePopulation getRatePopulation() {
+		if (!myPopulationRates || !(getMode().equals(SimulationMode.RATE) || getMode().equals(SimulationMode.CONSTANT_RATE))
+				|| getTasks().length > 0 || myPlasticEnsembleTerminations.size() > 0) {
+			return null;
+		}
+		if (myRatePopulation == null) {
+			for (DecodedOrigin origin : getDecodedOrigins()) {
+				if (!Neuron.AXON.equals(origin.getNodeOrigin())) {
+					return null;
+				}
+			}
+			myRatePopulation = RatePopulation.make(getNodes());
+			if (myRatePopulation == null) {
+				return null;
+			}
+			myRatePopulation.setInterpolate(myInterpolateRates);
+		}
+		return myRatePopulation;
+	}
+
+	//finds the rates of all nodes and decodes them, in place of running the nodes and origins
+	private void runPopulation(RatePopulation population, float[] radialInputs, float startTime, float endTime)
+			throws SimulationException {
+		if (myRates == null || myRates.length != radialInputs.length) {
+			myRates = new float[radialInputs.length];
+		}
+		population.run(radialInputs, getMode(), startTime, endTime, myRates);
+		for (DecodedOrigin origin : getDecodedOrigins()) {
+			origin.decode(myRates, startTime, endTime);
+		}
+		setTime(endTime);
+	}
+
+	//false if something other than the input could change the output (noise, plasticity, etc.)
+	private boolean canBeQuiescent() {
+		if (getTasks().length > 0 || myPlasticEnsembleTerminations.size() > 0) {
+			return false;
+		}
+		for (DecodedOrigin origin : getDecodedOrigins()) {
+			if (origin.getNoise() != null || origin.getSTPDynamics() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Adds the product of a row-major matrix and a vector to result. Rows are taken four at a
+	 * time, so that each element of the vector is loaded once per block rather than once per row.
+	 */
+	private static void addProduct(float[] matrix, int rows, int columns, float[] vector, float[] result) {
+		int i = 0;
+		for (; i + 4 <= rows; i += 4) {
+			int r0 = i * columns, r1 = r0 + columns, r2 = r1 + columns, r3 = r2 + columns;
+			float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			for (int j = 0; j < columns; j++) {
+				float v = vector[j];
+				s0 += matrix[r0 + j] * v;
+				s1 += matrix[r1 + j] * v;
+				s2 += matrix[r2 + j] * v;
+				s3 += matrix[r3 + j] * v;
+			}
+			result[i] += s0;
+			result[i+1] += s1;
+			result[i+2] += s2;
+			result[i+3] += s3;
+		}
+		for (; i < rows; i++) {
+			int r = i * columns;
+			float sum = 0;
+			for (int j = 0; j < columns; j++) {
+				sum += matrix[r + j] * vector[j];
+			}
+			result[i] += sum;
+		}
+	}
+
+	//encoders divided by radii (so that they apply to the unscaled state), as one row-major array
+	private float[] getScaledEncoders() {
+		int n = myEncoders.length;
+		if (myScaledEncoders == null || myScaledEncoders.length != n * myDimension) {
+			float[] scaled = new float[n * myDimension];
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < myDimension; j++) {
+					scaled[i * myDimension + j] = myRadiiAreOne ? myEncoders[i][j] : myEncoders[i][j] * myInverseRadii[j];
+				}
+			}
+			myScaledEncoders = scaled;
+		}
+		return myScaledEncoders;
+	}
+
+	/**
+	 * Also resolves the decoded terminations that are run and the bias termination (whose
+	 * encoders are used) for each base termination that has bias terminations. The rate
+	 * population (if population rates are used) is made again from the current nodes.
+	 *
+	 * @see ca.nengo.model.Bindable#bind()
+	 */
+	@Override
+	public void bind() throws StructuralException {
+		super.bind();
+		myRatePopulation = null; //node parameters may have changed
+
+		DecodedTermination[] terminations = getDecodedTerminations();
+		int[] groups = new int[terminations.length];
+		List<String> baseNames = new ArrayList<String>(2);
+		List<BiasTermination> biasTerminations = new ArrayList<BiasTermination>(2);
+		for (int i = 0; i < terminations.length; i++) {
+			groups[i] = -1;
+			if (terminations[i] instanceof BiasTermination) {
+				String baseName = ((BiasTermination) terminations[i]).getBaseTerminationName();
+				groups[i] = baseNames.indexOf(baseName);
+				if (groups[i] < 0) {
+					DecodedTermination bt = myDecodedTerminations.get(baseName+BIAS_SUFFIX);
+					if (!(bt instanceof BiasTermination)) {
+						throw new StructuralException("Bias termination " + baseName+BIAS_SUFFIX + " not found");
+					}
+					groups[i] = baseNames.size();
+					baseNames.add(baseName);
+					biasTerminations.add((BiasTermination) bt);
+				}
+			}
 		}
-		return sumBias;
+
+		myBiasGroups = groups;
+		myBiasTerminations = biasTerminations.toArray(new BiasTermination[0]);
+		myBias = new float[myBiasTerminations.length];
+		myRunTerminations = terminations;
+	}
+
+	@Override
+	protected void unbind() {
+		super.unbind();
+		myRunTerminations = null;
+		myBiasGroups = null;
+		myBiasTerminations = null;
+		myBias = null;
+		myRatePopulation = null;
 	}
 
 	/**
@@ -861,11 +1322,13 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @return Radial input to the given node
 	 */
 	public float getRadialInput(float[] state, int node) {
-		//scale state to unit circle if necessary
-		if (!myRadiiAreOne) {
-            state = MU.prodElementwise(state, myInverseRadii);
-        }
-		return MU.prod(state, myEncoders[node]);
+		float[] encoders = getScaledEncoders();
+		int offset = node * myDimension;
+		float result = 0;
+		for (int j = 0; j < myDimension; j++) {
+			result += encoders[offset + j] * state[j];
+		}
+		return result;
 	}
 
 	/**
@@ -874,6 +1337,14 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	@Override
     public void setMode(SimulationMode mode) {
 		super.setMode(mode);
+		myQuietSteps = 0;
+
+		//full weights need the nodes
+		if (getMode().equals(SimulationMode.DIRECT) || getMode().equals(SimulationMode.EXPRESS)) {
+			for (DecodedTermination t : getDecodedTerminations()) {
+				t.clearWeights();
+			}
+		}
 
 		Origin[] origins = getOrigins();
 		for (Origin origin : origins) {
@@ -906,6 +1377,9 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	@Override
     public void reset(boolean randomize) {
 		super.reset(randomize);
+		myQuiescenceInputs = null;
+		myQuietSteps = 0;
+		myQuiescentSteps = 0;
 
 		
 
@@ -914,6 +1388,32 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
+	/**
+	 * Also writes the state of direct-mode dynamics.
+	 *
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#writeState(java.io.DataOutput)
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		Checkpoint.writeArray(out, myDirectModeDynamics == null ? null : myDirectModeDynamics.getState());
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#readState(java.io.DataInput)
+	 */
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		float[] state = Checkpoint.readFloatArray(in);
+		if (state != null) {
+			if (myDirectModeDynamics == null) {
+				throw new IOException("Checkpoint has direct-mode dynamics for " + getName() + ", which has none");
+			}
+			myDirectModeDynamics.setState(state);
+		}
+	}
+
     public void setEnsembleFactory(NEFEnsembleFactory factory) {
 		myEnsembleFactory=factory;
 	}
@@ -963,9 +1463,11 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		redefineNodes(nodes);
 
 		myEncoders = myEnsembleFactory.getEncoderFactory().genVectors(n, getDimension());
+		myScaledEncoders = null;
 
 
-		myDecodingApproximators.clear();
+		clearApproximators();
+		loadEvalPoints();
 
 		// update the decoders for any existing origins
 		Origin[] origins = getOrigins();
@@ -1041,6 +1543,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	@Override
     public NEFEnsemble clone() throws CloneNotSupportedException {
+		loadEvalPoints();
 		NEFEnsembleImpl result = (NEFEnsembleImpl) super.clone();
 
 		result.myEncoders = MU.clone(myEncoders);
@@ -1050,11 +1553,21 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myReuseApproximators=false;
 
 		result.myDecodingApproximators = new HashMap<String, LinearApproximator>(5);
+		result.myLazyDecodingApproximators = null;
 		result.myEncoders = MU.clone(myEncoders);
 		result.myEvalPoints = MU.clone(myEvalPoints);
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+
+		//workspaces are written at each step, so the copy needs its own
+		result.myState = null;
+		result.myRadialInputs = null;
+		result.myRates = null;
+		result.myQuiescenceInputs = null;
+		result.myQuiescenceActivities = null;
+		result.myQuiescenceVoltages = null;
+		result.myQuietSteps = 0;
 		return result;
 	}
 
@@ -1062,7 +1575,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * Releases any memory that can be freed.  Should be called after all origins are created for this ensemble
 	 */
     public void releaseMemory() {
-		myDecodingApproximators.clear();
+		clearApproximators();
 	}
 
 	/**
@@ -1202,5 +1715,53 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 //		}
 //	}
 
+	//writes encoders, eval points and cached approximators to the bound PayloadStore (if any) rather than the object stream
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		loadEvalPoints();
+		Map<String, LinearApproximator> approximators = loadApproximators();
+		float[][] encoders = myEncoders;
+		float[][] unscaledEvalPoints = myUnscaledEvalPoints;
+		float[][] evalPoints = myEvalPoints;
+
+		myLazyEncoders = LazyPayload.offload(encoders);
+		if (myLazyEncoders != null) {
+			myEncoders = null;
+		}
+
+		myLazyDecodingApproximators = LazyPayload.offload(approximators);
+		if (myLazyDecodingApproximators != null) {
+			myDecodingApproximators = null;
+		}
+		myLazyUnscaledEvalPoints = LazyPayload.offload(unscaledEvalPoints);
+		if (myLazyUnscaledEvalPoints != null) {
+			myUnscaledEvalPoints = null;
+		}
+		myLazyEvalPoints = LazyPayload.offload(evalPoints);
+		if (myLazyEvalPoints != null) {
+			myEvalPoints = null;
+		}
+
+		try {
+			out.defaultWriteObject();
+		} finally {
+			myEncoders = encoders;
+			myDecodingApproximators = approximators;
+			myUnscaledEvalPoints = unscaledEvalPoints;
+			myEvalPoints = evalPoints;
+			myLazyEncoders = null;
+			myLazyDecodingApproximators = null;
+			myLazyUnscaledEvalPoints = null;
+			myLazyEvalPoints = null;
+		}
+	}
+
+	//encoders are needed to run, so unlike other payloads they are loaded right away
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (myLazyEncoders != null) {
+			myEncoders = myLazyEncoders.load();
+			myLazyEncoders = null;
+		}
+	}
 
 }
@@ -27,6 +27,9 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Properties;
 
 import ca.nengo.math.Function;
@@ -35,6 +38,7 @@ import ca.nengo.math.RootFinder;
 import ca.nengo.math.impl.AbstractFunction;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.NewtonRootFinder;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
@@ -65,7 +69,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class ALIFSpikeGenerator implements SpikeGenerator, Probeable, Checkpointable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -73,7 +77,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private static final float R = 1;
 	private static final float Vth = 1;
 //	private static final float G_N = 10;
-	private static final float G_N = 1;
+	static final float G_N = 1; //also used by RatePopulation
 
 	private SimulationMode myMode = SimulationMode.DEFAULT;
 
@@ -267,6 +271,17 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		}
 	}
 
+	/**
+	 * @return Current concentration of the adaptation-related ion
+	 */
+	public float getN() {
+		return myN;
+	}
+
+	void setN(float n) {
+		myN = n;
+	}
+
 	/**
 	 * @see ca.nengo.model.Resettable#reset(boolean)
 	 */
@@ -280,6 +295,24 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myRateHistory = ourNullRateHistory;
 	}
 
+	/**
+	 * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeFloat(myV);
+		out.writeFloat(myN);
+		out.writeFloat(myTimeSinceLastSpike);
+	}
+
+	/**
+	 * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+	 */
+	public void readState(DataInput in) throws IOException {
+		myV = in.readFloat();
+		myN = in.readFloat();
+		myTimeSinceLastSpike = in.readFloat();
+	}
+
 	/**
 	 * @see ca.nengo.model.SimulationMode.ModeConfigurable#getMode()
 	 */
@@ -322,6 +355,13 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myV;
 	}
 
+	/**
+	 * @return Time since the last spike (s)
+	 */
+	public float getTimeSinceLastSpike() {
+		return myTimeSinceLastSpike;
+	}
+
 
 	/**
 	 * @see ca.nengo.model.Probeable#listStates()
@@ -35,7 +35,6 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.NodeFactory;
 import ca.nengo.model.neuron.Neuron;
-import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.model.neuron.SynapticIntegrator;
 
 /**
@@ -53,6 +52,7 @@ public class LIFNeuronFactory implements NodeFactory {
 	private float myTauRef;
 	private PDF myMaxRate;
 	private PDF myIntercept;
+	private boolean myExactIntegration;
 	
 	private static float ourMaxTimeStep = .00025f;
 	private static Units ourCurrentUnits = Units.ACU;
@@ -133,6 +133,22 @@ public class LIFNeuronFactory implements NodeFactory {
 		myIntercept = intercept;
 	}
 
+	/**
+	 * @return True if neurons integrate their voltage with the closed-form solution
+	 * 		(see LIFSpikeGenerator.setExactIntegration(...))
+	 */
+	public boolean getExactIntegration() {
+		return myExactIntegration;
+	}
+
+	/**
+	 * @param exact True if neurons should integrate their voltage with the closed-form solution
+	 * 		(see LIFSpikeGenerator.setExactIntegration(...))
+	 */
+	public void setExactIntegration(boolean exact) {
+		myExactIntegration = exact;
+	}
+
 	/**
 	 * @see ca.nengo.model.impl.NodeFactory#make(String)
 	 */
@@ -154,7 +170,8 @@ public class LIFNeuronFactory implements NodeFactory {
 		float bias = 1f - scale * intercept;
 		
 		SynapticIntegrator integrator = new LinearSynapticIntegrator(ourMaxTimeStep, ourCurrentUnits);
-		SpikeGenerator generator = new LIFSpikeGenerator(ourMaxTimeStep, myTauRC, myTauRef);
+		LIFSpikeGenerator generator = new LIFSpikeGenerator(ourMaxTimeStep, myTauRC, myTauRef);
+		generator.setExactIntegration(myExactIntegration);
 		
 		return new ExpandableSpikingNeuron(integrator, generator, scale, bias, name);		
 	}
@@ -27,10 +27,14 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Properties;
 
 import ca.nengo.math.PDF;
 import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
@@ -53,9 +57,12 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  * of the model, although transformations may be needed if it is desired to
  * convert to more realistic parameter ranges. </p>
  *
+ * <p>In spiking modes the voltage is integrated with Euler steps no longer than the maximum
+ * time step, or optionally (see setExactIntegration(...)) with the closed-form solution.</p>
+ *
  * @author Bryan Tripp
  */
-public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class LIFSpikeGenerator implements SpikeGenerator, Probeable, Checkpointable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -73,8 +80,12 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 
 	private float myPreviousVoltage; //for linear interpolation of when spike occurs
 
-	private float[] myTime;
+	private float[] myTime; //null after an exact run, whose history is made when it is asked for
 	private float[] myVoltageHistory;
+	private float myEndTime; //end of the last run
+
+	private boolean myExactIntegration;
+	private transient float[] myExactState; //voltage and time since last spike, for integrateExactly(...)
 
 	private SimulationMode myMode;
 	private SimulationMode[] mySupportedModes;
@@ -163,6 +174,27 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myTauRef = tauRef;
 	}
 
+	/**
+	 * <p>With exact integration, the membrane voltage in spiking modes is advanced over each
+	 * interval of constant input current with the closed-form solution V(t) = J + (V(0) - J) exp(-t/tauRC),
+	 * instead of with Euler steps of at most the maximum time step. Spike times are solved for
+	 * exactly, as is the end of the refractory period, so a run over a whole simulation time step
+	 * takes one evaluation (per input interval) and gives the same firing rates as the rate
+	 * modes. The voltage history then only has the voltage at the end of the run.</p>
+	 *
+	 * @param exact True to integrate with the closed-form solution
+	 */
+	public void setExactIntegration(boolean exact) {
+		myExactIntegration = exact;
+	}
+
+	/**
+	 * @return True if the voltage is integrated with the closed-form solution
+	 */
+	public boolean getExactIntegration() {
+		return myExactIntegration;
+	}
+
 	public void reset(boolean randomize) {
 		myTimeSinceLastSpike = myTauRef;
 		myVoltage = myInitialVoltage;
@@ -171,6 +203,24 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myPreviousVoltage = myInitialVoltage;
 	}
 
+	/**
+	 * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeFloat(myVoltage);
+		out.writeFloat(myTimeSinceLastSpike);
+		out.writeFloat(myPreviousVoltage);
+	}
+
+	/**
+	 * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+	 */
+	public void readState(DataInput in) throws IOException {
+		myVoltage = in.readFloat();
+		myTimeSinceLastSpike = in.readFloat();
+		myPreviousVoltage = in.readFloat();
+	}
+
 	/**
 	 * @see ca.nengo.model.neuron.SpikeGenerator#run(float[], float[])
 	 */
@@ -179,6 +229,13 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 
 		if (myMode.equals(SimulationMode.CONSTANT_RATE) || myMode.equals(SimulationMode.RATE)) {
 			result = new RealOutputImpl(new float[]{doConstantRateRun(time[0], current[0])}, Units.SPIKES_PER_S, time[time.length-1]);
+		} else if (myExactIntegration) {
+			float spikeTime = doExactSpikingRun(time, current);
+			if (myMode.equals(SimulationMode.PRECISE)) {
+				result = new PreciseSpikeOutputImpl(new float[]{spikeTime}, Units.SPIKES, time[time.length-1]);
+			} else {
+				result = new SpikeOutputImpl(new boolean[]{spikeTime >= 0}, Units.SPIKES, time[time.length-1]);
+			}
 		} else if (myMode.equals(SimulationMode.PRECISE)) {
 			result = new PreciseSpikeOutputImpl(new float[]{doPreciseSpikingRun(time, current)}, Units.SPIKES, time[time.length-1]);
 		} else {
@@ -286,6 +343,100 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return spikeTimeFromLastTimeStep;
 	}
 
+	/*
+	 * Advances the voltage over each interval of the input, with the current at the start of the
+	 * interval held (as in doPreciseSpikingRun), using the closed-form solution. Returns the time of
+	 * the last spike after time[0], or -1 if there was no spike.
+	 */
+	private float doExactSpikingRun(float[] time, float[] current) {
+		if (time.length < 2) {
+			throw new IllegalArgumentException("Arg time must have length at least 2");
+		}
+		if (time.length != current.length) {
+			throw new IllegalArgumentException("Args time and current must have equal length");
+		}
+
+		if (myExactState == null) {
+			myExactState = new float[2];
+		}
+		myExactState[0] = myVoltage;
+		myExactState[1] = myTimeSinceLastSpike;
+		myPreviousVoltage = myVoltage;
+
+		float result = -1;
+		for (int k = 0; k + 1 < time.length; k++) {
+			float spikeTime = integrateExactly(myExactState, 0, current[k], time[k+1] - time[k], myTauRC, myTauRef);
+			if (spikeTime >= 0) {
+				result = time[k] - time[0] + spikeTime;
+			}
+		}
+
+		myVoltage = myExactState[0];
+		myTimeSinceLastSpike = myExactState[1];
+		myEndTime = time[time.length-1];
+		myTime = null;
+		return result;
+	}
+
+	/**
+	 * Advances the state of an LIF neuron over an interval of constant input current, with the
+	 * closed-form solution that is used with exact integration (see setExactIntegration(...)).
+	 * This allows simulators that keep the states of many neurons in arrays to use the same
+	 * solution.
+	 *
+	 * @param state Array that holds the membrane voltage at [offset] and the time since the last
+	 * 		spike at [offset+1], which are updated
+	 * @param offset Index of the neuron's voltage in state
+	 * @param current Input current over the interval
+	 * @param length Length of the interval (s)
+	 * @param tauRC Membrane time constant (s)
+	 * @param tauRef Refractory period (s)
+	 * @return Time of the last spike after the start of the interval, or -1 if there was no spike
+	 */
+	public static float integrateExactly(float[] state, int offset, float current, float length, float tauRC, float tauRef) {
+		float J = current * R;
+		float voltage = state[offset];
+		float timeSinceLastSpike = state[offset+1];
+		float elapsed = 0;
+		float remaining = length;
+
+		float result = -1;
+		while (remaining > 0) {
+			float refractory = tauRef - timeSinceLastSpike;
+			if (refractory > 0) { //voltage is held at zero
+				float held = Math.min(refractory, remaining);
+				timeSinceLastSpike += held;
+				elapsed += held;
+				remaining -= held;
+				continue;
+			}
+
+			float toSpike = Float.POSITIVE_INFINITY;
+			if (voltage >= Vth) {
+				toSpike = 0;
+			} else if (J > Vth) {
+				toSpike = tauRC * (float) Math.log((J - voltage) / (J - Vth));
+			}
+
+			if (toSpike <= remaining) {
+				voltage = 0;
+				timeSinceLastSpike = 0;
+				elapsed += toSpike;
+				remaining -= toSpike;
+				result = elapsed;
+			} else {
+				//once the voltage reaches zero with negative current it stays there
+				voltage = Math.max(0, J + (voltage - J) * (float) Math.exp(-remaining / tauRC));
+				timeSinceLastSpike += remaining;
+				remaining = 0;
+			}
+		}
+
+		state[offset] = voltage;
+		state[offset+1] = timeSinceLastSpike;
+		return result;
+	}
+
 	/**
 	 * @return membrane voltage
 	 */
@@ -293,6 +444,13 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myVoltage;
 	}
 
+	/**
+	 * @return Time since the last spike (s)
+	 */
+	public float getTimeSinceLastSpike() {
+		return myTimeSinceLastSpike;
+	}
+
 	//Note that no voltage history is available after a constant-rate run.
 	private float doConstantRateRun(float time, float current) {
 		myTime = ourNullTime;
@@ -316,7 +474,9 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries1D result = null;
 
-		if (stateName.equals("V")) {
+		if (stateName.equals("V") && myTime == null) {
+			result = new TimeSeries1DImpl(new float[]{myEndTime}, new float[]{myVoltage}, Units.AVU);
+		} else if (stateName.equals("V")) {
 			result = new TimeSeries1DImpl(myTime, myVoltageHistory, Units.AVU);
 		} else {
 			throw new SimulationException("The state name " + stateName + " is unknown.");
@@ -353,8 +513,9 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		LIFSpikeGenerator result = (LIFSpikeGenerator) super.clone();
 		result.mySupportedModes = new SimulationMode[mySupportedModes.length];
 		System.arraycopy(mySupportedModes, 0, result.mySupportedModes, 0, mySupportedModes.length);
-		result.myTime = myTime.clone();
+		result.myTime = myTime == null ? null : myTime.clone();
 		result.myVoltageHistory = myVoltageHistory.clone();
+		result.myExactState = null;
 		return result;
 	}
 
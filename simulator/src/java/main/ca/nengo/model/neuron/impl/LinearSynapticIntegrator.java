@@ -30,7 +30,6 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -70,6 +69,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	private float myMaxTimeStep;
 	private Units myCurrentUnits;
 	private Map<String, LinearExponentialTermination> myTerminations;
+	private transient LinearExponentialTermination[] myTerminationList; //values of myTerminations, rebuilt after changes
 
 	/**
 	 * @param maxTimeStep Maximum length of integration time step. Shorter steps may be used to better match
@@ -101,7 +101,8 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		float[] currents = new float[steps+1];
 
 		times[0] = startTime;
-		if (myTerminations.size() == 0) {
+		LinearExponentialTermination[] terminations = getTerminationList();
+		if (terminations.length == 0) {
 			for (int i = 1; i <= steps; i++) {
 				times[i] = startTime + i * dt;
 			}
@@ -111,11 +112,11 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 			//end step, but some spike generators need accurate value at end time)
 
 			times[0] = startTime;
-			currents[0] = update(myTerminations.values(), true, 0, 0);
+			currents[0] = update(terminations, true, 0, 0);
 
 			for (int i = 1; i <= steps; i++) {
 				times[i] = startTime + i * dt;
-				currents[i] = update(myTerminations.values(), false, dt, dt);
+				currents[i] = update(terminations, false, dt, dt);
 			}
 		}
 
@@ -123,12 +124,10 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	}
 
 	//update current in all Terminations
-	private static float update(Collection<LinearExponentialTermination> terminations, boolean spikes, float intTime, float decayTime) {
+	private static float update(LinearExponentialTermination[] terminations, boolean spikes, float intTime, float decayTime) {
 		float result = 0f;
 
-		Iterator<LinearExponentialTermination> it = terminations.iterator();
-		while (it.hasNext()) {
-			LinearExponentialTermination t = it.next();
+		for (LinearExponentialTermination t : terminations) {
 			float current = t.updateCurrent(spikes, intTime, decayTime);
 			if (!t.getModulatory()) {
                 result += current;
@@ -138,6 +137,20 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		return result;
 	}
 
+	/**
+	 * @return True if this integrator has any Terminations (otherwise its output is always zero)
+	 */
+	public boolean hasTerminations() {
+		return getTerminationList().length > 0;
+	}
+
+	private LinearExponentialTermination[] getTerminationList() {
+		if (myTerminationList == null) {
+			myTerminationList = myTerminations.values().toArray(new LinearExponentialTermination[0]);
+		}
+		return myTerminationList;
+	}
+
 	/**
 	 * @see ca.nengo.model.Resettable#reset(boolean)
 	 */
@@ -194,6 +207,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		LinearExponentialTermination result = new LinearExponentialTermination(myNode, name, weights, tauPSC);
 		result.setModulatory(modulatory);
 		myTerminations.put(name, result);
+		myTerminationList = null;
 
 		return result;
 	}
@@ -207,6 +221,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		}
 		
 		myTerminations.put(term.getName(), (LinearExponentialTermination)term);
+		myTerminationList = null;
 		return term;
 		
 	}
@@ -215,6 +230,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	 * @see ca.nengo.model.neuron.ExpandableSynapticIntegrator#removeTermination(java.lang.String)
 	 */
 	public Termination removeTermination(String name) throws StructuralException {
+		myTerminationList = null;
 		return myTerminations.remove(name);
 	}
 
@@ -241,6 +257,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		LinearSynapticIntegrator result = (LinearSynapticIntegrator) super.clone();
 
 		result.myTerminations = new HashMap<String, LinearExponentialTermination>(10);
+		result.myTerminationList = null;
 		for (LinearExponentialTermination oldTerm : myTerminations.values()) {
 			String name = oldTerm.getName();
 			LinearExponentialTermination newTerm = (LinearExponentialTermination) oldTerm.clone();
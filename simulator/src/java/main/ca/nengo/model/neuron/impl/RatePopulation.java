@@ -0,0 +1,173 @@
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * <p>Finds the firing rates of a population of SpikingNeurons with LIF or ALIF spike generators
+ * in RATE or CONSTANT_RATE mode, from arrays of their parameters, rather than by running each
+ * neuron. The rates are the same as those of the neurons' own rate modes. Each neuron's current
+ * is its bias plus its scale times its radial input, so the neurons must not have synaptic
+ * terminations or noise.</p>
+ *
+ * <p>The LIF rate 1 / (tauRef - tauRC ln(1 - 1/J)) costs a log per neuron. Optionally the log is
+ * interpolated instead, from a table of -ln(1 - u) for u = 1/J in [0, 1). This table doesn't depend
+ * on tauRC or tauRef, so it is shared by all neurons. Near u = 1, where -ln(1 - u) is steep, the
+ * log is found exactly. Interpolated rates are within about 0.1 spikes/s of the exact ones.</p>
+ *
+ * <p>Only the adaptation state of ALIF neurons is kept in the neurons. Their outputs and
+ * histories (and those of their generators) aren't updated.</p>
+ *
+ * @author Nengo Developers
+ */
+public class RatePopulation {
+
+	private static final int TABLE_SIZE = 1024;
+	private static float[] ourLogTable; //-ln(1-u) at u = k / TABLE_SIZE
+
+	private final float[] myBias;
+	private final float[] myScale;
+	private final float[] myTauRC;
+	private final float[] myTauRef;
+	private final ALIFSpikeGenerator[] myAdapting; //null for LIF neurons
+	private final float[] myTauN;
+	private final float[] myIncN;
+	private float[] myLogTable; //null if the log isn't interpolated
+
+	private RatePopulation(SpikingNeuron[] neurons) {
+		int n = neurons.length;
+		myBias = new float[n];
+		myScale = new float[n];
+		myTauRC = new float[n];
+		myTauRef = new float[n];
+		myAdapting = new ALIFSpikeGenerator[n];
+		myTauN = new float[n];
+		myIncN = new float[n];
+		for (int i = 0; i < n; i++) {
+			myBias[i] = neurons[i].getBias();
+			myScale[i] = neurons[i].getScale();
+			SpikeGenerator generator = neurons[i].getGenerator();
+			if (generator instanceof LIFSpikeGenerator) {
+				myTauRC[i] = ((LIFSpikeGenerator) generator).getTauRC();
+				myTauRef[i] = ((LIFSpikeGenerator) generator).getTauRef();
+			} else {
+				ALIFSpikeGenerator alif = (ALIFSpikeGenerator) generator;
+				myTauRC[i] = alif.getTauRC();
+				myTauRef[i] = alif.getTauRef();
+				myAdapting[i] = alif;
+				myTauN[i] = alif.getTauN();
+				myIncN[i] = alif.getIncN();
+			}
+		}
+	}
+
+	/**
+	 * @param nodes Nodes of a population
+	 * @return A RatePopulation for the nodes, or null if they aren't all SpikingNeurons (or
+	 * 		ExpandableSpikingNeurons) with LIF or ALIF spike generators, no synaptic terminations,
+	 * 		and no noise
+	 */
+	public static RatePopulation make(Node[] nodes) {
+		SpikingNeuron[] neurons = new SpikingNeuron[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			Class<?> type = nodes[i] == null ? null : nodes[i].getClass();
+			if (type != SpikingNeuron.class && type != ExpandableSpikingNeuron.class) {
+				return null;
+			}
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			Class<?> generator = neuron.getGenerator().getClass();
+			if (neuron.getNoise() != null || !(neuron.getIntegrator() instanceof LinearSynapticIntegrator)
+					|| neuron.getIntegrator().getTerminations().length > 0
+					|| (generator != LIFSpikeGenerator.class && generator != ALIFSpikeGenerator.class)) {
+				return null;
+			}
+			neurons[i] = neuron;
+		}
+		return new RatePopulation(neurons);
+	}
+
+	/**
+	 * @return True if the log in the rate curve is interpolated from a table
+	 */
+	public boolean getInterpolate() {
+		return myLogTable != null;
+	}
+
+	/**
+	 * @param interpolate True if the log in the rate curve is to be interpolated from a table
+	 */
+	public void setInterpolate(boolean interpolate) {
+		myLogTable = interpolate ? getLogTable() : null;
+	}
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getSize() {
+		return myBias.length;
+	}
+
+	/**
+	 * Finds the firing rate of each neuron over a time step.
+	 *
+	 * @param radialInputs Radial input of each neuron (see NEFNode)
+	 * @param mode RATE or CONSTANT_RATE (in which ALIF neurons don't adapt)
+	 * @param startTime Simulation time at which the step starts
+	 * @param endTime Simulation time at which the step ends
+	 * @param rates Array into which the rates (spikes/s) are written
+	 */
+	public void run(float[] radialInputs, SimulationMode mode, float startTime, float endTime, float[] rates) {
+		float dt = endTime - startTime;
+		boolean adapt = mode.equals(SimulationMode.RATE);
+		float[] table = myLogTable;
+
+		for (int i = 0; i < rates.length; i++) {
+			float current = myBias[i] + myScale[i] * radialInputs[i];
+			ALIFSpikeGenerator alif = myAdapting[i];
+			if (alif == null) {
+				rates[i] = getRate(current, myTauRC[i], myTauRef[i], table);
+			} else {
+				//see ALIFSpikeGenerator.run(...)
+				float n = alif.getN();
+				n = Math.max(0, n + dt * (-n / myTauN[i]));
+				if (adapt) {
+					float rate = getRate(current - ALIFSpikeGenerator.G_N * n, myTauRC[i], myTauRef[i], table);
+					n += (rate * dt) * myIncN[i];
+					rates[i] = rate;
+				} else {
+					rates[i] = getRate(current, myTauRC[i], myTauRef[i], table);
+				}
+				alif.setN(n);
+			}
+		}
+	}
+
+	//LIF rate curve (implicitly Vth == R == 1), with an interpolated log if a table is given
+	private static float getRate(float current, float tauRC, float tauRef, float[] table) {
+		if (current <= 1) {
+			return 0;
+		}
+		if (table != null) {
+			float x = TABLE_SIZE / current; //u in table steps
+			int k = (int) x;
+			if (k < TABLE_SIZE - 2) {
+				float g = table[k] + (x - k) * (table[k+1] - table[k]);
+				return 1f / (tauRef + tauRC * g);
+			}
+		}
+		return 1f / ( tauRef - tauRC * ((float) Math.log(1 - 1/current)) );
+	}
+
+	private static synchronized float[] getLogTable() {
+		if (ourLogTable == null) {
+			float[] table = new float[TABLE_SIZE];
+			for (int k = 0; k < TABLE_SIZE; k++) {
+				table[k] = (float) -Math.log(1 - (double) k / TABLE_SIZE);
+			}
+			ourLogTable = table;
+		}
+		return ourLogTable;
+	}
+
+}
@@ -27,11 +27,16 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Noise;
@@ -61,7 +66,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class SpikingNeuron implements Neuron, Probeable, NEFNode {
+public class SpikingNeuron implements Neuron, Probeable, NEFNode, Checkpointable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -75,7 +80,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	private SpikeGeneratorOrigin mySpikeOrigin;
 	private BasicOrigin myCurrentOrigin;
 	private float myUnscaledCurrent;
-	private TimeSeries1D myCurrent;
+	private TimeSeries1D myCurrent; //null after a run with exact LIF integration (see getCurrent() and writeObject(...))
+	private transient float[] myStepTimes; //start and end of the last step, with exact LIF integration
+	private transient float[] myStepInput; //generator input over the last step, with exact LIF integration
 	private String myName;
 	private float myScale;
 	private float myBias;
@@ -121,6 +128,11 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	 * @see ca.nengo.model.neuron.Neuron#run(float, float)
 	 */
 	public void run(float startTime, float endTime) throws SimulationException {
+		if (isExactStep()) {
+			runExactStep(startTime, endTime);
+			return;
+		}
+
 		//TODO: this method could use some cleanup and optimization
 		TimeSeries1D current = myIntegrator.run(startTime, endTime);
 
@@ -141,6 +153,49 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
 	}
 
+	/*
+	 * True if the generator integrates LIF dynamics exactly and the input is constant over
+	 * the step, so that the integrator's sub-steps would add nothing.
+	 */
+	private boolean isExactStep() {
+		return myNoise == null
+			&& myGenerator instanceof LIFSpikeGenerator && ((LIFSpikeGenerator) myGenerator).getExactIntegration()
+			&& myIntegrator instanceof LinearSynapticIntegrator && !((LinearSynapticIntegrator) myIntegrator).hasTerminations();
+	}
+
+	//runs the generator over the whole step with the radial input, reusing the input arrays
+	private void runExactStep(float startTime, float endTime) throws SimulationException {
+		if (myStepTimes == null) {
+			myStepTimes = new float[2];
+			myStepInput = new float[2];
+		}
+		myUnscaledCurrent = myRadialInput;
+		myStepTimes[0] = startTime;
+		myStepTimes[1] = endTime;
+		myStepInput[0] = myBias + myScale * myUnscaledCurrent;
+		myStepInput[1] = myStepInput[0];
+		myCurrent = null;
+
+		mySpikeOrigin.run(myStepTimes, myStepInput);
+		myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+	}
+
+	//history of the generator input over the last step
+	private TimeSeries1D getCurrent() {
+		if (myCurrent == null) {
+			myCurrent = myStepTimes == null
+				? new TimeSeries1DImpl(new float[]{0}, new float[]{0}, Units.UNK)
+				: new TimeSeries1DImpl(myStepTimes.clone(), myStepInput.clone(), Units.UNK);
+		}
+		return myCurrent;
+	}
+
+	//the step arrays are transient, so the current is written in their place
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getCurrent();
+		out.defaultWriteObject();
+	}
+
 	/**
 	 * @see ca.nengo.model.neuron.Neuron#getOrigins()
 	 */
@@ -192,6 +247,33 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		myRadialInput = 0;
 	}
 
+	/**
+	 * Writes the state of the SpikeGenerator (if it is Checkpointable). Synaptic state
+	 * is written with the Terminations.
+	 *
+	 * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		if (myGenerator instanceof Checkpointable) {
+			out.writeBoolean(true);
+			((Checkpointable) myGenerator).writeState(out);
+		} else {
+			out.writeBoolean(false);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+	 */
+	public void readState(DataInput in) throws IOException {
+		if (in.readBoolean()) {
+			if (!(myGenerator instanceof Checkpointable)) {
+				throw new IOException("Spike generator of " + myName + " doesn't support checkpoints");
+			}
+			((Checkpointable) myGenerator).readState(in);
+		}
+	}
+
 	/**
 	 * Available states include "I" (net current into SpikeGenerator) and the states of the
 	 * SpikeGenerator.
@@ -201,10 +283,10 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries result = null;
 		if (stateName.equals("I")) {
-			result = myCurrent;
+			result = getCurrent();
 		} else if (stateName.equals("rate")) {
 			InstantaneousOutput output = mySpikeOrigin.getValues();
-			float[] times = myCurrent.getTimes();
+			float[] times = getCurrent().getTimes();
 			float rate = 0;
 			if (output instanceof RealOutput) {
 				rate = ((RealOutput) output).getValues()[0];
@@ -213,7 +295,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			}
 			result = new TimeSeries1DImpl(new float[]{times[times.length-1]}, new float[]{rate}, Units.SPIKES_PER_S);
 		} else if (stateName.equals(CURRENT)) {
-			float[] times = myCurrent.getTimes();
+			float[] times = getCurrent().getTimes();
 			result = new TimeSeries1DImpl(new float[]{times[times.length-1]}, new float[]{myUnscaledCurrent}, Units.ACU);
 		} else if (myGenerator instanceof Probeable) {
 			result = ((Probeable) myGenerator).getHistory(stateName);
@@ -371,7 +453,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	@Override
 	public SpikingNeuron clone() throws CloneNotSupportedException {
 		SpikingNeuron result = (SpikingNeuron) super.clone();
-		result.myCurrent = (TimeSeries1D) myCurrent.clone();
+		result.myCurrent = (TimeSeries1D) getCurrent().clone();
+		result.myStepTimes = null;
+		result.myStepInput = null;
 
 		result.myCurrentOrigin = (BasicOrigin) myCurrentOrigin.clone();
 
@@ -27,6 +27,11 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.plasticity.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ca.nengo.io.Checkpoint;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.PlasticNodeTermination;
@@ -95,6 +100,24 @@ public abstract class ModulatedPlasticEnsembleTermination extends PlasticEnsembl
         }
     }
 
+    /**
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#writeState(java.io.DataOutput)
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        Checkpoint.writeArray(out, myModInput);
+    }
+
+    /**
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#readState(java.io.DataInput)
+     */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        myModInput = Checkpoint.readFloatArray(in);
+    }
+
     /**
      * @param name Name of the termination from which modulatory input is drawn
      * @param state The state to set
@@ -27,6 +27,11 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.plasticity.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ca.nengo.io.Checkpoint;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.RealOutput;
@@ -62,6 +67,14 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
 
     private boolean myOja = false; // Apply Oja smoothing?
 
+    //error and activity accumulated over the steps since the last transform update
+    private int myNumSteps;
+    private boolean myApplied;
+    private float[] myStepError; //of the most recent step
+    private float[] myStepInput; //of the most recent step
+    private float[][] myErrorActivity; //sum over steps of error (outer product) filtered input
+    private float myOjaSum;
+
     /**
      * @param ensemble The ensemble this termination belongs to
      * @param name Name of this Termination
@@ -86,6 +99,9 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
     public void reset(boolean randomize) {
         super.reset(randomize);
         myLastTime = 0.0f;
+        myNumSteps = 0;
+        myApplied = false;
+        myOjaSum = 0.0f;
 
         if (myFilteredInput == null) { return; }
         for (int i=0; i < myFilteredInput.length; i++) {
@@ -93,6 +109,38 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
         }
     }
 
+    /**
+     * @see ca.nengo.model.plasticity.impl.ModulatedPlasticEnsembleTermination#writeState(java.io.DataOutput)
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeFloat(myLastTime);
+        Checkpoint.writeArray(out, myFilteredInput);
+        out.writeInt(myNumSteps);
+        out.writeBoolean(myApplied);
+        out.writeFloat(myOjaSum);
+        Checkpoint.writeArray(out, myStepError);
+        Checkpoint.writeArray(out, myStepInput);
+        Checkpoint.writeMatrix(out, myErrorActivity);
+    }
+
+    /**
+     * @see ca.nengo.model.plasticity.impl.ModulatedPlasticEnsembleTermination#readState(java.io.DataInput)
+     */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        myLastTime = in.readFloat();
+        myFilteredInput = Checkpoint.readFloatArray(in);
+        myNumSteps = in.readInt();
+        myApplied = in.readBoolean();
+        myOjaSum = in.readFloat();
+        myStepError = Checkpoint.readFloatArray(in);
+        myStepInput = Checkpoint.readFloatArray(in);
+        myErrorActivity = Checkpoint.readMatrix(in);
+    }
+
     /**
      * @return Name of Origin from which post-synaptic activity is drawn
      */
@@ -107,9 +155,8 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
         myOja = oja;
     }
 
-    private void updateInput() {
+    private void updateInput(float integrationTime) {
         InstantaneousOutput input = this.getInput();
-        float integrationTime = 0.001f;
         float tauPSC = getNodeTerminations()[0].getTau(); //0.005
 
         if (input instanceof RealOutput) {
@@ -136,50 +183,126 @@ public class PESTermination extends ModulatedPlasticEnsembleTermination  {
     }
 
     /**
-     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#updateTransform(float, int, int)
+     * Filters the input and adds this step's error and activity to the sums that the next
+     * call to updateTransform applies. The PES update is linear in the error and activity, so
+     * applying the sums once per plasticity interval gives the same weights as updating every
+     * step (the Oja term excepted, which is applied to first order).
+     *
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#accumulate(float)
      */
     @Override
-    public void updateTransform(float time, int start, int end) throws StructuralException {
-        if (myModTermName == null || myOriginName == null) {
-            throw new StructuralException("Origin name not set in PESTermination");
-        }
+    public void accumulate(float time) throws StructuralException {
+        if (myLastTime >= time) { return; }
+        this.updateInput(time - myLastTime);
+        myLastTime = time;
 
-        if (myLastTime < time) {
-            this.updateInput();
-            myLastTime = time;
+        if (myApplied) {
+            myNumSteps = 0;
+            myOjaSum = 0.0f;
+            myApplied = false;
         }
+        if (myModInput == null) { return; }
 
-        float[][] transform = this.getTransform();
+        float[] error = myModInput;
+        float[] input = myFilteredInput;
+        if (myStepError == null || myStepError.length != error.length) {
+            myStepError = new float[error.length];
+        }
+        if (myStepInput == null || myStepInput.length != input.length) {
+            myStepInput = new float[input.length];
+        }
 
-        for (int i = start; i < end; i++) {
-            for (int j = 0; j < transform[i].length; j++) {
-                float e = 0.0f;
-                for (int k = 0; k < myModInput.length; k++) {
-                    e += myModInput[k] * myEncoders[i][k];
+        //the sums are only formed once a second step arrives; one step is applied directly
+        if (myNumSteps == 1) {
+            if (myErrorActivity == null || myErrorActivity.length != error.length
+                    || myErrorActivity[0].length != input.length) {
+                myErrorActivity = new float[error.length][input.length];
+            }
+            for (int k = 0; k < error.length; k++) {
+                for (int j = 0; j < input.length; j++) {
+                    myErrorActivity[k][j] = myStepError[k] * myStepInput[j];
                 }
-                float delta = deltaOmega(myFilteredInput[j],time,transform[i][j],myGain[i],e);
-                transform[i][j] += delta;
             }
         }
-
-        this.setTransform(transform, false);
-    }
-
-    private float deltaOmega(float input, float time, float currentWeight, float gain, float e) {
-        float oja = 0.0f;
+        if (myNumSteps >= 1) {
+            for (int k = 0; k < error.length; k++) {
+                float e = error[k];
+                if (e == 0.0f) { continue; }
+                for (int j = 0; j < input.length; j++) {
+                    myErrorActivity[k][j] += e * input[j];
+                }
+            }
+        }
+        System.arraycopy(error, 0, myStepError, 0, error.length);
+        System.arraycopy(input, 0, myStepInput, 0, input.length);
 
         if (myOja) {
             for (float element : myOutput) {
-                oja += myLearningRate*element*element*currentWeight;
+                myOjaSum += myLearningRate*element*element;
             }
         }
+        myNumSteps++;
+    }
+
+    /**
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#updateTransform(float, int, int)
+     */
+    @Override
+    public void updateTransform(float time, int start, int end) throws StructuralException {
+        if (myModTermName == null || myOriginName == null) {
+            throw new StructuralException("Origin name not set in PESTermination");
+        }
+
+        myApplied = true; //LearningTasks for different rows may run at once; all set the same flag
+        if (myNumSteps == 0) { return; }
 
-        return myLearningRate * input * e * gain - oja;
+        float oja = myOjaSum;
+        float[] weights = this.getWeights();
+        int dimension = getDimensions();
+        for (int i = start; i < end; i++) {
+            int offset = i * dimension;
+            if (oja != 0.0f) {
+                for (int j = 0; j < dimension; j++) {
+                    weights[offset + j] -= oja * weights[offset + j];
+                }
+            }
+
+            float gain = myLearningRate * myGain[i];
+            if (myNumSteps == 1) {
+                //rank-1 update of the row, in place in the shared weight matrix
+                float e = 0.0f;
+                for (int k = 0; k < myStepError.length; k++) {
+                    e += myStepError[k] * myEncoders[i][k];
+                }
+                float scale = gain * e;
+                for (int j = 0; j < dimension; j++) {
+                    weights[offset + j] += scale * myStepInput[j];
+                }
+            } else {
+                for (int k = 0; k < myErrorActivity.length; k++) {
+                    float scale = gain * myEncoders[i][k];
+                    if (scale == 0.0f) { continue; }
+                    float[] sum = myErrorActivity[k];
+                    for (int j = 0; j < dimension; j++) {
+                        weights[offset + j] += scale * sum[j];
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public PESTermination clone() throws CloneNotSupportedException {
         PESTermination result = (PESTermination) super.clone();
+        result.myFilteredInput = (myFilteredInput == null) ? null : myFilteredInput.clone();
+        result.myStepError = (myStepError == null) ? null : myStepError.clone();
+        result.myStepInput = (myStepInput == null) ? null : myStepInput.clone();
+        if (myErrorActivity != null) {
+            result.myErrorActivity = new float[myErrorActivity.length][];
+            for (int i = 0; i < myErrorActivity.length; i++) {
+                result.myErrorActivity[i] = myErrorActivity[i].clone();
+            }
+        }
         return result;
     }
 }
@@ -63,6 +63,7 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
 
     private float myPlasticityInterval;
     private float myLastPlasticityTime;
+    private float myLastLearningTime;
     private boolean myLearning = true;
 
     protected final Map<String, PlasticEnsembleTermination> myPlasticEnsembleTerminations;
@@ -135,8 +136,10 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
 
         setStates(endTime); // updates myLastPlasticityTime
 
-        if ((myPlasticityInterval <= 0 && myLearning) ||
-                (myLearning && endTime >= myLastPlasticityTime + myPlasticityInterval)) {
+        //half a step of slack so that float rounding of the times doesn't skip an interval
+        if (myLearning && (myPlasticityInterval <= 0
+                || endTime >= myLastLearningTime + myPlasticityInterval - (endTime - startTime) / 2)) {
+            myLastLearningTime = endTime;
             for (LearningTask task : myTasks) {
                 task.reset(false);
             }
@@ -158,6 +161,10 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
                         ((ModulatedPlasticEnsembleTermination) pet).setModTerminationState
                         (modTerm.getName(), input, endTime);
                     }
+
+                    if (myLearning) {
+                        pet.accumulate(endTime);
+                    }
                 }
                 catch (StructuralException e) {
                     throw new SimulationException(e.getMessage());
@@ -174,6 +181,12 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
     public void reset(boolean randomize) {
         super.reset(randomize);
         myLastPlasticityTime = 0.0f;
+        myLastLearningTime = 0.0f;
+
+        //the plastic terminations aren't among the expanded terminations reset by super
+        for (PlasticEnsembleTermination pet : myPlasticEnsembleTerminations.values()) {
+            pet.reset(randomize);
+        }
     }
 
     /**
@@ -27,6 +27,12 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.plasticity.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ca.nengo.io.Checkpoint;
+import ca.nengo.model.Checkpointable;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.PlasticNodeTermination;
@@ -54,13 +60,14 @@ import ca.nengo.model.nef.NEFEnsemble;
  * @author Trevor Bekolay
  * @author Jonathan Lai
  */
-public abstract class PlasticEnsembleTermination extends EnsembleTermination {
+public abstract class PlasticEnsembleTermination extends EnsembleTermination implements Checkpointable {
 
     private static final long serialVersionUID = 1L;
     protected float myLearningRate = 5e-7f;
     protected boolean myLearning = true;
     protected String myOriginName;
     protected float[] myOutput;
+    private float[] myWeights; //weights of all node terminations, row-major
 
     /**
      * @param node The parent Node
@@ -72,6 +79,7 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
     public PlasticEnsembleTermination(Node node, String name, PlasticNodeTermination[] nodeTerminations) throws StructuralException {
         super(node, name, nodeTerminations);
         setOriginName(NEFEnsemble.X); // Start with the X origin by default
+        getWeights();
         saveTransform();
     }
 
@@ -115,16 +123,34 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
     }
 
     /**
-     * @return The transformation matrix, which is made up of the
+     * @return The weights of all the PlasticNodeTerminations within, in one row-major
+     *   matrix (row i holds the weights of the ith Node). The PlasticNodeTerminations
+     *   read their weights from this matrix, so learning rules can change it directly.
+     */
+    public float[] getWeights() {
+        if (myWeights == null) {
+            Termination[] terms = this.getNodeTerminations();
+            int dimension = getDimensions();
+            float[] weights = new float[terms.length * dimension];
+            for (int i=0; i < terms.length; i++) {
+                ((PlasticNodeTermination) terms[i]).setWeightMatrix(weights, i * dimension);
+            }
+            myWeights = weights;
+        }
+        return myWeights;
+    }
+
+    /**
+     * @return A copy of the transformation matrix, which is made up of the
      *   weight vectors for each of the PlasticNodeTerminations within.
      *   This can be thought of as the connection weight matrix in most cases.
      */
     public float[][] getTransform() {
-        Termination[] terms = this.getNodeTerminations();
-        float[][] transform = new float[terms.length][];
-        for (int i=0; i < terms.length; i++) {
-            PlasticNodeTermination pnt = (PlasticNodeTermination) terms[i];
-            transform[i] = pnt.getWeights();
+        float[] weights = getWeights();
+        int dimension = getDimensions();
+        float[][] transform = new float[getNodeTerminations().length][dimension];
+        for (int i=0; i < transform.length; i++) {
+            System.arraycopy(weights, i * dimension, transform[i], 0, dimension);
         }
 
         return transform;
@@ -132,14 +158,19 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
 
     /**
      * @param transform The transformation matrix, which can be thought of as
-     *   the connection weight matrix in most cases. This will be passed through
-     *   to set the weight vectors on each PlasticNodeTermination within.
+     *   the connection weight matrix in most cases. This will be copied into
+     *   the weights of the PlasticNodeTerminations within.
+     * @param save Should the weights be saved for resetting purposes?
      */
     public void setTransform(float[][] transform, boolean save) {
-        Termination[] terms = this.getNodeTerminations();
-        for(int i = 0; i < terms.length; i++) {
-            PlasticNodeTermination pnt = (PlasticNodeTermination) terms[i];
-            pnt.setWeights(transform[i], save);
+        float[] weights = getWeights();
+        int dimension = getDimensions();
+        for(int i = 0; i < transform.length; i++) {
+            System.arraycopy(transform[i], 0, weights, i * dimension, dimension);
+        }
+
+        if (save) {
+            saveTransform();
         }
     }
 
@@ -169,6 +200,35 @@ public abstract class PlasticEnsembleTermination extends EnsembleTermination {
         }
     }
 
+    /**
+     * Writes the state of the learning rule. The weights themselves are written with the
+     * PlasticNodeTerminations within.
+     *
+     * @see ca.nengo.model.Checkpointable#writeState(java.io.DataOutput)
+     */
+    public void writeState(DataOutput out) throws IOException {
+        Checkpoint.writeArray(out, myOutput);
+    }
+
+    /**
+     * @see ca.nengo.model.Checkpointable#readState(java.io.DataInput)
+     */
+    public void readState(DataInput in) throws IOException {
+        myOutput = Checkpoint.readFloatArray(in);
+    }
+
+    /**
+     * Called every time step while learning is on, after the origin (and modulatory) state for
+     * the step has been set, whether or not the transform is updated in that step. Rules that
+     * accumulate activity over a plasticity interval (see PlasticEnsemble.setPlasticityInterval)
+     * do so here; the default does nothing.
+     *
+     * @param time Current time
+     * @throws StructuralException if the state needed by the rule is not available
+     */
+    public void accumulate(float time) throws StructuralException {
+    }
+
     /**
      * @param time Current time
      * @param start The start index of the range of transform values to update (for multithreading)
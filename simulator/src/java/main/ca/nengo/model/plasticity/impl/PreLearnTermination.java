@@ -27,6 +27,11 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.plasticity.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ca.nengo.io.Checkpoint;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.SpikeOutput;
@@ -79,6 +84,26 @@ public class PreLearnTermination extends ModulatedPlasticEnsembleTermination  {
         }
     }
 
+    /**
+     * @see ca.nengo.model.plasticity.impl.ModulatedPlasticEnsembleTermination#writeState(java.io.DataOutput)
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeFloat(myLastTime);
+        Checkpoint.writeArray(out, myInSpiking);
+    }
+
+    /**
+     * @see ca.nengo.model.plasticity.impl.ModulatedPlasticEnsembleTermination#readState(java.io.DataInput)
+     */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        myLastTime = in.readFloat();
+        myInSpiking = Checkpoint.readBooleanArray(in);
+    }
+
     private void updateInput() {
         InstantaneousOutput input = this.getInput();
         myInSpiking = ((SpikeOutput) input).getValues();
@@ -98,22 +123,22 @@ public class PreLearnTermination extends ModulatedPlasticEnsembleTermination  {
             myLastTime = time;
         }
 
-        float[][] transform = this.getTransform();
+        float[] weights = this.getWeights();
+        int dimension = getDimensions();
 
         for (int i = start; i < end; i++) {
-            for (int j = 0; j < transform[i].length; j++) {
-                float e = 0.0f;
-                for (int k = 0; k < myModInput.length; k++) {
-                    e += myModInput[k] * myEncoders[i][k];
-                }
+            float e = 0.0f;
+            for (int k = 0; k < myModInput.length; k++) {
+                e += myModInput[k] * myEncoders[i][k];
+            }
 
+            int offset = i * dimension;
+            for (int j = 0; j < dimension; j++) {
                 if (myInSpiking[j]) {
-                	transform[i][j] += deltaOmega(1.0f,time,transform[i][j],myGain[i],e);
+                	weights[offset + j] += deltaOmega(1.0f,time,weights[offset + j],myGain[i],e);
                 }
             }
         }
-
-        this.setTransform(transform, false);
     }
 
     private float deltaOmega(float input, float time, float currentWeight, float gain, float e) {
@@ -30,6 +30,13 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.plasticity.impl;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ca.nengo.io.Checkpoint;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.SpikeOutput;
@@ -44,6 +51,11 @@ import ca.nengo.model.neuron.Neuron;
  * a spiking SimulationMode. Spiking input is also the only way to simulate spike-timing-dependent
  * plasticity.</p>
  *
+ * <p>Updates are event-driven: spike traces decay lazily (by the number of steps since each
+ * trace last changed), and weights change only in the rows of postsynaptic neurons and the
+ * columns of presynaptic neurons that spiked in a step. The cost of learning therefore scales
+ * with the number of spikes rather than the size of the weight matrix.</p>
+ *
  * @author Bryan Tripp
  * @author Jonathan Lai
  */
@@ -54,16 +66,16 @@ public class STDPTermination extends PlasticEnsembleTermination {
     private static final int HISTORY_LENGTH = 2;
 
     private float myLastTime = 0.0f;
+    private int myStep = 0;
 
     private float[][] myPreSpikeHistory;
     private float[][] myPostSpikeHistory;
     private boolean[] myPreSpiking;
     private boolean[] myPostSpiking;
-
-    private float[] myPostTrace1;
-    private float[] myPostTrace2;
-    private float[] myPreTrace1;
-    private float[] myPreTrace2;
+    private int[] myPreSpikes; //indices of neurons that spiked in the current step
+    private int[] myPostSpikes;
+    private int myNumPreSpikes;
+    private int myNumPostSpikes;
 
     private float myA2Minus = 6.6e-3f;
     private float myA3Minus = 3.1e-3f;
@@ -74,6 +86,11 @@ public class STDPTermination extends PlasticEnsembleTermination {
     private float myTauPlus = 16.8f;
     private float myTauY = 125.0f;
 
+    private final Trace myPostTrace1;
+    private final Trace myPostTrace2;
+    private final Trace myPreTrace1;
+    private final Trace myPreTrace2;
+
     /**
      * @param node The parent Node
      * @param name Name of this Termination
@@ -87,10 +104,17 @@ public class STDPTermination extends PlasticEnsembleTermination {
         int preLength = nodeTerminations[0].getDimensions();
         int postLength = nodeTerminations.length;
 
-        myPostTrace1 = new float[postLength];
-        myPostTrace2 = new float[postLength];
-        myPreTrace1 = new float[preLength];
-        myPreTrace2 = new float[preLength];
+        myPreSpikeHistory = new float[HISTORY_LENGTH][preLength];
+        myPostSpikeHistory = new float[HISTORY_LENGTH][postLength];
+        myPreSpiking = new boolean[preLength];
+        myPostSpiking = new boolean[postLength];
+        myPreSpikes = new int[preLength];
+        myPostSpikes = new int[postLength];
+
+        myPostTrace1 = new Trace(postLength, myTauMinus);
+        myPostTrace2 = new Trace(postLength, myTauY);
+        myPreTrace1 = new Trace(preLength, myTauPlus);
+        myPreTrace2 = new Trace(preLength, myTauX);
     }
 
     @Override
@@ -104,7 +128,7 @@ public class STDPTermination extends PlasticEnsembleTermination {
 
         if (!name.equals(myOriginName)) { return; }
 
-        updateHistory(myPostSpiking, myPostSpikeHistory, (SpikeOutput)state, time);
+        myNumPostSpikes = updateHistory(myPostSpiking, myPostSpikeHistory, myPostSpikes, (SpikeOutput)state, time);
     }
 
     private void updateInput(float time) throws StructuralException {
@@ -114,7 +138,7 @@ public class STDPTermination extends PlasticEnsembleTermination {
             throw new StructuralException("Termination must be Spiking in STDPTermination");
         }
 
-        updateHistory(myPreSpiking, myPreSpikeHistory, (SpikeOutput)input, time);
+        myNumPreSpikes = updateHistory(myPreSpiking, myPreSpikeHistory, myPreSpikes, (SpikeOutput)input, time);
     }
 
 
@@ -123,15 +147,70 @@ public class STDPTermination extends PlasticEnsembleTermination {
      */
     @Override
     public void reset(boolean randomize) {
+        super.reset(randomize);
+        myLastTime = 0.0f;
+        myStep = 0;
+        myNumPreSpikes = 0;
+        myNumPostSpikes = 0;
+        for (int i = 0; i < HISTORY_LENGTH; i++) {
+            Arrays.fill(myPreSpikeHistory[i], 0.0f);
+            Arrays.fill(myPostSpikeHistory[i], 0.0f);
+        }
+        Arrays.fill(myPreSpiking, false);
+        Arrays.fill(myPostSpiking, false);
+        myPostTrace1.set(null, 0);
+        myPostTrace2.set(null, 0);
+        myPreTrace1.set(null, 0);
+        myPreTrace2.set(null, 0);
+    }
+
+    /**
+     * Writes spike histories and traces.
+     *
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#writeState(java.io.DataOutput)
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeFloat(myLastTime);
+        Checkpoint.writeMatrix(out, myPreSpikeHistory);
+        Checkpoint.writeMatrix(out, myPostSpikeHistory);
+        Checkpoint.writeArray(out, myPreSpiking);
+        Checkpoint.writeArray(out, myPostSpiking);
+        Checkpoint.writeArray(out, myPostTrace1.get(myStep));
+        Checkpoint.writeArray(out, myPostTrace2.get(myStep));
+        Checkpoint.writeArray(out, myPreTrace1.get(myStep));
+        Checkpoint.writeArray(out, myPreTrace2.get(myStep));
+    }
+
+    /**
+     * @see ca.nengo.model.plasticity.impl.PlasticEnsembleTermination#readState(java.io.DataInput)
+     */
+    @Override
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        myLastTime = in.readFloat();
+        myPreSpikeHistory = Checkpoint.readMatrix(in);
+        myPostSpikeHistory = Checkpoint.readMatrix(in);
+        myPreSpiking = Checkpoint.readBooleanArray(in);
+        myPostSpiking = Checkpoint.readBooleanArray(in);
+        myPostTrace1.set(Checkpoint.readFloatArray(in), myStep);
+        myPostTrace2.set(Checkpoint.readFloatArray(in), myStep);
+        myPreTrace1.set(Checkpoint.readFloatArray(in), myStep);
+        myPreTrace2.set(Checkpoint.readFloatArray(in), myStep);
+        myNumPreSpikes = 0;
+        myNumPostSpikes = 0;
     }
 
-    private static void updateHistory(boolean[] spiking,
-            float[][] spikeHistory, SpikeOutput state, float time) {
+    //returns number of spikes, the indices of which are written to spikeIndices
+    private static int updateHistory(boolean[] spiking,
+            float[][] spikeHistory, int[] spikeIndices, SpikeOutput state, float time) {
         if (spikeHistory[0].length != state.getDimension()) {
             throw new IllegalArgumentException("Expected activity of dimension "
                     + spikeHistory[0].length + ", got dimension " + state.getDimension());
         }
 
+        int n = 0;
         boolean[] spikes = state.getValues();
         for (int i = 0; i < spikes.length; i++) {
             if (spikes[i]) {
@@ -140,96 +219,142 @@ public class STDPTermination extends PlasticEnsembleTermination {
                 }
                 spikeHistory[0][i] = time;
                 spiking[i] = true;
+                spikeIndices[n++] = i;
             } else {
                 spiking[i] = false;
             }
         }
 
+        return n;
     }
 
     public void updateTransform(float time, int start, int end)
             throws StructuralException {
-        if (myLastTime < time) {
-            myLastTime = time;
-            this.updateInput(time);
-        }
-
-        // before dOmega
-        for (int post_i = 0; post_i < myPostTrace1.length; post_i++) {
-            if (myPostSpiking[post_i]) {
-                myPostTrace1[post_i] += 1.0f;
-            }
-            myPostTrace1[post_i] -= myPostTrace1[post_i] / myTauMinus;
-            if (myPostTrace1[post_i] < 0.0f) {myPostTrace1[post_i] = 0.0f;}
-        }
-
-        for (int pre_i = 0; pre_i < myPreTrace1.length; pre_i++) {
-            if (myPreSpiking[pre_i]) {
-                myPreTrace1[pre_i] += 1.0f;
-            }
-            myPreTrace1[pre_i] -= myPreTrace1[pre_i] / myTauPlus;
-            if (myPreTrace1[pre_i] < 0.0f) {myPreTrace1[pre_i] = 0.0f;}
-        }
-
-        //dOmega
-        float[][] transform = this.getTransform();
-
-        for (int post_i = start; post_i < end; post_i++) {
-            for (int pre_i = 0; pre_i < transform[post_i].length; pre_i++) {
-                if (myPreSpiking[pre_i]) {
-                    transform[post_i][pre_i] += preDeltaOmega(time - myPostSpikeHistory[0][post_i],
-                            time - myPreSpikeHistory[1][pre_i], transform[post_i][pre_i], post_i, pre_i);
+        synchronized (this) { //LearningTasks for different rows may run at once
+            if (myLastTime < time) {
+                myLastTime = time;
+                this.updateInput(time);
+                myStep++;
+
+                // the first traces are updated before dOmega, the second ones after
+                // (in the second ones dOmega reads the value from before this step)
+                for (int i = 0; i < myNumPostSpikes; i++) {
+                    myPostTrace1.spike(myPostSpikes[i], myStep);
+                    myPostTrace2.spike(myPostSpikes[i], myStep);
                 }
-                if (myPostSpiking[post_i]) {
-                    transform[post_i][pre_i] += postDeltaOmega(time - myPostSpikeHistory[0][post_i],
-                            time - myPreSpikeHistory[1][pre_i], transform[post_i][pre_i], post_i, pre_i);
+                for (int i = 0; i < myNumPreSpikes; i++) {
+                    myPreTrace1.spike(myPreSpikes[i], myStep);
+                    myPreTrace2.spike(myPreSpikes[i], myStep);
                 }
             }
         }
 
-        // after dOmega
-        for (int pre_i = 0; pre_i < myPreTrace2.length; pre_i++) {
-            if (myPreSpiking[pre_i]) {
-                myPreTrace2[pre_i] += 1.0f;
+        //dOmega, only in rows and columns of neurons that spiked
+        float[] weights = this.getWeights();
+        int dimension = getDimensions();
+
+        for (int i = 0; i < myNumPostSpikes; i++) {
+            int post_i = myPostSpikes[i];
+            if (post_i < start || post_i >= end) { continue; }
+
+            float scale = -1 * myLearningRate * (myA2Plus + myPostTrace2.getBefore(post_i, myStep) * myA3Plus);
+            int offset = post_i * dimension;
+            for (int pre_i = 0; pre_i < dimension; pre_i++) {
+                weights[offset + pre_i] += scale * myPreTrace1.get(pre_i, myStep);
             }
-            myPreTrace2[pre_i] -= myPreTrace2[pre_i] / myTauX;
-            if (myPreTrace2[pre_i] < 0.0f) {myPreTrace2[pre_i] = 0.0f;}
         }
 
-        for (int post_i = 0; post_i < myPostTrace2.length; post_i++) {
-            if (myPostSpiking[post_i]) {
-                myPostTrace2[post_i] += 1.0f;
+        for (int i = 0; i < myNumPreSpikes; i++) {
+            int pre_i = myPreSpikes[i];
+            float scale = myLearningRate * (myA2Minus + myPreTrace2.getBefore(pre_i, myStep) * myA3Minus);
+            for (int post_i = start; post_i < end; post_i++) {
+                weights[post_i * dimension + pre_i] += scale * myPostTrace1.get(post_i, myStep);
             }
-            myPostTrace2[post_i] -= myPostTrace2[post_i] / myTauY;
-            if (myPostTrace2[post_i] < 0.0f) {myPostTrace2[post_i] = 0.0f;}
         }
-
-
     }
 
-    private float preDeltaOmega(float timeSinceDifferent, float timeSinceSame,
-            float currentWeight, int postIndex, int preIndex) {
-        float result = myPostTrace1[postIndex] * (myA2Minus + myPreTrace2[preIndex] * myA3Minus);
-
-        return myLearningRate * result;
+    @Override
+    public PlasticEnsembleTermination clone() throws CloneNotSupportedException {
+        STDPTermination result = (STDPTermination) super.clone();
+        result.myPostSpikeHistory = myPostSpikeHistory.clone();
+        result.myPostSpiking = myPostSpiking.clone();
+        return result;
+    }
 
+    /**
+     * Spike traces of a group of neurons. Each trace jumps by 1 when its neuron spikes and decays
+     * by a factor of (1 - 1/tau) per step. The decay is applied lazily when a trace is read.
+     */
+    private static class Trace implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private static final int MAX_CACHED_POWER = 1000;
+
+        private final float myDecay;
+        private final float[] myPowers; //myDecay^i
+        private final float[] myValues;
+        private final float[] myPreviousValues; //values before latest spike
+        private final int[] mySteps; //steps at which values were last updated
+
+        public Trace(int size, float tau) {
+            myDecay = 1.0f - 1.0f / tau;
+            myPowers = new float[MAX_CACHED_POWER];
+            myPowers[0] = 1.0f;
+            for (int i = 1; i < myPowers.length; i++) {
+                myPowers[i] = myPowers[i-1] * myDecay;
+            }
+            myValues = new float[size];
+            myPreviousValues = new float[size];
+            mySteps = new int[size];
+        }
 
-    }
+        private float decay(int steps) {
+            return steps < MAX_CACHED_POWER ? myPowers[steps] : (float) Math.pow(myDecay, steps);
+        }
 
-    private float postDeltaOmega(float timeSinceDifferent, float timeSinceSame,
-            float currentWeight, int postIndex, int preIndex) {
-        float result = myPreTrace1[preIndex] * (myA2Plus + myPostTrace2[postIndex] * myA3Plus);
+        /**
+         * @return Value of trace i after the given step
+         */
+        public float get(int i, int step) {
+            return myValues[i] * decay(step - mySteps[i]);
+        }
 
-        return -1 * myLearningRate * result;
+        /**
+         * @return Value of trace i before the given step (i.e. before any spike in that step)
+         */
+        public float getBefore(int i, int step) {
+            return mySteps[i] == step ? myPreviousValues[i] : get(i, step - 1);
+        }
 
-    }
+        /**
+         * @return Values of all traces after the given step
+         */
+        public float[] get(int step) {
+            float[] result = new float[myValues.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = get(i, step);
+            }
+            return result;
+        }
 
+        /**
+         * Records a spike of neuron i in the given step.
+         */
+        public void spike(int i, int step) {
+            float previous = get(i, step - 1);
+            myPreviousValues[i] = previous;
+            myValues[i] = (previous + 1.0f) * myDecay;
+            mySteps[i] = step;
+        }
 
-    @Override
-    public PlasticEnsembleTermination clone() throws CloneNotSupportedException {
-        STDPTermination result = (STDPTermination) super.clone();
-        result.myPostSpikeHistory = myPostSpikeHistory.clone();
-        result.myPostSpiking = myPostSpiking.clone();
-        return result;
+        /**
+         * @param values Values of traces after the given step (zero if null)
+         */
+        public void set(float[] values, int step) {
+            for (int i = 0; i < myValues.length; i++) {
+                myValues[i] = values == null ? 0.0f : values[i];
+                mySteps[i] = step;
+            }
+        }
     }
 }
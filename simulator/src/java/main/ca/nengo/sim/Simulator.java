@@ -27,6 +27,8 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.sim;
 
+import java.io.File;
+
 import ca.nengo.model.Network;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
@@ -65,6 +67,26 @@ public interface Simulator extends VisiblyMutable, Cloneable {
 	 */
 	public void resetNetwork(boolean randomize, boolean saveWeights);
 
+	/**
+	 * Saves the current state of the simulated Network (not its structure or parameters)
+	 * so that the simulation can later be continued from this point with restoreCheckpoint(...).
+	 *
+	 * @param file File in which to save the state (see ca.nengo.io.Checkpoint)
+	 * @throws SimulationException if the state can't be saved
+	 */
+	public void saveCheckpoint(File file) throws SimulationException;
+
+	/**
+	 * Restores a state that was saved with saveCheckpoint(...), into the simulated Network or
+	 * into a Network with the same structure.
+	 *
+	 * @param file File in which the state was saved
+	 * @return Simulation time at which the state was saved (i.e. the start time from which
+	 * 		the simulation should be continued)
+	 * @throws SimulationException if the state can't be restored
+	 */
+	public float restoreCheckpoint(File file) throws SimulationException;
+
 	/**
 	 * @param nodeName Name of a Probeable Node from which state is to be probed
 	 * @param state The name of the state variable to probe
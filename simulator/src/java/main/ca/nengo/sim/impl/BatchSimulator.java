@@ -0,0 +1,716 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.dynamics.impl.ZeroOrderHoldIntegrator;
+import ca.nengo.math.Function;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.BasicOrigin;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Simulates many trials of one network at once, for example with different inputs in each trial.
+ *
+ * <p>Every origin, termination and neuron state has a leading trial dimension, so each encoder,
+ * decoder and transform is read once per time step and applied to all trials (a matrix-matrix
+ * product) rather than once per trial. This gives much higher throughput per trial than
+ * simulating the trials one after another.</p>
+ *
+ * <p>The network is compiled when the simulator is created, and only the parts of it that are
+ * needed for the usual spiking NEF models are supported: FunctionInputs and NEFEnsembleImpls of
+ * LIF neurons (in the default mode, without noise or neuron-level terminations), with
+ * DecodedTerminations that have first-order synaptic dynamics (SimpleLTISystem with a
+ * ZeroOrderHoldIntegrator or EulerIntegrator) and DecodedOrigins without short-term plasticity or noise.</p>
+ *
+ * <p>The neurons are integrated with the closed-form solution of LIFSpikeGenerator.integrateExactly(...).
+ * Each trial gives the same results as running the network with a LocalSimulator if the neurons'
+ * generators are set to integrate exactly (see LIFSpikeGenerator.setExactIntegration(...)), and
+ * otherwise differs from it by the error of the generators' Euler steps.</p>
+ *
+ * <p>All trials start from the state the network is in when the simulator is created (or
+ * reset). The network itself is not changed by running the trials.</p>
+ *
+ * @author Nengo Developers
+ */
+public class BatchSimulator {
+
+	private static final float EULER_SHRINK = .99999f; //as in EulerIntegrator
+
+	private final Network myNetwork;
+	private final int myNumTrials;
+	private final List<BatchNode> myNodes;
+	private final Map<Origin, float[][]> myOriginValues;
+	private final List<Transfer> myTransfers;
+	private final List<String> myProbeNames;
+	private final List<float[][]> myProbeValues;
+
+	/**
+	 * @param network The network to simulate
+	 * @param numTrials Number of trials that are simulated together
+	 * @throws StructuralException if the network contains something that can't be simulated in batches
+	 */
+	public BatchSimulator(Network network, int numTrials) throws StructuralException {
+		if (numTrials < 1) {
+			throw new IllegalArgumentException("Number of trials must be positive");
+		}
+
+		myNetwork = network;
+		myNumTrials = numTrials;
+		myNodes = new ArrayList<BatchNode>(10);
+		myOriginValues = new HashMap<Origin, float[][]>(20);
+		myTransfers = new ArrayList<Transfer>(20);
+		myProbeNames = new ArrayList<String>(10);
+		myProbeValues = new ArrayList<float[][]>(10);
+
+		Map<Termination, float[][]> terminationInputs = new HashMap<Termination, float[][]>(20);
+		for (Node node : network.getNodes()) {
+			BatchNode batchNode;
+			if (node.getClass().equals(FunctionInput.class)) {
+				batchNode = new InputNode((FunctionInput) node);
+			} else if (node.getClass().equals(NEFEnsembleImpl.class)) {
+				batchNode = new EnsembleNode((NEFEnsembleImpl) node);
+			} else {
+				throw new StructuralException("Node " + node.getName() + " of type " + node.getClass().getName()
+						+ " can't be simulated in batches");
+			}
+			myNodes.add(batchNode);
+			batchNode.register(myOriginValues, terminationInputs);
+		}
+
+		for (Projection projection : network.getProjections()) {
+			float[][] from = myOriginValues.get(projection.getOrigin());
+			float[][] to = terminationInputs.get(projection.getTermination());
+			if (from == null || to == null) {
+				throw new StructuralException("Projection from " + projection.getOrigin().getName()
+						+ " to " + projection.getTermination().getName() + " can't be simulated in batches");
+			}
+			float[] bias = ((DecodedTermination) projection.getTermination()).getStaticBias();
+			myTransfers.add(new Transfer(from, to, bias));
+		}
+
+		reset();
+	}
+
+	/**
+	 * @return Number of trials that are simulated together
+	 */
+	public int getNumTrials() {
+		return myNumTrials;
+	}
+
+	/**
+	 * @param trial Index of a trial
+	 * @param inputName Name of a FunctionInput in the network
+	 * @param functions Functions of time to output in the given trial (by default, the
+	 * 		FunctionInput's own functions are used in every trial)
+	 * @throws StructuralException if there is no such FunctionInput, or the functions have the wrong dimension
+	 */
+	public void setFunctions(int trial, String inputName, Function[] functions) throws StructuralException {
+		Node node = myNetwork.getNode(inputName);
+		for (BatchNode batchNode : myNodes) {
+			if (batchNode instanceof InputNode && ((InputNode) batchNode).myInput == node) {
+				((InputNode) batchNode).setFunctions(trial, functions);
+				return;
+			}
+		}
+		throw new StructuralException("Node " + inputName + " is not a FunctionInput");
+	}
+
+	/**
+	 * @param nodeName Name of a Node in the network
+	 * @param originName Name of an Origin of the Node, whose output is recorded in every trial
+	 * @throws StructuralException if there is no such Origin
+	 */
+	public void addProbe(String nodeName, String originName) throws StructuralException {
+		float[][] values = myOriginValues.get(myNetwork.getNode(nodeName).getOrigin(originName));
+		if (values == null) {
+			throw new StructuralException("Origin " + originName + " of " + nodeName + " can't be probed");
+		}
+		myProbeNames.add(nodeName + "." + originName);
+		myProbeValues.add(values);
+	}
+
+	/**
+	 * Returns every trial to the current state of the network.
+	 *
+	 * @throws StructuralException if the state of the network can't be read
+	 */
+	public void reset() throws StructuralException {
+		for (Map.Entry<Origin, float[][]> entry : myOriginValues.entrySet()) {
+			float[] values = null;
+			try {
+				InstantaneousOutput output = entry.getKey().getValues();
+				if (output instanceof RealOutput) {
+					values = ((RealOutput) output).getValues();
+				}
+			} catch (SimulationException e) {
+				throw new StructuralException(e);
+			}
+			for (float[] trialValues : entry.getValue()) {
+				copy(values, trialValues);
+			}
+		}
+
+		for (BatchNode node : myNodes) {
+			node.reset();
+		}
+	}
+
+	/**
+	 * Simulates all trials over the given interval, in the same time steps as a LocalSimulator.
+	 *
+	 * @param startTime Simulation time at which the trials start
+	 * @param endTime Simulation time at which the trials end
+	 * @param stepSize Length of time step
+	 * @return Output of each probe (in the order they were added) in each trial, i.e. result[trial][probe]
+	 * @throws SimulationException if the trials can't be simulated
+	 */
+	public TimeSeries[][] run(float startTime, float endTime, float stepSize) throws SimulationException {
+		List<Float> times = new ArrayList<Float>(1000);
+		List<float[][][]> probeData = new ArrayList<float[][][]>(1000);
+
+		double time = startTime;
+		double thisStepSize = Math.round(stepSize*1000000)/1000000.0;
+		if (thisStepSize < 0.000001) {
+			thisStepSize = 0.000001;
+		}
+
+		while (time < endTime) {
+			if (time + 1.5*thisStepSize > endTime) { //fudge step size to hit end exactly
+				thisStepSize = endTime - time;
+			}
+
+			float stepEnd = (float) (time+thisStepSize);
+			step((float) time, stepEnd);
+
+			float[][][] data = new float[myProbeValues.size()][][];
+			for (int i = 0; i < data.length; i++) {
+				float[][] values = myProbeValues.get(i);
+				data[i] = new float[myNumTrials][];
+				for (int j = 0; j < myNumTrials; j++) {
+					data[i][j] = values[j].clone();
+				}
+			}
+			times.add(Float.valueOf(stepEnd));
+			probeData.add(data);
+
+			time += thisStepSize;
+		}
+
+		float[] timeArray = new float[times.size()];
+		for (int i = 0; i < timeArray.length; i++) {
+			timeArray[i] = times.get(i).floatValue();
+		}
+
+		TimeSeries[][] result = new TimeSeries[myNumTrials][myProbeValues.size()];
+		for (int i = 0; i < myNumTrials; i++) {
+			for (int j = 0; j < myProbeValues.size(); j++) {
+				float[][] values = new float[timeArray.length][];
+				for (int k = 0; k < values.length; k++) {
+					values[k] = probeData.get(k)[j][i];
+				}
+				int dimension = myProbeValues.get(j)[i].length;
+				TimeSeriesImpl series = new TimeSeriesImpl(timeArray, values, Units.uniform(Units.UNK, dimension));
+				series.setName(myProbeNames.get(j));
+				result[i][j] = series;
+			}
+		}
+		return result;
+	}
+
+	private void step(float startTime, float endTime) throws SimulationException {
+		for (Transfer transfer : myTransfers) {
+			transfer.run();
+		}
+		for (BatchNode node : myNodes) {
+			node.run(startTime, endTime);
+		}
+	}
+
+	private static void copy(float[] from, float[] to) {
+		if (from == null || from.length != to.length) {
+			for (int i = 0; i < to.length; i++) {
+				to[i] = 0;
+			}
+		} else {
+			System.arraycopy(from, 0, to, 0, to.length);
+		}
+	}
+
+	/**
+	 * Copies origin output to termination input in every trial (at the start of each step, as in LocalSimulator).
+	 */
+	private static class Transfer {
+
+		private final float[][] myFrom;
+		private final float[][] myTo;
+		private final float[] myBias;
+
+		public Transfer(float[][] from, float[][] to, float[] bias) {
+			myFrom = from;
+			myTo = to;
+			myBias = bias;
+		}
+
+		public void run() {
+			for (int i = 0; i < myTo.length; i++) {
+				float[] from = myFrom[i];
+				float[] to = myTo[i];
+				for (int j = 0; j < to.length; j++) {
+					to[j] = from[j] + myBias[j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * A Node of the network, with state for every trial.
+	 */
+	private abstract class BatchNode {
+
+		/**
+		 * Allocates output (by origin) and input (by termination) for every trial.
+		 */
+		public abstract void register(Map<Origin, float[][]> originValues, Map<Termination, float[][]> terminationInputs)
+			throws StructuralException;
+
+		/**
+		 * Copies the state of the Node to every trial.
+		 */
+		public abstract void reset() throws StructuralException;
+
+		public abstract void run(float startTime, float endTime) throws SimulationException;
+	}
+
+	private class InputNode extends BatchNode {
+
+		private final FunctionInput myInput;
+		private final Function[][] myFunctions;
+		private float[][] myValues;
+		private final float[] myArgument = new float[1]; //time at which the functions are evaluated, reused each step
+
+		public InputNode(FunctionInput input) throws StructuralException {
+			myInput = input;
+			myFunctions = new Function[myNumTrials][];
+			for (int i = 0; i < myNumTrials; i++) {
+				myFunctions[i] = input.getFunctions();
+			}
+
+			Origin origin = input.getOrigin(FunctionInput.ORIGIN_NAME);
+			if (((BasicOrigin) origin).getNoise() != null) {
+				throw new StructuralException("Noise on FunctionInput " + input.getName() + " isn't supported in batches");
+			}
+		}
+
+		public void setFunctions(int trial, Function[] functions) throws StructuralException {
+			if (functions.length != myValues[trial].length) {
+				throw new StructuralException("Expected " + myValues[trial].length + " functions");
+			}
+			myFunctions[trial] = functions;
+		}
+
+		@Override
+		public void register(Map<Origin, float[][]> originValues, Map<Termination, float[][]> terminationInputs)
+				throws StructuralException {
+			Origin origin = myInput.getOrigin(FunctionInput.ORIGIN_NAME);
+			myValues = new float[myNumTrials][origin.getDimensions()];
+			originValues.put(origin, myValues);
+		}
+
+		@Override
+		public void reset() {
+		}
+
+		@Override
+		public void run(float startTime, float endTime) {
+			myArgument[0] = endTime;
+			for (int i = 0; i < myNumTrials; i++) {
+				for (int j = 0; j < myFunctions[i].length; j++) {
+					myValues[i][j] = myFunctions[i][j].map(myArgument);
+				}
+			}
+		}
+	}
+
+	private class EnsembleNode extends BatchNode {
+
+		private final NEFEnsembleImpl myEnsemble;
+		private final BatchTermination[] myTerminations;
+		private final BatchOrigin[] myOrigins;
+		private final float[][] myEncoders;
+		private final float[] myInverseRadii;
+
+		private final float[] myBias;
+		private final float[] myScale;
+		private final float[] myTauRC;
+		private final float[] myTauRef;
+
+		private final float[][] myState; //[trial][dimension]
+		private final float[] myNeuronState; //voltage and time since last spike at [2*(neuron*trials + trial)] and the next index
+		private final boolean[] mySpikes; //[neuron*trials + trial]
+
+		public EnsembleNode(NEFEnsembleImpl ensemble) throws StructuralException {
+			myEnsemble = ensemble;
+			String name = ensemble.getName();
+			if (!SimulationMode.DEFAULT.equals(ensemble.getMode())) {
+				throw new StructuralException("Ensemble " + name + " must be in default mode to be simulated in batches");
+			}
+
+			DecodedTermination[] terminations = ensemble.getDecodedTerminations();
+			if (terminations.length != ensemble.getTerminations().length) {
+				throw new StructuralException("Ensemble " + name + " has terminations that can't be simulated in batches");
+			}
+			List<BatchTermination> batchTerminations = new ArrayList<BatchTermination>(terminations.length);
+			for (DecodedTermination termination : terminations) {
+				if (termination instanceof BiasTermination) {
+					throw new StructuralException("Bias termination " + termination.getName() + " of " + name
+							+ " can't be simulated in batches");
+				}
+				batchTerminations.add(new BatchTermination(termination));
+			}
+			myTerminations = batchTerminations.toArray(new BatchTermination[0]);
+
+			DecodedOrigin[] origins = ensemble.getDecodedOrigins();
+			myOrigins = new BatchOrigin[origins.length];
+			for (int i = 0; i < origins.length; i++) {
+				myOrigins[i] = new BatchOrigin(origins[i]);
+			}
+
+			myEncoders = ensemble.getEncoders();
+			float[] radii = ensemble.getRadii();
+			myInverseRadii = new float[radii.length];
+			for (int i = 0; i < radii.length; i++) {
+				myInverseRadii[i] = 1f / radii[i];
+			}
+
+			Node[] neurons = ensemble.getNodes();
+			myBias = new float[neurons.length];
+			myScale = new float[neurons.length];
+			myTauRC = new float[neurons.length];
+			myTauRef = new float[neurons.length];
+			for (int i = 0; i < neurons.length; i++) {
+				SpikingNeuron neuron = getNeuron(neurons[i]);
+				LIFSpikeGenerator generator = (LIFSpikeGenerator) neuron.getGenerator();
+				myBias[i] = neuron.getBias();
+				myScale[i] = neuron.getScale();
+				myTauRC[i] = generator.getTauRC();
+				myTauRef[i] = generator.getTauRef();
+			}
+
+			myState = new float[myNumTrials][myEncoders[0].length];
+			myNeuronState = new float[2 * neurons.length * myNumTrials];
+			mySpikes = new boolean[neurons.length * myNumTrials];
+		}
+
+		private SpikingNeuron getNeuron(Node node) throws StructuralException {
+			String name = myEnsemble.getName();
+			if (!(node instanceof SpikingNeuron)) {
+				throw new StructuralException("Neurons of " + name + " must be SpikingNeurons to be simulated in batches");
+			}
+			SpikingNeuron neuron = (SpikingNeuron) node;
+			if (!(neuron.getGenerator() instanceof LIFSpikeGenerator)) {
+				throw new StructuralException("Neurons of " + name + " must be LIF neurons to be simulated in batches");
+			}
+			if (!(neuron.getIntegrator() instanceof LinearSynapticIntegrator)
+					|| neuron.getIntegrator().getTerminations().length > 0) {
+				throw new StructuralException("Neurons of " + name + " can't have terminations in batches");
+			}
+			if (neuron.getNoise() != null) {
+				throw new StructuralException("Neuron noise in " + name + " isn't supported in batches");
+			}
+			return neuron;
+		}
+
+		@Override
+		public void register(Map<Origin, float[][]> originValues, Map<Termination, float[][]> terminationInputs) {
+			for (BatchTermination termination : myTerminations) {
+				terminationInputs.put(termination.myTermination, termination.myInput);
+			}
+			for (BatchOrigin origin : myOrigins) {
+				originValues.put(origin.myOrigin, origin.myValues);
+			}
+		}
+
+		@Override
+		public void reset() {
+			for (BatchTermination termination : myTerminations) {
+				termination.reset();
+			}
+
+			Node[] neurons = myEnsemble.getNodes();
+			for (int i = 0; i < neurons.length; i++) {
+				LIFSpikeGenerator generator = (LIFSpikeGenerator) ((SpikingNeuron) neurons[i]).getGenerator();
+				for (int j = i*myNumTrials; j < (i+1)*myNumTrials; j++) {
+					myNeuronState[2*j] = generator.getVoltage();
+					myNeuronState[2*j+1] = generator.getTimeSinceLastSpike();
+				}
+			}
+		}
+
+		@Override
+		public void run(float startTime, float endTime) throws SimulationException {
+			for (float[] state : myState) {
+				for (int j = 0; j < state.length; j++) {
+					state[j] = 0;
+				}
+			}
+			for (BatchTermination termination : myTerminations) {
+				termination.run(startTime, endTime);
+				if (!termination.myTermination.getModulatory()) {
+					for (int i = 0; i < myNumTrials; i++) {
+						float[] state = myState[i];
+						float[] output = termination.myOutput[i];
+						for (int j = 0; j < state.length; j++) {
+							state[j] = state[j] + output[j];
+						}
+					}
+				}
+			}
+
+			for (float[] state : myState) {
+				for (int j = 0; j < state.length; j++) {
+					state[j] = state[j] * myInverseRadii[j];
+				}
+			}
+
+			for (int i = 0; i < myEncoders.length; i++) {
+				runNeuron(i, startTime, endTime);
+			}
+
+			float stepSize = endTime - startTime;
+			for (BatchOrigin origin : myOrigins) {
+				origin.run(mySpikes, 1f / stepSize);
+			}
+		}
+
+		//encodes state and integrates LIF dynamics of one neuron in every trial
+		private void runNeuron(int neuron, float startTime, float endTime) {
+			float[] encoder = myEncoders[neuron];
+			float bias = myBias[neuron];
+			float scale = myScale[neuron];
+			float tauRC = myTauRC[neuron];
+			float tauRef = myTauRef[neuron];
+			float length = endTime - startTime;
+
+			int offset = neuron * myNumTrials;
+			for (int i = 0; i < myNumTrials; i++) {
+				float[] state = myState[i];
+				float radialInput = 0f;
+				for (int j = 0; j < state.length; j++) {
+					radialInput += state[j] * encoder[j];
+				}
+				float current = bias + scale * radialInput;
+
+				float spikeTime = LIFSpikeGenerator.integrateExactly(myNeuronState, 2*(offset + i), current, length, tauRC, tauRef);
+				mySpikes[offset + i] = spikeTime >= 0;
+			}
+		}
+	}
+
+	private class BatchTermination {
+
+		private final DecodedTermination myTermination;
+		private final float[][] myTransform;
+		private final float[] myA;
+		private final float[] myB;
+		private final float[] myC;
+		private final float myStepSize; //Euler step size, or 0 for exact (zero-order hold) steps
+
+		private final float[][] myInput; //[trial][input dimension]
+		private final SimpleLTISystem[][] myDynamics; //copies of the termination's dynamics, [trial][output dimension]
+		private final float[][] myOutput; //[trial][output dimension]
+		private final float[] myDynamicsInput;
+		private final float[] myStepInput; //input to one of the dynamics in an exact step
+
+		public BatchTermination(DecodedTermination termination) throws StructuralException {
+			myTermination = termination;
+			String name = termination.getName();
+			if (termination.getScaling() != null) {
+				throw new StructuralException("Scaled termination " + name + " can't be simulated in batches");
+			}
+
+			LinearSystem dynamics = termination.getDynamics(0);
+			Integrator integrator = termination.getIntegrator();
+			boolean exact = integrator.getClass().equals(ZeroOrderHoldIntegrator.class);
+			if (!dynamics.getClass().equals(SimpleLTISystem.class)
+					|| !(exact || integrator.getClass().equals(EulerIntegrator.class))) {
+				throw new StructuralException("Termination " + name + " must have SimpleLTISystem dynamics with a "
+						+ "ZeroOrderHoldIntegrator or EulerIntegrator to be simulated in batches");
+			}
+
+			float[][] A = dynamics.getA(0);
+			float[][] B = dynamics.getB(0);
+			float[][] C = dynamics.getC(0);
+			myA = new float[A.length];
+			myB = new float[A.length];
+			myC = new float[A.length];
+			for (int i = 0; i < A.length; i++) {
+				myA[i] = A[i][i];
+				myB[i] = B[i][0];
+				myC[i] = C[0][i];
+			}
+			myStepSize = exact ? 0 : ((EulerIntegrator) integrator).getStepSize();
+
+			myTransform = termination.getTransform();
+			myInput = new float[myNumTrials][termination.getDimensions()];
+			myDynamics = new SimpleLTISystem[myNumTrials][myTransform.length];
+			try {
+				for (int i = 0; i < myNumTrials; i++) {
+					for (int j = 0; j < myTransform.length; j++) {
+						myDynamics[i][j] = (SimpleLTISystem) termination.getDynamics(j).clone();
+					}
+				}
+			} catch (CloneNotSupportedException e) {
+				throw new StructuralException("Can't copy dynamics of termination " + name, e);
+			}
+			myOutput = new float[myNumTrials][myTransform.length];
+			myDynamicsInput = new float[myTransform.length];
+			myStepInput = new float[1];
+		}
+
+		public void reset() {
+			float[] input = myTermination.getInput() == null ? null : myTermination.getInput().getValues();
+			for (int i = 0; i < myNumTrials; i++) {
+				copy(input, myInput[i]);
+				for (int j = 0; j < myTransform.length; j++) {
+					copy(myTermination.getDynamics(j).getState(), myDynamics[i][j].getState());
+				}
+			}
+		}
+
+		public void run(float startTime, float endTime) {
+			if (myStepSize == 0) {
+				runExact(endTime - startTime);
+				return;
+			}
+
+			//Euler steps as in EulerIntegrator
+			int steps = (int) Math.ceil((endTime - startTime) * EULER_SHRINK / myStepSize);
+
+			for (int i = 0; i < myNumTrials; i++) {
+				float[] input = myInput[i];
+				for (int j = 0; j < myTransform.length; j++) {
+					float[] row = myTransform[j];
+					float sum = 0f;
+					for (int k = 0; k < input.length; k++) {
+						sum += row[k] * input[k];
+					}
+					myDynamicsInput[j] = sum;
+				}
+
+				for (int j = 0; j < myTransform.length; j++) {
+					float u = myDynamicsInput[j];
+					float[] x = myDynamics[i][j].getState();
+					float t = startTime;
+					for (int step = 1; step <= steps; step++) {
+						float dt = (step < steps) ? myStepSize : (endTime - t);
+						t = t + dt;
+						for (int k = 0; k < x.length; k++) {
+							float dxdt = myA[k] * x[k];
+							dxdt += myB[k] * u;
+							x[k] = x[k] + dxdt * dt;
+						}
+					}
+
+					float output = 0f;
+					for (int k = 0; k < x.length; k++) {
+						output += myC[k] * x[k];
+					}
+					myOutput[i][j] = output;
+				}
+			}
+		}
+
+		//one exact step of each copy of the dynamics
+		private void runExact(float dt) {
+			for (int i = 0; i < myNumTrials; i++) {
+				float[] input = myInput[i];
+				for (int j = 0; j < myTransform.length; j++) {
+					float[] row = myTransform[j];
+					float u = 0f;
+					for (int k = 0; k < input.length; k++) {
+						u += row[k] * input[k];
+					}
+					myStepInput[0] = u;
+
+					SimpleLTISystem dynamics = myDynamics[i][j];
+					dynamics.step(dt, myStepInput);
+					float[] x = dynamics.getState();
+					float output = 0f;
+					for (int k = 0; k < x.length; k++) {
+						output += myC[k] * x[k];
+					}
+					myOutput[i][j] = output;
+				}
+			}
+		}
+	}
+
+	private class BatchOrigin {
+
+		private final DecodedOrigin myOrigin;
+		private final float[][] myDecoders;
+		private final float[][] myValues; //[trial][dimension]
+
+		public BatchOrigin(DecodedOrigin origin) throws StructuralException {
+			myOrigin = origin;
+			if (!Neuron.AXON.equals(origin.getNodeOrigin()) || origin.getSTPDynamics() != null
+					|| origin.getNoise() != null || !SimulationMode.DEFAULT.equals(origin.getMode())) {
+				throw new StructuralException("Origin " + origin.getName()
+						+ " must decode spikes without dynamics or noise to be simulated in batches");
+			}
+			myDecoders = origin.getDecoders();
+			myValues = new float[myNumTrials][origin.getDimensions()];
+		}
+
+		//spikes are indexed [neuron*trials + trial]
+		public void run(boolean[] spikes, float spikeValue) {
+			for (float[] values : myValues) {
+				for (int j = 0; j < values.length; j++) {
+					values[j] = 0;
+				}
+			}
+
+			for (int i = 0; i < myDecoders.length; i++) {
+				float[] decoder = myDecoders[i];
+				int offset = i * myNumTrials;
+				for (int j = 0; j < myNumTrials; j++) {
+					if (spikes[offset + j]) {
+						float[] values = myValues[j];
+						for (int k = 0; k < values.length; k++) {
+							values[k] += spikeValue * decoder[k];
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,287 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.dynamics.impl.ZeroOrderHoldIntegrator;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.CompiledFunction;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.ThreadTask;
+import ca.nengo.util.impl.ProbeTask;
+
+/**
+ * <p>Runs NEFEnsembleImpls that are in DIRECT mode as one compiled graph, instead of running each
+ * ensemble as a node. For each ensemble, the input of each decoded termination is multiplied by
+ * the termination's transform and filtered by the termination's dynamics, in place and over
+ * arrays that are allocated once. The filtered inputs are summed into the ensemble's state, and
+ * the functions of its decoded origins (compiled with CompiledFunction) are evaluated on the state
+ * and published. The results are the same as those of NEFEnsembleImpl.run(...), but no
+ * intermediate arrays or TimeSeries are created, and expressions aren't interpreted.</p>
+ *
+ * <p>Inputs are still passed to the terminations by the simulator's projections, and the
+ * published outputs are read by projections as usual, so ensembles that can't be compiled (and
+ * other nodes) run alongside the graph. An ensemble is compiled if it is in DIRECT mode, has
+ * no direct-mode dynamics or tasks, runs at every step, and each of its decoded terminations
+ * receives one of the given projections and is a plain termination (not a bias, modulatory or
+ * scaling termination, and not scaled) whose dynamics are LTISystems integrated with a
+ * ZeroOrderHoldIntegrator. Its decoded origins must be noiseless, and it may only be probed
+ * on its decoded origins, because the outputs of compiled terminations (and the histories
+ * of the ensemble's other states) aren't updated.</p>
+ *
+ * <p>The graph is built for one run: transforms and output matrices are read when it is
+ * created, so changes to them during the run aren't seen.</p>
+ *
+ * @author Nengo Developers
+ */
+public class DirectModeGraph {
+
+	private final Node[] myNodes;
+	private final NEFEnsembleImpl[] myEnsembles;
+	private final CompiledEnsemble[] myCompiled;
+
+	/**
+	 * @param nodes Nodes to be run
+	 * @param projections Projections to be run
+	 * @param tasks Tasks to be run (ensembles are only compiled if the ProbeTasks among them read
+	 * 		decoded origins)
+	 */
+	public DirectModeGraph(Node[] nodes, Projection[] projections, Collection<ThreadTask> tasks) {
+		Set<Termination> projected = new HashSet<Termination>(projections.length * 2);
+		for (Projection projection : projections) {
+			Termination termination = projection.getTermination();
+			if (termination instanceof TerminationWrapper) {
+				termination = ((TerminationWrapper) termination).getBaseTermination();
+			}
+			projected.add(termination);
+		}
+
+		Map<Object, List<String>> probed = new HashMap<Object, List<String>>();
+		for (ThreadTask task : tasks) {
+			if (task instanceof ProbeTask) {
+				ProbeTask probeTask = (ProbeTask) task;
+				List<String> states = probed.get(probeTask.getParent());
+				if (states == null) {
+					states = new ArrayList<String>(2);
+					probed.put(probeTask.getParent(), states);
+				}
+				states.add(probeTask.getProbe().getStateName());
+			}
+		}
+
+		List<Node> remaining = new ArrayList<Node>(nodes.length);
+		List<NEFEnsembleImpl> ensembles = new ArrayList<NEFEnsembleImpl>();
+		List<CompiledEnsemble> compiled = new ArrayList<CompiledEnsemble>();
+		for (Node node : nodes) {
+			CompiledEnsemble ce = null;
+			if (node instanceof NEFEnsembleImpl) {
+				ce = compile((NEFEnsembleImpl) node, projected, probed.get(node));
+			}
+			if (ce == null) {
+				remaining.add(node);
+			} else {
+				ensembles.add((NEFEnsembleImpl) node);
+				compiled.add(ce);
+			}
+		}
+		myNodes = remaining.toArray(new Node[0]);
+		myEnsembles = ensembles.toArray(new NEFEnsembleImpl[0]);
+		myCompiled = compiled.toArray(new CompiledEnsemble[0]);
+	}
+
+	/**
+	 * @return The nodes to run (without the compiled ensembles)
+	 */
+	public Node[] getNodes() {
+		return myNodes;
+	}
+
+	/**
+	 * @return The ensembles that are run by this graph
+	 */
+	public NEFEnsembleImpl[] getEnsembles() {
+		return myEnsembles;
+	}
+
+	/**
+	 * Runs the compiled ensembles. This replaces running them as nodes, so it must be called
+	 * at the same point in the step, after the simulator's projections have set their inputs.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 */
+	public void run(float startTime, float endTime) {
+		float dt = LTISystem.roundStep(endTime - startTime); //the same each step, so the filters' discretizations are reused
+		for (CompiledEnsemble ce : myCompiled) {
+			ce.run(dt, endTime);
+		}
+	}
+
+	//the compiled form of an ensemble, or null if it can't be compiled
+	private static CompiledEnsemble compile(NEFEnsembleImpl ensemble, Set<Termination> projected, List<String> probed) {
+		if (ensemble.getMode() != SimulationMode.DIRECT || ensemble.getDirectModeDynamics() != null
+				|| ensemble.getTasks().length > 0 || MultiRateSchedule.getStepMultiple(ensemble) != 1) {
+			return null;
+		}
+
+		DecodedOrigin[] origins = ensemble.getDecodedOrigins();
+		Set<String> originNames = new HashSet<String>();
+		for (DecodedOrigin origin : origins) {
+			if (origin.getNoise() != null || origin.getFunctions()[0].getDimension() != ensemble.getDimension()) {
+				return null;
+			}
+			originNames.add(origin.getName());
+		}
+		if (probed != null && !originNames.containsAll(probed)) {
+			return null;
+		}
+
+		DecodedTermination[] terminations = ensemble.getDecodedTerminations();
+		Set<DecodedTermination> scaling = new HashSet<DecodedTermination>();
+		for (DecodedTermination termination : terminations) {
+			if (termination.getScaling() != null) {
+				scaling.add(termination.getScaling());
+			}
+		}
+		for (DecodedTermination termination : terminations) {
+			if (!projected.contains(termination) || termination instanceof BiasTermination
+					|| termination.getModulatory() || termination.getScaling() != null || scaling.contains(termination)
+					|| termination.getWeights() != null
+					|| !(termination.getIntegrator() instanceof ZeroOrderHoldIntegrator)) {
+				return null;
+			}
+			for (int i = 0; i < ensemble.getDimension(); i++) {
+				LinearSystem dynamics = termination.getDynamics(i);
+				if (!(dynamics instanceof LTISystem) || dynamics.getInputDimension() != 1
+						|| dynamics.getOutputDimension() != 1) {
+					return null;
+				}
+			}
+		}
+
+		return new CompiledEnsemble(ensemble, terminations, origins);
+	}
+
+	/**
+	 * Arrays and compiled functions that an ensemble is run with.
+	 */
+	private static class CompiledEnsemble {
+
+		private final NEFEnsembleImpl myEnsemble;
+		private final DecodedTermination[] myTerminations;
+		private final float[][][] myTransforms;
+		private final LTISystem[][] myFilters; //dynamics of each dimension of each termination
+		private final float[][][] myOutputRows; //C of each filter
+		private final float[][] myPassthroughs; //D of each filter
+		private final DecodedOrigin[] myOrigins;
+		private final Function[][] myFunctions;
+		private final float[][] myValues; //workspace for the output of each origin
+		private final float[] myState;
+		private final float[] myFilterInput;
+		private final float[] myZeros; //input of a termination before any is set
+
+		public CompiledEnsemble(NEFEnsembleImpl ensemble, DecodedTermination[] terminations, DecodedOrigin[] origins) {
+			myEnsemble = ensemble;
+			int dimension = ensemble.getDimension();
+			myState = new float[dimension];
+			myFilterInput = new float[1];
+
+			myTerminations = terminations;
+			myTransforms = new float[terminations.length][][];
+			myFilters = new LTISystem[terminations.length][dimension];
+			myOutputRows = new float[terminations.length][dimension][];
+			myPassthroughs = new float[terminations.length][dimension];
+			int maxInput = 0;
+			for (int k = 0; k < terminations.length; k++) {
+				myTransforms[k] = terminations[k].getTransform();
+				maxInput = Math.max(maxInput, terminations[k].getDimensions());
+				for (int i = 0; i < dimension; i++) {
+					LTISystem filter = (LTISystem) terminations[k].getDynamics(i);
+					myFilters[k][i] = filter;
+					myOutputRows[k][i] = filter.getC()[0];
+					myPassthroughs[k][i] = filter.getD()[0][0];
+				}
+			}
+			myZeros = new float[maxInput];
+
+			myOrigins = origins;
+			myFunctions = new Function[origins.length][];
+			myValues = new float[origins.length][];
+			for (int k = 0; k < origins.length; k++) {
+				Function[] functions = origins[k].getFunctions();
+				myFunctions[k] = new Function[functions.length];
+				for (int i = 0; i < functions.length; i++) {
+					myFunctions[k][i] = CompiledFunction.compile(functions[i]);
+				}
+				myValues[k] = new float[functions.length];
+			}
+		}
+
+		public void run(float dt, float endTime) {
+			float[] state = myState;
+			for (int i = 0; i < state.length; i++) {
+				state[i] = 0;
+			}
+
+			float[] u = myFilterInput;
+			for (int k = 0; k < myTerminations.length; k++) {
+				float[] input = myTerminations[k].getInputValues();
+				if (input == null) {
+					input = myZeros;
+				}
+				float[][] transform = myTransforms[k];
+				LTISystem[] filters = myFilters[k];
+				for (int i = 0; i < state.length; i++) {
+					float[] row = transform[i];
+					float sum = 0;
+					for (int j = 0; j < row.length; j++) {
+						sum += row[j] * input[j];
+					}
+					u[0] = sum;
+
+					LTISystem filter = filters[i];
+					filter.step(dt, u);
+					float[] x = filter.getState();
+					float[] c = myOutputRows[k][i];
+					float y = myPassthroughs[k][i] * sum;
+					for (int m = 0; m < x.length; m++) {
+						y += c[m] * x[m];
+					}
+					state[i] += y;
+				}
+			}
+
+			for (int k = 0; k < myOrigins.length; k++) {
+				DecodedOrigin origin = myOrigins[k];
+				if (origin.getUnused()) {
+					continue;
+				}
+				Function[] functions = myFunctions[k];
+				float[] values = myValues[k];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = functions[i].map(state);
+				}
+				origin.setValues(values, endTime);
+			}
+			myEnsemble.setTime(endTime);
+		}
+	}
+
+}
@@ -0,0 +1,728 @@
+package ca.nengo.sim.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.NetworkPartitioner;
+import ca.nengo.math.impl.MultiLevelKLNetworkPartitioner;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Probeable;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.sim.Simulator;
+import ca.nengo.sim.SimulatorEvent;
+import ca.nengo.sim.SimulatorListener;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.VisiblyMutable;
+import ca.nengo.util.VisiblyMutableUtils;
+import ca.nengo.util.impl.ProbeTask;
+
+/**
+ * A Simulator that partitions a Network across several SimulatorWorkers, typically in
+ * separate JVMs, so that models too large for one machine can be run.
+ *
+ * <p>Top-level Nodes are assigned to workers by a NetworkPartitioner (a
+ * MultiLevelKLNetworkPartitioner by default), which keeps the number of dimensions that
+ * cross partitions small while balancing the number of neurons. At each step, each
+ * worker sends the outputs that cross partition boundaries directly to the workers that
+ * need them, batched per destination. Workers are reached over sockets, so they can run on
+ * other machines, or as separate processes on this one (see startLocalWorkers(...)).</p>
+ *
+ * <p>The Network is copied to the workers the first time it is run after initialize(...).
+ * The copy in this JVM is not updated as the simulation runs. Results are available
+ * through Probes (which must be added through this Simulator) and checkpoints.</p>
+ *
+ * @author Nengo Developers
+ */
+public class DistributedSimulator implements Simulator, java.io.Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger ourLogger = Logger.getLogger(DistributedSimulator.class);
+
+	private static final long SHUTDOWN_TIMEOUT = 5000;
+
+	private final InetSocketAddress[] myWorkers;
+	private Network myNetwork;
+	private int[] myAssignments;
+	private Map<String, Integer> myPartitions;
+
+	private transient NetworkPartitioner myPartitioner;
+	private transient List<RemoteProbe> myProbes;
+	private transient boolean myDeployed;
+
+	private transient Socket[] mySockets;
+	private transient ObjectOutputStream[] myOutputs;
+	private transient ObjectInputStream[] myInputs;
+	private transient List<Process> myProcesses;
+	private transient List<VisiblyMutable.Listener> myChangeListeners;
+	private transient Collection<SimulatorListener> mySimulatorListeners;
+
+	/**
+	 * @param workers Addresses of running SimulatorWorkers (one partition per worker)
+	 */
+	public DistributedSimulator(InetSocketAddress[] workers) {
+		if (workers.length == 0) {
+			throw new IllegalArgumentException("At least one worker is needed");
+		}
+		myWorkers = workers.clone();
+	}
+
+	/**
+	 * Starts SimulatorWorkers as separate processes on this machine. They are stopped by shutdown().
+	 *
+	 * @param nWorkers Number of workers (i.e. partitions) to start
+	 * @return A Simulator that uses the new workers
+	 * @throws SimulationException if the workers can't be started
+	 */
+	public static DistributedSimulator startLocalWorkers(int nWorkers) throws SimulationException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+
+		List<Process> processes = new ArrayList<Process>(nWorkers);
+		InetSocketAddress[] addresses = new InetSocketAddress[nWorkers];
+		try {
+			for (int i = 0; i < nWorkers; i++) {
+				ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath, SimulatorWorker.class.getName());
+				builder.redirectErrorStream(true);
+				final Process process = builder.start();
+				processes.add(process);
+
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				String line = reader.readLine();
+				while (line != null && !line.startsWith("SimulatorWorker listening on port ")) {
+					line = reader.readLine();
+				}
+				if (line == null) {
+					throw new IOException("Worker process exited before it started listening");
+				}
+				int port = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+				addresses[i] = new InetSocketAddress("localhost", port);
+
+				//keep reading output so that the worker doesn't block on a full pipe
+				Thread drain = new Thread(new Runnable() {
+					public void run() {
+						try {
+							String l;
+							while ((l = reader.readLine()) != null) {
+								ourLogger.debug(l);
+							}
+						} catch (IOException e) {
+							//worker has exited
+						}
+					}
+				}, "SimulatorWorker-output-" + port);
+				drain.setDaemon(true);
+				drain.start();
+			}
+		} catch (IOException e) {
+			for (Process process : processes) {
+				process.destroy();
+			}
+			throw new SimulationException("Couldn't start worker processes", e);
+		}
+
+		DistributedSimulator result = new DistributedSimulator(addresses);
+		result.myProcesses = processes;
+		return result;
+	}
+
+	/**
+	 * @param partitioner Assigns top-level Nodes to workers (takes effect the next time
+	 * 		the Network is run after initialize(...))
+	 */
+	public void setPartitioner(NetworkPartitioner partitioner) {
+		myPartitioner = partitioner;
+	}
+
+	/**
+	 * @return Assigns top-level Nodes to workers
+	 */
+	public NetworkPartitioner getPartitioner() {
+		if (myPartitioner == null) {
+			myPartitioner = new MultiLevelKLNetworkPartitioner();
+		}
+		return myPartitioner;
+	}
+
+	/**
+	 * @return Index of the worker that simulates each top-level Node (in the order of
+	 * 		Network.getNodes()), or null if the Network hasn't been partitioned yet
+	 */
+	public int[] getAssignments() {
+		return myAssignments == null ? null : myAssignments.clone();
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#initialize(ca.nengo.model.Network)
+	 */
+	public synchronized void initialize(Network network) {
+		myNetwork = network;
+		myDeployed = false;
+	}
+
+	/*
+	 * Partitions the network and sends each worker its nodes.
+	 */
+	private void deploy() throws SimulationException {
+		Node[] nodes = myNetwork.getNodes();
+		Projection[] projections = myNetwork.getProjections();
+
+		if (myWorkers.length == 1) {
+			myAssignments = new int[nodes.length];
+		} else {
+			NetworkPartitioner partitioner = getPartitioner();
+			partitioner.initialize(nodes, projections, myWorkers.length);
+			myAssignments = partitioner.getPartitionsAsIntArray();
+		}
+
+		myPartitions = new HashMap<String, Integer>(nodes.length * 2);
+		List<List<Node>> partitions = new ArrayList<List<Node>>(myWorkers.length);
+		for (int i = 0; i < myWorkers.length; i++) {
+			partitions.add(new ArrayList<Node>());
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			myPartitions.put(nodes[i].getName(), Integer.valueOf(myAssignments[i]));
+			partitions.get(myAssignments[i]).add(nodes[i]);
+		}
+
+		SimulatorWorker.Link[] links = new SimulatorWorker.Link[projections.length];
+		for (int i = 0; i < projections.length; i++) {
+			Node originNode = projections[i].getOrigin().getNode();
+			Node terminationNode = projections[i].getTermination().getNode();
+			links[i] = new SimulatorWorker.Link(originNode.getName(), projections[i].getOrigin().getName(),
+					terminationNode.getName(), projections[i].getTermination().getName(),
+					getPartition(originNode.getName()), getPartition(terminationNode.getName()));
+		}
+
+		connect();
+		InetSocketAddress[] dataAddresses = new InetSocketAddress[myWorkers.length];
+		for (int i = 0; i < myWorkers.length; i++) {
+			try {
+				myOutputs[i].writeInt(SimulatorWorker.INIT);
+				myOutputs[i].writeInt(i);
+				myOutputs[i].writeObject(partitions.get(i).toArray(new Node[0]));
+				myOutputs[i].writeObject(links);
+				myOutputs[i].reset();
+				myOutputs[i].flush();
+			} catch (IOException e) {
+				throw new SimulationException("Couldn't send partition to worker " + i, e);
+			}
+			int port = ((Integer) getReply(i)).intValue();
+			dataAddresses[i] = new InetSocketAddress(myWorkers[i].getAddress(), port);
+		}
+
+		for (int i = 0; i < myWorkers.length; i++) {
+			send(i, SimulatorWorker.CONNECT, (Object) dataAddresses);
+		}
+		getReplies();
+
+		for (RemoteProbe probe : getProbeList()) {
+			probe.attach();
+		}
+		myDeployed = true;
+	}
+
+	private int getPartition(String nodeName) throws SimulationException {
+		Integer result = myPartitions.get(nodeName);
+		if (result == null) {
+			throw new SimulationException("The named Node does not exist");
+		}
+		return result.intValue();
+	}
+
+	private void connect() throws SimulationException {
+		if (mySockets != null) {
+			return;
+		}
+
+		mySockets = new Socket[myWorkers.length];
+		myOutputs = new ObjectOutputStream[myWorkers.length];
+		myInputs = new ObjectInputStream[myWorkers.length];
+		for (int i = 0; i < myWorkers.length; i++) {
+			try {
+				mySockets[i] = new Socket(myWorkers[i].getAddress(), myWorkers[i].getPort());
+				mySockets[i].setTcpNoDelay(true);
+				myOutputs[i] = new ObjectOutputStream(new BufferedOutputStream(mySockets[i].getOutputStream()));
+				myOutputs[i].flush();
+				myInputs[i] = new ObjectInputStream(new BufferedInputStream(mySockets[i].getInputStream()));
+			} catch (IOException e) {
+				disconnect();
+				throw new SimulationException("Couldn't connect to worker at " + myWorkers[i], e);
+			}
+		}
+	}
+
+	private void disconnect() {
+		for (int i = 0; mySockets != null && i < mySockets.length; i++) {
+			try {
+				if (mySockets[i] != null) {
+					mySockets[i].close();
+				}
+			} catch (IOException e) {
+				ourLogger.warn("Couldn't close connection to worker " + i, e);
+			}
+		}
+		mySockets = null;
+		myOutputs = null;
+		myInputs = null;
+		myDeployed = false;
+	}
+
+	/*
+	 * Sends a command, followed by the given arguments (boxed primitives are sent as primitives).
+	 */
+	private void send(int worker, int command, Object... args) throws SimulationException {
+		try {
+			ObjectOutputStream out = myOutputs[worker];
+			out.writeInt(command);
+			for (Object arg : args) {
+				if (arg instanceof Float) {
+					out.writeFloat(((Float) arg).floatValue());
+				} else if (arg instanceof Integer) {
+					out.writeInt(((Integer) arg).intValue());
+				} else if (arg instanceof Boolean) {
+					out.writeBoolean(((Boolean) arg).booleanValue());
+				} else if (arg instanceof String) {
+					out.writeUTF((String) arg);
+				} else {
+					out.writeObject(arg);
+				}
+			}
+			out.reset();
+			out.flush();
+		} catch (IOException e) {
+			disconnect();
+			throw new SimulationException("Lost connection to worker " + worker, e);
+		}
+	}
+
+	private Object getReply(int worker) throws SimulationException {
+		try {
+			int status = myInputs[worker].readInt();
+			Object result = myInputs[worker].readObject();
+			if (status != SimulatorWorker.OK) {
+				throw new SimulationException("Worker " + worker + " failed: " + result);
+			}
+			return result;
+		} catch (IOException e) {
+			disconnect();
+			throw new SimulationException("Lost connection to worker " + worker, e);
+		} catch (ClassNotFoundException e) {
+			throw new SimulationException(e);
+		}
+	}
+
+	/*
+	 * Waits for a reply from every worker, then reports the first failure (if any).
+	 */
+	private Object[] getReplies() throws SimulationException {
+		Object[] result = new Object[myWorkers.length];
+		SimulationException failure = null;
+		for (int i = 0; i < myWorkers.length && mySockets != null; i++) {
+			try {
+				result[i] = getReply(i);
+			} catch (SimulationException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			myDeployed = false;
+			throw failure;
+		}
+		return result;
+	}
+
+	private void ensureDeployed() throws SimulationException {
+		if (myNetwork == null) {
+			throw new SimulationException("Simulator has not been initialized with a Network");
+		}
+		if (!myDeployed) {
+			deploy();
+		}
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#resetNetwork(boolean, boolean)
+	 */
+	public synchronized void resetNetwork(boolean randomize, boolean saveWeights) {
+		try {
+			ensureDeployed();
+			for (int i = 0; i < myWorkers.length; i++) {
+				send(i, SimulatorWorker.RESET, Boolean.valueOf(randomize), Boolean.valueOf(saveWeights));
+			}
+			getReplies();
+		} catch (SimulationException e) {
+			throw new RuntimeException("Couldn't reset network", e);
+		}
+	}
+
+	/**
+	 * Each worker saves the state of its partition in a separate file (the given name with
+	 * the index of the worker appended).
+	 *
+	 * @see ca.nengo.sim.Simulator#saveCheckpoint(java.io.File)
+	 */
+	public synchronized void saveCheckpoint(File file) throws SimulationException {
+		ensureDeployed();
+		for (int i = 0; i < myWorkers.length; i++) {
+			send(i, SimulatorWorker.SAVE_CHECKPOINT, getCheckpointFile(file, i).getAbsolutePath());
+		}
+		getReplies();
+	}
+
+	/**
+	 * Each worker restores its Nodes from all the partition files that exist, so that a
+	 * checkpoint can be restored after the Network has been partitioned differently.
+	 *
+	 * @see ca.nengo.sim.Simulator#restoreCheckpoint(java.io.File)
+	 */
+	public synchronized float restoreCheckpoint(File file) throws SimulationException {
+		ensureDeployed();
+		List<String> paths = new ArrayList<String>(myWorkers.length);
+		for (int i = 0; getCheckpointFile(file, i).exists(); i++) {
+			paths.add(getCheckpointFile(file, i).getAbsolutePath());
+		}
+		if (paths.isEmpty()) {
+			throw new SimulationException("No checkpoint files found for " + file.getPath());
+		}
+
+		for (int i = 0; i < myWorkers.length; i++) {
+			send(i, SimulatorWorker.RESTORE_CHECKPOINT, (Object) paths.toArray(new String[0]));
+		}
+		return ((Float) getReplies()[0]).floatValue();
+	}
+
+	private static File getCheckpointFile(File file, int worker) {
+		return new File(file.getPath() + "." + worker);
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#addProbe(java.lang.String, java.lang.String, boolean)
+	 */
+	public synchronized Probe addProbe(String nodeName, String state, boolean record) throws SimulationException {
+		return addProbe(nodeName, -1, state, record);
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#addProbe(java.lang.String, int, java.lang.String, boolean)
+	 */
+	public synchronized Probe addProbe(String ensembleName, int neuronIndex, String state, boolean record)
+			throws SimulationException {
+		RemoteProbe result = new RemoteProbe(ensembleName, neuronIndex, state, record);
+		if (myDeployed) {
+			result.attach();
+		}
+		getProbeList().add(result);
+		fireVisibleChangeEvent();
+		return result;
+	}
+
+	/**
+	 * Not supported, because probe targets live in other JVMs. Use one of the other addProbe(...) methods.
+	 *
+	 * @see ca.nengo.sim.Simulator#addProbe(java.lang.String, ca.nengo.model.Probeable, java.lang.String, boolean)
+	 */
+	public Probe addProbe(String ensembleName, Probeable target, String state, boolean record)
+			throws SimulationException {
+		throw new SimulationException("Probes on a DistributedSimulator must be added by name");
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#removeProbe(ca.nengo.util.Probe)
+	 */
+	public synchronized void removeProbe(Probe probe) throws SimulationException {
+		if (!getProbeList().remove(probe)) {
+			throw new SimulationException("Probe could not be removed");
+		}
+		RemoteProbe remote = (RemoteProbe) probe;
+		if (myDeployed && remote.myIndex >= 0) {
+			send(remote.myWorker, SimulatorWorker.REMOVE_PROBE, Integer.valueOf(remote.myIndex));
+			getReply(remote.myWorker);
+		}
+		fireVisibleChangeEvent();
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#resetProbes()
+	 */
+	public synchronized void resetProbes() {
+		for (RemoteProbe probe : getProbeList()) {
+			probe.reset();
+		}
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#getProbes()
+	 */
+	public synchronized Probe[] getProbes() {
+		return getProbeList().toArray(new Probe[0]);
+	}
+
+	private List<RemoteProbe> getProbeList() {
+		if (myProbes == null) {
+			myProbes = new ArrayList<RemoteProbe>(20);
+		}
+		return myProbes;
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#run(float, float, float)
+	 */
+	public void run(float startTime, float endTime, float stepSize) throws SimulationException {
+		run(startTime, endTime, stepSize, true);
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#run(float, float, float, boolean)
+	 */
+	public synchronized void run(float startTime, float endTime, float stepSize, boolean topLevel)
+			throws SimulationException {
+		ensureDeployed();
+		resetProbes();
+		fireSimulatorEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
+
+		for (int i = 0; i < myWorkers.length; i++) {
+			send(i, SimulatorWorker.RUN, Float.valueOf(startTime), Float.valueOf(endTime), Float.valueOf(stepSize));
+		}
+		getReplies();
+
+		fireSimulatorEvent(new SimulatorEvent(1f, SimulatorEvent.Type.FINISHED));
+	}
+
+	/**
+	 * Stops the workers (they must be restarted to be used again) and closes connections to them.
+	 */
+	public synchronized void shutdown() {
+		try {
+			connect();
+			for (int i = 0; i < myWorkers.length; i++) {
+				send(i, SimulatorWorker.SHUTDOWN);
+				getReply(i);
+			}
+		} catch (SimulationException e) {
+			ourLogger.warn("Couldn't shut down all workers", e);
+		}
+		disconnect();
+
+		if (myProcesses != null) {
+			for (Process process : myProcesses) {
+				if (!waitFor(process, SHUTDOWN_TIMEOUT)) {
+					process.destroy();
+				}
+			}
+			myProcesses = null;
+		}
+	}
+
+	/*
+	 * @return True if the process exited within the given number of milliseconds
+	 */
+	private static boolean waitFor(Process process, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				process.exitValue();
+				return true;
+			} catch (IllegalThreadStateException e) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ie) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#addSimulatorListener(ca.nengo.sim.SimulatorListener)
+	 */
+	public void addSimulatorListener(SimulatorListener listener) {
+		if (mySimulatorListeners == null) {
+			mySimulatorListeners = new ArrayList<SimulatorListener>(1);
+		}
+		if (!mySimulatorListeners.contains(listener)) {
+			mySimulatorListeners.add(listener);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.sim.Simulator#removeSimulatorListener(ca.nengo.sim.SimulatorListener)
+	 */
+	public void removeSimulatorListener(SimulatorListener listener) {
+		if (mySimulatorListeners != null) {
+			mySimulatorListeners.remove(listener);
+		}
+	}
+
+	protected void fireSimulatorEvent(SimulatorEvent event) {
+		if (mySimulatorListeners != null) {
+			for (SimulatorListener listener : mySimulatorListeners) {
+				listener.processEvent(event);
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.VisiblyMutable#addChangeListener(ca.nengo.util.VisiblyMutable.Listener)
+	 */
+	public void addChangeListener(Listener listener) {
+		if (myChangeListeners == null) {
+			myChangeListeners = new ArrayList<Listener>(1);
+		}
+		myChangeListeners.add(listener);
+	}
+
+	/**
+	 * @see ca.nengo.util.VisiblyMutable#removeChangeListener(ca.nengo.util.VisiblyMutable.Listener)
+	 */
+	public void removeChangeListener(Listener listener) {
+		if (myChangeListeners != null) {
+			myChangeListeners.remove(listener);
+		}
+	}
+
+	private void fireVisibleChangeEvent() {
+		VisiblyMutableUtils.changed(this, myChangeListeners);
+	}
+
+	/**
+	 * @return A DistributedSimulator that uses the same workers, with no Network, Probes or listeners
+	 * @see ca.nengo.sim.Simulator#clone()
+	 */
+	@Override
+	public Simulator clone() throws CloneNotSupportedException {
+		DistributedSimulator result = new DistributedSimulator(myWorkers);
+		result.myPartitioner = myPartitioner;
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "DistributedSimulator" + Arrays.toString(myWorkers);
+	}
+
+	/**
+	 * A Probe whose target is simulated by a worker. Data are retrieved from the worker on demand.
+	 */
+	private class RemoteProbe implements Probe {
+
+		private final String myNodeName;
+		private final int myNeuronIndex;
+		private final String myStateName;
+		private final boolean myRecord;
+		private float mySamplingRate;
+		private int myWorker;
+		private int myIndex;
+		private TimeSeries myData;
+
+		public RemoteProbe(String nodeName, int neuronIndex, String stateName, boolean record) {
+			myNodeName = nodeName;
+			myNeuronIndex = neuronIndex;
+			myStateName = stateName;
+			myRecord = record;
+			myIndex = -1;
+		}
+
+		/*
+		 * Adds the corresponding probe on the worker that simulates the target.
+		 */
+		private void attach() throws SimulationException {
+			myWorker = getPartition(myNodeName);
+			send(myWorker, SimulatorWorker.ADD_PROBE, myNodeName, Integer.valueOf(myNeuronIndex), myStateName,
+					Boolean.valueOf(myRecord));
+			myIndex = ((Integer) getReply(myWorker)).intValue();
+			if (mySamplingRate > 0) {
+				setSamplingRate(mySamplingRate);
+			}
+		}
+
+		public void connect(String ensembleName, Probeable target, String stateName, boolean record)
+				throws SimulationException {
+			throw new SimulationException("Remote probes are connected by the DistributedSimulator");
+		}
+
+		public void connect(Probeable target, String stateName, boolean record) throws SimulationException {
+			throw new SimulationException("Remote probes are connected by the DistributedSimulator");
+		}
+
+		public void reset() {
+			myData = null;
+		}
+
+		public void collect(float time) {
+			//collected by the worker
+		}
+
+		public void setSamplingRate(float rate) {
+			mySamplingRate = rate;
+			if (myDeployed && myIndex >= 0) {
+				try {
+					send(myWorker, SimulatorWorker.SET_SAMPLING_RATE, Integer.valueOf(myIndex), Float.valueOf(rate));
+					getReply(myWorker);
+				} catch (SimulationException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+
+		public TimeSeries getData() {
+			synchronized (DistributedSimulator.this) {
+				if (myData == null && myDeployed && myIndex >= 0) {
+					try {
+						send(myWorker, SimulatorWorker.GET_PROBE_DATA, Integer.valueOf(myIndex));
+						myData = (TimeSeries) getReply(myWorker);
+					} catch (SimulationException e) {
+						throw new RuntimeException("Couldn't get probe data", e);
+					}
+				}
+				return myData;
+			}
+		}
+
+		/**
+		 * @return null (the target is simulated in another JVM)
+		 */
+		public Probeable getTarget() {
+			return null;
+		}
+
+		public String getStateName() {
+			return myStateName;
+		}
+
+		public boolean isInEnsemble() {
+			return myNeuronIndex >= 0;
+		}
+
+		public String getEnsembleName() {
+			return myNeuronIndex >= 0 ? myNodeName : null;
+		}
+
+		public ProbeTask getProbeTask() {
+			return null;
+		}
+	}
+
+}
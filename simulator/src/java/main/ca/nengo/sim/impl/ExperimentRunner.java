@@ -0,0 +1,214 @@
+package ca.nengo.sim.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.nengo.io.PayloadStore;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.sim.Simulator;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Runs many independent simulations of one model concurrently in this JVM, e.g. for
+ * parameter sweeps or replications with different random seeds.
+ *
+ * <p>Each run gets its own copy of the model, with its own state. The large matrices that don't
+ * change during a simulation (decoders, encoders, termination transforms, evaluation points)
+ * are shared by all the copies rather than duplicated (see PayloadStore.createShared()). Their
+ * owners replace rather than modify them when they change (e.g. decoders when an ensemble's radii
+ * are set), so a Setup can change them in one copy without affecting the others.</p>
+ *
+ * <p>The model is copied as it is when the runner is created; later changes to it have no effect
+ * on the runs.</p>
+ *
+ * @author Nengo Developers
+ */
+public class ExperimentRunner {
+
+	private final byte[] myModel;
+	private final PayloadStore myPayloads;
+	private final List<String[]> myProbes;
+	private Setup mySetup;
+	private int myNumThreads;
+
+	/**
+	 * @param model The model to run
+	 * @throws IOException if the model can't be copied (e.g. it contains something that isn't
+	 * 		Serializable)
+	 */
+	public ExperimentRunner(Network model) throws IOException {
+		myPayloads = PayloadStore.createShared();
+		myProbes = new ArrayList<String[]>(10);
+		myNumThreads = Runtime.getRuntime().availableProcessors();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PayloadStore.bind(myPayloads);
+		try {
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(model);
+			oos.close();
+		} finally {
+			PayloadStore.unbind();
+		}
+		myModel = bytes.toByteArray();
+	}
+
+	/**
+	 * @param nodeName Name of a top-level Node of the model
+	 * @param state Name of a state variable of the Node, which is recorded in every run
+	 */
+	public void addProbe(String nodeName, String state) {
+		myProbes.add(new String[]{nodeName, state});
+	}
+
+	/**
+	 * @param setup Prepares the copy of the model for each run (null if nothing varies between runs)
+	 */
+	public void setSetup(Setup setup) {
+		mySetup = setup;
+	}
+
+	/**
+	 * @return Prepares the copy of the model for each run (may be null)
+	 */
+	public Setup getSetup() {
+		return mySetup;
+	}
+
+	/**
+	 * @param numThreads Maximum number of runs that proceed at once (defaults to the number of processors)
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * @return Maximum number of runs that proceed at once
+	 */
+	public int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @return A new copy of the model, which shares unchanging matrices with other copies
+	 * @throws IOException if the model can't be read back
+	 */
+	public Network copyModel() throws IOException {
+		PayloadStore.bind(myPayloads);
+		try {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(myModel));
+			try {
+				return (Network) ois.readObject();
+			} finally {
+				ois.close();
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Can't copy model: " + e.getMessage());
+		} finally {
+			PayloadStore.unbind();
+		}
+	}
+
+	/**
+	 * Simulates each run (in its own copy of the model) and collects the data of the probes.
+	 *
+	 * @param numRuns Number of runs
+	 * @param startTime Simulation time at which each run starts
+	 * @param endTime Simulation time at which each run ends
+	 * @param stepSize Length of time step
+	 * @return Data of each probe (in the order they were added) for each run, i.e. result[run][probe]
+	 * @throws SimulationException if any of the runs fails
+	 */
+	public TimeSeries[][] run(int numRuns, final float startTime, final float endTime, final float stepSize)
+			throws SimulationException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(myNumThreads, Math.max(1, numRuns)));
+		try {
+			List<Future<TimeSeries[]>> futures = new ArrayList<Future<TimeSeries[]>>(numRuns);
+			for (int i = 0; i < numRuns; i++) {
+				final int run = i;
+				futures.add(executor.submit(new Callable<TimeSeries[]>() {
+					public TimeSeries[] call() throws Exception {
+						return runOnce(run, startTime, endTime, stepSize);
+					}
+				}));
+			}
+
+			TimeSeries[][] result = new TimeSeries[numRuns][];
+			for (int i = 0; i < numRuns; i++) {
+				try {
+					result[i] = futures.get(i).get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof SimulationException) {
+						throw (SimulationException) e.getCause();
+					}
+					throw new SimulationException("Run " + i + " failed", e.getCause());
+				} catch (InterruptedException e) {
+					throw new SimulationException("Interrupted while waiting for run " + i, e);
+				}
+			}
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private TimeSeries[] runOnce(int run, float startTime, float endTime, float stepSize) throws Exception {
+		Network network = copyModel();
+		if (mySetup != null) {
+			mySetup.setUp(network, run);
+		}
+
+		Simulator simulator = network.getSimulator();
+		if (simulator instanceof LocalSimulator) {
+			//runs are already spread over processors, so each run sticks to one
+			((LocalSimulator) simulator).setSingleThreaded(true);
+			((LocalSimulator) simulator).setDisplayProgress(false);
+		}
+
+		Probe[] probes = new Probe[myProbes.size()];
+		for (int i = 0; i < probes.length; i++) {
+			String[] probe = myProbes.get(i);
+			probes[i] = simulator.addProbe(probe[0], probe[1], true);
+		}
+
+		simulator.run(startTime, endTime, stepSize);
+
+		TimeSeries[] result = new TimeSeries[probes.length];
+		for (int i = 0; i < probes.length; i++) {
+			result[i] = probes[i].getData();
+		}
+		return result;
+	}
+
+	/**
+	 * Prepares a copy of the model for one run, e.g. by setting parameters or random seeds.
+	 */
+	public static interface Setup {
+
+		/**
+		 * @param network This run's copy of the model
+		 * @param run Index of the run
+		 * @throws SimulationException if the copy can't be prepared
+		 * @throws StructuralException if the copy can't be changed as required
+		 */
+		public void setUp(Network network, int run) throws SimulationException, StructuralException;
+	}
+
+}
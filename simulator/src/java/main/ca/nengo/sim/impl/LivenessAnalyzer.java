@@ -0,0 +1,221 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import ca.nengo.model.Ensemble;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.nef.impl.DecodableEnsembleImpl;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
+import ca.nengo.util.ThreadTask;
+import ca.nengo.util.impl.ProbeTask;
+
+/**
+ * <p>Finds the nodes and origins whose output doesn't need to be computed, because it can't
+ * reach a probe or an exposed origin of the simulated Network.</p>
+ *
+ * <p>A node is live if it is probed (or one of its members is), if one of its origins is exposed
+ * by the Network, if it has an outgoing projection to a live node, or if it might do something
+ * besides producing output. The last case includes every node other than DecodableEnsembleImpls,
+ * PassthroughNodes and FunctionInputs, and ensembles that are plastic or have tasks (e.g.
+ * learning). A DecodedOrigin of a live ensemble is unused if its ensemble isn't probed and it is
+ * neither exposed nor the start of a projection to a live node.</p>
+ *
+ * <p>The analysis holds until probes, projections or exposed origins change, so simulators
+ * repeat it at the start of each run.</p>
+ *
+ * @author Nengo Developers
+ */
+public class LivenessAnalyzer {
+
+	private final Map<Object, Boolean> myLive; //identity map used as a set
+	private final Map<Object, Boolean> myUsedOrigins;
+	private final Map<Object, Boolean> myProbed;
+	private final Map<Object, Node> myKnown; //given nodes and their members, to the given node
+	private final List<DecodedOrigin> myUnusedOrigins;
+
+	/**
+	 * @param network Network that contains the nodes (its exposed origins are live)
+	 * @param nodes Nodes to be run
+	 * @param projections Projections to be run
+	 * @param tasks Tasks to be run (the targets of ProbeTasks are live)
+	 */
+	public LivenessAnalyzer(Network network, Node[] nodes, Projection[] projections, Collection<ThreadTask> tasks) {
+		myLive = new IdentityHashMap<Object, Boolean>(nodes.length * 2);
+		myUsedOrigins = new IdentityHashMap<Object, Boolean>(projections.length * 2);
+		myProbed = new IdentityHashMap<Object, Boolean>();
+
+		myKnown = new IdentityHashMap<Object, Node>(nodes.length * 2);
+		for (Node node : nodes) {
+			if (node instanceof Ensemble) {
+				for (Node member : ((Ensemble) node).getNodes()) {
+					myKnown.put(member, node);
+				}
+			}
+			myKnown.put(node, node);
+		}
+
+		Map<Node, List<Origin>> incoming = new IdentityHashMap<Node, List<Origin>>(nodes.length * 2);
+		LinkedList<Node> pending = new LinkedList<Node>();
+		for (Projection projection : projections) {
+			Origin origin = getBase(projection.getOrigin());
+			Node target = myKnown.get(getBase(projection.getTermination()).getNode());
+			if (target == null) { //can't tell where it goes, so assume it matters
+				markUsed(origin, pending);
+			} else {
+				List<Origin> origins = incoming.get(target);
+				if (origins == null) {
+					origins = new ArrayList<Origin>(2);
+					incoming.put(target, origins);
+				}
+				origins.add(origin);
+			}
+		}
+
+		for (ThreadTask task : tasks) {
+			if (task instanceof ProbeTask) {
+				Node probed = myKnown.get(((ProbeTask) task).getParent());
+				if (probed != null) {
+					myProbed.put(probed, Boolean.TRUE);
+					markLive(probed, pending);
+				}
+			}
+		}
+
+		if (network != null) {
+			for (Origin origin : network.getOrigins()) {
+				markUsed(getBase(origin), pending);
+			}
+		}
+
+		for (Node node : nodes) {
+			if (!isRemovable(node)) {
+				markLive(node, pending);
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			List<Origin> origins = incoming.get(pending.removeFirst());
+			if (origins != null) {
+				for (Origin origin : origins) {
+					markUsed(origin, pending);
+				}
+			}
+		}
+
+		myUnusedOrigins = new ArrayList<DecodedOrigin>();
+		for (Node node : nodes) {
+			if (isLive(node) && node instanceof DecodableEnsembleImpl && !myProbed.containsKey(node) && isRemovable(node)) {
+				for (Origin origin : node.getOrigins()) {
+					if (origin instanceof DecodedOrigin && !myUsedOrigins.containsKey(origin)) {
+						myUnusedOrigins.add((DecodedOrigin) origin);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param node A node
+	 * @return True if the node has to be run
+	 */
+	public boolean isLive(Node node) {
+		return myLive.containsKey(node);
+	}
+
+	/**
+	 * @param nodes A list of nodes
+	 * @return The live nodes in the list
+	 */
+	public Node[] getLiveNodes(Node[] nodes) {
+		List<Node> result = new ArrayList<Node>(nodes.length);
+		for (Node node : nodes) {
+			if (isLive(node) || !isRemovable(node) || !isAnalyzed(node)) {
+				result.add(node);
+			}
+		}
+		return result.toArray(new Node[0]);
+	}
+
+	/**
+	 * @param projections A list of projections
+	 * @return The projections that don't end on a node that doesn't need to be run
+	 */
+	public Projection[] getLiveProjections(Projection[] projections) {
+		List<Projection> result = new ArrayList<Projection>(projections.length);
+		for (Projection projection : projections) {
+			Node target = myKnown.get(getBase(projection.getTermination()).getNode());
+			if (target == null || isLive(target) || !isRemovable(target)) {
+				result.add(projection);
+			}
+		}
+		return result.toArray(new Projection[0]);
+	}
+
+	/**
+	 * @return DecodedOrigins of live ensembles whose output isn't needed
+	 */
+	public List<DecodedOrigin> getUnusedOrigins() {
+		return myUnusedOrigins;
+	}
+
+	private boolean isAnalyzed(Node node) {
+		return myKnown.get(node) == node;
+	}
+
+	private void markLive(Node node, LinkedList<Node> pending) {
+		if (myLive.put(node, Boolean.TRUE) == null) {
+			pending.add(node);
+		}
+	}
+
+	private void markUsed(Origin origin, LinkedList<Node> pending) {
+		myUsedOrigins.put(origin, Boolean.TRUE);
+		Node node = myKnown.get(origin.getNode());
+		if (node != null) {
+			markLive(node, pending);
+		}
+	}
+
+	//true if the node only produces output (so it can be skipped if the output isn't needed)
+	private static boolean isRemovable(Node node) {
+		if (node instanceof PassthroughNode || node instanceof FunctionInput) {
+			return true;
+		} else if (node instanceof DecodableEnsembleImpl) {
+			DecodableEnsembleImpl ensemble = (DecodableEnsembleImpl) node;
+			if (ensemble.getTasks().length > 0) {
+				return false;
+			}
+			for (Termination termination : ensemble.getTerminations()) {
+				if (termination instanceof PlasticEnsembleTermination) {
+					return false;
+				}
+			}
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	private static Origin getBase(Origin origin) {
+		return origin instanceof OriginWrapper ? ((OriginWrapper) origin).getBaseOrigin() : origin;
+	}
+
+	private static Termination getBase(Termination termination) {
+		return termination instanceof TerminationWrapper ? ((TerminationWrapper) termination).getBaseTermination() : termination;
+	}
+
+}
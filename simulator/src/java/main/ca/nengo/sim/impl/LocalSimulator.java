@@ -30,22 +30,30 @@ package ca.nengo.sim.impl;
 
 import java.lang.System;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import ca.nengo.io.Checkpoint;
+import ca.nengo.model.Bindable;
 import ca.nengo.model.Ensemble;
-import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.ProjectionImpl;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
 import ca.nengo.sim.Simulator;
 import ca.nengo.sim.SimulatorEvent;
@@ -74,8 +82,21 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     private List<Probe> myProbes;
     private Network myNetwork;
     private boolean myDisplayProgress;
+    private boolean mySingleThreaded;
+    private boolean myFoldPassthroughNodes;
+    private boolean myEliminateDeadNodes;
+    private transient List<DecodedOrigin> myUnusedOrigins;
+    private boolean myOptimizeProjections;
+    private transient List<DecodedTermination> myWeightedTerminations;
+    private Projection[] myRunProjections;
+    private Node[] myRunNodes;
+    private transient MultiRateSchedule mySchedule; //when each of myRunNodes is run
+    private boolean myCompileDirectMode;
+    private transient DirectModeGraph myDirectModeGraph; //DIRECT-mode ensembles that aren't in myRunNodes
+    private float myTime;
     private transient List<VisiblyMutable.Listener> myChangeListeners;
     private transient NodeThreadPool myNodeThreadPool;
+    private transient PassthroughFolder myPassthroughFolder; //folder of the projections that were last run
 
     /**
      * Collection of Simulator
@@ -112,6 +133,95 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         }
 
         myTasks = NodeThreadPool.collectTasks(myNodes).toArray(new ThreadTask[0]);
+        schedule();
+    }
+
+    /**
+     * Sets the nodes and projections that are run in the calling thread, leaving out
+     * PassthroughNodes if they are to be folded and nodes that don't need to be run if dead
+     * nodes are eliminated, marks unused DecodedOrigins, chooses full weights for
+     * projections where they are cheaper if projections are optimized, and compiles DIRECT-mode
+     * ensembles if that is enabled. This depends on probes and projections, so it is redone at
+     * the start of each run.
+     */
+    private void schedule() {
+        List<ThreadTask> tasks = new ArrayList<ThreadTask>(myProbeTasks);
+        tasks.addAll(Arrays.asList(myTasks));
+
+        List<DecodedTermination> weighted = new ArrayList<DecodedTermination>(0);
+        if (myOptimizeProjections) {
+            weighted = ProjectionCostModel.compile(
+                    NodeThreadPool.collectProjections(myNodes, myProjections).toArray(new Projection[0]));
+        }
+        if (myWeightedTerminations != null) {
+            for (DecodedTermination termination : myWeightedTerminations) {
+                if (!weighted.contains(termination)) {
+                    termination.clearWeights();
+                }
+            }
+        }
+        myWeightedTerminations = weighted;
+
+        LivenessAnalyzer liveness = null;
+        if (myEliminateDeadNodes) {
+            //analyze the flattened network, so that nested origins are covered too
+            liveness = new LivenessAnalyzer(myNetwork,
+                    NodeThreadPool.collectNodes(myNodes, false).toArray(new Node[0]),
+                    NodeThreadPool.collectProjections(myNodes, myProjections).toArray(new Projection[0]),
+                    tasks);
+        }
+
+        if (myUnusedOrigins != null) {
+            for (DecodedOrigin origin : myUnusedOrigins) {
+                origin.setUnused(false);
+            }
+            myUnusedOrigins = null;
+        }
+        if (liveness != null) {
+            myUnusedOrigins = liveness.getUnusedOrigins();
+            for (DecodedOrigin origin : myUnusedOrigins) {
+                origin.setUnused(true);
+            }
+        }
+
+        myRunNodes = myNodes;
+        myRunProjections = myProjections;
+        PassthroughFolder folder = null;
+        if (myFoldPassthroughNodes) {
+            folder = new PassthroughFolder(myNetwork, myNodes, myProjections, tasks, myPassthroughFolder);
+            myRunNodes = folder.getNodes();
+            myRunProjections = folder.getProjections();
+        }
+        myPassthroughFolder = folder;
+        if (liveness != null) {
+            myRunNodes = liveness.getLiveNodes(myRunNodes);
+            myRunProjections = liveness.getLiveProjections(myRunProjections);
+        }
+        myDirectModeGraph = null;
+        if (myCompileDirectMode) {
+            DirectModeGraph graph = new DirectModeGraph(myRunNodes, myRunProjections, tasks);
+            if (graph.getEnsembles().length > 0) {
+                myRunNodes = graph.getNodes();
+                myDirectModeGraph = graph;
+            }
+        }
+        mySchedule = new MultiRateSchedule(myRunNodes, mySchedule);
+    }
+
+    /**
+     * Resolves the names that nodes (including those of nested networks) would otherwise look
+     * up at each step. Nodes rebind themselves if their structure changes during the run.
+     */
+    private void bind() throws SimulationException {
+        for (Node node : NodeThreadPool.collectNodes(myNodes, false)) {
+            if (node instanceof Bindable) {
+                try {
+                    ((Bindable) node).bind();
+                } catch (StructuralException e) {
+                    throw new SimulationException(e);
+                }
+            }
+        }
     }
 
     /**
@@ -146,8 +256,15 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     public synchronized void run(float startTime, float endTime, float stepSize, boolean topLevel)
             throws SimulationException {
     	
-    	 myNodeThreadPool = null;
-         myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
+        PassthroughFolder previousFolder = myPassthroughFolder;
+        schedule();
+        myNodeThreadPool = null;
+        if (!mySingleThreaded && myDirectModeGraph == null) { //the thread pool doesn't run compiled ensembles
+            myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks, myFoldPassthroughNodes, myEliminateDeadNodes,
+                    previousFolder, mySchedule);
+            myPassthroughFolder = myNodeThreadPool.getPassthroughFolder();
+        }
+        bind();
 
         //		float pre_time = System.nanoTime();
 
@@ -224,18 +341,24 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         if(NodeThreadPool.isMultithreading() && myNodeThreadPool != null){
             myNodeThreadPool.step(startTime, endTime);
         }else{
-            for (Projection myProjection : myProjections) {
-                InstantaneousOutput values = myProjection.getOrigin().getValues();
-                myProjection.getTermination().setValues(values);
+            for (Projection myProjection : myRunProjections) {
+                ProjectionImpl.transfer(myProjection);
             }
 
-            for (Node myNode : myNodes) {
+            for (int i = 0; i < myRunNodes.length; i++) {
+                if (!mySchedule.isDue(i, startTime, endTime)) { //slower node holds its output
+                    continue;
+                }
+                Node myNode = myRunNodes[i];
                 if(myNode instanceof NetworkImpl) {
-                    ((NetworkImpl)myNode).run(startTime, endTime, false);
+                    ((NetworkImpl)myNode).run(mySchedule.getStartTime(i), endTime, false);
                 } else {
-                    myNode.run(startTime, endTime);
+                    myNode.run(mySchedule.getStartTime(i), endTime);
                 }
             }
+            if (myDirectModeGraph != null) {
+                myDirectModeGraph.run(startTime, endTime);
+            }
 
             
             for (ThreadTask myTask : myTasks) {
@@ -247,6 +370,8 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
                 it.next().collect(endTime);
             }
         }
+
+        myTime = endTime;
     }
 
     /**
@@ -268,11 +393,41 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         for (Node myNode : myNodes) {
             myNode.reset(randomize);
         }
+        myTime = 0;
+        if (mySchedule != null) {
+            mySchedule = new MultiRateSchedule(myRunNodes); //slower nodes start their steps over
+        }
         
         // Force garbage collection
         System.gc();
     }
 
+    /**
+     * @see ca.nengo.sim.Simulator#saveCheckpoint(java.io.File)
+     */
+    public synchronized void saveCheckpoint(File file) throws SimulationException {
+        try {
+            Checkpoint.save(myNetwork, myTime, file);
+        } catch (IOException e) {
+            throw new SimulationException("Can't save checkpoint to " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * @see ca.nengo.sim.Simulator#restoreCheckpoint(java.io.File)
+     */
+    public synchronized float restoreCheckpoint(File file) throws SimulationException {
+        try {
+            myTime = Checkpoint.restore(myNetwork, file);
+            if (mySchedule != null) {
+                mySchedule = new MultiRateSchedule(myRunNodes); //slower nodes start their steps over
+            }
+        } catch (IOException e) {
+            throw new SimulationException("Can't restore checkpoint from " + file.getPath(), e);
+        }
+        return myTime;
+    }
+
     /**
      * @see ca.nengo.sim.Simulator#addProbe(java.lang.String, java.lang.String,
      *      boolean)
@@ -386,6 +541,97 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     {
         myDisplayProgress = display;
     }
+
+    /**
+     * @param singleThreaded If true, this simulator runs everything in the calling thread, even if
+     * 		multithreading is on (useful when many simulations are run concurrently)
+     */
+    public void setSingleThreaded(boolean singleThreaded) {
+        mySingleThreaded = singleThreaded;
+    }
+
+    /**
+     * @return True if this simulator runs everything in the calling thread
+     */
+    public boolean isSingleThreaded() {
+        return mySingleThreaded;
+    }
+
+    /**
+     * @param fold If true, PassthroughNodes are left out of the simulation where possible, and
+     *      projections from them read the upstream origins directly (see PassthroughFolder).
+     *      The one-step delay of each PassthroughNode is kept, so the results are the same. False by default.
+     */
+    public void setFoldPassthroughNodes(boolean fold) {
+        myFoldPassthroughNodes = fold;
+        if (myNetwork != null) {
+            initialize(myNetwork);
+        }
+    }
+
+    /**
+     * @return True if PassthroughNodes are left out of the simulation where possible
+     */
+    public boolean getFoldPassthroughNodes() {
+        return myFoldPassthroughNodes;
+    }
+
+    /**
+     * @param eliminate If true, nodes and DecodedOrigins whose output can't reach a probe or an
+     *      exposed origin of the network aren't run (see LivenessAnalyzer). Their outputs go stale,
+     *      so this shouldn't be used if they are read some other way. False by default.
+     */
+    public void setEliminateDeadNodes(boolean eliminate) {
+        myEliminateDeadNodes = eliminate;
+        if (myNetwork != null) {
+            initialize(myNetwork);
+        }
+    }
+
+    /**
+     * @return True if nodes and DecodedOrigins whose output isn't needed aren't run
+     */
+    public boolean getEliminateDeadNodes() {
+        return myEliminateDeadNodes;
+    }
+
+    /**
+     * @param compile If true, NEFEnsembleImpls in DIRECT mode are run together as a compiled
+     *      graph (see DirectModeGraph), where possible, with the same results. The run is then
+     *      single-threaded. False by default.
+     */
+    public void setCompileDirectMode(boolean compile) {
+        myCompileDirectMode = compile;
+        if (myNetwork != null) {
+            initialize(myNetwork);
+        }
+    }
+
+    /**
+     * @return True if DIRECT-mode ensembles are run as a compiled graph where possible
+     */
+    public boolean getCompileDirectMode() {
+        return myCompileDirectMode;
+    }
+
+    /**
+     * @param optimize If true, each projection from a DecodedOrigin to a DecodedTermination runs
+     *      with a full weight matrix if that is estimated to be cheaper than decoding and encoding
+     *      (see ProjectionCostModel). The results are the same up to float rounding. False by default.
+     */
+    public void setOptimizeProjections(boolean optimize) {
+        myOptimizeProjections = optimize;
+        if (myNetwork != null) {
+            initialize(myNetwork);
+        }
+    }
+
+    /**
+     * @return True if projections run with full weights where that is cheaper
+     */
+    public boolean getOptimizeProjections() {
+        return myOptimizeProjections;
+    }
 	
     /**
      * @see ca.nengo.sim.Simulator#addSimulatorListener(ca.nengo.sim.SimulatorListener)
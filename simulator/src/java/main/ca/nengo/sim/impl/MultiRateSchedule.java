@@ -0,0 +1,119 @@
+package ca.nengo.sim.impl;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ca.nengo.model.MultiRate;
+import ca.nengo.model.Node;
+
+/**
+ * <p>Decides at which time steps each of a list of nodes runs, according to the step
+ * multiples of MultiRate nodes (other nodes run at every step). A node with step multiple k
+ * is due at every k-th step, and is then run from the start of the first of its k steps to
+ * the end of the last.</p>
+ *
+ * <p>Step multiples are read when the schedule is created, so simulators create a new schedule
+ * for each run. The phase of each slower node (the steps counted since it last ran) is passed
+ * on from the simulator's previous schedule, so that it carries over from one run to the next,
+ * e.g. when a nested network is run one step at a time, or a script runs a network in short
+ * pieces. Schedules of different simulators don't share phases. The count starts again if the
+ * node's steps aren't contiguous in time, or if the simulator starts a new chain of schedules,
+ * e.g. after a reset. Each node's entry is only touched by the thread that runs the node.</p>
+ *
+ * @author Nengo Developers
+ */
+public class MultiRateSchedule {
+
+	private final int[] myMultiples;
+	private final Phase[] myPhases; //null for nodes that run at every step
+	private final float[] myStartTimes; //start of the current step of nodes that run at every step
+	private final Map<Node, Phase> myPhaseMap; //phases of slower nodes, shared with the schedules before and after this one
+
+	/**
+	 * @param nodes Nodes to be run, in the order in which they are referred to by index
+	 */
+	public MultiRateSchedule(Node[] nodes) {
+		this(nodes, null);
+	}
+
+	/**
+	 * @param nodes Nodes to be run, in the order in which they are referred to by index
+	 * @param previous The schedule that the same simulator used before this one (its nodes may
+	 * 		differ), from which the phases of slower nodes carry over. Null to start all nodes
+	 * 		at the beginning of their steps.
+	 */
+	public MultiRateSchedule(Node[] nodes, MultiRateSchedule previous) {
+		myMultiples = new int[nodes.length];
+		myPhases = new Phase[nodes.length];
+		myStartTimes = new float[nodes.length];
+		myPhaseMap = previous == null ? new WeakHashMap<Node, Phase>() : previous.myPhaseMap;
+		for (int i = 0; i < nodes.length; i++) {
+			myMultiples[i] = getStepMultiple(nodes[i]);
+			if (myMultiples[i] > 1) {
+				myPhases[i] = myPhaseMap.get(nodes[i]);
+				if (myPhases[i] == null) {
+					myPhases[i] = new Phase();
+					myPhaseMap.put(nodes[i], myPhases[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a time step for a node.
+	 *
+	 * @param index Index of a node
+	 * @param startTime Start of the time step
+	 * @param endTime End of the time step
+	 * @return True if the node should be run at the end of this time step (from getStartTime(index))
+	 */
+	public boolean isDue(int index, float startTime, float endTime) {
+		Phase phase = myPhases[index];
+		if (phase == null) {
+			myStartTimes[index] = startTime;
+			return true;
+		}
+
+		int multiple = myMultiples[index];
+		if (phase.myTicks >= multiple
+				|| (phase.myTicks > 0 && Math.abs(startTime - phase.myEndTime) > (endTime - startTime) / 2)) {
+			phase.myTicks = 0; //the step multiple has changed, or simulation time has jumped
+		}
+
+		if (phase.myTicks == 0) {
+			phase.myStartTime = startTime;
+		}
+		phase.myEndTime = endTime;
+		phase.myTicks++;
+		if (phase.myTicks == multiple) {
+			phase.myTicks = 0;
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * @param index Index of a node
+	 * @return Time at which the node's current step started
+	 */
+	public float getStartTime(int index) {
+		return myPhases[index] == null ? myStartTimes[index] : myPhases[index].myStartTime;
+	}
+
+	/**
+	 * @param node A node
+	 * @return The node's step multiple if it is MultiRate (at least 1), otherwise 1
+	 */
+	public static int getStepMultiple(Node node) {
+		return node instanceof MultiRate ? Math.max(1, ((MultiRate) node).getStepMultiple()) : 1;
+	}
+
+	//progress of a slower node through its step
+	private static class Phase {
+		private int myTicks; //steps since the node last ran
+		private float myStartTime; //start of the node's current step
+		private float myEndTime; //end of the last simulation step counted
+	}
+
+}
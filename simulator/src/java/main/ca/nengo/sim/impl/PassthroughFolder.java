@@ -0,0 +1,513 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.nengo.model.BufferedOrigin;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.impl.PassthroughNode.PassthroughTermination;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.ScriptGenException;
+import ca.nengo.util.ThreadTask;
+import ca.nengo.util.impl.ProbeTask;
+
+/**
+ * <p>Removes PassthroughNodes from the nodes and projections that a simulator runs. Each
+ * projection out of a PassthroughNode is replaced with one that reads the origins upstream of
+ * the PassthroughNode directly, through the product of the transforms along the way (chains of
+ * PassthroughNodes are folded into a single transform per upstream origin). The PassthroughNodes,
+ * and the projections into them, are then not run at all.</p>
+ *
+ * <p>Each PassthroughNode delays its input by one time step (its input is read in one step and
+ * passed on in the next). The folded projections keep these delays, so the results are the same
+ * as without folding. The output of a folded projection is written into arrays that it reuses,
+ * and the buffers of upstream BufferedOrigins are read without copying.</p>
+ *
+ * <p>The Network itself isn't changed, so the PassthroughNodes and their projections are still
+ * there for scripts and the UI. The origins of folded PassthroughNodes are no longer updated, so
+ * PassthroughNodes that are probed aren't folded.</p>
+ *
+ * <p>A PassthroughNode is only folded if each of its terminations receives exactly one of the given
+ * projections from an origin with real-valued output, its origin is the start of at least one of
+ * the given projections (and isn't exposed by the given Network), it isn't probed, and it isn't
+ * part of a loop of PassthroughNodes.</p>
+ *
+ * @author Nengo Developers
+ */
+public class PassthroughFolder {
+
+	private final Node[] myNodes;
+	private final Projection[] myProjections;
+
+	private final Map<Termination, Projection> myIncoming; //keyed on base termination
+	private final Map<Origin, List<Projection>> myOutgoing; //keyed on base origin
+	private final Set<Origin> myExposed;
+	private final Set<Object> myProbed;
+	private final Map<PassthroughNode, Boolean> myFoldable;
+	private final Map<PassthroughNode, List<Source>> mySources;
+	private final Map<Projection, FoldedProjection> myFolded; //keyed on the projection replaced
+
+	/**
+	 * @param network Network that contains the nodes (only its exposed origins are used, to
+	 * 		keep PassthroughNodes that are read from outside)
+	 * @param nodes Nodes to be run
+	 * @param projections Projections to be run
+	 * @param tasks Tasks to be run (PassthroughNodes that are the targets of ProbeTasks are kept)
+	 */
+	public PassthroughFolder(Network network, Node[] nodes, Projection[] projections, Collection<ThreadTask> tasks) {
+		this(network, nodes, projections, tasks, null);
+	}
+
+	/**
+	 * @param network Network that contains the nodes (only its exposed origins are used, to
+	 * 		keep PassthroughNodes that are read from outside)
+	 * @param nodes Nodes to be run
+	 * @param projections Projections to be run
+	 * @param tasks Tasks to be run (PassthroughNodes that are the targets of ProbeTasks are kept)
+	 * @param previous Folder that the last run of these nodes used, or null. Projections folded the
+	 * 		same way again carry on with the input that they have delayed. Otherwise they start with
+	 * 		what the PassthroughNodes hold.
+	 */
+	public PassthroughFolder(Network network, Node[] nodes, Projection[] projections, Collection<ThreadTask> tasks,
+			PassthroughFolder previous) {
+		myFolded = new HashMap<Projection, FoldedProjection>();
+		myIncoming = new HashMap<Termination, Projection>(projections.length * 2);
+		myOutgoing = new HashMap<Origin, List<Projection>>(projections.length * 2);
+		for (Projection projection : projections) {
+			myIncoming.put(getBase(projection.getTermination()), projection);
+			Origin origin = getBase(projection.getOrigin());
+			List<Projection> outgoing = myOutgoing.get(origin);
+			if (outgoing == null) {
+				outgoing = new ArrayList<Projection>(2);
+				myOutgoing.put(origin, outgoing);
+			}
+			outgoing.add(projection);
+		}
+
+		myExposed = new HashSet<Origin>();
+		if (network != null) {
+			for (Origin origin : network.getOrigins()) {
+				myExposed.add(getBase(origin));
+			}
+		}
+
+		myProbed = new HashSet<Object>();
+		for (ThreadTask task : tasks) {
+			if (task instanceof ProbeTask) {
+				myProbed.add(((ProbeTask) task).getParent());
+			}
+		}
+
+		myFoldable = new HashMap<PassthroughNode, Boolean>();
+		mySources = new HashMap<PassthroughNode, List<Source>>();
+
+		List<Node> remainingNodes = new ArrayList<Node>(nodes.length);
+		for (Node node : nodes) {
+			if (!(node instanceof PassthroughNode && isFoldable((PassthroughNode) node, new HashSet<PassthroughNode>()))) {
+				remainingNodes.add(node);
+			}
+		}
+		myNodes = remainingNodes.toArray(new Node[0]);
+
+		List<Projection> remainingProjections = new ArrayList<Projection>(projections.length);
+		for (Projection projection : projections) {
+			Node target = getBase(projection.getTermination()).getNode();
+			Node source = getBase(projection.getOrigin()).getNode();
+			if (isFolded(target)) {
+				continue;
+			} else if (isFolded(source)) {
+				FoldedProjection folded = new FoldedProjection(projection, (PassthroughNode) source,
+						getSources((PassthroughNode) source));
+				FoldedProjection last = previous == null ? null : previous.myFolded.get(projection);
+				if (last == null || !folded.myOrigin.resume(last.myOrigin)) {
+					seed(folded.myOrigin, (PassthroughNode) source, null, 0);
+				}
+				myFolded.put(projection, folded);
+				remainingProjections.add(folded);
+			} else {
+				remainingProjections.add(projection);
+			}
+		}
+		myProjections = remainingProjections.toArray(new Projection[0]);
+	}
+
+	/**
+	 * @return The nodes to run (without the folded PassthroughNodes)
+	 */
+	public Node[] getNodes() {
+		return myNodes;
+	}
+
+	/**
+	 * @return The projections to run
+	 */
+	public Projection[] getProjections() {
+		return myProjections;
+	}
+
+	private boolean isFolded(Node node) {
+		return node instanceof PassthroughNode && Boolean.TRUE.equals(myFoldable.get(node));
+	}
+
+	private boolean isFoldable(PassthroughNode node, Set<PassthroughNode> visiting) {
+		Boolean result = myFoldable.get(node);
+		if (result != null) {
+			return result.booleanValue();
+		}
+		if (!visiting.add(node)) {
+			return false; //loop
+		}
+
+		boolean foldable = true;
+		try {
+			Origin origin = node.getOrigin(PassthroughNode.ORIGIN);
+			foldable = myOutgoing.containsKey(origin) && !myExposed.contains(origin) && !myProbed.contains(node);
+			for (Projection projection : myOutgoing.containsKey(origin) ? myOutgoing.get(origin) : new ArrayList<Projection>(0)) {
+				foldable = foldable && !projection.biasIsEnabled();
+			}
+
+			for (Termination termination : node.getTerminations()) {
+				Projection projection = myIncoming.get(termination);
+				if (!foldable || projection == null) {
+					foldable = false;
+					break;
+				}
+
+				Origin source = getBase(projection.getOrigin());
+				if (source.getNode() instanceof PassthroughNode) {
+					foldable = isFoldable((PassthroughNode) source.getNode(), visiting);
+				} else {
+					foldable = source.getValues() instanceof RealOutput;
+				}
+			}
+		} catch (StructuralException e) {
+			foldable = false;
+		} catch (SimulationException e) {
+			foldable = false;
+		}
+
+		visiting.remove(node);
+		myFoldable.put(node, Boolean.valueOf(foldable));
+		return foldable;
+	}
+
+	//origins that a folded PassthroughNode's output is a linear function of, with the transform and delay from each
+	private List<Source> getSources(PassthroughNode node) {
+		List<Source> result = mySources.get(node);
+		if (result != null) {
+			return result;
+		}
+
+		result = new ArrayList<Source>();
+		for (Termination termination : node.getTerminations()) {
+			float[][] transform = ((PassthroughTermination) termination).getTransform();
+			if (transform == null) {
+				transform = MU.I(termination.getDimensions());
+			}
+
+			Origin source = getBase(myIncoming.get(termination).getOrigin());
+			if (isFolded(source.getNode())) {
+				for (Source upstream : getSources((PassthroughNode) source.getNode())) {
+					add(result, upstream.myOrigin, upstream.myDelay + 1, MU.prod(transform, upstream.myTransform));
+				}
+			} else {
+				add(result, source, 1, transform);
+			}
+		}
+
+		mySources.put(node, result);
+		return result;
+	}
+
+	/*
+	 * Adds the output that a folded PassthroughNode holds (and that those upstream hold, each
+	 * passed on a step later) to what the given origin will pass on, as if the nodes had been run.
+	 */
+	private void seed(FoldedOrigin origin, PassthroughNode node, float[][] transform, int lag) {
+		try {
+			InstantaneousOutput output = node.getOrigin(PassthroughNode.ORIGIN).getValues();
+			if (output instanceof RealOutput) {
+				float[] values = ((RealOutput) output).getValues();
+				origin.addPending(lag, transform == null ? values : MU.prod(transform, values));
+			}
+		} catch (StructuralException e) {
+			return; //nothing held
+		} catch (SimulationException e) {
+			return;
+		}
+
+		for (Termination termination : node.getTerminations()) {
+			Origin source = getBase(myIncoming.get(termination).getOrigin());
+			if (isFolded(source.getNode())) {
+				float[][] product = ((PassthroughTermination) termination).getTransform();
+				if (transform != null) {
+					product = product == null ? transform : MU.prod(transform, product);
+				}
+				seed(origin, (PassthroughNode) source.getNode(), product, lag + 1);
+			}
+		}
+	}
+
+	private static void add(List<Source> sources, Origin origin, int delay, float[][] transform) {
+		for (Source source : sources) {
+			if (source.myOrigin == origin && source.myDelay == delay) {
+				source.myTransform = MU.sum(source.myTransform, transform);
+				return;
+			}
+		}
+		sources.add(new Source(origin, delay, transform));
+	}
+
+	private static Origin getBase(Origin origin) {
+		return origin instanceof OriginWrapper ? ((OriginWrapper) origin).getBaseOrigin() : origin;
+	}
+
+	private static Termination getBase(Termination termination) {
+		return termination instanceof TerminationWrapper ? ((TerminationWrapper) termination).getBaseTermination() : termination;
+	}
+
+	/**
+	 * An origin upstream of a folded PassthroughNode, with the product of the transforms on the
+	 * way and the number of PassthroughNodes (each of which delays it by a step).
+	 */
+	private static class Source {
+
+		private final Origin myOrigin;
+		private final int myDelay;
+		private float[][] myTransform;
+
+		public Source(Origin origin, int delay, float[][] transform) {
+			myOrigin = origin;
+			myDelay = delay;
+			myTransform = transform;
+		}
+	}
+
+	/**
+	 * A projection out of a folded PassthroughNode, which reads from the origins upstream.
+	 */
+	private static class FoldedProjection implements Projection {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Projection myProjection;
+		private final FoldedOrigin myOrigin;
+
+		public FoldedProjection(Projection projection, PassthroughNode node, List<Source> sources) {
+			myProjection = projection;
+			myOrigin = new FoldedOrigin(projection.getOrigin(), node, sources);
+		}
+
+		public Origin getOrigin() {
+			return myOrigin;
+		}
+
+		public Termination getTermination() {
+			return myProjection.getTermination();
+		}
+
+		public Network getNetwork() {
+			return myProjection.getNetwork();
+		}
+
+		public void addBias(int numInterneurons, float tauInterneurons, float tauBias, boolean excitatory, boolean optimize)
+				throws StructuralException {
+			myProjection.addBias(numInterneurons, tauInterneurons, tauBias, excitatory, optimize);
+		}
+
+		public void removeBias() {
+			myProjection.removeBias();
+		}
+
+		public void enableBias(boolean enable) {
+			myProjection.enableBias(enable);
+		}
+
+		public boolean biasIsEnabled() {
+			return myProjection.biasIsEnabled();
+		}
+
+		public float[][] getWeights() {
+			return myProjection.getWeights();
+		}
+
+		public String toScript(HashMap<String, Object> scriptData) throws ScriptGenException {
+			return myProjection.toScript(scriptData);
+		}
+	}
+
+	/**
+	 * Stands in for the origin of a folded PassthroughNode: the sum of the transformed outputs
+	 * of the origins upstream, each delayed by as many steps as there are PassthroughNodes on
+	 * the way. The upstream origins are read, and the output moves on a step, each time the
+	 * projection is transferred (i.e. with each call to getBuffer() or getValues()).
+	 */
+	private static class FoldedOrigin implements BufferedOrigin {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Origin myOrigin;
+		private final Node myNode;
+		private final Origin[] mySources;
+		private final float[][][] myTransforms;
+		private final int[] myDelays;
+
+		private float[][] myPending; //contributions to the output of each coming step, in a ring
+		private int myStep; //index in myPending of the next step's output
+		private float[][] myBuffers;
+		private int myFront;
+		private float myTime;
+
+		public FoldedOrigin(Origin origin, Node node, List<Source> sources) {
+			myOrigin = origin;
+			myNode = node;
+			mySources = new Origin[sources.size()];
+			myTransforms = new float[sources.size()][][];
+			myDelays = new int[sources.size()];
+			int maxDelay = 0;
+			for (int k = 0; k < mySources.length; k++) {
+				Source source = sources.get(k);
+				mySources[k] = source.myOrigin;
+				myTransforms[k] = source.myTransform;
+				myDelays[k] = source.myDelay;
+				maxDelay = Math.max(maxDelay, source.myDelay);
+			}
+			myPending = new float[maxDelay + 1][origin.getDimensions()];
+			myBuffers = new float[2][origin.getDimensions()];
+			myTime = Float.NEGATIVE_INFINITY;
+		}
+
+		public String getName() {
+			return myOrigin.getName();
+		}
+
+		public int getDimensions() {
+			return myOrigin.getDimensions();
+		}
+
+		//carries on from the given origin if it has been run and folds the same sources in the same way; returns false otherwise
+		private boolean resume(FoldedOrigin previous) {
+			if (previous.myTime == Float.NEGATIVE_INFINITY || !Arrays.equals(mySources, previous.mySources) || !Arrays.equals(myDelays, previous.myDelays)
+					|| getDimensions() != previous.getDimensions()) {
+				return false;
+			}
+			myPending = MU.clone(previous.myPending);
+			myStep = previous.myStep;
+			myTime = previous.myTime;
+			return true;
+		}
+
+		//adds to the output that will be passed on the given number of steps after the next one
+		private void addPending(int lag, float[] values) {
+			float[] pending = myPending[(myStep + lag) % myPending.length];
+			for (int i = 0; i < pending.length; i++) {
+				pending[i] += values[i];
+			}
+		}
+
+		/**
+		 * @see ca.nengo.model.BufferedOrigin#getBuffer()
+		 */
+		public float[] getBuffer() throws SimulationException {
+			float[] result = myBuffers[1 - myFront];
+			float time = Float.NEGATIVE_INFINITY;
+			for (int k = 0; k < mySources.length; k++) {
+				float[] values;
+				if (mySources[k] instanceof BufferedOrigin) {
+					BufferedOrigin source = (BufferedOrigin) mySources[k];
+					values = source.getBuffer();
+					time = Math.max(time, source.getBufferTime());
+				} else {
+					InstantaneousOutput output = mySources[k].getValues();
+					if (!(output instanceof RealOutput)) {
+						throw new SimulationException("Origin " + mySources[k].getName()
+								+ " no longer has real-valued output, so can't be read through a folded PassthroughNode");
+					}
+					values = ((RealOutput) output).getValues();
+					time = Math.max(time, output.getTime());
+				}
+
+				if (k == 0 && time < myTime) {
+					//the simulation has been reset, which clears the PassthroughNodes
+					for (float[] pending : myPending) {
+						Arrays.fill(pending, 0f);
+					}
+				}
+
+				float[][] transform = myTransforms[k];
+				float[] pending = myPending[(myStep + myDelays[k]) % myPending.length];
+				for (int i = 0; i < pending.length; i++) {
+					float[] row = transform[i];
+					float sum = 0;
+					for (int j = 0; j < values.length; j++) {
+						sum += row[j] * values[j];
+					}
+					pending[i] += sum;
+				}
+			}
+
+			float[] due = myPending[myStep];
+			System.arraycopy(due, 0, result, 0, result.length);
+			Arrays.fill(due, 0f);
+			myStep = (myStep + 1) % myPending.length;
+			myFront = 1 - myFront;
+			myTime = time;
+			return result;
+		}
+
+		/**
+		 * @see ca.nengo.model.BufferedOrigin#getBufferTime()
+		 */
+		public float getBufferTime() {
+			return myTime;
+		}
+
+		public InstantaneousOutput getValues() throws SimulationException {
+			return new RealOutputImpl(getBuffer().clone(), Units.UNK, myTime);
+		}
+
+		public void setValues(InstantaneousOutput val) {
+			throw new RuntimeException("The origin of a folded PassthroughNode can't be set");
+		}
+
+		public void setRequiredOnCPU(boolean val) {
+			myOrigin.setRequiredOnCPU(val);
+		}
+
+		public boolean getRequiredOnCPU() {
+			return myOrigin.getRequiredOnCPU();
+		}
+
+		public Node getNode() {
+			return myNode;
+		}
+
+		@Override
+		public Origin clone() throws CloneNotSupportedException {
+			FoldedOrigin result = (FoldedOrigin) super.clone();
+			result.myPending = MU.clone(myPending);
+			result.myBuffers = MU.clone(myBuffers);
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import Jama.Matrix;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl.OriginWrapper;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.MU;
+
+/**
+ * <p>Chooses, for each projection from a DecodedOrigin to a DecodedTermination of an
+ * NEFEnsembleImpl, whether the termination runs factored (transform and dynamics in the
+ * termination's output space, then encoding into the nodes) or with a full weight matrix
+ * from the presynaptic to the postsynaptic nodes (see DecodedTermination.setWeights(...)).</p>
+ *
+ * <p>The costs are estimated as multiplications per time step. The decoding of the origin isn't
+ * counted, because the origin's output is still computed either way. The encoding is counted
+ * for each projection, although it is shared by the factored terminations of an ensemble.
+ * Spiking activity is treated as dense, which favours neither option, since both
+ * skip inactive presynaptic nodes.</p>
+ *
+ * @author Nengo Developers
+ */
+public class ProjectionCostModel {
+
+	private static Logger ourLogger = Logger.getLogger(ProjectionCostModel.class);
+
+	/**
+	 * @param inputDimension Dimension of the termination (and origin)
+	 * @param outputDimension Output dimension of the termination (dimension of the postsynaptic ensemble)
+	 * @param order Order of the termination's dynamics
+	 * @param postNodes Number of postsynaptic nodes
+	 * @return Estimated cost per time step of running the termination factored
+	 */
+	public static float getFactoredCost(int inputDimension, int outputDimension, int order, int postNodes) {
+		return (float) inputDimension * outputDimension
+			+ outputDimension * getDynamicsCost(order)
+			+ (float) postNodes * outputDimension;
+	}
+
+	/**
+	 * @param preNodes Number of presynaptic nodes
+	 * @param postNodes Number of postsynaptic nodes
+	 * @param order Order of the termination's dynamics
+	 * @return Estimated cost per time step of running the termination with full weights
+	 */
+	public static float getFullCost(int preNodes, int postNodes, int order) {
+		return (float) preNodes * postNodes + postNodes * getDynamicsCost(order);
+	}
+
+	//state update and output of a system of the given order with one input and output
+	private static float getDynamicsCost(int order) {
+		return order * order + 2 * order;
+	}
+
+	/**
+	 * Sets full weights on each termination for which they are cheaper (and possible), and
+	 * clears them from the others.
+	 *
+	 * @param projections Projections to consider
+	 * @return Terminations that now run with full weights
+	 */
+	public static List<DecodedTermination> compile(Projection[] projections) {
+		List<DecodedTermination> result = new ArrayList<DecodedTermination>();
+		for (Projection projection : projections) {
+			Origin origin = projection.getOrigin();
+			if (origin instanceof OriginWrapper) {
+				origin = ((OriginWrapper) origin).getBaseOrigin();
+			}
+			Termination termination = projection.getTermination();
+			if (termination instanceof TerminationWrapper) {
+				termination = ((TerminationWrapper) termination).getBaseTermination();
+			}
+			if (!(termination instanceof DecodedTermination)) {
+				continue;
+			}
+
+			DecodedTermination dt = (DecodedTermination) termination;
+			float[][] encoders = null;
+			if (isEquivalent(origin, dt)) {
+				DecodedOrigin source = (DecodedOrigin) origin;
+				NEFEnsembleImpl ensemble = (NEFEnsembleImpl) dt.getNode();
+				int order = dt.getDynamics(0).getState().length;
+				int preNodes = source.getDecoders().length;
+				int postNodes = ensemble.getNodes().length;
+				float factored = getFactoredCost(dt.getDimensions(), ensemble.getDimension(), order, postNodes);
+				if (getFullCost(preNodes, postNodes, order) < factored) {
+					encoders = getEncoders(ensemble);
+				}
+			}
+
+			if (encoders != null) {
+				DecodedOrigin source = (DecodedOrigin) origin;
+				try {
+					dt.setWeights(source, encoders);
+					result.add(dt);
+				} catch (StructuralException e) {
+					ourLogger.warn("Can't use full weights for termination " + dt.getName(), e);
+				}
+			} else {
+				dt.clearWeights();
+			}
+		}
+		return result;
+	}
+
+	//true if full weights would give the same results as the factored termination
+	private static boolean isEquivalent(Origin origin, DecodedTermination termination) {
+		if (!(origin instanceof DecodedOrigin) || !(termination.getNode() instanceof NEFEnsembleImpl)
+				|| termination instanceof BiasTermination || termination.getModulatory()
+				|| termination.getScaling() != null) {
+			return false;
+		}
+		for (float bias : termination.getStaticBias()) {
+			if (bias != 0) {
+				return false;
+			}
+		}
+
+		DecodedOrigin source = (DecodedOrigin) origin;
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) termination.getNode();
+		if (source.getNoise() != null || source.getSTPDynamics() != null
+				|| isDirect(source.getMode()) || isDirect(ensemble.getMode())) {
+			return false;
+		}
+		for (DecodedTermination other : ensemble.getDecodedTerminations()) {
+			if (other.getScaling() == termination) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the encoders of the ensemble, scaled by its inverse radii, or null if they can't
+	 * be used because they don't have full column rank.
+	 */
+	private static float[][] getEncoders(NEFEnsembleImpl ensemble) {
+		float[][] encoders = ensemble.getEncoders();
+		float[] radii = ensemble.getRadii();
+		if (encoders.length < radii.length) {
+			return null;
+		}
+		for (float[] encoder : encoders) {
+			for (int j = 0; j < radii.length; j++) {
+				encoder[j] /= radii[j];
+			}
+		}
+		return new Matrix(MU.convert(encoders)).rank() == radii.length ? encoders : null;
+	}
+
+	private static boolean isDirect(SimulationMode mode) {
+		return mode == SimulationMode.DIRECT || mode == SimulationMode.EXPRESS;
+	}
+
+}
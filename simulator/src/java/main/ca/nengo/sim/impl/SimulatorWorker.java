@@ -0,0 +1,486 @@
+package ca.nengo.sim.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.io.Checkpoint;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.util.Probe;
+
+/**
+ * Simulates one partition of a Network on behalf of a DistributedSimulator. A worker
+ * typically runs in its own JVM (see main(...)), possibly on another machine.
+ *
+ * <p>The DistributedSimulator sends the worker its Nodes and a description of all
+ * Projections over a control connection. At each step the worker sends the outputs of
+ * its Origins that project to Nodes in other partitions directly to the workers that
+ * own those Nodes (one batch per destination), receives the outputs that project to its
+ * own Nodes, and then runs its Nodes with a LocalSimulator.</p>
+ *
+ * @author Nengo Developers
+ */
+public class SimulatorWorker {
+
+	static final int INIT = 1;
+	static final int CONNECT = 2;
+	static final int RUN = 3;
+	static final int RESET = 4;
+	static final int ADD_PROBE = 5;
+	static final int REMOVE_PROBE = 6;
+	static final int GET_PROBE_DATA = 7;
+	static final int SET_SAMPLING_RATE = 8;
+	static final int SAVE_CHECKPOINT = 9;
+	static final int RESTORE_CHECKPOINT = 10;
+	static final int SHUTDOWN = 11;
+
+	static final int OK = 0;
+	static final int ERROR = 1;
+
+	private static final Logger ourLogger = Logger.getLogger(SimulatorWorker.class);
+
+	//marks a lost connection in a queue of incoming batches
+	private static final InstantaneousOutput[] LOST = new InstantaneousOutput[0];
+
+	private final ServerSocket myControlServer;
+	private final ServerSocket myDataServer;
+	private volatile boolean myShutdown;
+
+	private int myIndex;
+	private NetworkImpl myNetwork;
+	private LocalSimulator mySimulator;
+	private List<Probe> myProbes;
+
+	//origins that project to other partitions, by destination worker
+	private Map<Integer, List<Origin>> myOutgoing;
+	//terminations that receive projections from other partitions, by source worker
+	private Map<Integer, List<Termination>> myIncoming;
+
+	private Map<Integer, DataOutputStream> myPeerOutputs;
+	private Map<Integer, BlockingQueue<InstantaneousOutput[]>> myPeerInputs;
+	private List<Socket> myPeerSockets;
+
+	/**
+	 * @param port Port on which to listen for a DistributedSimulator (0 for any free port)
+	 * @throws IOException if the port can't be opened
+	 */
+	public SimulatorWorker(int port) throws IOException {
+		myControlServer = new ServerSocket(port);
+		myDataServer = new ServerSocket(0);
+		myProbes = new ArrayList<Probe>(10);
+		myPeerSockets = new ArrayList<Socket>(10);
+	}
+
+	/**
+	 * Starts a worker in this JVM. The port on which it listens is printed to standard output.
+	 *
+	 * @param args Optionally, the port on which to listen (otherwise any free port is used)
+	 * @throws IOException if the port can't be opened
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		SimulatorWorker worker = new SimulatorWorker(port);
+		System.out.println("SimulatorWorker listening on port " + worker.getPort());
+		System.out.flush();
+		worker.serve();
+	}
+
+	/**
+	 * @return Port on which this worker listens for a DistributedSimulator
+	 */
+	public int getPort() {
+		return myControlServer.getLocalPort();
+	}
+
+	/**
+	 * Serves DistributedSimulators in a background thread.
+	 *
+	 * @return The thread
+	 */
+	public Thread start() {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				serve();
+			}
+		}, "SimulatorWorker-" + getPort());
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Serves DistributedSimulators (one at a time) until one of them shuts this worker down.
+	 */
+	public void serve() {
+		while (!myShutdown) {
+			try {
+				Socket socket = myControlServer.accept();
+				try {
+					socket.setTcpNoDelay(true);
+					ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+					out.flush();
+					ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+					handleCommands(in, out);
+				} finally {
+					socket.close();
+					disconnectPeers();
+				}
+			} catch (EOFException e) {
+				ourLogger.info("Simulator disconnected");
+			} catch (IOException e) {
+				if (!myShutdown) {
+					ourLogger.error("Lost connection to simulator", e);
+				}
+			}
+		}
+	}
+
+	private void handleCommands(ObjectInputStream in, ObjectOutputStream out) throws IOException {
+		while (!myShutdown) {
+			int command = in.readInt();
+			try {
+				Object result = null;
+				if (command == INIT) {
+					myIndex = in.readInt();
+					init((Node[]) in.readObject(), (Link[]) in.readObject());
+					result = Integer.valueOf(myDataServer.getLocalPort());
+				} else if (command == CONNECT) {
+					connectPeers((InetSocketAddress[]) in.readObject());
+				} else if (command == RUN) {
+					run(in.readFloat(), in.readFloat(), in.readFloat());
+				} else if (command == RESET) {
+					mySimulator.resetNetwork(in.readBoolean(), in.readBoolean());
+				} else if (command == ADD_PROBE) {
+					String nodeName = in.readUTF();
+					int neuronIndex = in.readInt();
+					String state = in.readUTF();
+					boolean record = in.readBoolean();
+					Probe probe = neuronIndex < 0 ? mySimulator.addProbe(nodeName, state, record)
+							: mySimulator.addProbe(nodeName, neuronIndex, state, record);
+					myProbes.add(probe);
+					result = Integer.valueOf(myProbes.indexOf(probe));
+				} else if (command == REMOVE_PROBE) {
+					int index = in.readInt();
+					mySimulator.removeProbe(myProbes.get(index));
+					myProbes.set(index, null);
+				} else if (command == GET_PROBE_DATA) {
+					result = myProbes.get(in.readInt()).getData();
+				} else if (command == SET_SAMPLING_RATE) {
+					int index = in.readInt();
+					myProbes.get(index).setSamplingRate(in.readFloat());
+				} else if (command == SAVE_CHECKPOINT) {
+					mySimulator.saveCheckpoint(new File(in.readUTF()));
+				} else if (command == RESTORE_CHECKPOINT) {
+					String[] paths = (String[]) in.readObject();
+					float time = 0;
+					for (String path : paths) {
+						time = mySimulator.restoreCheckpoint(new File(path));
+					}
+					result = Float.valueOf(time);
+				} else if (command == SHUTDOWN) {
+					shutdown();
+				} else {
+					throw new SimulationException("Unknown command " + command);
+				}
+				out.writeInt(OK);
+				out.writeObject(result);
+			} catch (Exception e) {
+				ourLogger.warn("Command " + command + " failed", e);
+				out.writeInt(ERROR);
+				out.writeObject(e.getClass().getName() + ": " + e.getMessage());
+			}
+			out.reset();
+			out.flush();
+		}
+	}
+
+	/*
+	 * Sets up a local network with the given nodes and the projections between them.
+	 */
+	private void init(Node[] nodes, Link[] links) throws StructuralException {
+		disconnectPeers();
+
+		myNetwork = new NetworkImpl();
+		myNetwork.setName("partition " + myIndex);
+		for (Node node : nodes) {
+			myNetwork.addNode(node);
+		}
+
+		myOutgoing = new HashMap<Integer, List<Origin>>(10);
+		myIncoming = new HashMap<Integer, List<Termination>>(10);
+		for (Link link : links) {
+			if (link.getSource() == myIndex && link.getDestination() == myIndex) {
+				myNetwork.addProjection(myNetwork.getNode(link.getOriginNode()).getOrigin(link.getOriginName()),
+						myNetwork.getNode(link.getTerminationNode()).getTermination(link.getTerminationName()));
+			} else if (link.getSource() == myIndex) {
+				getList(myOutgoing, link.getDestination()).add(
+						myNetwork.getNode(link.getOriginNode()).getOrigin(link.getOriginName()));
+			} else if (link.getDestination() == myIndex) {
+				getList(myIncoming, link.getSource()).add(
+						myNetwork.getNode(link.getTerminationNode()).getTermination(link.getTerminationName()));
+			}
+		}
+
+		mySimulator = (LocalSimulator) myNetwork.getSimulator();
+		mySimulator.setDisplayProgress(false);
+		myProbes.clear();
+	}
+
+	private static <T> List<T> getList(Map<Integer, List<T>> map, int key) {
+		List<T> result = map.get(Integer.valueOf(key));
+		if (result == null) {
+			result = new ArrayList<T>(10);
+			map.put(Integer.valueOf(key), result);
+		}
+		return result;
+	}
+
+	/*
+	 * Opens a connection to each worker that this one sends to, and accepts a connection
+	 * from each worker that sends to this one.
+	 */
+	private void connectPeers(InetSocketAddress[] peers) throws IOException, InterruptedException {
+		final int nIncoming = myIncoming.size();
+		final IOException[] acceptError = new IOException[1];
+		myPeerInputs = new HashMap<Integer, BlockingQueue<InstantaneousOutput[]>>(10);
+		for (Integer source : myIncoming.keySet()) {
+			myPeerInputs.put(source, new ArrayBlockingQueue<InstantaneousOutput[]>(2));
+		}
+
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < nIncoming; i++) {
+						Socket socket = myDataServer.accept();
+						socket.setTcpNoDelay(true);
+						synchronized (myPeerSockets) {
+							myPeerSockets.add(socket);
+						}
+						DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+						int source = in.readInt();
+						startReader(source, in);
+					}
+				} catch (IOException e) {
+					acceptError[0] = e;
+				}
+			}
+		}, "SimulatorWorker-accept-" + myIndex);
+		acceptor.start();
+
+		myPeerOutputs = new HashMap<Integer, DataOutputStream>(10);
+		for (Integer destination : myOutgoing.keySet()) {
+			Socket socket = new Socket(peers[destination.intValue()].getAddress(), peers[destination.intValue()].getPort());
+			socket.setTcpNoDelay(true);
+			synchronized (myPeerSockets) {
+				myPeerSockets.add(socket);
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			out.writeInt(myIndex);
+			out.flush();
+			myPeerOutputs.put(destination, out);
+		}
+
+		acceptor.join();
+		if (acceptError[0] != null) {
+			throw acceptError[0];
+		}
+	}
+
+	/*
+	 * Reads batches from another worker in the background, so that workers never block
+	 * each other while sending.
+	 */
+	private void startReader(final int source, final DataInputStream in) {
+		final BlockingQueue<InstantaneousOutput[]> queue = myPeerInputs.get(Integer.valueOf(source));
+		final int size = myIncoming.get(Integer.valueOf(source)).size();
+
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						InstantaneousOutput[] batch = new InstantaneousOutput[size];
+						for (int i = 0; i < size; i++) {
+							batch[i] = Checkpoint.readOutput(in);
+						}
+						queue.put(batch);
+					}
+				} catch (IOException e) {
+					queue.offer(LOST);
+				} catch (InterruptedException e) {
+					queue.offer(LOST);
+				}
+			}
+		}, "SimulatorWorker-read-" + myIndex + "-" + source);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void disconnectPeers() {
+		synchronized (myPeerSockets) {
+			for (Socket socket : myPeerSockets) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					ourLogger.warn("Couldn't close connection to peer", e);
+				}
+			}
+			myPeerSockets.clear();
+		}
+	}
+
+	/*
+	 * Steps through time exactly as LocalSimulator does, so that all workers take the same steps.
+	 */
+	private void run(float startTime, float endTime, float stepSize) throws SimulationException, IOException {
+		mySimulator.resetProbes();
+
+		double time = startTime;
+		double thisStepSize = Math.round(stepSize*1000000)/1000000.0;
+		if (thisStepSize < 0.000001) {
+			thisStepSize = 0.000001;
+		}
+
+		try {
+			while (time < endTime) {
+				if (time + 1.5*thisStepSize > endTime) {
+					thisStepSize = endTime - time;
+				}
+
+				exchange();
+				mySimulator.step((float) time, (float) (time+thisStepSize));
+
+				time += thisStepSize;
+			}
+		} catch (SimulationException e) {
+			//make sure the other workers don't wait for this one
+			disconnectPeers();
+			throw e;
+		} catch (IOException e) {
+			disconnectPeers();
+			throw e;
+		}
+	}
+
+	/*
+	 * Sends the outputs of origins that project to other partitions (one batch per destination), then
+	 * sets the inputs of terminations that receive projections from other partitions.
+	 */
+	private void exchange() throws SimulationException, IOException {
+		for (Map.Entry<Integer, List<Origin>> entry : myOutgoing.entrySet()) {
+			DataOutputStream out = myPeerOutputs.get(entry.getKey());
+			for (Origin origin : entry.getValue()) {
+				Checkpoint.writeOutput(out, origin.getValues());
+			}
+			out.flush();
+		}
+
+		for (Map.Entry<Integer, List<Termination>> entry : myIncoming.entrySet()) {
+			InstantaneousOutput[] batch;
+			try {
+				batch = myPeerInputs.get(entry.getKey()).take();
+			} catch (InterruptedException e) {
+				throw new SimulationException(e);
+			}
+			if (batch == LOST) {
+				throw new SimulationException("Lost connection to worker " + entry.getKey());
+			}
+
+			List<Termination> terminations = entry.getValue();
+			for (int i = 0; i < batch.length; i++) {
+				if (batch[i] != null) {
+					terminations.get(i).setValues(batch[i]);
+				}
+			}
+		}
+	}
+
+	private void shutdown() throws IOException {
+		myShutdown = true;
+		disconnectPeers();
+		myControlServer.close();
+		myDataServer.close();
+	}
+
+	/**
+	 * A Projection, described by the names of its Origin and Termination and the partitions to
+	 * which their Nodes belong.
+	 */
+	static class Link implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String myOriginNode;
+		private final String myOriginName;
+		private final String myTerminationNode;
+		private final String myTerminationName;
+		private final int mySource;
+		private final int myDestination;
+
+		/**
+		 * @param originNode Name of the top-level Node to which the Origin belongs
+		 * @param originName Name of the Origin
+		 * @param terminationNode Name of the top-level Node to which the Termination belongs
+		 * @param terminationName Name of the Termination
+		 * @param source Partition of the origin Node
+		 * @param destination Partition of the termination Node
+		 */
+		public Link(String originNode, String originName, String terminationNode, String terminationName,
+				int source, int destination) {
+			myOriginNode = originNode;
+			myOriginName = originName;
+			myTerminationNode = terminationNode;
+			myTerminationName = terminationName;
+			mySource = source;
+			myDestination = destination;
+		}
+
+		public String getOriginNode() {
+			return myOriginNode;
+		}
+
+		public String getOriginName() {
+			return myOriginName;
+		}
+
+		public String getTerminationNode() {
+			return myTerminationNode;
+		}
+
+		public String getTerminationName() {
+			return myTerminationName;
+		}
+
+		public int getSource() {
+			return mySource;
+		}
+
+		public int getDestination() {
+			return myDestination;
+		}
+	}
+
+}
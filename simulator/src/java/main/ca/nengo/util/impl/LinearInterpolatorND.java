@@ -88,6 +88,34 @@ public class LinearInterpolatorND implements InterpolatorND {
 		return result;
 	}
 	
+	/**
+	 * Interpolates between two points without building a TimeSeries, in the same way as
+	 * interpolate(float) does for a two-point series.
+	 *
+	 * @param startTime Time of first point
+	 * @param startValues Values at first point
+	 * @param endTime Time of second point
+	 * @param endValues Values at second point
+	 * @param time Time at which to interpolate
+	 * @param result Array in which to store the interpolated values (if needed)
+	 * @return Interpolated values (startValues or endValues if time is outside the interval,
+	 * 		or if they are the same array; otherwise result)
+	 */
+	public static float[] interpolate(float startTime, float[] startValues, float endTime, float[] endValues,
+			float time, float[] result) {
+		if (startTime >= time || startValues == endValues) {
+			return startValues;
+		} else if (endTime <= time) {
+			return endValues;
+		} else {
+			float prop = (time - startTime) / (endTime - startTime);
+			for (int i = 0; i < startValues.length; i++) {
+				result[i] = startValues[i] + prop * (endValues[i] - startValues[i]);
+			}
+			return result;
+		}
+	}
+
 	/**
 	 * Uses a StatefulIndexFinder by default. Override to change this. 
 	 *  
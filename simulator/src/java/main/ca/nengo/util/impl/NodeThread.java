@@ -2,10 +2,11 @@ package ca.nengo.util.impl;
 
 import java.util.Date;
 
-import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.impl.ProjectionImpl;
+import ca.nengo.sim.impl.MultiRateSchedule;
 import ca.nengo.util.ThreadTask;
 
 /**
@@ -85,8 +86,7 @@ public class NodeThread extends Thread {
 		
 		for (int i = myStartIndexInProjections; i < myEndIndexInProjections; i++) {
 			
-			InstantaneousOutput values = myProjections[i].getOrigin().getValues();
-			myProjections[i].getTermination().setValues(values);
+			ProjectionImpl.transfer(myProjections[i]);
 		}
 		
 	}
@@ -94,9 +94,12 @@ public class NodeThread extends Thread {
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
 		
 		
+		MultiRateSchedule schedule = myNodeThreadPool.getSchedule();
 		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
 			
-			myNodes[i].run(startTime, endTime);
+			if (schedule.isDue(i, startTime, endTime)) {
+				myNodes[i].run(schedule.getStartTime(i), endTime);
+			}
 		}
 		
 	}
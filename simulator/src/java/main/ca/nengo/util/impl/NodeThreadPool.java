@@ -4,12 +4,22 @@ package ca.nengo.util.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import ca.nengo.math.NetworkPartitioner;
+import ca.nengo.math.impl.MultiLevelKLNetworkPartitioner;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl.TerminationWrapper;
+import ca.nengo.sim.impl.LivenessAnalyzer;
+import ca.nengo.sim.impl.MultiRateSchedule;
+import ca.nengo.sim.impl.PassthroughFolder;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 
@@ -32,7 +42,11 @@ public class NodeThreadPool {
 	protected Object myLock;
 
 	protected Node[] myNodes;
+	protected MultiRateSchedule mySchedule; //when each of myNodes is run
 	protected Projection[] myProjections;
+	protected boolean myFoldPassthroughNodes;
+	protected boolean myEliminateDeadNodes;
+	protected PassthroughFolder myPassthroughFolder; //null unless PassthroughNodes are folded
     protected ThreadTask[] myTasks;
 
 	protected volatile int numThreadsComplete;
@@ -44,6 +58,13 @@ public class NodeThreadPool {
 	protected float myEndTime;
 	
 	protected static boolean myCollectTimings;
+
+	// Assigns connected nodes to the same java thread. If null, nodes are assigned in list order.
+	protected static NetworkPartitioner myNetworkPartitioner = new MultiLevelKLNetworkPartitioner();
+
+	// The thread each node was last assigned to, so that assignments stay the same from run to run
+	private static final Map<Node, ThreadAssignment> ourThreadAssignments = new WeakHashMap<Node, ThreadAssignment>();
+
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
@@ -77,7 +98,34 @@ public class NodeThreadPool {
 	public static void setCollectTimings(boolean collectTimings) {
 		myCollectTimings = collectTimings;
 	}
+
+	/**
+	 * @return The partitioner used to assign nodes to java threads, or null if nodes are
+	 * 		assigned in list order
+	 */
+	public static NetworkPartitioner getNetworkPartitioner() {
+		return myNetworkPartitioner;
+	}
+
+	/**
+	 * @param partitioner Partitioner used to assign nodes to java threads (by default a
+	 * 		MultiLevelKLNetworkPartitioner, which keeps connected nodes on the same thread while
+	 * 		balancing neuron counts). Null assigns nodes in list order.
+	 */
+	public static void setNetworkPartitioner(NetworkPartitioner partitioner) {
+		synchronized(ourThreadAssignments){
+			myNetworkPartitioner = partitioner;
+			ourThreadAssignments.clear();
+		}
+	}
 	
+	/**
+	 * @return Schedule of the nodes run by java threads (indexed as in the array given to the threads)
+	 */
+	public MultiRateSchedule getSchedule() {
+		return mySchedule;
+	}
+
 	public float getStartTime(){
 		return myStartTime;
 	}
@@ -97,6 +145,73 @@ public class NodeThreadPool {
 	public NodeThreadPool(Network network, List<ThreadTask> threadTasks){
 		initialize(network, threadTasks);
 	}
+
+	/**
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (e.g. probes)
+	 * @param foldPassthroughNodes If true, PassthroughNodes are removed from the nodes and
+	 * 		projections that are run, where possible (see PassthroughFolder)
+	 */
+	public NodeThreadPool(Network network, List<ThreadTask> threadTasks, boolean foldPassthroughNodes){
+		this(network, threadTasks, foldPassthroughNodes, false);
+	}
+
+	/**
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (e.g. probes)
+	 * @param foldPassthroughNodes If true, PassthroughNodes are removed from the nodes and
+	 * 		projections that are run, where possible (see PassthroughFolder)
+	 * @param eliminateDeadNodes If true, nodes whose output can't reach a probe or exposed
+	 * 		origin aren't run (see LivenessAnalyzer)
+	 */
+	public NodeThreadPool(Network network, List<ThreadTask> threadTasks, boolean foldPassthroughNodes,
+			boolean eliminateDeadNodes){
+		this(network, threadTasks, foldPassthroughNodes, eliminateDeadNodes, null);
+	}
+
+	/**
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (e.g. probes)
+	 * @param foldPassthroughNodes If true, PassthroughNodes are removed from the nodes and
+	 * 		projections that are run, where possible (see PassthroughFolder)
+	 * @param eliminateDeadNodes If true, nodes whose output can't reach a probe or exposed
+	 * 		origin aren't run (see LivenessAnalyzer)
+	 * @param previousFolder PassthroughFolder of the last run of the network, which folded
+	 * 		projections carry on from (may be null)
+	 */
+	public NodeThreadPool(Network network, List<ThreadTask> threadTasks, boolean foldPassthroughNodes,
+			boolean eliminateDeadNodes, PassthroughFolder previousFolder){
+		this(network, threadTasks, foldPassthroughNodes, eliminateDeadNodes, previousFolder, null);
+	}
+
+	/**
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run in addition to those of the network's nodes (e.g. probes)
+	 * @param foldPassthroughNodes If true, PassthroughNodes are removed from the nodes and
+	 * 		projections that are run, where possible (see PassthroughFolder)
+	 * @param eliminateDeadNodes If true, nodes whose output can't reach a probe or exposed
+	 * 		origin aren't run (see LivenessAnalyzer)
+	 * @param previousFolder PassthroughFolder of the last run of the network, which folded
+	 * 		projections carry on from (may be null)
+	 * @param previousSchedule Schedule of the last run of the network, from which slower nodes
+	 * 		carry on their steps (may be null)
+	 */
+	public NodeThreadPool(Network network, List<ThreadTask> threadTasks, boolean foldPassthroughNodes,
+			boolean eliminateDeadNodes, PassthroughFolder previousFolder, MultiRateSchedule previousSchedule){
+		myFoldPassthroughNodes = foldPassthroughNodes;
+		myEliminateDeadNodes = eliminateDeadNodes;
+		myPassthroughFolder = previousFolder;
+		mySchedule = previousSchedule;
+		initialize(network, threadTasks);
+	}
+
+	/**
+	 * @return The PassthroughFolder of the projections that are run, or null if PassthroughNodes
+	 * 		aren't folded
+	 */
+	public PassthroughFolder getPassthroughFolder() {
+		return myPassthroughFolder;
+	}
 	
 	/**
 	 * 1. Checks whether the GPU is to be used for the simulation. If it is, creates
@@ -126,6 +241,25 @@ public class NodeThreadPool {
 		myNodes = nodeList.toArray(new Node[0]);
 		myProjections = projList.toArray(new Projection[0]);
 		myTasks = taskList.toArray(new ThreadTask[0]);
+
+		LivenessAnalyzer liveness = null;
+		if(myEliminateDeadNodes){
+			liveness = new LivenessAnalyzer(network, myNodes, myProjections, taskList);
+		}
+
+		if(myFoldPassthroughNodes){
+			PassthroughFolder folder = new PassthroughFolder(network, myNodes, myProjections, taskList, myPassthroughFolder);
+			myNodes = folder.getNodes();
+			myProjections = folder.getProjections();
+			myPassthroughFolder = folder;
+		} else {
+			myPassthroughFolder = null;
+		}
+
+		if(liveness != null){
+			myNodes = liveness.getLiveNodes(myNodes);
+			myProjections = liveness.getLiveProjections(myProjections);
+		}
 		
 		threadsRunning = false;
 		runFinished = false;
@@ -169,28 +303,31 @@ public class NodeThreadPool {
 		// NetworkImpls create their own LocalSimulators when run.
 		myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
 
-		int nodesPerJavaThread = (int) Math.ceil((float) myNodes.length / (float) myNumJavaThreads);
-		int projectionsPerJavaThread = (int) Math.ceil((float) myProjections.length / (float) myNumJavaThreads);
-        int tasksPerJavaThread = (int) Math.ceil((float) myTasks.length / (float) myNumJavaThreads);
+		// Each java thread runs the nodes assigned to it and the projections that terminate on them,
+		// so that a projection's termination is written by the thread that reads it.
+		// (With multithreading off there are no java threads, and everything is put in one group.)
+		int numGroups = Math.max(1, myNumJavaThreads);
+		int[] nodeThreads = assignNodesToThreads(myNodes, myProjections, numGroups);
+		int[] projectionThreads = assignProjectionsToThreads(myNodes, nodeThreads, myProjections, numGroups);
 
-		int nodeOffset = 0, projectionOffset = 0, taskOffset = 0;
-		int nodeStartIndex, nodeEndIndex, projectionStartIndex, projectionEndIndex, taskStartIndex, taskEndIndex;
+		Node[] groupedNodes = new Node[myNodes.length];
+		int[] nodeOffsets = groupByThread(myNodes, nodeThreads, numGroups, groupedNodes);
+		myNodes = groupedNodes;
 
-		
-		// Evenly distribute projections, nodes and tasks to the java threads.
-		for(int i = 0; i < myNumJavaThreads; i++){
+		mySchedule = new MultiRateSchedule(myNodes, mySchedule);
 
-			nodeStartIndex = nodeOffset;
-			nodeEndIndex = myNodes.length - nodeOffset >= nodesPerJavaThread ?
-					nodeOffset + nodesPerJavaThread : myNodes.length;
+		Projection[] groupedProjections = new Projection[myProjections.length];
+		int[] projectionOffsets = groupByThread(myProjections, projectionThreads, numGroups, groupedProjections);
+		myProjections = groupedProjections;
 
-			nodeOffset += nodesPerJavaThread;
+        int tasksPerJavaThread = (int) Math.ceil((float) myTasks.length / (float) myNumJavaThreads);
 
-			projectionStartIndex = projectionOffset;
-			projectionEndIndex = myProjections.length - projectionOffset >= projectionsPerJavaThread ?
-					projectionOffset + projectionsPerJavaThread : myProjections.length;
+		int taskOffset = 0;
+		int taskStartIndex, taskEndIndex;
 
-			projectionOffset += projectionsPerJavaThread;
+		
+		// Distribute projections and nodes as assigned above, and tasks evenly, to the java threads.
+		for(int i = 0; i < myNumJavaThreads; i++){
 
 			taskStartIndex = taskOffset;
 			taskEndIndex = myTasks.length - taskOffset >= tasksPerJavaThread ?
@@ -198,9 +335,9 @@ public class NodeThreadPool {
 
 			taskOffset += tasksPerJavaThread;
 
-			myThreads[i] = new NodeThread(this, myNodes, nodeStartIndex,
-					nodeEndIndex, myProjections, projectionStartIndex,
-					projectionEndIndex, myTasks, taskStartIndex, taskEndIndex);
+			myThreads[i] = new NodeThread(this, myNodes, nodeOffsets[i],
+					nodeOffsets[i+1], myProjections, projectionOffsets[i],
+					projectionOffsets[i+1], myTasks, taskStartIndex, taskEndIndex);
 			
 			myThreads[i].setCollectTimings(myCollectTimings);
 			myThreads[i].setName("JavaThread" + i);
@@ -214,6 +351,109 @@ public class NodeThreadPool {
 		myNumSteps = 0;
 	}
 
+	/**
+	 * Assigns nodes to java threads. Uses the network partitioner (if there is one), so that
+	 * nodes that are connected by projections tend to share a thread, and the numbers of neurons
+	 * run by each thread are balanced. Otherwise nodes are divided evenly in list order.
+	 * 
+	 * The assignment is remembered, and reused in later runs of the same nodes, so that each node
+	 * keeps running on the same thread.
+	 * 
+	 * @return The index of the thread to which each node is assigned
+	 */
+	protected static int[] assignNodesToThreads(Node[] nodes, Projection[] projections, int numThreads){
+		int[] result = new int[nodes.length];
+
+		synchronized(ourThreadAssignments){
+			if(myNetworkPartitioner == null || numThreads < 2 || nodes.length <= 1){
+				int nodesPerThread = (int) Math.ceil((float) nodes.length / (float) numThreads);
+				for(int i = 0; i < nodes.length; i++){
+					result[i] = i / nodesPerThread;
+				}
+				return result;
+			}
+
+			ThreadAssignment previous = nodes.length > 0 ? ourThreadAssignments.get(nodes[0]) : null;
+			boolean reuse = previous != null && previous.isFor(nodes.length, numThreads);
+			for(int i = 0; reuse && i < nodes.length; i++){
+				ThreadAssignment assignment = ourThreadAssignments.get(nodes[i]);
+				if(assignment != null && assignment.isFor(nodes.length, numThreads) 
+						&& assignment.myPartitioning == previous.myPartitioning){
+					result[i] = assignment.myThread;
+				}else{
+					reuse = false;
+				}
+			}
+			if(reuse){
+				return result;
+			}
+
+			myNetworkPartitioner.initialize(nodes, projections, numThreads);
+			int[] partitions = myNetworkPartitioner.getPartitionsAsIntArray();
+
+			Object partitioning = new Object();
+			for(int i = 0; i < nodes.length; i++){
+				result[i] = partitions[i] % numThreads;
+				ourThreadAssignments.put(nodes[i], new ThreadAssignment(partitioning, result[i], nodes.length, numThreads));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Assigns each projection to the thread that runs the node on which it terminates. Projections
+	 * that terminate outside the given nodes are divided evenly among the threads.
+	 * 
+	 * @return The index of the thread to which each projection is assigned
+	 */
+	protected static int[] assignProjectionsToThreads(Node[] nodes, int[] nodeThreads, 
+			Projection[] projections, int numThreads){
+
+		Map<Node, Integer> threadsByNode = new IdentityHashMap<Node, Integer>(nodes.length * 2);
+		for(int i = 0; i < nodes.length; i++){
+			threadsByNode.put(nodes[i], Integer.valueOf(nodeThreads[i]));
+		}
+
+		int[] result = new int[projections.length];
+		int unassigned = 0;
+		for(int i = 0; i < projections.length; i++){
+			Termination termination = projections[i].getTermination();
+			if(termination instanceof TerminationWrapper){
+				termination = ((TerminationWrapper) termination).getBaseTermination();
+			}
+
+			Integer thread = threadsByNode.get(termination.getNode());
+			result[i] = thread != null ? thread.intValue() : unassigned++ % numThreads;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Copies items into result so that the items assigned to each thread are contiguous, 
+	 * preserving their order within each thread.
+	 * 
+	 * @return Offsets in result of the items of each thread (the items of thread i are 
+	 * 		at indices offsets[i] to offsets[i+1]-1)
+	 */
+	private static <T> int[] groupByThread(T[] items, int[] threads, int numThreads, T[] result){
+		int[] offsets = new int[numThreads+1];
+		for(int i = 0; i < threads.length; i++){
+			offsets[threads[i]+1]++;
+		}
+		for(int i = 0; i < numThreads; i++){
+			offsets[i+1] += offsets[i];
+		}
+
+		int[] next = offsets.clone();
+		for(int i = 0; i < items.length; i++){
+			result[next[threads[i]]++] = items[i];
+		}
+
+		return offsets;
+	}
+
 	/**
 	 * Tell the threads in the current thread pool to take a step. The step consists of three
 	 * phases: projections, nodes, tasks. All threads must complete a stage before any thread begins
@@ -476,4 +716,26 @@ public class NodeThreadPool {
 
         return tasks;
     }
+
+    /**
+     * The thread to which a node was assigned, and the assignment it was part of. 
+     */
+    private static class ThreadAssignment {
+
+    	private final Object myPartitioning;
+    	private final int myThread;
+    	private final int myNumNodes;
+    	private final int myNumThreads;
+
+    	public ThreadAssignment(Object partitioning, int thread, int numNodes, int numThreads) {
+    		myPartitioning = partitioning;
+    		myThread = thread;
+    		myNumNodes = numNodes;
+    		myNumThreads = numThreads;
+    	}
+
+    	public boolean isFor(int numNodes, int numThreads) {
+    		return myNumNodes == numNodes && myNumThreads == numThreads;
+    	}
+    }
 }
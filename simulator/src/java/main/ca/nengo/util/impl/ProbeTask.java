@@ -28,6 +28,13 @@ public class ProbeTask implements ThreadTask {
 		return myParent;
 	}
 
+	/**
+	 * @return The probe that this task collects data for
+	 */
+	public Probe getProbe() {
+		return myProbe;
+	}
+
 	public boolean isFinished() {
 		return finished;
 	}
@@ -0,0 +1,47 @@
+package ca.nengo.dynamics.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Unit tests for EulerIntegrator.
+ */
+public class EulerIntegratorTest extends TestCase {
+
+	public void testStep() {
+		SimpleLTISystem integrated = makeSystem();
+		SimpleLTISystem stepped = makeSystem();
+		Integrator integrator = new EulerIntegrator(.0001f);
+
+		float[] start = new float[]{1, -1};
+		float[] end = new float[]{2, 0};
+		for (int i = 0; i < 10; i++) {
+			float startTime = i * .001f;
+			float endTime = (i+1) * .001f;
+
+			TimeSeries input = new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{start, end},
+					Units.uniform(Units.UNK, 2));
+			float[][] values = integrator.integrate(integrated, input).getValues();
+			float[] output = integrator.step(stepped, startTime, start, endTime, end);
+
+			assertEquals(values[values.length-1][0], output[0]);
+			assertEquals(integrated.getState()[0], stepped.getState()[0]);
+			assertEquals(integrated.getState()[1], stepped.getState()[1]);
+		}
+		assertTrue(stepped.getState()[0] != 0);
+
+		//constant input
+		float[][] values = integrator.integrate(integrated, new TimeSeriesImpl(new float[]{0, .01f},
+				new float[][]{end, end}, Units.uniform(Units.UNK, 2))).getValues();
+		assertEquals(values[values.length-1][0], integrator.step(stepped, 0, end, .01f, end)[0]);
+	}
+
+	private static SimpleLTISystem makeSystem() {
+		return new SimpleLTISystem(new float[]{-10, -20}, new float[][]{{1, 0}, {0, 2}},
+				new float[][]{{1, 1}}, new float[2], new Units[]{Units.UNK});
+	}
+
+}
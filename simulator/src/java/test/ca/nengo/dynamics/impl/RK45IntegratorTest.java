@@ -45,6 +45,20 @@ public class RK45IntegratorTest extends TestCase {
 //		Plotter.plot(result, "Van der Pol Oscillator");
 	}
 	
+	public void testStep() {
+		VanderPol integrated = new VanderPol(new float[]{.1f, .1f});
+		VanderPol stepped = new VanderPol(new float[]{.1f, .1f});
+		Integrator integrator = new RK45Integrator();
+
+		TimeSeries input = new TimeSeriesImpl(new float[]{0, 2f}, new float[][]{new float[0], new float[0]}, new Units[]{});
+		float[][] values = integrator.integrate(integrated, input).getValues();
+		float[] output = integrator.step(stepped, 0, new float[0], 2f, new float[0]);
+
+		assertEquals(values[values.length-1][0], output[0]);
+		assertEquals(values[values.length-1][1], output[1]);
+		assertEquals(integrated.getState()[0], stepped.getState()[0]);
+	}
+
 	public static class VanderPol extends AbstractDynamicalSystem {
 
 		private static final long serialVersionUID = 1L;
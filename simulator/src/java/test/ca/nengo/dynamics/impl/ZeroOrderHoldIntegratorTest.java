@@ -0,0 +1,120 @@
+package ca.nengo.dynamics.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Unit tests for ZeroOrderHoldIntegrator and the discretization in LTISystem.
+ */
+public class ZeroOrderHoldIntegratorTest extends TestCase {
+
+	public void testExactFirstOrder() {
+		float tau = .005f;
+		SimpleLTISystem system = new SimpleLTISystem(new float[]{-1f/tau}, new float[][]{{1f/tau}},
+				new float[][]{{1f}}, new float[]{0}, new Units[]{Units.UNK});
+		Integrator integrator = new ZeroOrderHoldIntegrator();
+
+		//step response with a step as long as the time constant
+		float[] u = new float[]{1};
+		for (int i = 1; i <= 5; i++) {
+			float output = integrator.step(system, (i-1) * tau, u, i * tau, u)[0];
+			assertEquals(1 - Math.exp(-i), output, 1e-6);
+		}
+	}
+
+	public void testGeneralMatchesDiagonal() {
+		float[] a = new float[]{-10, 0, -200};
+		float[][] B = new float[][]{{1, 2}, {-1, 0}, {.5f, 3}};
+		float[][] C = new float[][]{{1, 1, 1}};
+		SimpleLTISystem diagonal = new SimpleLTISystem(a, B, C, new float[3], new Units[]{Units.UNK});
+		LTISystem general = new LTISystem(diagonal.getA(), B, C, new float[1][2], new float[3], new Units[]{Units.UNK});
+
+		for (float dt : new float[]{.0001f, .001f, .05f}) {
+			assertClose(diagonal.getDiscreteA(dt), general.getDiscreteA(dt));
+			assertClose(diagonal.getDiscreteB(dt), general.getDiscreteB(dt));
+		}
+	}
+
+	public void testCanonicalModel() {
+		//second-order low-pass filter with a repeated pole, step response 1 - (1 + t/tau) exp(-t/tau)
+		float tau = .01f;
+		LTISystem system = CanonicalModel.getRealization(new float[]{0, 1/(tau*tau)}, new float[]{2/tau, 1/(tau*tau)}, 0);
+		Integrator integrator = new ZeroOrderHoldIntegrator();
+
+		float[] u = new float[]{1};
+		for (int i = 1; i <= 10; i++) {
+			float t = i * .005f;
+			float output = integrator.step(system, t - .005f, u, t, u)[0];
+			assertEquals(1 - (1 + t/tau) * Math.exp(-t/tau), output, 1e-5);
+		}
+	}
+
+	public void testCacheInvalidation() {
+		SimpleLTISystem system = new SimpleLTISystem(new float[]{-10}, new float[][]{{1}}, new float[][]{{1}},
+				new float[1], new Units[]{Units.UNK});
+		assertEquals((float) Math.exp(-.01), system.getDiscreteA(.001f)[0][0], 1e-7f);
+		system.setA(new float[][]{{-20}});
+		assertEquals((float) Math.exp(-.02), system.getDiscreteA(.001f)[0][0], 1e-7f);
+		system.setB(new float[][]{{2}});
+		assertEquals((float) (2 * (1 - Math.exp(-.02)) / 20), system.getDiscreteB(.001f)[0][0], 1e-9f);
+	}
+
+	public void testFloatStepTimes() {
+		final int[] count = new int[1];
+		SimpleLTISystem system = new SimpleLTISystem(new float[]{-100}, new float[][]{{100}},
+				new float[][]{{1}}, new float[1], new Units[]{Units.UNK}) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected float[][][] discretize(float dt) {
+				count[0]++;
+				return super.discretize(dt);
+			}
+		};
+		Integrator integrator = new ZeroOrderHoldIntegrator();
+
+		//times as LocalSimulator makes them, whose differences vary in the last bits
+		float[] u = new float[]{1};
+		for (int c = 0; c < 1000; c++) {
+			integrator.step(system, (float) (c * .001), u, (float) ((c+1) * .001), u);
+		}
+		assertEquals(1, count[0]);
+		assertEquals(1, system.getState()[0], 1e-5f);
+	}
+
+	public void testIntegrate() {
+		SimpleLTISystem integrated = new SimpleLTISystem(new float[]{-100}, new float[][]{{100}},
+				new float[][]{{1}}, new float[1], new Units[]{Units.UNK});
+		SimpleLTISystem stepped = (SimpleLTISystem) copy(integrated);
+		Integrator integrator = new ZeroOrderHoldIntegrator();
+
+		float[] times = new float[]{0, .001f, .003f, .004f};
+		float[][] inputs = new float[][]{{1}, {1}, {-1}, {2}};
+		TimeSeries output = integrator.integrate(integrated, new TimeSeriesImpl(times, inputs, new Units[]{Units.UNK}));
+		assertEquals(times.length, output.getTimes().length);
+		for (int i = 1; i < times.length; i++) {
+			float expected = integrator.step(stepped, times[i-1], inputs[i-1], times[i], inputs[i])[0];
+			assertEquals(expected, output.getValues()[i][0]);
+		}
+	}
+
+	private static Object copy(SimpleLTISystem system) {
+		try {
+			return system.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void assertClose(float[][] expected, float[][] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j], 1e-6f * Math.max(1f, Math.abs(expected[i][j])));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package ca.nengo.io;
+
+import java.io.File;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for Checkpoint.
+ */
+public class CheckpointTest extends TestCase {
+
+	private File myCheckpointFile;
+	private File myModelFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myCheckpointFile = new File("./checkpoint_test." + Checkpoint.CHECKPOINT_EXTENSION);
+		myModelFile = new File("./checkpoint_test.nef");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		myCheckpointFile.delete();
+		myModelFile.delete();
+	}
+
+	public void testRestoreIntoSameNetwork() throws Exception {
+		Network network = makeNetwork();
+		network.getSimulator().run(0, .05f, .001f);
+		network.getSimulator().saveCheckpoint(myCheckpointFile);
+		assertTrue(myCheckpointFile.length() > 0);
+
+		float[][] expected = runAndProbe(network, .05f);
+		network.getSimulator().resetNetwork(false, false);
+
+		float time = network.getSimulator().restoreCheckpoint(myCheckpointFile);
+		assertEquals(.05f, time, .00001f);
+		assertSameValues(expected, runAndProbe(network, time));
+	}
+
+	public void testRestoreIntoLoadedNetwork() throws Exception {
+		Network network = makeNetwork();
+		FileManager fm = new FileManager();
+		fm.save(network, myModelFile);
+
+		network.getSimulator().run(0, .05f, .001f);
+		network.getSimulator().saveCheckpoint(myCheckpointFile);
+		float[][] expected = runAndProbe(network, .05f);
+
+		Network loaded = (Network) fm.load(myModelFile);
+		float time = loaded.getSimulator().restoreCheckpoint(myCheckpointFile);
+		assertSameValues(expected, runAndProbe(loaded, time));
+	}
+
+	public void testWrongFile() throws Exception {
+		Network network = makeNetwork();
+		new FileManager().save(network, myCheckpointFile);
+		try {
+			Checkpoint.restore(network, myCheckpointFile);
+			fail("Should have thrown exception");
+		} catch (java.io.IOException e) {} // exception is expected
+	}
+
+	private static float[][] runAndProbe(Network network, float start) throws Exception {
+		Probe probe = network.getSimulator().addProbe("b", "X", true);
+		network.getSimulator().run(start, start + .05f, .001f);
+		network.getSimulator().removeProbe(probe);
+		return probe.getData().getValues();
+	}
+
+	private static void assertSameValues(float[][] expected, float[][] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j]);
+			}
+		}
+	}
+
+	private static Network makeNetwork() throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+		network.setName("checkpoint");
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = ef.make("a", 50, 1);
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		network.addNode(a);
+		NEFEnsemble b = ef.make("b", 50, 1);
+		b.addDecodedTermination("a", MU.I(1), .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("a"));
+		return network;
+	}
+
+}
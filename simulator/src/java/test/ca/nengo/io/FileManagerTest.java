@@ -0,0 +1,99 @@
+package ca.nengo.io;
+
+import java.io.File;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for FileManager.
+ */
+public class FileManagerTest extends TestCase {
+
+	private File myFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFile = new File("./file_manager_test.nef");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		myFile.delete();
+		PayloadStore.getPayloadFile(myFile).delete();
+	}
+
+	public void testSaveWithSeparatePayloads() throws Exception {
+		NetworkImpl network = makeNetwork();
+		NEFEnsemble original = (NEFEnsemble) network.getNode("a");
+		float[][] decoders = ((DecodedOrigin) original.getOrigin("X")).getDecoders();
+
+		FileManager fm = new FileManager();
+		fm.save(network, myFile, true);
+		assertTrue(PayloadStore.getPayloadFile(myFile).exists());
+		assertTrue(PayloadStore.getPayloadFile(myFile).length() > 0);
+
+		NetworkImpl loaded = (NetworkImpl) fm.load(myFile);
+		NEFEnsemble ensemble = (NEFEnsemble) loaded.getNode("a");
+
+		//structure is available without touching payloads
+		DecodedTermination termination = (DecodedTermination) ensemble.getTermination("input");
+		assertEquals(50, termination.getDimensions());
+		assertEquals(50, ensemble.getOrigin("X").getDimensions());
+
+		float[][] loadedDecoders = ((DecodedOrigin) ensemble.getOrigin("X")).getDecoders();
+		assertTrue(MU.isMatrix(loadedDecoders));
+		assertEquals(decoders.length, loadedDecoders.length);
+		for (int i = 0; i < decoders.length; i++) {
+			for (int j = 0; j < decoders[i].length; j++) {
+				assertEquals(decoders[i][j], loadedDecoders[i][j]);
+			}
+		}
+		assertEquals(1f, termination.getTransform()[3][3]);
+		assertEquals(0f, termination.getTransform()[3][4]);
+
+		//payloads are materialized again when the loaded model is saved without them
+		fm.save(loaded, myFile, false);
+		assertFalse(PayloadStore.getPayloadFile(myFile).exists());
+		NetworkImpl reloaded = (NetworkImpl) fm.load(myFile);
+		float[][] reloadedDecoders = ((DecodedOrigin) reloaded.getNode("a").getOrigin("X")).getDecoders();
+		assertEquals(decoders[5][7], reloadedDecoders[5][7]);
+	}
+
+	public void testSaveOverLazilyLoadedModel() throws Exception {
+		FileManager fm = new FileManager();
+		fm.save(makeNetwork(), myFile, true);
+
+		NetworkImpl loaded = (NetworkImpl) fm.load(myFile);
+		fm.save(loaded, myFile, true);
+
+		NetworkImpl reloaded = (NetworkImpl) fm.load(myFile);
+		float[][] decoders = ((DecodedOrigin) loaded.getNode("a").getOrigin("X")).getDecoders();
+		float[][] reloadedDecoders = ((DecodedOrigin) reloaded.getNode("a").getOrigin("X")).getDecoders();
+		assertEquals(decoders[10][3], reloadedDecoders[10][3]);
+	}
+
+	private static NetworkImpl makeNetwork() throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble ensemble = ef.make("a", 100, 50);
+		ensemble.addDecodedTermination("input", MU.I(50), .005f, false);
+
+		Function[] functions = new Function[50];
+		for (int i = 0; i < functions.length; i++) {
+			functions[i] = new ConstantFunction(50, 0);
+		}
+		ensemble.addDecodedOrigin("zero", functions, "AXON");
+		network.addNode(ensemble);
+		return network;
+	}
+
+}
@@ -0,0 +1,47 @@
+package ca.nengo.math.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+
+/**
+ * Unit tests for CompiledFunction.
+ */
+public class CompiledFunctionTest extends TestCase {
+
+	public void testMap() throws Exception {
+		String[] expressions = new String[]{"x0 + x1", "x0 - x1 * x2", "-x0 / (x1 + 2)", "x0 ^ 2 - x1",
+				"sin(x0) * cos(x1) + x2", "x0 < x1 | x2 > .5", "(x0 + x1) * (x0 - x1) / 3 + x2 % .4"};
+		float[][] points = new float[][]{{0, 0, 0}, {.5f, -.3f, .7f}, {-.9f, .2f, .1f}, {1.5f, 1.2f, -.8f}};
+
+		DefaultFunctionInterpreter interpreter = new DefaultFunctionInterpreter();
+		for (String expression : expressions) {
+			Function f = interpreter.parse(expression, 3);
+			Function compiled = CompiledFunction.compile(f);
+			assertTrue(compiled instanceof CompiledFunction);
+			assertSame(f, ((CompiledFunction) compiled).getFunction());
+			assertEquals(3, compiled.getDimension());
+			for (float[] point : points) {
+				assertEquals(expression, f.map(point), compiled.map(point), 1e-6f);
+			}
+
+			float[] results = compiled.clone().multiMap(points);
+			for (int i = 0; i < points.length; i++) {
+				assertEquals(expression, f.map(points[i]), results[i], 1e-6f);
+			}
+		}
+	}
+
+	public void testCompileOther() {
+		Function f = new IdentityFunction(2, 1);
+		assertSame(f, CompiledFunction.compile(f));
+	}
+
+	public void testWrongDimension() {
+		Function compiled = CompiledFunction.compile(new DefaultFunctionInterpreter().parse("x0 + x1", 2));
+		try {
+			compiled.map(new float[3]);
+			fail("Should have thrown exception");
+		} catch (IllegalArgumentException e) {} //exception is expected
+	}
+
+}
@@ -0,0 +1,68 @@
+package ca.nengo.math.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.PDFTools;
+
+/**
+ * Unit tests for RandomStream.
+ */
+public class RandomStreamTest extends TestCase {
+
+	public void testGaussianMoments() {
+		RandomStream stream = new RandomStream(1);
+		float[] samples = new float[200000];
+		stream.fillGaussian(samples, 2, 3);
+
+		double sum = 0;
+		double sumSquares = 0;
+		int tails = 0;
+		for (float sample : samples) {
+			double z = (sample - 2) / 3;
+			sum += z;
+			sumSquares += z * z;
+			if (Math.abs(z) > 3.5) {
+				tails++;
+			}
+		}
+		double mean = sum / samples.length;
+		assertEquals(0, mean, .01);
+		assertEquals(1, sumSquares / samples.length - mean * mean, .02);
+
+		//P(|z| > 3.5) is about 4.7e-4
+		assertTrue(tails > 50 && tails < 150);
+	}
+
+	public void testUniform() {
+		RandomStream stream = new RandomStream(1);
+		float[] samples = new float[100000];
+		stream.fillUniform(samples, -1, 3);
+
+		double sum = 0;
+		for (float sample : samples) {
+			assertTrue(sample >= -1 && sample <= 3);
+			sum += sample;
+		}
+		assertEquals(1, sum / samples.length, .02);
+	}
+
+	public void testIndependentCopies() {
+		RandomStream stream = new RandomStream(5);
+		RandomStream copy = stream.clone();
+		assertEquals(stream.nextGaussian(), copy.nextGaussian());
+
+		RandomStream other = new RandomStream();
+		copy.reseed();
+		assertTrue(stream.nextFloat() != copy.nextFloat() || stream.nextFloat() != other.nextFloat());
+	}
+
+	public void testReproducibleSeeds() {
+		PDFTools.setSeed(3);
+		RandomStream first = new RandomStream();
+		PDFTools.setSeed(3);
+		RandomStream second = new RandomStream();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(first.nextGaussian(), second.nextGaussian());
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package ca.nengo.model.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Ensemble;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+
+/**
+ * Unit tests for LinearExponentialEnsembleTermination.
+ */
+public class LinearExponentialEnsembleTerminationTest extends TestCase {
+
+	private static final float[][] ourWeights = new float[][]{{1, -2, 0, .5f}, {0, 3, 1, -1}, {.25f, 0, 0, 2}};
+
+	public void testSameCurrentsAsNodeTerminations() throws Exception {
+		LinearExponentialTermination[] separate = makeNodeTerminations();
+		LinearExponentialTermination[] fused = makeNodeTerminations();
+		LinearExponentialEnsembleTermination termination = new LinearExponentialEnsembleTermination(null, "test", fused);
+
+		InstantaneousOutput[] inputs = new InstantaneousOutput[]{
+				new SpikeOutputImpl(new boolean[]{true, false, false, true}, Units.SPIKES, 0),
+				new SpikeOutputImpl(new boolean[4], Units.SPIKES, 0),
+				new RealOutputImpl(new float[]{0, .5f, 0, -2}, Units.SPIKES_PER_S, 0),
+				new RealOutputImpl(new float[]{1, 2, 3, 4}, Units.SPIKES_PER_S, 0)};
+
+		for (InstantaneousOutput input : inputs) {
+			termination.setValues(input);
+			for (int i = 0; i < separate.length; i++) {
+				separate[i].setValues(input);
+				assertEquals(separate[i].updateCurrent(true, .001f, .001f), fused[i].updateCurrent(true, .001f, .001f));
+				assertSame(input, fused[i].getInput());
+			}
+		}
+	}
+
+	public void testSharedWeights() throws Exception {
+		LinearExponentialTermination[] nodeTerminations = makeNodeTerminations();
+		LinearExponentialEnsembleTermination termination = new LinearExponentialEnsembleTermination(null, "test", nodeTerminations);
+
+		float[] matrix = termination.getWeights();
+		assertEquals(-1f, matrix[7]);
+		nodeTerminations[1].setWeights(new float[]{0, 0, 0, 4}, false);
+		assertEquals(4f, matrix[7]);
+
+		termination.setValues(new SpikeOutputImpl(new boolean[]{false, false, false, true}, Units.SPIKES, 0));
+		assertEquals(4f / .005f, nodeTerminations[1].updateCurrent(true, 0, 0));
+
+		nodeTerminations[1].reset(false);
+		assertEquals(-1f, matrix[7]);
+	}
+
+	public void testAddedByEnsemble() throws Exception {
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("test", 3, 1);
+		Termination termination = ensemble.addTermination("input", ourWeights, .005f, false);
+		assertTrue(termination instanceof LinearExponentialEnsembleTermination);
+
+		Ensemble copy = (Ensemble) ensemble.clone();
+		assertTrue(copy.getTermination("input") instanceof LinearExponentialEnsembleTermination);
+		assertNotSame(termination, copy.getTermination("input"));
+	}
+
+	private static LinearExponentialTermination[] makeNodeTerminations() {
+		LinearExponentialTermination[] result = new LinearExponentialTermination[ourWeights.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new LinearExponentialTermination(null, "test", ourWeights[i].clone(), .005f);
+		}
+		return result;
+	}
+
+}
@@ -8,7 +8,9 @@ import ca.nengo.dynamics.DynamicalSystem;
 import ca.nengo.dynamics.Integrator;
 import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.dynamics.impl.ZeroOrderHoldIntegrator;
 import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.model.Noise;
 import ca.nengo.model.Units;
 import ca.nengo.plot.Plotter;
@@ -20,7 +22,48 @@ public class NoiseFactoryTest extends TestCase {
         super.setUp();
     }
 
-    public void testNothing() {
+    public void testVectorWithDynamics() {
+        float tau = .01f;
+        DynamicalSystem dynamics = new SimpleLTISystem(new float[]{-1f/tau}, new float[][]{new float[]{1f/tau}}, MU.I(1), new float[1], new Units[]{Units.UNK});
+        Noise noise = NoiseFactory.makeRandomNoise(1000, new IndicatorPDF(2), dynamics, new ZeroOrderHoldIntegrator());
+        Noise single = noise.clone();
+
+        float[] values = new float[5];
+        for (int i = 0; i < 20; i++) {
+            float[] input = new float[]{0, 1, 2, 3, 4};
+            noise.getValues(i * .001f, (i+1) * .001f, input);
+            float expected = 2f * (1f - (float) Math.exp(-(i+1) * .1));
+            for (int j = 0; j < input.length; j++) {
+                assertEquals(j + expected, input[j], 1e-5f);
+            }
+            assertEquals(expected, single.getValue(i * .001f, (i+1) * .001f, 0), 1e-5f);
+            values = input;
+        }
+        assertTrue(values[0] > 0);
+
+        noise.reset(false);
+        float[] input = new float[5];
+        noise.getValues(0, .001f, input);
+        assertEquals(2f * (1f - (float) Math.exp(-.1)), input[4], 1e-5f);
+    }
+
+    public void testVectorIndependent() {
+        Noise noise = NoiseFactory.makeRandomNoise(1000, new GaussianPDF(0, 1));
+        float[] values = new float[10000];
+        noise.getValues(0, .001f, values);
+
+        float sumSquares = 0;
+        for (float value : values) {
+            sumSquares += value * value;
+        }
+        assertEquals(1f, sumSquares / values.length, .05f);
+
+        //held until the next draw
+        float[] held = new float[values.length];
+        noise.getValues(.001f, .0015f, held);
+        assertEquals(values[7], held[7]);
+        noise.getValues(.0015f, .002f, held);
+        assertTrue(values[7] != held[7]);
     }
 
     //functional test ...
@@ -11,6 +11,7 @@ import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
@@ -61,6 +62,32 @@ public class ProjectionImplTest extends TestCase {
 		assertEquals(myTermination, myProjection.getTermination());
 	}
 
+	public void testTransfer() throws StructuralException, SimulationException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble pre = ef.make("pre", 20, 2);
+		NEFEnsemble post = ef.make("post", 20, 2);
+		pre.setMode(SimulationMode.RATE);
+		pre.addDecodedTermination("input", MU.I(2), .005f, false);
+		pre.getTermination("input").setValues(new RealOutputImpl(new float[]{.5f, -.5f}, Units.UNK, 0));
+		DecodedTermination t = (DecodedTermination) post.addDecodedTermination("input", MU.I(2), .005f, false);
+		Projection p = new ProjectionImpl(pre.getOrigin(NEFEnsemble.X), t, null);
+
+		pre.run(0, .001f);
+		DecodedOrigin o = (DecodedOrigin) pre.getOrigin(NEFEnsemble.X);
+		float[] output = ((RealOutput) o.getValues()).getValues().clone();
+		ProjectionImpl.transfer(p);
+		assertEquals(.001f, t.getInput().getTime(), 1e-6f);
+		assertEquals(output[0], t.getInput().getValues()[0]);
+		assertEquals(output[1], t.getInput().getValues()[1]);
+
+		//the termination's input is kept while the origin runs again
+		t.reset(false);
+		ProjectionImpl.transfer(p);
+		pre.run(.001f, .002f);
+		assertEquals(output[0], t.getInput().getValues()[0]);
+		assertEquals(output[1], t.getInput().getValues()[1]);
+	}
+
 //	public void testAddBias() throws StructuralException, SimulationException {
 //		//TODO: transient dominating error calc
 //      //TODO: speed up this test, or something, it takes forever and fails half the time.
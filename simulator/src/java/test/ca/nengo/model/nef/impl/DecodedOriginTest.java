@@ -3,10 +3,20 @@
  */
 package ca.nengo.model.nef.impl;
 
+import ca.nengo.dynamics.DynamicalSystem;
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.dynamics.impl.ZeroOrderHoldIntegrator;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.Units;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 //import ca.nengo.plot.Plotter;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.util.MU;
 import junit.framework.TestCase;
 
@@ -44,6 +54,70 @@ public class DecodedOriginTest extends TestCase {
 	public void testGetError() {
 		System.out.println(MU.toString(new float[][]{myOrigin.getError()}, 10));
 	}
+
+	public void testShortTermPlasticity() throws Exception {
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("stp", 10, 1);
+		DecodedOrigin origin = (DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X);
+		LTISystem dynamics = new LTISystem(new float[][]{{-10}}, new float[][]{{-.001f}}, new float[][]{{1}},
+				new float[][]{{.0001f}}, new float[]{1}, new Units[]{Units.UNK});
+		origin.setSTPDynamics(dynamics);
+
+		Node[] nodes = ensemble.getNodes();
+		DynamicalSystem[] expectedDynamics = new DynamicalSystem[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			expectedDynamics[i] = dynamics.clone();
+		}
+		Integrator integrator = new ZeroOrderHoldIntegrator();
+		float[][] decoders = origin.getDecoders();
+
+		float dt = .001f;
+		for (int step = 0; step < 50; step++) {
+			float startTime = step * dt;
+			float endTime = (step + 1) * dt;
+			ensemble.run(startTime, endTime);
+
+			float expected = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				InstantaneousOutput o = nodes[i].getOrigin(Neuron.AXON).getValues();
+				float val = o instanceof SpikeOutput
+					? (((SpikeOutput) o).getValues()[0] ? 1f / dt : 0f)
+					: ((RealOutput) o).getValues()[0];
+				float[] u = new float[]{val};
+				float scale = integrator.step(expectedDynamics[i], startTime, u, endTime, u)[0];
+				expected += val * (decoders[i][0] * scale);
+			}
+			float actual = ((RealOutput) origin.getValues()).getValues()[0];
+			assertEquals(expected, actual, 1e-4f * Math.max(1f, Math.abs(expected)));
+		}
+
+		for (int i = 0; i < nodes.length; i++) {
+			assertEquals(expectedDynamics[i].getState()[0], origin.getSTPDynamics(i).getState()[0], 1e-6f);
+		}
+		assertTrue(origin.getSTPDynamics(0).getState()[0] < 1);
+	}
+
+	public void testSTPFloatStepTimes() throws Exception {
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("stp", 10, 1);
+		DecodedOrigin origin = (DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X);
+		final int[] count = new int[1];
+		LTISystem dynamics = new LTISystem(new float[][]{{-10}}, new float[][]{{-.001f}}, new float[][]{{1}},
+				new float[][]{{.0001f}}, new float[]{1}, new Units[]{Units.UNK}) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public float[][] getDiscreteA(float dt) {
+				count[0]++;
+				return super.getDiscreteA(dt);
+			}
+		};
+		origin.setSTPDynamics(dynamics);
+
+		//times as LocalSimulator makes them, whose differences vary in the last bits
+		for (int step = 0; step < 100; step++) {
+			ensemble.run((float) (step * .001), (float) ((step+1) * .001));
+		}
+		assertEquals(10, count[0]); //parameters are found once for each node
+	}
 	
 //	public static void main(String[] args) {
 //		DecodedOriginTest test = new DecodedOriginTest("");
@@ -5,21 +5,29 @@ package ca.nengo.model.nef.impl;
 
 import ca.nengo.math.Function;
 import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.math.impl.IndicatorPDF;
 //import ca.nengo.math.impl.ConstantFunction;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.impl.BiasOrigin;
 //import ca.nengo.model.nef.impl.DecodedOrigin;
 //import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFNeuronFactory;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
@@ -243,6 +251,187 @@ public class NEFEnsembleImplTest extends TestCase {
 		System.out.println(System.currentTimeMillis() - startTime);
 	}
 	
+	public void testBind() throws StructuralException, SimulationException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 50, 1);
+		ensemble.collectSpikes(true);
+		ensemble.bind();
+
+		//a termination added after binding is run
+		Termination termination = ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+		termination.setValues(new RealOutputImpl(new float[]{1}, Units.UNK, 0));
+		for (int i = 0; i < 100; i++) {
+			ensemble.run(i * .001f, (i+1) * .001f);
+		}
+		int spikes = 0;
+		for (int i = 0; i < 50; i++) {
+			spikes += ensemble.getSpikePattern().getSpikeTimes(i).length;
+		}
+		assertTrue(spikes > 0);
+
+		ensemble.setMode(SimulationMode.RATE);
+		for (int i = 100; i < 110; i++) {
+			ensemble.run(i * .001f, (i+1) * .001f);
+		}
+		float x = ((RealOutput) ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+		assertTrue(x > .5f);
+	}
+
+	public void testGetRadialInput() throws StructuralException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 10, new float[]{1, 2, .5f});
+		float[] state = new float[]{.3f, -1f, .2f};
+		float[][] encoders = ensemble.getEncoders();
+		for (int i = 0; i < encoders.length; i++) {
+			float expected = .3f * encoders[i][0] - .5f * encoders[i][1] + .4f * encoders[i][2];
+			assertEquals(expected, ensemble.getRadialInput(state, i), 1e-6f);
+		}
+
+		//scaled encoders are updated with the encoders
+		encoders[0] = new float[]{0, 1, 0};
+		ensemble.setEncoders(encoders);
+		assertEquals(-.5f, ensemble.getRadialInput(state, 0), 1e-6f);
+	}
+
+	public void testQuiescence() throws StructuralException, SimulationException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 20, 1);
+		ensemble.setMode(SimulationMode.RATE);
+		Termination termination = ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+
+		float[] expected = runQuiescence(ensemble, termination, false);
+		assertEquals(0, ensemble.getQuiescentSteps());
+		float[] quiescent = runQuiescence(ensemble, termination, true);
+		assertTrue(ensemble.getQuiescentSteps() > 100);
+		assertEquals(expected[0], quiescent[0], 1e-5f);
+		assertEquals(expected[1], quiescent[1], 1e-5f); //resumes after the input changes
+
+		//spiking nodes that fire aren't quiescent
+		ensemble.setMode(SimulationMode.DEFAULT);
+		runQuiescence(ensemble, termination, true);
+		assertEquals(0, ensemble.getQuiescentSteps());
+	}
+
+	public void testSlowFiringQuiescence() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setNodeFactory(new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(10, 20), new IndicatorPDF(-.9f, -.6f)));
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 3, 1);
+		Termination termination = ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+
+		//every neuron is above threshold but may go much longer than the quiescence window between spikes
+		int expected = countSpikes(ensemble, termination, false);
+		int detected = countSpikes(ensemble, termination, true);
+		assertTrue(expected > 0);
+		assertEquals(expected, detected);
+		assertEquals(0, ensemble.getQuiescentSteps());
+	}
+
+	public void testQuiescenceInputStep() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setNodeFactory(new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(20, 40), new IndicatorPDF(.05f, .2f)));
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 10, 1);
+		Termination termination = ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+
+		//neurons rest between zero and threshold with no input, then some fire after it steps up
+		boolean[][] expected = runInputStep(ensemble, termination, false);
+		boolean[][] detected = runInputStep(ensemble, termination, true);
+		assertTrue(ensemble.getQuiescentSteps() > 100);
+		int spikes = 0;
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], detected[i][j]);
+				if (expected[i][j]) spikes++;
+			}
+		}
+		assertTrue(spikes > 0);
+	}
+
+	//runs for .5s with no input, then .1s with input 1, and returns the spikes of each node in each step
+	private static boolean[][] runInputStep(NEFEnsembleImpl ensemble, Termination termination, boolean detect)
+			throws StructuralException, SimulationException {
+		ensemble.reset(false);
+		ensemble.setDetectQuiescence(detect);
+		Node[] nodes = ensemble.getNodes();
+		boolean[][] result = new boolean[600][];
+		for (int i = 0; i < result.length; i++) {
+			termination.setValues(new RealOutputImpl(new float[]{i < 500 ? 0 : 1}, Units.UNK, i * .001f));
+			ensemble.run(i * .001f, (i+1) * .001f);
+			result[i] = new boolean[nodes.length];
+			for (int j = 0; j < nodes.length; j++) {
+				result[i][j] = ((SpikeOutput) nodes[j].getOrigin(Neuron.AXON).getValues()).getValues()[0];
+			}
+		}
+		return result;
+	}
+
+	//runs for .3s with input .5 and returns the total number of spikes
+	private static int countSpikes(NEFEnsembleImpl ensemble, Termination termination, boolean detect)
+			throws StructuralException, SimulationException {
+		ensemble.reset(false);
+		ensemble.setDetectQuiescence(detect);
+		int result = 0;
+		for (int i = 0; i < 300; i++) {
+			termination.setValues(new RealOutputImpl(new float[]{.5f}, Units.UNK, i * .001f));
+			ensemble.run(i * .001f, (i+1) * .001f);
+			Node[] nodes = ensemble.getNodes();
+			for (int j = 0; j < nodes.length; j++) {
+				if (((SpikeOutput) nodes[j].getOrigin(Neuron.AXON).getValues()).getValues()[0]) result++;
+			}
+		}
+		return result;
+	}
+
+	//runs for .3s with input .5, then .1s with input -.5, and returns the output after each
+	private static float[] runQuiescence(NEFEnsembleImpl ensemble, Termination termination, boolean detect)
+			throws StructuralException, SimulationException {
+		ensemble.reset(false);
+		ensemble.setDetectQuiescence(detect);
+		float[] result = new float[2];
+		for (int i = 0; i < 400; i++) {
+			termination.setValues(new RealOutputImpl(new float[]{i < 300 ? .5f : -.5f}, Units.UNK, i * .001f));
+			ensemble.run(i * .001f, (i+1) * .001f);
+			if (i == 299 || i == 399) {
+				result[i / 300] = ((RealOutput) ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+			}
+		}
+		return result;
+	}
+
+	public void testPopulationRates() throws StructuralException, SimulationException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 50, 1);
+		ensemble.setMode(SimulationMode.RATE);
+		Termination termination = ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+
+		float[] expected = runRates(ensemble, termination, false, false);
+		float[] population = runRates(ensemble, termination, true, false);
+		float[] interpolated = runRates(ensemble, termination, true, true);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], population[i], 1e-5f);
+			assertEquals(expected[i], interpolated[i], 1e-3f);
+		}
+
+		//the nodes weren't run
+		float time = ensemble.getNodes()[0].getOrigin(Neuron.AXON).getValues().getTime();
+		assertTrue(time < .05f);
+	}
+
+	//runs for .1s with a sinusoidal input, and returns the output at each step
+	private static float[] runRates(NEFEnsembleImpl ensemble, Termination termination, boolean population,
+			boolean interpolate) throws StructuralException, SimulationException {
+		ensemble.reset(false);
+		ensemble.setPopulationRates(population);
+		ensemble.setInterpolateRates(interpolate);
+		float[] result = new float[100];
+		for (int i = 0; i < result.length; i++) {
+			float input = (float) Math.sin(i * .06);
+			termination.setValues(new RealOutputImpl(new float[]{input}, Units.UNK, i * .001f));
+			ensemble.run(i * .001f, (i+1) * .001f);
+			result[i] = ((RealOutput) ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+		}
+		return result;
+	}
+
 	public static void main(String[] args) {
 		NEFEnsembleImplTest test = new NEFEnsembleImplTest();
 		try {
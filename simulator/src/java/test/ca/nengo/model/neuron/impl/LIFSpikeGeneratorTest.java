@@ -3,6 +3,7 @@
  */
 package ca.nengo.model.neuron.impl;
 
+import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -172,6 +173,47 @@ public void testRunPrecise() throws SimulationException {
 
 }
 
+	public void testRunExact() throws SimulationException {
+		float[] current = new float[]{0f, 1.46335061f, 2f, 4.80514111f, 5f};
+		float[] tauRC = new float[]{0.01f, .02f};
+		float[] tauRef = new float[]{.001f, .002f};
+
+		//one evaluation per 1 ms step, within one spike of the rate
+		for (int i = 0; i < tauRC.length; i++) {
+			for (int j = 0; j < tauRef.length; j++) {
+				LIFSpikeGenerator sg = new LIFSpikeGenerator(.001f, tauRC[i], tauRef[j]);
+				sg.setExactIntegration(true);
+				for (int k = 0; k < current.length; k++) {
+					assertSpikesCloseToRate(sg, current[k], 1.01f, SimulationMode.DEFAULT);
+					assertSpikesCloseToRate(sg, current[k], 1.01f, SimulationMode.PRECISE);
+				}
+			}
+		}
+
+		//first spike at tauRC * ln(J / (J-1)), then one every tauRef + tauRC * ln(J / (J-1))
+		LIFSpikeGenerator sg = new LIFSpikeGenerator(.001f, .02f, .002f);
+		sg.setExactIntegration(true);
+		sg.setMode(SimulationMode.PRECISE);
+		float isi = .02f * (float) Math.log(2);
+		float expected = isi;
+		for (int i = 0; i < 40; i++) {
+			float start = .001f * i;
+			PreciseSpikeOutput output = (PreciseSpikeOutput) sg.run(new float[]{start, start + .001f}, new float[]{2, 2});
+			float spikeTime = output.getSpikeTimes()[0];
+			if (expected < start + .001f) {
+				assertEquals(expected - start, spikeTime, 1e-5f);
+				expected += .002f + isi;
+			} else {
+				assertEquals(-1f, spikeTime);
+			}
+		}
+
+		TimeSeries1D history = (TimeSeries1D) sg.getHistory("V");
+		assertEquals(1, history.getTimes().length);
+		assertEquals(.04f, history.getTimes()[0], 1e-6f);
+		assertBetween(history.getValues1D()[0], 0f, 1f);
+	}
+
 	private static void assertBetween(float value, float low, float high) {
 		assertTrue(value + " is out of range", value > low && value < high);
 	}
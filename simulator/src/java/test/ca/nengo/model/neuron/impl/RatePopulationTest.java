@@ -0,0 +1,72 @@
+package ca.nengo.model.neuron.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NoiseFactory;
+
+/**
+ * Unit tests for RatePopulation.
+ */
+public class RatePopulationTest extends TestCase {
+
+	public void testLIF() throws Exception {
+		Node[] nodes = new Node[50];
+		float[] radialInputs = new float[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			LIFSpikeGenerator generator = new LIFSpikeGenerator(.001f, .01f + i * .001f, .001f + i * .0001f);
+			nodes[i] = new SpikingNeuron(null, generator, 1 + i * .1f, .9f, "n" + i);
+			radialInputs[i] = -1 + i * .05f;
+		}
+		RatePopulation population = RatePopulation.make(nodes);
+		assertEquals(nodes.length, population.getSize());
+
+		float[] rates = new float[nodes.length];
+		float[] interpolated = new float[nodes.length];
+		population.run(radialInputs, SimulationMode.RATE, 0, .001f, rates);
+		population.setInterpolate(true);
+		assertTrue(population.getInterpolate());
+		population.run(radialInputs, SimulationMode.RATE, 0, .001f, interpolated);
+		for (int i = 0; i < nodes.length; i++) {
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			float current = neuron.getBias() + neuron.getScale() * radialInputs[i];
+			float expected = ((LIFSpikeGenerator) neuron.getGenerator()).constantRateRun(current);
+			assertEquals(expected, rates[i], 0f);
+			assertEquals(expected, interpolated[i], .1f);
+		}
+	}
+
+	public void testALIF() throws Exception {
+		ALIFSpikeGenerator reference = new ALIFSpikeGenerator(.002f, .02f, .2f, .1f);
+		reference.setMode(SimulationMode.RATE);
+		ALIFSpikeGenerator generator = new ALIFSpikeGenerator(.002f, .02f, .2f, .1f);
+		RatePopulation population = RatePopulation.make(new Node[]{new SpikingNeuron(null, generator, 1, 0, "n")});
+
+		float[] rate = new float[1];
+		for (int i = 0; i < 100; i++) {
+			float current = i < 50 ? 3 : 1.5f;
+			RealOutput expected = (RealOutput) reference.run(new float[]{i * .001f, (i+1) * .001f}, new float[]{current, current});
+			population.run(new float[]{current}, SimulationMode.RATE, i * .001f, (i+1) * .001f, rate);
+			assertEquals(expected.getValues()[0], rate[0], 0f);
+		}
+		assertEquals(reference.getN(), generator.getN(), 0f);
+		assertTrue(generator.getN() > 0);
+	}
+
+	public void testIneligible() throws Exception {
+		SpikingNeuron noisy = new SpikingNeuron(null, null, 1, 0, "noisy");
+		noisy.setNoise(new NoiseFactory.NoiseImplNull());
+		assertNull(RatePopulation.make(new Node[]{noisy}));
+
+		SpikingNeuron other = new SpikingNeuron(null, new PoissonSpikeGenerator(), 1, 0, "poisson");
+		assertNull(RatePopulation.make(new Node[]{other}));
+
+		LinearSynapticIntegrator integrator = new LinearSynapticIntegrator(.001f, Units.ACU);
+		integrator.addTermination("input", new float[]{1}, .005f, false);
+		SpikingNeuron synaptic = new SpikingNeuron(integrator, null, 1, 0, "synaptic");
+		assertNull(RatePopulation.make(new Node[]{synaptic}));
+	}
+
+}
@@ -3,6 +3,13 @@
  */
 package ca.nengo.model.neuron.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 
 import ca.nengo.model.InstantaneousOutput;
@@ -19,6 +26,7 @@ import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.TimeSeries1D;
 import junit.framework.TestCase;
 
 /**
@@ -106,4 +114,60 @@ public class SpikingNeuronTest extends TestCase {
 		ourLogger.info(((RealOutput) output).getValues()[0]);
 	}
 
+	public void testRunExact() throws Exception {
+		LIFSpikeGenerator reference = new LIFSpikeGenerator(.00001f, .01f, .001f); //Euler with a fine step
+		((LIFSpikeGenerator) myGenerator).setExactIntegration(true);
+		myNeuron.setRadialInput(3);
+
+		List<Integer> expected = new ArrayList<Integer>();
+		List<Integer> spikes = new ArrayList<Integer>();
+		for (int i = 0; i < 200; i++) {
+			float start = .001f * i;
+			myNeuron.run(start, start + .001f);
+			if (((SpikeOutput) reference.run(new float[]{start, start + .001f}, new float[]{3, 3})).getValues()[0]) {
+				expected.add(i);
+			}
+			if (((SpikeOutput) myNeuron.getOrigins()[0].getValues()).getValues()[0]) {
+				spikes.add(i);
+			}
+		}
+
+		//spikes land in the same step as the reference, or the next one over
+		assertTrue(expected.size() > 30);
+		assertTrue(Math.abs(expected.size() - spikes.size()) <= 1);
+		for (int i = 0; i < Math.min(expected.size(), spikes.size()); i++) {
+			assertTrue(Math.abs(expected.get(i) - spikes.get(i)) <= 1);
+		}
+
+		float[] current = ((TimeSeries1D) myNeuron.getHistory("I")).getValues1D();
+		assertEquals(3f, current[current.length-1], 1e-6f);
+		assertEquals(3f, myNeuron.getHistory(SpikingNeuron.CURRENT).getValues()[0][0], 1e-6f);
+		myNeuron.getHistory("rate");
+		assertEquals(.2f, myNeuron.getHistory("V").getTimes()[0], 1e-6f);
+		myNeuron.clone().run(.2f, .201f);
+
+		//with a termination the input goes through the integrator
+		myIntegrator.addTermination("test", new float[]{1}, .005f, false);
+		myNeuron.run(.2f, .201f);
+		assertEquals(.201f, myNeuron.getHistory("V").getTimes()[0], 1e-6f);
+	}
+
+	public void testSerializeExact() throws Exception {
+		((LIFSpikeGenerator) myGenerator).setExactIntegration(true);
+		myNeuron.setRadialInput(3);
+		myNeuron.run(0, .001f);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(myNeuron);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		SpikingNeuron copy = (SpikingNeuron) in.readObject();
+
+		float[] current = ((TimeSeries1D) copy.getHistory("I")).getValues1D();
+		assertEquals(3f, current[current.length-1], 1e-6f);
+		copy.getHistory("rate");
+		copy.clone().run(.001f, .002f);
+	}
+
 }
@@ -0,0 +1,60 @@
+package ca.nengo.model.plasticity.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.MU;
+
+public class PESTerminationTest extends TestCase {
+
+    public void testIntervalMatchesEveryStep() throws Exception {
+        Network network = makeNetwork();
+        float[] everyStep = learnedWeights(network, 0);
+        float[] interval = learnedWeights(network, .005f);
+
+        boolean changed = false;
+        for (int i = 0; i < everyStep.length; i++) {
+            assertEquals(everyStep[i], interval[i], 1e-4f * Math.max(1f, Math.abs(everyStep[i])));
+            changed = changed || everyStep[i] != 0;
+        }
+        assertTrue(changed);
+    }
+
+    private static float[] learnedWeights(Network network, float interval) throws Exception {
+        NEFEnsembleImpl ensemble = (NEFEnsembleImpl) network.getNode("a");
+        ensemble.setPlasticityInterval(interval);
+        network.getSimulator().resetNetwork(false, false);
+        network.getSimulator().run(0, .05f, .001f);
+        return ((PESTermination) ensemble.getTermination("input")).getWeights().clone();
+    }
+
+    private static Network makeNetwork() throws StructuralException {
+        NetworkImpl network = new NetworkImpl();
+
+        FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+        network.addNode(input);
+        FunctionInput error = new FunctionInput("error", new Function[]{new ConstantFunction(1, -1f)}, Units.UNK);
+        network.addNode(error);
+
+        NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+        NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("a", 20, 1);
+        PESTermination term = (PESTermination) a.addPESTermination("input", new float[20][1], .005f, false);
+        a.addDecodedTermination("error", MU.I(1), .005f, true);
+        term.setOriginName(NEFEnsemble.X);
+        term.setModTermName("error");
+        term.setLearningRate(1e-3f);
+        network.addNode(a);
+
+        network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+        network.addProjection(error.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("error"));
+        return network;
+    }
+}
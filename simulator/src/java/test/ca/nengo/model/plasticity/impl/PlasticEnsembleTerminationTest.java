@@ -82,4 +82,30 @@ public class PlasticEnsembleTerminationTest extends TestCase {
             }
         }
     }
+
+    public void testWeightMatrix() throws StructuralException {
+        NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+        NEFEnsembleImpl c = (NEFEnsembleImpl)ef.make("c", 10, 1);
+
+        LinearExponentialTermination[] nodeterms = new LinearExponentialTermination[10];
+        for(int i = 0; i < nodeterms.length; i++) {
+            nodeterms[i] = new LinearExponentialTermination(new SpikingNeuron(null, null, 0.0f, 0.0f, null), null,
+                    new float[]{i, 2*i, 3*i}, 0.0f);
+        }
+
+        PlasticEnsembleTermination term = new PESTermination(c, null, nodeterms);
+        float[] weights = term.getWeights();
+        assertEquals(30, weights.length);
+        assertEquals(6f, weights[2*3 + 2]);
+
+        //node terminations use the matrix directly
+        weights[4*3 + 1] = -1f;
+        assertEquals(-1f, nodeterms[4].getWeights()[1]);
+        assertEquals(-1f, term.getTransform()[4][1]);
+
+        //and reset it to the saved weights
+        term.reset(false);
+        assertSame(weights, term.getWeights());
+        assertEquals(8f, weights[4*3 + 1]);
+    }
 }
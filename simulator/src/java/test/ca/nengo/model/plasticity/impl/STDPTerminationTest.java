@@ -0,0 +1,88 @@
+package ca.nengo.model.plasticity.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Node;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.LinearExponentialTermination;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+public class STDPTerminationTest extends TestCase {
+
+    private static final int PRE = 3;
+    private static final int POST = 4;
+
+    public void testOnlySpikingRowsChange() throws Exception {
+        STDPTermination term = makeTermination();
+
+        //presynaptic spike, then postsynaptic spike
+        step(term, .001f, new boolean[]{true, false, false}, new boolean[POST]);
+        step(term, .002f, new boolean[PRE], new boolean[]{false, true, false, false});
+
+        float[][] transform = term.getTransform();
+        for (int i = 0; i < POST; i++) {
+            for (int j = 0; j < PRE; j++) {
+                if (i == 1 && j == 0) {
+                    float trace = (1f - 1f/16.8f) * (1f - 1f/16.8f);
+                    float expected = -5e-7f * 8.8e-11f * trace;
+                    assertEquals(expected, transform[i][j], Math.abs(expected) * 1e-4);
+                } else {
+                    assertEquals(0f, transform[i][j]);
+                }
+            }
+        }
+    }
+
+    public void testSplitRows() throws Exception {
+        STDPTermination whole = makeTermination();
+        STDPTermination split = makeTermination();
+
+        Random random = new Random(1);
+        for (int t = 1; t <= 100; t++) {
+            boolean[] pre = new boolean[PRE];
+            boolean[] post = new boolean[POST];
+            for (int i = 0; i < PRE; i++) {
+                pre[i] = random.nextFloat() < .2f;
+            }
+            for (int i = 0; i < POST; i++) {
+                post[i] = random.nextFloat() < .2f;
+            }
+
+            whole.setOriginState(Neuron.AXON, new SpikeOutputImpl(post, Units.SPIKES, t * .001f), t * .001f);
+            whole.setValues(new SpikeOutputImpl(pre, Units.SPIKES, t * .001f));
+            whole.updateTransform(t * .001f, 0, POST);
+
+            split.setOriginState(Neuron.AXON, new SpikeOutputImpl(post, Units.SPIKES, t * .001f), t * .001f);
+            split.setValues(new SpikeOutputImpl(pre, Units.SPIKES, t * .001f));
+            split.updateTransform(t * .001f, 2, POST);
+            split.updateTransform(t * .001f, 0, 2);
+        }
+
+        float[] expected = whole.getWeights();
+        float[] actual = split.getWeights();
+        boolean changed = false;
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+            changed = changed || expected[i] != 0;
+        }
+        assertTrue(changed);
+    }
+
+    private static void step(STDPTermination term, float time, boolean[] pre, boolean[] post) throws Exception {
+        term.setOriginState(Neuron.AXON, new SpikeOutputImpl(post, Units.SPIKES, time), time);
+        term.setValues(new SpikeOutputImpl(pre, Units.SPIKES, time));
+        term.updateTransform(time, 0, POST);
+    }
+
+    private static STDPTermination makeTermination() throws Exception {
+        LinearExponentialTermination[] nodeterms = new LinearExponentialTermination[POST];
+        for (int i = 0; i < nodeterms.length; i++) {
+            nodeterms[i] = new LinearExponentialTermination(new SpikingNeuron(null, null, 0.0f, 0.0f, null), null,
+                    new float[PRE], 0.005f);
+        }
+        return new STDPTermination((Node) null, "stdp", nodeterms);
+    }
+}
@@ -0,0 +1,105 @@
+package ca.nengo.sim.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for BatchSimulator.
+ */
+public class BatchSimulatorTest extends TestCase {
+
+	public void testSameResultsAsLocalSimulator() throws Exception {
+		Network network = makeNetwork();
+		Function[][] inputs = new Function[][]{
+				{new ConstantFunction(1, .5f)},
+				{new ConstantFunction(1, -.3f)},
+				{new SineFunction(10)}};
+
+		BatchSimulator simulator = new BatchSimulator(network, inputs.length);
+		for (int i = 0; i < inputs.length; i++) {
+			simulator.setFunctions(i, "input", inputs[i]);
+		}
+		simulator.addProbe("a", NEFEnsemble.X);
+		simulator.addProbe("b", NEFEnsemble.X);
+		TimeSeries[][] results = simulator.run(0, .05f, .001f);
+
+		assertEquals(inputs.length, results.length);
+		for (int i = 0; i < inputs.length; i++) {
+			((FunctionInput) network.getNode("input")).setFunctions(inputs[i]);
+			network.getSimulator().resetNetwork(false, false);
+			Probe probeA = network.getSimulator().addProbe("a", NEFEnsemble.X, true);
+			Probe probeB = network.getSimulator().addProbe("b", NEFEnsemble.X, true);
+			network.getSimulator().run(0, .05f, .001f);
+			network.getSimulator().removeProbe(probeA);
+			network.getSimulator().removeProbe(probeB);
+
+			assertSameValues(probeA.getData(), results[i][0]);
+			assertSameValues(probeB.getData(), results[i][1]);
+		}
+
+		//trials differ
+		float[][] first = results[0][1].getValues();
+		float[][] second = results[1][1].getValues();
+		assertTrue(first[first.length-1][0] > second[second.length-1][0]);
+	}
+
+	public void testUnsupported() throws Exception {
+		Network network = makeNetwork();
+		SpikingNeuron neuron = (SpikingNeuron) ((NEFEnsemble) network.getNode("b")).getNodes()[0];
+		neuron.setNoise(NoiseFactory.makeNullNoise());
+		try {
+			new BatchSimulator(network, 2);
+			fail("Should have thrown exception");
+		} catch (StructuralException e) {} // exception is expected
+	}
+
+	private static void assertSameValues(TimeSeries expected, TimeSeries actual) {
+		float[][] expectedValues = expected.getValues();
+		float[][] actualValues = actual.getValues();
+		assertEquals(expectedValues.length, actualValues.length);
+		for (int i = 0; i < expectedValues.length; i++) {
+			assertEquals(expected.getTimes()[i], actual.getTimes()[i]);
+			for (int j = 0; j < expectedValues[i].length; j++) {
+				assertEquals(expectedValues[i][j], actualValues[i][j]);
+			}
+		}
+	}
+
+	private static Network makeNetwork() throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		((LIFNeuronFactory) ef.getNodeFactory()).setExactIntegration(true); //as in batches
+		NEFEnsemble a = ef.make("a", 50, 2);
+		a.addDecodedTermination("input", new float[][]{{1}, {.5f}}, .005f, false);
+		network.addNode(a);
+		NEFEnsemble b = ef.make("b", 50, 1);
+		b.addDecodedTermination("a", new float[][]{{1, 0}}, .01f, false);
+		b.addDecodedTermination("input", MU.I(1), .02f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("a"));
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), b.getTermination("input"));
+		return network;
+	}
+
+}
@@ -0,0 +1,91 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.DefaultFunctionInterpreter;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * Unit tests for DirectModeGraph.
+ */
+public class DirectModeGraphTest extends TestCase {
+
+	public void testCompile() throws Exception {
+		Network network = makeNetwork();
+		DirectModeGraph graph = new DirectModeGraph(network.getNodes(), network.getProjections(), new ArrayList<ThreadTask>());
+		assertEquals(2, graph.getEnsembles().length);
+		Node[] remaining = graph.getNodes();
+		assertEquals(1, remaining.length);
+		assertSame(network.getNode("input"), remaining[0]);
+
+		//only DIRECT mode is compiled
+		((NEFEnsemble) network.getNode("b")).setMode(SimulationMode.RATE);
+		graph = new DirectModeGraph(network.getNodes(), network.getProjections(), new ArrayList<ThreadTask>());
+		assertEquals(1, graph.getEnsembles().length);
+		assertSame(network.getNode("a"), graph.getEnsembles()[0]);
+	}
+
+	public void testSameResults() throws Exception {
+		float[][] interpreted = run(false);
+		float[][] compiled = run(true);
+
+		assertEquals(interpreted.length, compiled.length);
+		assertTrue(Math.abs(compiled[compiled.length-1][0]) > .01f);
+		for (int i = 0; i < interpreted.length; i++) {
+			for (int j = 0; j < interpreted[i].length; j++) {
+				assertEquals(interpreted[i][j], compiled[i][j], 1e-5f);
+			}
+		}
+	}
+
+	private static float[][] run(boolean compile) throws Exception {
+		PDFTools.setSeed(1);
+		Network network = makeNetwork();
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		simulator.setDisplayProgress(false);
+		simulator.setCompileDirectMode(compile);
+		Probe probe = simulator.addProbe("b", NEFEnsemble.X, true);
+		network.run(0, .1f);
+		return probe.getData().getValues();
+	}
+
+	//input -> a -> (product) -> b, in DIRECT mode
+	private static Network makeNetwork() throws Exception {
+		NetworkImpl network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10), new SineFunction(7)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl a = (NEFEnsembleImpl) factory.make("a", 20, 2);
+		NEFEnsembleImpl b = (NEFEnsembleImpl) factory.make("b", 20, 2);
+		DefaultFunctionInterpreter interpreter = new DefaultFunctionInterpreter();
+		a.addDecodedOrigin("product", new Function[]{interpreter.parse("x0 * x1", 2),
+				interpreter.parse("sin(x0) - x1 / 2", 2)}, Neuron.AXON);
+		a.setMode(SimulationMode.DIRECT);
+		b.setMode(SimulationMode.DIRECT);
+		network.addNode(a);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.addDecodedTermination("input", MU.I(2), .005f, false));
+		network.addProjection(a.getOrigin("product"), b.addDecodedTermination("input", MU.I(2), .01f, false));
+		network.addProjection(b.getOrigin(NEFEnsemble.X), b.addDecodedTermination("recurrent", MU.prod(MU.I(2), .5f), .05f, false));
+		return network;
+	}
+
+}
@@ -0,0 +1,183 @@
+package ca.nengo.sim.impl;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import ca.nengo.io.FileManager;
+import ca.nengo.math.Function;
+import ca.nengo.math.NetworkPartitioner;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+
+/**
+ * Unit tests for DistributedSimulator.
+ */
+public class DistributedSimulatorTest extends TestCase {
+
+	private File myModelFile;
+	private DistributedSimulator mySimulator;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myModelFile = new File("./distributed_simulator_test.nef");
+		new FileManager().save(makeNetwork(), myModelFile);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		if (mySimulator != null) {
+			mySimulator.shutdown();
+		}
+		myModelFile.delete();
+	}
+
+	public void testSameResultsAsLocalSimulator() throws Exception {
+		float[][] expected = runLocally();
+
+		SimulatorWorker[] workers = new SimulatorWorker[]{new SimulatorWorker(0), new SimulatorWorker(0)};
+		InetSocketAddress[] addresses = new InetSocketAddress[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].start();
+			addresses[i] = new InetSocketAddress("localhost", workers[i].getPort());
+		}
+		mySimulator = new DistributedSimulator(addresses);
+		mySimulator.setPartitioner(new RoundRobinPartitioner());
+
+		Network network = (Network) new FileManager().load(myModelFile);
+		((NetworkImpl) network).setSimulator(mySimulator);
+		Probe probe = mySimulator.addProbe("b", "X", true);
+		mySimulator.run(0, .05f, .001f);
+
+		//every projection crosses partitions
+		int[] assignments = mySimulator.getAssignments();
+		Node[] nodes = network.getNodes();
+		for (Projection projection : network.getProjections()) {
+			int origin = assignments[indexOf(nodes, projection.getOrigin().getNode())];
+			int termination = assignments[indexOf(nodes, projection.getTermination().getNode())];
+			assertTrue(origin != termination);
+		}
+
+		assertSameValues(expected, probe.getData().getValues());
+
+		//can be run again after a reset
+		mySimulator.resetNetwork(false, false);
+		mySimulator.run(0, .05f, .001f);
+		assertSameValues(runLocally(true), probe.getData().getValues());
+	}
+
+	public void testWorkerProcesses() throws Exception {
+		float[][] expected = runLocally();
+
+		mySimulator = DistributedSimulator.startLocalWorkers(2);
+		Network network = (Network) new FileManager().load(myModelFile);
+		((NetworkImpl) network).setSimulator(mySimulator);
+		Probe probe = mySimulator.addProbe("b", "X", true);
+		mySimulator.run(0, .05f, .001f);
+
+		assertSameValues(expected, probe.getData().getValues());
+	}
+
+	private float[][] runLocally() throws Exception {
+		return runLocally(false);
+	}
+
+	private float[][] runLocally(boolean reset) throws Exception {
+		Network network = (Network) new FileManager().load(myModelFile);
+		Probe probe = network.getSimulator().addProbe("b", "X", true);
+		network.getSimulator().run(0, .05f, .001f);
+		if (reset) {
+			network.getSimulator().resetNetwork(false, false);
+			network.getSimulator().run(0, .05f, .001f);
+		}
+		return probe.getData().getValues();
+	}
+
+	private static int indexOf(Node[] nodes, Node node) {
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == node) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static void assertSameValues(float[][] expected, float[][] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j]);
+			}
+		}
+	}
+
+	private static Network makeNetwork() throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = ef.make("a", 50, 1);
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		network.addNode(a);
+		NEFEnsemble b = ef.make("b", 50, 1);
+		b.addDecodedTermination("a", MU.I(1), .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("a"));
+		return network;
+	}
+
+	//puts consecutive nodes in different partitions
+	private static class RoundRobinPartitioner implements NetworkPartitioner {
+
+		private Node[] myNodes;
+		private int myNumPartitions;
+
+		public void initialize(Node[] nodes, Projection[] projections, int numPartitions) {
+			myNodes = nodes;
+			myNumPartitions = numPartitions;
+		}
+
+		public ArrayList<Set<Node>> getPartitions() {
+			ArrayList<Set<Node>> result = new ArrayList<Set<Node>>();
+			for (int i = 0; i < myNumPartitions; i++) {
+				result.add(new HashSet<Node>());
+			}
+			int[] assignments = getPartitionsAsIntArray();
+			for (int i = 0; i < myNodes.length; i++) {
+				result.get(assignments[i]).add(myNodes[i]);
+			}
+			return result;
+		}
+
+		public int[] getPartitionsAsIntArray() {
+			int[] result = new int[myNodes.length];
+			String[] order = new String[]{"input", "a", "b"};
+			for (int i = 0; i < myNodes.length; i++) {
+				for (int j = 0; j < order.length; j++) {
+					if (order[j].equals(myNodes[i].getName())) {
+						result[i] = j % myNumPartitions;
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+package ca.nengo.sim.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for ExperimentRunner.
+ */
+public class ExperimentRunnerTest extends TestCase {
+
+	public void testSameResultsAsModel() throws Exception {
+		Network model = makeNetwork();
+		ExperimentRunner runner = new ExperimentRunner(model);
+		runner.addProbe("b", "X");
+		runner.setNumThreads(2);
+		TimeSeries[][] results = runner.run(3, 0, .05f, .001f);
+
+		Probe probe = model.getSimulator().addProbe("b", "X", true);
+		model.getSimulator().run(0, .05f, .001f);
+		float[][] expected = probe.getData().getValues();
+
+		assertEquals(3, results.length);
+		for (TimeSeries[] result : results) {
+			assertEquals(1, result.length);
+			float[][] actual = result[0].getValues();
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++) {
+				for (int j = 0; j < expected[i].length; j++) {
+					assertEquals(expected[i][j], actual[i][j]);
+				}
+			}
+		}
+	}
+
+	public void testSharedMatrices() throws Exception {
+		ExperimentRunner runner = new ExperimentRunner(makeNetwork());
+		Network a = runner.copyModel();
+		Network b = runner.copyModel();
+		assertNotSame(a.getNode("b"), b.getNode("b"));
+
+		DecodedOrigin originA = (DecodedOrigin) a.getNode("a").getOrigin(NEFEnsemble.X);
+		DecodedOrigin originB = (DecodedOrigin) b.getNode("a").getOrigin(NEFEnsemble.X);
+		assertSame(originA.getDecoders(), originB.getDecoders());
+
+		//state is not shared
+		a.getSimulator().run(0, .01f, .001f);
+		DecodedTermination terminationA = (DecodedTermination) a.getNode("a").getTermination("input");
+		DecodedTermination terminationB = (DecodedTermination) b.getNode("a").getTermination("input");
+		assertTrue(terminationA.getOutput()[0] > 0);
+		assertEquals(0f, terminationB.getOutput()[0]);
+	}
+
+	public void testSetup() throws Exception {
+		ExperimentRunner runner = new ExperimentRunner(makeNetwork());
+		runner.addProbe("input", FunctionInput.STATE_NAME);
+		runner.setSetup(new ExperimentRunner.Setup() {
+			public void setUp(Network network, int run) throws SimulationException, StructuralException {
+				FunctionInput input = (FunctionInput) network.getNode("input");
+				input.setFunctions(new Function[]{new ConstantFunction(1, run)});
+			}
+		});
+
+		TimeSeries[][] results = runner.run(4, 0, .01f, .001f);
+		for (int i = 0; i < results.length; i++) {
+			float[][] values = results[i][0].getValues();
+			assertEquals((float) i, values[values.length-1][0]);
+		}
+	}
+
+	public void testSetupChangesSharedMatrices() throws Exception {
+		ExperimentRunner runner = new ExperimentRunner(makeNetwork());
+		final float base = ((DecodedOrigin) runner.copyModel().getNode("a").getOrigin(NEFEnsemble.X)).getDecoders()[0][0];
+		final float[] decoders = new float[4];
+		runner.addProbe("b", "X");
+		runner.setNumThreads(4);
+		runner.setSetup(new ExperimentRunner.Setup() {
+			public void setUp(Network network, int run) throws SimulationException, StructuralException {
+				NEFEnsembleImpl ensemble = (NEFEnsembleImpl) network.getNode("a");
+				ensemble.setRadii(new float[]{run + 1});
+				decoders[run] = ((DecodedOrigin) ensemble.getOrigin(NEFEnsemble.X)).getDecoders()[0][0];
+			}
+		});
+		runner.run(4, 0, .005f, .001f);
+
+		for (int i = 0; i < decoders.length; i++) {
+			assertEquals(base * (i + 1), decoders[i], Math.abs(base) * 1e-5f);
+		}
+		assertEquals(base, ((DecodedOrigin) runner.copyModel().getNode("a").getOrigin(NEFEnsemble.X)).getDecoders()[0][0]);
+	}
+
+	private static Network makeNetwork() throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		//large enough that decoders are shared
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = ef.make("a", 300, 4);
+		a.addDecodedTermination("input", new float[][]{{1}, {0}, {0}, {0}}, .005f, false);
+		network.addNode(a);
+		NEFEnsemble b = ef.make("b", 50, 4);
+		b.addDecodedTermination("a", MU.I(4), .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("a"));
+		return network;
+	}
+
+}
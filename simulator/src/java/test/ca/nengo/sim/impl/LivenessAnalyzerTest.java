@@ -0,0 +1,98 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * Unit tests for LivenessAnalyzer.
+ */
+public class LivenessAnalyzerTest extends TestCase {
+
+	public void testAnalysis() throws Exception {
+		Network network = makeNetwork();
+		Probe probe = network.getSimulator().addProbe("b", NEFEnsemble.X, true);
+		List<ThreadTask> tasks = new ArrayList<ThreadTask>();
+		tasks.add(probe.getProbeTask());
+
+		LivenessAnalyzer liveness = new LivenessAnalyzer(network, network.getNodes(), network.getProjections(), tasks);
+		assertTrue(liveness.isLive(network.getNode("input")));
+		assertTrue(liveness.isLive(network.getNode("a")));
+		assertTrue(liveness.isLive(network.getNode("b")));
+		assertFalse(liveness.isLive(network.getNode("c")));
+
+		Node[] nodes = liveness.getLiveNodes(network.getNodes());
+		assertEquals(3, nodes.length);
+		assertEquals(2, liveness.getLiveProjections(network.getProjections()).length);
+
+		List<DecodedOrigin> unused = liveness.getUnusedOrigins();
+		assertEquals(1, unused.size());
+		assertSame(network.getNode("a").getOrigin("constant"), unused.get(0));
+
+		//exposing an origin makes the node live
+		network.exposeOrigin(network.getNode("c").getOrigin(NEFEnsemble.X), "output");
+		liveness = new LivenessAnalyzer(network, network.getNodes(), network.getProjections(), tasks);
+		assertTrue(liveness.isLive(network.getNode("c")));
+		assertEquals(4, liveness.getLiveNodes(network.getNodes()).length);
+	}
+
+	public void testSimulator() throws Exception {
+		Network network = makeNetwork();
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		simulator.setDisplayProgress(false);
+		simulator.setEliminateDeadNodes(true);
+		network.getSimulator().addProbe("b", NEFEnsemble.X, true);
+
+		network.run(0, .01f);
+		assertEquals(0f, network.getNode("c").getOrigin(NEFEnsemble.X).getValues().getTime());
+		assertTrue(network.getNode("b").getOrigin(NEFEnsemble.X).getValues().getTime() > 0);
+		DecodedOrigin constant = (DecodedOrigin) network.getNode("a").getOrigin("constant");
+		assertTrue(constant.getUnused());
+
+		//re-evaluated when probes are added
+		network.getSimulator().addProbe("c", NEFEnsemble.X, true);
+		network.run(0, .01f);
+		assertTrue(network.getNode("c").getOrigin(NEFEnsemble.X).getValues().getTime() > 0);
+
+		simulator.setEliminateDeadNodes(false);
+		assertFalse(constant.getUnused());
+	}
+
+	//input -> a -> b, a -> c, with an extra origin on a
+	private static Network makeNetwork() throws Exception {
+		NetworkImpl network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = factory.make("a", 20, 1);
+		NEFEnsemble b = factory.make("b", 20, 1);
+		NEFEnsemble c = factory.make("c", 20, 1);
+		a.addDecodedOrigin("constant", new Function[]{new ConstantFunction(1, 1)}, Neuron.AXON);
+		network.addNode(a);
+		network.addNode(b);
+		network.addNode(c);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME),
+				a.addDecodedTermination("input", MU.I(1), .005f, false));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.addDecodedTermination("input", MU.I(1), .005f, false));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), c.addDecodedTermination("input", MU.I(1), .005f, false));
+		return network;
+	}
+
+}
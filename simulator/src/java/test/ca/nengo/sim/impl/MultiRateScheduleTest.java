@@ -0,0 +1,167 @@
+package ca.nengo.sim.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.IdentityFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PassthroughNode;
+
+/**
+ * Unit tests for MultiRateSchedule.
+ */
+public class MultiRateScheduleTest extends TestCase {
+
+	public void testIsDue() throws Exception {
+		FunctionInput slow = makeInput("slow");
+		slow.setStepMultiple(3);
+		MultiRateSchedule schedule = new MultiRateSchedule(new Node[]{makeInput("fast"), slow});
+
+		assertTrue(schedule.isDue(0, 0f, 1f));
+		assertFalse(schedule.isDue(1, 0f, 1f));
+		assertFalse(schedule.isDue(1, 1f, 2f));
+		assertTrue(schedule.isDue(1, 2f, 3f));
+		assertEquals(0f, schedule.getStartTime(1));
+		assertFalse(schedule.isDue(1, 3f, 4f));
+		assertEquals(3f, schedule.getStartTime(1));
+		assertTrue(schedule.isDue(0, 3f, 4f));
+		assertEquals(3f, schedule.getStartTime(0));
+
+		//phase is kept by the next schedule
+		schedule = new MultiRateSchedule(new Node[]{slow}, schedule);
+		assertFalse(schedule.isDue(0, 4f, 5f));
+		assertTrue(schedule.isDue(0, 5f, 6f));
+		assertEquals(3f, schedule.getStartTime(0));
+
+		//and starts again when time jumps
+		assertFalse(schedule.isDue(0, 0f, 1f));
+		assertFalse(schedule.isDue(0, 1f, 2f));
+		assertFalse(schedule.isDue(0, 0f, 1f));
+		assertFalse(schedule.isDue(0, 1f, 2f));
+		assertTrue(schedule.isDue(0, 2f, 3f));
+		assertEquals(0f, schedule.getStartTime(0));
+
+		//but not shared with an unrelated schedule
+		MultiRateSchedule other = new MultiRateSchedule(new Node[]{slow});
+		assertFalse(other.isDue(0, 3f, 4f));
+		assertFalse(other.isDue(0, 4f, 5f));
+		assertTrue(other.isDue(0, 5f, 6f));
+		assertEquals(3f, other.getStartTime(0));
+		assertFalse(schedule.isDue(0, 3f, 4f));
+		assertEquals(3f, schedule.getStartTime(0));
+
+		try {
+			slow.setStepMultiple(0);
+			fail("Step multiple should be positive");
+		} catch (IllegalArgumentException e) {} //exception is expected
+	}
+
+	public void testSimulatorHoldsOutput() throws Exception {
+		for (boolean singleThreaded : new boolean[]{true, false}) {
+			NetworkImpl network = new NetworkImpl();
+			FunctionInput input = makeInput("input");
+			input.setStepMultiple(5);
+			PassthroughNode sink = new PassthroughNode("sink", 1);
+			network.addNode(input);
+			network.addNode(sink);
+			network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), sink.getTermination(PassthroughNode.TERMINATION));
+			LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+			simulator.setSingleThreaded(singleThreaded);
+			simulator.setDisplayProgress(false);
+
+			//runs at the end of the 5th and 10th steps
+			network.run(0, .007f);
+			assertEquals(.005f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+			assertEquals(.005f, getValue(network, "sink", PassthroughNode.ORIGIN), 1e-6f);
+			network.run(.007f, .012f);
+			assertEquals(.010f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+		}
+	}
+
+	public void testSingleStepRuns() throws Exception {
+		NetworkImpl network = new NetworkImpl();
+		FunctionInput input = makeInput("input");
+		input.setStepMultiple(2);
+		network.addNode(input);
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		simulator.setSingleThreaded(true);
+		simulator.setDisplayProgress(false);
+
+		for (int i = 0; i < 5; i++) {
+			network.run(.001f * i, .001f * (i+1));
+			assertEquals(.002f * ((i+1) / 2), getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+		}
+
+		//starts again from the beginning
+		network.reset(false);
+		network.run(0, .001f);
+		network.run(.001f, .002f);
+		assertEquals(.002f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+	}
+
+	public void testSimulatorsKeepOwnPhases() throws Exception {
+		for (boolean singleThreaded : new boolean[]{true, false}) {
+			NetworkImpl network = new NetworkImpl();
+			FunctionInput input = makeInput("input");
+			input.setStepMultiple(2);
+			network.addNode(input);
+			LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+			simulator.setSingleThreaded(singleThreaded);
+			simulator.setDisplayProgress(false);
+			LocalSimulator other = new LocalSimulator();
+			other.initialize(network);
+			other.setSingleThreaded(singleThreaded);
+			other.setDisplayProgress(false);
+
+			//each simulator counts its own steps of the input
+			simulator.run(0, .001f, .001f);
+			other.run(.001f, .002f, .001f);
+			assertEquals(0f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+			other.run(.002f, .003f, .001f);
+			assertEquals(.003f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+			simulator.run(.001f, .002f, .001f);
+			assertEquals(.002f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+
+			//a reset starts the steps over, even if time carries on
+			simulator.run(.002f, .003f, .001f);
+			simulator.resetNetwork(false, false);
+			simulator.run(.003f, .004f, .001f);
+			assertEquals(0f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+			simulator.run(.004f, .005f, .001f);
+			assertEquals(.005f, getValue(network, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+		}
+	}
+
+	public void testNestedNetwork() throws Exception {
+		NetworkImpl inner = new NetworkImpl();
+		inner.setName("inner");
+		FunctionInput input = makeInput("input");
+		input.setStepMultiple(2);
+		inner.addNode(input);
+
+		NetworkImpl outer = new NetworkImpl();
+		outer.addNode(inner);
+		LocalSimulator simulator = (LocalSimulator) outer.getSimulator();
+		simulator.setSingleThreaded(true);
+		simulator.setDisplayProgress(false);
+
+		//the inner network is run one step at a time
+		outer.run(0, .003f);
+		assertEquals(.002f, getValue(inner, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+		outer.run(.003f, .004f);
+		assertEquals(.004f, getValue(inner, "input", FunctionInput.ORIGIN_NAME), 1e-6f);
+	}
+
+	private static float getValue(Network network, String node, String origin) throws Exception {
+		return ((RealOutput) network.getNode(node).getOrigin(origin).getValues()).getValues()[0];
+	}
+
+	private static FunctionInput makeInput(String name) throws Exception {
+		return new FunctionInput(name, new Function[]{new IdentityFunction(1, 0)}, Units.UNK);
+	}
+
+}
@@ -0,0 +1,147 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.BufferedOrigin;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * Unit tests for PassthroughFolder.
+ */
+public class PassthroughFolderTest extends TestCase {
+
+	public void testFoldChain() throws Exception {
+		Network network = makeNetwork();
+		PassthroughFolder folder = new PassthroughFolder(network, network.getNodes(), network.getProjections(),
+				new ArrayList<ThreadTask>(0));
+
+		Node[] nodes = folder.getNodes();
+		assertEquals(2, nodes.length);
+		for (Node node : nodes) {
+			assertFalse(node.getName().startsWith("p"));
+		}
+
+		Projection[] projections = folder.getProjections();
+		assertEquals(1, projections.length);
+		assertSame(network.getNode("sink").getTermination(PassthroughNode.TERMINATION), projections[0].getTermination());
+		assertSame(network.getNode("p2"), projections[0].getOrigin().getNode());
+
+		//the input reaches p2's origin after two steps, one for each PassthroughNode
+		network.getNode("input").run(0, .001f);
+		BufferedOrigin origin = (BufferedOrigin) projections[0].getOrigin();
+		float[] first = origin.getBuffer();
+		assertEquals(0f, first[0]);
+		float[] second = origin.getBuffer();
+		assertEquals(0f, second[0]);
+		float[] values = origin.getBuffer();
+		assertEquals(4f, values[0]);
+		assertEquals(3f, values[1]);
+		assertSame(first, values); //output arrays are reused
+	}
+
+	public void testLoopNotFolded() throws Exception {
+		NetworkImpl network = new NetworkImpl();
+		PassthroughNode p1 = new PassthroughNode("p1", 1);
+		PassthroughNode p2 = new PassthroughNode("p2", 1);
+		network.addNode(p1);
+		network.addNode(p2);
+		network.addProjection(p1.getOrigin(PassthroughNode.ORIGIN), p2.getTermination(PassthroughNode.TERMINATION));
+		network.addProjection(p2.getOrigin(PassthroughNode.ORIGIN), p1.getTermination(PassthroughNode.TERMINATION));
+
+		PassthroughFolder folder = new PassthroughFolder(network, network.getNodes(), network.getProjections(),
+				new ArrayList<ThreadTask>(0));
+		assertEquals(2, folder.getNodes().length);
+		assertEquals(2, folder.getProjections().length);
+	}
+
+	public void testSimulatorKeepsTiming() throws Exception {
+		for (boolean singleThreaded : new boolean[]{true, false}) {
+			Network network = makeNetwork(new SineFunction(100, 2));
+			LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+			simulator.setSingleThreaded(singleThreaded);
+			simulator.setDisplayProgress(false);
+
+			float[][] expected = runSteps(network);
+			simulator.setFoldPassthroughNodes(true);
+			float[][] folded = runSteps(network);
+			float[][] again = runSteps(network); //after a reset
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i][0], folded[i][0]);
+				assertEquals(expected[i][1], folded[i][1]);
+				assertEquals(expected[i][0], again[i][0]);
+			}
+			assertEquals(0f, expected[2][0]); //sink's own delay and two PassthroughNodes
+			assertFalse(0f == expected[3][0]);
+
+			//folding from partway through carries on from what the PassthroughNodes hold
+			simulator.setFoldPassthroughNodes(false);
+			network.reset(false);
+			for (int i = 0; i < expected.length; i++) {
+				if (i == 5) {
+					simulator.setFoldPassthroughNodes(true);
+				}
+				network.run(i * .001f, (i+1) * .001f);
+				assertEquals(expected[i][1], getSinkValues(network)[1]);
+			}
+		}
+	}
+
+	//resets and runs the network one step at a time, returning the sink values after each step
+	private static float[][] runSteps(Network network) throws Exception {
+		network.reset(false);
+		float[][] result = new float[10][];
+		for (int i = 0; i < result.length; i++) {
+			network.run(i * .001f, (i+1) * .001f);
+			result[i] = getSinkValues(network).clone();
+		}
+		return result;
+	}
+
+	private static float[] getSinkValues(Network network) throws Exception {
+		return ((RealOutput) network.getNode("sink").getOrigin(PassthroughNode.ORIGIN).getValues()).getValues();
+	}
+
+	//input -> p1 (two terminations) -> p2 -> sink, with the sink exposed so that it isn't folded
+	private static Network makeNetwork() throws Exception {
+		return makeNetwork(new ConstantFunction(1, 2));
+	}
+
+	//as makeNetwork(), with the given function as the input's second dimension
+	private static Network makeNetwork(Function second) throws Exception {
+		NetworkImpl network = new NetworkImpl();
+		FunctionInput input = new FunctionInput("input",
+				new Function[]{new ConstantFunction(1, 1), second}, Units.UNK);
+		Map<String, float[][]> terminations = new HashMap<String, float[][]>();
+		terminations.put("x", new float[][]{{2, 0}, {0, 1}});
+		terminations.put("y", new float[][]{{0, 1}, {1, 0}});
+		PassthroughNode p1 = new PassthroughNode("p1", 2, terminations);
+		PassthroughNode p2 = new PassthroughNode("p2", 2);
+		PassthroughNode sink = new PassthroughNode("sink", 2);
+		network.addNode(input);
+		network.addNode(p1);
+		network.addNode(p2);
+		network.addNode(sink);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), p1.getTermination("x"));
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), p1.getTermination("y"));
+		network.addProjection(p1.getOrigin(PassthroughNode.ORIGIN), p2.getTermination(PassthroughNode.TERMINATION));
+		network.addProjection(p2.getOrigin(PassthroughNode.ORIGIN), sink.getTermination(PassthroughNode.TERMINATION));
+		network.exposeOrigin(sink.getOrigin(PassthroughNode.ORIGIN), "output");
+		return network;
+	}
+
+}
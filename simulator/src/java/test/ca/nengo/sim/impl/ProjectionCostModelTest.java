@@ -0,0 +1,103 @@
+package ca.nengo.sim.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+
+/**
+ * Unit tests for ProjectionCostModel.
+ */
+public class ProjectionCostModelTest extends TestCase {
+
+	public void testCosts() {
+		//high dimension, few nodes
+		assertTrue(ProjectionCostModel.getFullCost(20, 20, 1) < ProjectionCostModel.getFactoredCost(16, 16, 1, 20));
+		//low dimension, many nodes
+		assertTrue(ProjectionCostModel.getFullCost(500, 500, 1) > ProjectionCostModel.getFactoredCost(2, 2, 1, 500));
+	}
+
+	public void testCompile() throws Exception {
+		Network network = makeNetwork(16);
+		List<DecodedTermination> weighted = ProjectionCostModel.compile(network.getProjections());
+		assertEquals(1, weighted.size());
+		DecodedTermination termination = (DecodedTermination) network.getNode("b").getTermination("input");
+		assertSame(termination, weighted.get(0));
+		float[][] weights = termination.getWeights();
+		assertEquals(20, weights.length);
+		assertEquals(20, weights[0].length);
+
+		termination.clearWeights();
+		assertNull(termination.getWeights());
+		assertNull(termination.getCurrents());
+
+		//low dimension stays factored
+		network = makeNetwork(1);
+		assertEquals(0, ProjectionCostModel.compile(network.getProjections()).size());
+	}
+
+	public void testSameResults() throws Exception {
+		float[][] factored = run(false);
+		float[][] full = run(true);
+
+		assertEquals(factored.length, full.length);
+		for (int i = 0; i < factored.length; i++) {
+			for (int j = 0; j < factored[i].length; j++) {
+				assertEquals(factored[i][j], full[i][j], 1e-4f);
+			}
+		}
+	}
+
+	private static float[][] run(boolean optimize) throws Exception {
+		PDFTools.setSeed(1);
+		Network network = makeNetwork(16);
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		simulator.setDisplayProgress(false);
+		simulator.setOptimizeProjections(optimize);
+		Probe probe = simulator.addProbe("b", NEFEnsemble.X, true);
+		network.run(0, .05f);
+
+		DecodedTermination termination = (DecodedTermination) network.getNode("b").getTermination("input");
+		assertEquals(optimize, termination.getWeights() != null);
+		simulator.setOptimizeProjections(false);
+		assertNull(termination.getWeights());
+		return probe.getData().getValues();
+	}
+
+	//input -> a -> b in rate mode, with 20 nodes per ensemble
+	private static Network makeNetwork(int dimension) throws Exception {
+		NetworkImpl network = new NetworkImpl();
+		Function[] functions = new Function[dimension];
+		for (int i = 0; i < dimension; i++) {
+			functions[i] = new ConstantFunction(1, (i % 3 - 1) * .2f);
+		}
+		FunctionInput input = new FunctionInput("input", functions, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = factory.make("a", 20, dimension);
+		NEFEnsemble b = factory.make("b", 20, dimension);
+		a.setMode(SimulationMode.RATE);
+		b.setMode(SimulationMode.RATE);
+		network.addNode(a);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME),
+				a.addDecodedTermination("input", MU.I(dimension), .005f, false));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.addDecodedTermination("input", MU.I(dimension), .005f, false));
+		return network;
+	}
+
+}
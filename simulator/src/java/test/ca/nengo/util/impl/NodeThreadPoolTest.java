@@ -0,0 +1,117 @@
+package ca.nengo.util.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.math.NetworkPartitioner;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for NodeThreadPool.
+ */
+public class NodeThreadPoolTest extends TestCase {
+
+	private NetworkPartitioner myPartitioner;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myPartitioner = NodeThreadPool.getNetworkPartitioner();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		NodeThreadPool.setNetworkPartitioner(myPartitioner);
+	}
+
+	public void testConnectedNodesShareThread() throws StructuralException {
+		NetworkImpl network = makeNetwork();
+		Node[] nodes = network.getNodes();
+		Projection[] projections = network.getProjections();
+
+		int[] threads = NodeThreadPool.assignNodesToThreads(nodes, projections, 2);
+		assertEquals(threadOf(nodes, threads, "a"), threadOf(nodes, threads, "b"));
+		assertEquals(threadOf(nodes, threads, "c"), threadOf(nodes, threads, "d"));
+		assertTrue(threadOf(nodes, threads, "a") != threadOf(nodes, threads, "c"));
+
+		//the same assignment is used again
+		int[] again = NodeThreadPool.assignNodesToThreads(nodes, projections, 2);
+		for (int i = 0; i < threads.length; i++) {
+			assertEquals(threads[i], again[i]);
+		}
+
+		//projections run on the threads of their terminations
+		int[] projectionThreads = NodeThreadPool.assignProjectionsToThreads(nodes, threads, projections, 2);
+		for (int i = 0; i < projections.length; i++) {
+			Node termination = projections[i].getTermination().getNode();
+			assertEquals(threadOf(nodes, threads, termination.getName()), projectionThreads[i]);
+		}
+	}
+
+	public void testListOrder() throws StructuralException {
+		NodeThreadPool.setNetworkPartitioner(null);
+		NetworkImpl network = makeNetwork();
+		int[] threads = NodeThreadPool.assignNodesToThreads(network.getNodes(), network.getProjections(), 2);
+		assertEquals(0, threads[0]);
+		assertEquals(0, threads[1]);
+		assertEquals(1, threads[2]);
+		assertEquals(1, threads[3]);
+	}
+
+	public void testRun() throws Exception {
+		NetworkImpl network = makeNetwork();
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		try {
+			NodeThreadPool.setNumJavaThreads(2);
+			network.getSimulator().run(0, .01f, .001f);
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+		}
+
+		List<Node> nodes = NodeThreadPool.collectNodes(network.getNodes(), true);
+		assertEquals(4, nodes.size());
+	}
+
+	public void testRunWithoutMultithreading() throws Exception {
+		NetworkImpl network = makeNetwork();
+		int numThreads = NodeThreadPool.getNumJavaThreads();
+		try {
+			NodeThreadPool.turnOffMultithreading();
+			network.getSimulator().run(0, .01f, .001f);
+		} finally {
+			NodeThreadPool.setNumJavaThreads(numThreads);
+		}
+	}
+
+	private static int threadOf(Node[] nodes, int[] threads, String name) {
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i].getName().equals(name)) {
+				return threads[i];
+			}
+		}
+		return -1;
+	}
+
+	//two pairs of connected ensembles, interleaved in the node list
+	private static NetworkImpl makeNetwork() throws StructuralException {
+		NetworkImpl network = new NetworkImpl();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		String[] names = new String[]{"a", "c", "b", "d"};
+		for (String name : names) {
+			NEFEnsemble ensemble = ef.make(name, 20, 1);
+			ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+			network.addNode(ensemble);
+		}
+		network.addProjection(((NEFEnsemble) network.getNode("a")).getOrigin(NEFEnsemble.X), 
+				network.getNode("b").getTermination("input"));
+		network.addProjection(((NEFEnsemble) network.getNode("c")).getOrigin(NEFEnsemble.X), 
+				network.getNode("d").getTermination("input"));
+		return network;
+	}
+
+}